@@ -6,10 +6,12 @@ package daytrader.backgroundSaveManager;
 
 import daytrader.datamodel.DTConstants;
 import daytrader.datamodel.RealTimeRunManager;
+import daytrader.datamodel.RunManagerSnapshot;
 import daytrader.utils.DTUtil;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.IdentityHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
@@ -22,7 +24,9 @@ import java.util.logging.Logger;
 /**
  * This callable class will manage the background saving of data so that it can
  * be recovered during the day It will save any running put ups data every 5 min
- * by default
+ * by default. Each putup is saved to a binary snapshot (see RunManagerSnapshot)
+ * that is kept for the life of this object so a backup only writes the data
+ * that has arrived since the last one.
  *
  * @author Roy
  */
@@ -34,6 +38,8 @@ public class BackgroundSaveManager implements Callable<Void> {
     private File recoveryFolder;
     private ExecutorService threadPool;
     private boolean isShutdown;
+    //The binary snapshot kept for each run manager that has been backed up
+    private final IdentityHashMap<RealTimeRunManager, RunManagerSnapshot> snapshots;
 
     /**
      * Default Constructor - Initialises this class to perform a background save
@@ -44,6 +50,7 @@ public class BackgroundSaveManager implements Callable<Void> {
         this.lock = new ReentrantLock();
         this.threadPool = Executors.newCachedThreadPool();
         this.isShutdown = false;
+        this.snapshots = new IdentityHashMap<RealTimeRunManager, RunManagerSnapshot>();
     }
 
     @Override
@@ -133,7 +140,7 @@ public class BackgroundSaveManager implements Callable<Void> {
         CompletionService serv = new ExecutorCompletionService(this.threadPool);
         if (null != runningPutups && 0 < runningPutups.size()) {
             for (RealTimeRunManager manager : runningPutups) {
-                BackupRealTimeRunManager task = new BackupRealTimeRunManager(manager, recoveryFolder);
+                BackupRealTimeRunManager task = new BackupRealTimeRunManager(manager, this.getSnapshot(manager));
                 serv.submit(task);
                 count++;
             }
@@ -157,13 +164,41 @@ public class BackgroundSaveManager implements Callable<Void> {
     private void runBackup() {
         ArrayList<RealTimeRunManager> runningPutups = DTConstants.getRunningRecords2();
         if (null != runningPutups && 0 < runningPutups.size()) {
+            //Forget the snapshots of putups that are no longer running
+            lock.lock();
+            try {
+                this.snapshots.keySet().retainAll(runningPutups);
+            } finally {
+                lock.unlock();
+            }
             for (RealTimeRunManager manager : runningPutups) {
-                BackupRealTimeRunManager task = new BackupRealTimeRunManager(manager, recoveryFolder);
+                BackupRealTimeRunManager task = new BackupRealTimeRunManager(manager, this.getSnapshot(manager));
                 this.threadPool.submit(task);
             }
         }
     }
 
+    /**
+     * Retrieves the binary snapshot used to backup a run manager, creating it the
+     * first time the manager is backed up
+     * @param manager - The RealTimeRunManager to be backed up
+     * @return The RunManagerSnapshot for the manager
+     */
+    private RunManagerSnapshot getSnapshot(RealTimeRunManager manager) {
+        RunManagerSnapshot result = null;
+        lock.lock();
+        try {
+            result = this.snapshots.get(manager);
+            if (null == result) {
+                result = new RunManagerSnapshot(this.recoveryFolder, manager);
+                this.snapshots.put(manager, result);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
     /**
      * This function creates a directory to store recovery data. The created directory will be 
      * named "Recovery_YYYYMMDD". So for example the data for 26th August 2013 will be saved
@@ -171,15 +206,24 @@ public class BackgroundSaveManager implements Callable<Void> {
      */
     private void makeRecoveryDir() {
         //Create folder for recovery files
-        Calendar exchOpeningTime = DTUtil.getExchOpeningTime();
-        int intDate = DTUtil.convertCalendarToIntDate(exchOpeningTime);
-        String folderName = "Recovery_" + intDate;
-        this.recoveryFolder = new File(folderName);
+        this.recoveryFolder = BackgroundSaveManager.getTodaysRecoveryFolder();
         if (!this.recoveryFolder.exists()) {
             this.recoveryFolder.mkdir();
         }
     }
 
+    /**
+     * Retrieves the recovery folder for the current trading day (see makeRecoveryDir()).
+     * The folder may not yet exist.
+     * @return A File object representing the abstract path to the recovery folder
+     */
+    public static File getTodaysRecoveryFolder() {
+        Calendar exchOpeningTime = DTUtil.getExchOpeningTime();
+        int intDate = DTUtil.convertCalendarToIntDate(exchOpeningTime);
+        String folderName = "Recovery_" + intDate;
+        return new File(folderName);
+    }
+
     /**
      * Accessor to retrieve the File object that represents the recovery folder.
      * @return the recoveryFolder File object
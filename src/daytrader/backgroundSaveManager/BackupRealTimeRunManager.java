@@ -6,6 +6,7 @@ package daytrader.backgroundSaveManager;
 
 import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.RealTimeRunManager;
+import daytrader.datamodel.RunManagerSnapshot;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -17,7 +18,9 @@ import javax.xml.stream.XMLStreamWriter;
 
 /**
  * This callable class accepts a RealTimeRunManager to backup and performs the
- * backup into the specified directory.
+ * backup into the specified directory. If the task is given the putups binary
+ * snapshot (see RunManagerSnapshot) the changes since the last backup are
+ * appended to it, otherwise the whole manager is written out as XML.
  *
  * @author Roy
  */
@@ -26,6 +29,7 @@ public class BackupRealTimeRunManager implements Callable<Void> {
     private RealTimeRunManager manager;
     private File recoveryFolder;
     private File targetFile;
+    private RunManagerSnapshot snapshot;
 
     /**
      * Constructor that accepts a running RealTimeRunManager to backup and a File object
@@ -44,9 +48,23 @@ public class BackupRealTimeRunManager implements Callable<Void> {
         }
     }
 
+    /**
+     * Constructor that accepts a running RealTimeRunManager to backup and the
+     * binary snapshot to back it up into
+     * @param newData - The RealTimeRunManager containing the data to be backed up
+     * @param newSnapshot - The RunManagerSnapshot kept for the manager by the
+     * background save manager.
+     */
+    public BackupRealTimeRunManager(RealTimeRunManager newData, RunManagerSnapshot newSnapshot) {
+        this.manager = newData;
+        this.snapshot = newSnapshot;
+    }
+
     @Override
     public Void call() throws Exception {
-        if (this.isValid()) {
+        if (null != this.manager && null != this.snapshot) {
+            this.snapshot.writeSnapshot(this.manager);
+        } else if (this.isValid()) {
             if (this.targetFile.exists()) {
                 this.targetFile.delete();
             }
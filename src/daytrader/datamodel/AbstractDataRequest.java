@@ -14,6 +14,7 @@ import com.ib.client.OrderState;
 import com.ib.client.UnderComp;
 import daytrader.historicRequestSystem.TWSAccount;
 import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
+import daytrader.utils.DTUtil;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -21,6 +22,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * This abstract class provides a base from which a request for ongoing data from the
  * Stock brokers API should extend (ie. RealTime Data not Historical Requests)
  *
+ * A request runs as a series of short calls to poll() made every SLEEP_TIME
+ * milliseconds. The first polls connect and send the request, later polls do any
+ * periodic work and stop the request at the end of the trading day. Because a poll
+ * never blocks a small shared pool of threads (see RealTimeScheduler) can run the
+ * requests for every putup, connection attempts are handed to the schedulers
+ * connect threads and the polls check for their result. call() is kept to run a
+ * request on a thread of its own.
+ *
  * @author Roy
  */
 public abstract class AbstractDataRequest implements Callable<Void>, EWrapper {
@@ -69,6 +78,19 @@ public abstract class AbstractDataRequest implements Callable<Void>, EWrapper {
      * In the event of an exception occurring this attribute stores it for processing / reference
      */
     protected Exception lastException;
+    /**
+     * The write ahead journal that received points are written to before they are
+     * added to the graph (NULL if the points are not journalled)
+     */
+    protected volatile TickJournal journal;
+    //Set once the request has been sent to the stockbroker's server
+    private boolean requestSent;
+    //Time after which to give up trying to connect
+    private long connectFailTime;
+    //Set while a connection attempt is running on a connect thread
+    private volatile boolean connecting;
+    //End of the trading day, the request stops at this time
+    private long shutdownAt;
 
     /**
      * Performs initialisation of the Data Request object. Creates empty price / time graph, obtains an
@@ -126,6 +148,29 @@ public abstract class AbstractDataRequest implements Callable<Void>, EWrapper {
         }
     }
 
+    /**
+     * Starts a connection attempt on one of the RealTimeScheduler's connect threads
+     * unless the account is connected or an attempt is already running. Never blocks.
+     */
+    private void startConnect() {
+        if (!this.connecting && !this.isConnected()) {
+            this.connecting = true;
+            RealTimeScheduler.getInstance().executeConnect(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        connect();
+                    } catch (Exception ex) {
+                        //Retried by a later poll
+                    } finally {
+                        connecting = false;
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Disconnection is now managed by the TWSAccount class hence this method no longer disconnects the socket 
      * from the server. However it does still set the flag to disconnect that is used to terminate the data 
@@ -173,9 +218,118 @@ public abstract class AbstractDataRequest implements Callable<Void>, EWrapper {
         return lastException;
     }
 
+    /**
+     * Accessor to set the write ahead journal that received points are written to
+     * @param newJournal - The putups TickJournal or NULL to stop journalling
+     */
+    public void setTickJournal(TickJournal newJournal) {
+        this.journal = newJournal;
+    }
+
+    /**
+     * Adds a received point to the graph, journalling it first if this request
+     * has a journal (see TickJournal.add())
+     * @param dataChannel - integer being the journal channel of this requests
+     * points (TickJournal.FIVE_SEC_BARS or TickJournal.MARKET_DATA)
+     * @param aPoint - The Price / Time point received
+     * @return boolean True if the point was added to the graph, False otherwise.
+     */
+    protected boolean addReceivedPoint(int dataChannel, AbstractGraphPoint aPoint) {
+        boolean result = false;
+        TickJournal currJournal = this.journal;
+        if (null != currJournal) {
+            result = currJournal.add(dataChannel, aPoint, this.graph);
+        } else {
+            result = this.graph.add(aPoint);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the request for data to the stockbroker's server. Called once by
+     * poll() when the account is connected.
+     * @throws Exception if the request cannot be made
+     */
+    protected abstract void sendRequest() throws Exception;
+
+    /**
+     * Performs any periodic work the request needs. Called by poll() every
+     * SLEEP_TIME milliseconds once the request has been sent. The default does nothing.
+     * @param now - long being the current time in milliseconds
+     */
+    protected void onPoll(long now) {
+    }
+
+    /**
+     * Performs one step of the request. Connects and sends the request, then on
+     * later calls does the periodic work and checks for the end of the day or an
+     * error. This method never blocks and should be called every SLEEP_TIME
+     * milliseconds until it returns false.
+     * @return boolean True if the request is still active and poll() should be
+     * called again, False if the request has finished.
+     */
+    public boolean poll() {
+        boolean result = false;
+        long now = System.currentTimeMillis();
+        try {
+            if (!this.requestSent) {
+                if (0 == this.connectFailTime) {
+                    this.running.set(true);
+                    //I do not like it but the stockbrokers server does not alway connect on first attempt, retry until it does.
+                    this.connectFailTime = now + (5 * 60 * 1000);                  //Attempt to connect for 5 min tops
+                    //Record end of trading day so I know when to shutdown
+                    this.shutdownAt = DTUtil.getExchClosingCalendar(this.myPutup.getTodaysDate()).getTimeInMillis();
+                }
+                if (!this.isConnected()) {
+                    //Connect without blocking, a later poll sends the request
+                    this.startConnect();
+                }
+                if (this.isConnected()) {
+                    this.sendRequest();
+                    this.requestSent = true;
+                } else if (now >= this.connectFailTime) {
+                    throw new TWSConnectionException("Failed to connect to stock broker on startup " + this.getClass().getSimpleName() + ": " + this.myPutup.getTickerCode());
+                }
+                result = true;
+            } else if (!this.shouldDisconnect) {
+                this.onPoll(now);
+                //Standard code to shutdown at end of day or on error
+                if (now > this.shutdownAt) {
+                    this.disconnect();
+                }
+                if (null != this.lastException) {
+                    this.shouldDisconnect = true;
+                    this.disconnect();
+                    throw this.lastException;
+                }
+                result = !this.shouldDisconnect;
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            this.lastException = ex;
+            if (this.isConnected()) {
+                this.disconnect();
+            }
+        }
+        if (!result) {
+            this.running.set(false);
+        }
+        return result;
+    }
+
     //CALLABLE INTERFACE - START
+    /**
+     * Runs the request on the calling thread until it finishes
+     * @return Void
+     * @throws Exception if the thread is interrupted
+     */
     @Override
-    public abstract Void call() throws Exception;
+    public Void call() throws Exception {
+        while (this.poll()) {
+            Thread.sleep(SLEEP_TIME);
+        }
+        return null;
+    }
     //CALLABLE INTERFACE - END
 
     //EWRAPPER INTERFACE - START
@@ -6,12 +6,12 @@ package daytrader.datamodel;
 
 import daytrader.interfaces.IGraphPoint;
 import daytrader.interfaces.IRoundFunction;
+import daytrader.utils.BrokerDateCodec;
 import daytrader.utils.DTUtil;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.TimeZone;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.namespace.QName;
@@ -22,7 +22,6 @@ import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.EndElement;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
-import rules.NoRoundingOp;
 import rules.RoundToTenthCent;
 
 /**
@@ -73,33 +72,35 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
      */
     protected boolean hasGaps;
     /**
-     * A Java Calendar encapsulating the time data for this graph point
+     * A Java Calendar encapsulating the time data for this graph point. Points
+     * parsed from the stockbroker's date string only store the timestamp and this
+     * is created when first needed (see getCalendarValue()). When it is NULL the
+     * timestamp attribute holds the time of the point.
      */
-    protected Calendar calDate;
-
-    /**
-     * Added a recursion cache for use in tracking the Y-Line's the point might be involved in
-     */
-    protected RecursionCache recursionCache;
+    protected volatile Calendar calDate;
     /**
-     * As the recursion cache will be storing data (i.e. writing into a point I will use a lock to manage multi threaded interactions).
+     * The time of this point in milliseconds, valid whenever calDate is NULL
      */
-    protected ReentrantLock lock;
+    protected long timestamp;
 
     /**
      * Default Constructor, All Graph Points are required to provide a zero argument constructor
      */
     public AbstractGraphPoint() {
-        lock = new ReentrantLock();
     }
 
     /**
      * The data & time values for a Graph Point are provided as a string from the stockbroker's API which is nominally
-     * stored into the this.date attribute. This method parses the string stored in that attribute and generates a
-     * standard Java Calendar object that encapsulates the data. This object is the stored into the this.calDate attribute
+     * stored into the this.date attribute. This method parses the string stored in that attribute into the timestamp
+     * attribute. A Java Calendar is only created here for strings that have no time component, otherwise it is
+     * created when first needed.
      */
     protected void createCalendar() {
-        if (null != this.date) {
+        long parsedTime = BrokerDateCodec.parse(this.date);
+        if (BrokerDateCodec.INVALID != parsedTime) {
+            this.timestamp = parsedTime;
+            this.calDate = null;
+        } else if (null != this.date) {
             String[] arrDateParts = this.date.split("  ");
             int intYear = Integer.parseInt(arrDateParts[0].substring(0, 4));
             int intMonth = Integer.parseInt(arrDateParts[0].substring(4, 6));
@@ -117,6 +118,7 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
                 intSec = Integer.parseInt(arrTimeParts[2]);
             }
             this.calDate = DTUtil.createCalendar(intYear, intMonth, intDay, intHour, intMin, intSec, TimeZone.getTimeZone("Europe/London"));
+            this.timestamp = this.calDate.getTimeInMillis();
         }
     }
 
@@ -130,16 +132,34 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
         Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("Europe/London"));
         cal.clear();
         cal.setTimeInMillis(newTimestamp);
+        this.timestamp = newTimestamp;
         this.calDate = cal;
         //Now generate and store the stockbroker string
         SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMdd  HH:mm:ss");
         this.date = formatter.format(this.calDate.getTime());
     }
 
+    /**
+     * Accessor to retrieve the Calendar holding the time of this point, creating
+     * it from the timestamp if this has not already been done. The Calendar MUST
+     * NOT be modified. Two threads may both create the Calendar, they create
+     * identical objects and either may be kept.
+     * @return The Calendar stored in the calDate attribute
+     */
+    protected Calendar getCalendarValue() {
+        Calendar result = this.calDate;
+        if (null == result) {
+            result = Calendar.getInstance(TimeZone.getTimeZone("Europe/London"));
+            result.setTimeInMillis(this.timestamp);
+            this.calDate = result;
+        }
+        return result;
+    }
+
     @Override
     public Calendar getCalDate() {
         Calendar result = Calendar.getInstance(TimeZone.getTimeZone("Europe/London"));
-        result.setTime(calDate.getTime());
+        result.setTimeInMillis(this.getTimestamp());
         return result;
     }
 
@@ -147,10 +167,10 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
     public String getDayAsCSVString() {
         String result = "";
         StringBuilder data = new StringBuilder("");
-        int year = calDate.get(Calendar.YEAR);
-        int month = calDate.get(Calendar.MONTH);
+        int year = this.getCalendarValue().get(Calendar.YEAR);
+        int month = this.getCalendarValue().get(Calendar.MONTH);
         month++;
-        int day = calDate.get(Calendar.DAY_OF_MONTH);
+        int day = this.getCalendarValue().get(Calendar.DAY_OF_MONTH);
         data.append(Integer.toString(year));
         data.append(",");
         switch (month) {
@@ -193,7 +213,7 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
     @Override
     public int getYear() {
         int result = 0;
-        int year = calDate.get(Calendar.YEAR);
+        int year = this.getCalendarValue().get(Calendar.YEAR);
         result = year;
         return result;
     }
@@ -201,7 +221,7 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
     @Override
     public int getMonth() {
         int result = 0;
-        int month = calDate.get(Calendar.MONTH);
+        int month = this.getCalendarValue().get(Calendar.MONTH);
         result = month;
         return result;
     }
@@ -209,7 +229,7 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
     @Override
     public int getDay() {
         int result = 0;
-        int day = calDate.get(Calendar.DAY_OF_MONTH);
+        int day = this.getCalendarValue().get(Calendar.DAY_OF_MONTH);
         result = day;
         return result;
     }
@@ -218,10 +238,10 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
     public int getDateAsNumber() {
         int result = 0;
         StringBuilder data = new StringBuilder("");
-        int year = calDate.get(Calendar.YEAR);
-        int month = calDate.get(Calendar.MONTH);
+        int year = this.getCalendarValue().get(Calendar.YEAR);
+        int month = this.getCalendarValue().get(Calendar.MONTH);
         month++;
-        int day = calDate.get(Calendar.DAY_OF_MONTH);
+        int day = this.getCalendarValue().get(Calendar.DAY_OF_MONTH);
         data.append(Integer.toString(year));
         switch (month) {
             case 1:
@@ -261,7 +281,12 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public long getTimestamp() {
-        return this.calDate.getTimeInMillis();
+        long result = this.timestamp;
+        Calendar cal = this.calDate;
+        if (null != cal) {
+            result = cal.getTimeInMillis();
+        }
+        return result;
     }
 
     @Override
@@ -272,11 +297,11 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public double getOpen() {
-        return this.getOpen(AbstractGraphPoint.getNoOpRounder());
+        return this.open;
     }
 
     @Override
-    public double getOpen(IRoundFunction rounder) {
+    public double getOpen(IRoundFunction<Number> rounder) {
         double result = this.open;
         if (null != rounder) {
             Number value = this.open;
@@ -287,11 +312,11 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public double getHigh() {
-        return this.getHigh(AbstractGraphPoint.getNoOpRounder());
+        return this.high;
     }
 
     @Override
-    public double getHigh(IRoundFunction rounder) {
+    public double getHigh(IRoundFunction<Number> rounder) {
         double result = this.high;
         if (null != rounder) {
             Number value = this.high;
@@ -302,11 +327,11 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public double getLow() {
-        return this.getLow(AbstractGraphPoint.getNoOpRounder());
+        return this.low;
     }
 
     @Override
-    public double getLow(IRoundFunction rounder) {
+    public double getLow(IRoundFunction<Number> rounder) {
         double result = this.low;
         if (null != rounder) {
             Number value = this.low;
@@ -317,11 +342,11 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public double getClose() {
-        return this.getClose(AbstractGraphPoint.getNoOpRounder());
+        return this.close;
     }
 
     @Override
-    public double getClose(IRoundFunction rounder) {
+    public double getClose(IRoundFunction<Number> rounder) {
         double result = this.close;
         if (null != rounder) {
             Number value = this.close;
@@ -332,11 +357,11 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public double getWAP() {
-        return this.getWAP(AbstractGraphPoint.getNoOpRounder());
+        return this.WAP;
     }
 
     @Override
-    public double getWAP(IRoundFunction rounder) {
+    public double getWAP(IRoundFunction<Number> rounder) {
         double result = this.WAP;
         if (null != rounder) {
             Number value = this.WAP;
@@ -466,11 +491,7 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
         return result;
     }
 
-    private static IRoundFunction getNoOpRounder() {
-        return new NoRoundingOp();
-    }
-
-    private static IRoundFunction getTenthCentRounder() {
+    private static IRoundFunction<Number> getTenthCentRounder() {
         return new RoundToTenthCent();
     }
 
@@ -486,9 +507,11 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
         @Override
         public int compare(AbstractGraphPoint o1, AbstractGraphPoint o2) {
             int result = 0;
-            if (o1.getLastPrice() < o2.getLastPrice()) {
+            double price1 = o1.getLastPrice();
+            double price2 = o2.getLastPrice();
+            if (price1 < price2) {
                 result = -1;
-            } else if (o1.getLastPrice() > o2.getLastPrice()) {
+            } else if (price1 > price2) {
                 result = 1;
             }
             //If the price is the same then make the decision based on time
@@ -557,27 +580,27 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
 
     @Override
     public void setOpen(double open) {
-        this.open = DTUtil.step1Rounding(open).doubleValue();
+        this.open = DTUtil.step1Rounding(open);
     }
 
     @Override
     public void setHigh(double high) {
-        this.high = DTUtil.step1Rounding(high).doubleValue();
+        this.high = DTUtil.step1Rounding(high);
     }
 
     @Override
     public void setLow(double low) {
-        this.low = DTUtil.step1Rounding(low).doubleValue();
+        this.low = DTUtil.step1Rounding(low);
     }
 
     @Override
     public void setClose(double close) {
-        this.close = DTUtil.step1Rounding(close).doubleValue();
+        this.close = DTUtil.step1Rounding(close);
     }
 
     @Override
     public void setWAP(double WAP) {
-        this.WAP = DTUtil.step1Rounding(WAP).doubleValue();
+        this.WAP = DTUtil.step1Rounding(WAP);
     }
 
     /**
@@ -772,7 +795,7 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
                 writer.writeEndElement();
 
                 writer.writeStartElement("Timestamp");
-                writer.writeCharacters(((Long) this.calDate.getTimeInMillis()).toString());
+                writer.writeCharacters(((Long) this.getTimestamp()).toString());
                 writer.writeEndElement();
 
                 writer.writeStartElement("DataDate");
@@ -858,34 +881,6 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
         this.createCalendarFromTimestamp(newTimestamp);
     }
 
-    @Override
-    public RecursionCache getRecursionCache() {
-        RecursionCache result = null;
-        lock.lock();
-        try {
-            if(null != this.recursionCache){
-                result = new RecursionCache(this.recursionCache);
-            }
-        } finally {
-            lock.unlock();
-        }
-        return result;
-    }
-
-    @Override
-    public boolean setRecursionCache(RecursionCache newCache) {
-        boolean result = false;
-        lock.lock();
-        try {
-            if (null != newCache) {
-                this.recursionCache = newCache;
-            }
-        } finally {
-            lock.unlock();
-        }
-        return result;
-    }
-
     /**
      * Abstract method to be implemented by every concrete implementation of an Abstract Graph Point.
      * This method should return the name of the concrete class as a string
@@ -901,8 +896,8 @@ public abstract class AbstractGraphPoint implements IGraphPoint {
      */
     public boolean isStartOfDay() {
         boolean result = false;
-        Calendar exchOpeningCalendar = DTUtil.getExchOpeningCalendar(this.calDate);
-        if (this.calDate.getTimeInMillis() == exchOpeningCalendar.getTimeInMillis()) {
+        Calendar exchOpeningCalendar = DTUtil.getExchOpeningCalendar(this.getCalendarValue());
+        if (this.getTimestamp() == exchOpeningCalendar.getTimeInMillis()) {
             result = true;
         }
         return result;
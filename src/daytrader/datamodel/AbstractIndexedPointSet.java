@@ -0,0 +1,537 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Base class for time ordered sets of price / time points that hold their data
+ * in some positional form (primitive arrays, a mapped file etc) rather than as
+ * a tree of point objects. A sub class only has to provide positional access to
+ * its points; this class builds all the searching and NavigableSet behaviour
+ * on top of that.
+ *
+ * Points are ordered exactly as a TreeSet using AbstractGraphPoint.TimeComparator
+ * would order them, by timestamp and then, for points with the same timestamp,
+ * by their ordering value (so a set may hold a historic bar and a bid and ask
+ * tick at the same time). Positions are always zero based and relative to the
+ * start of the set (earliest point first).
+ *
+ * @author Roy
+ */
+public abstract class AbstractIndexedPointSet extends AbstractSet<AbstractGraphPoint> implements NavigableSet<AbstractGraphPoint> {
+
+    /**
+     * Retrieves the time of the point at the given position without checking the
+     * position is valid. Used by the searches.
+     * @param index - integer being the zero based position of the point
+     * @return long being the timestamp of the point in milliseconds
+     */
+    protected abstract long timestampAt(int index);
+
+    /**
+     * Creates a point object for the point at the given position in this set
+     * @param index - integer being the zero based position of the point (earliest first)
+     * @return An AbstractGraphPoint holding the values stored at that position
+     */
+    public abstract AbstractGraphPoint getPointAt(int index);
+
+    /**
+     * Creates a set holding the points from position from (inclusive) to
+     * position to (exclusive) of this set.
+     * @param from - integer being the zero based position of the first point
+     * @param to - integer being the zero based position after the last point
+     * @return A NavigableSet holding the points in the range
+     */
+    protected abstract NavigableSet<AbstractGraphPoint> range(int from, int to);
+
+    /**
+     * Removes the point at the given position from this set
+     * @param index - integer being the zero based position of the point
+     * @throws UnsupportedOperationException if the set is read only
+     */
+    protected abstract void removeAt(int index);
+
+    /**
+     * Retrieves the ordering value (see AbstractGraphPoint.getOrderingValue()) of
+     * the point at the given position without checking the position is valid.
+     * The searches only need this to order points with the same timestamp.
+     * @param index - integer being the zero based position of the point
+     * @return integer being the ordering value of the point
+     */
+    protected int orderingValueAt(int index) {
+        return this.getPointAt(index).getOrderingValue();
+    }
+
+    /**
+     * Retrieves the time of the point at the given position in this set
+     * @param index - integer being the zero based position of the point (earliest first)
+     * @return long being the timestamp of the point in milliseconds
+     */
+    public long getTimestampAt(int index) {
+        return this.timestampAt(this.checkIndex(index));
+    }
+
+    /**
+     * Finds the position of the earliest point at or after the given time
+     * @param timestamp - long being the time in milliseconds to search from
+     * @return integer being the zero based position of the point or size() if
+     * no point exists at or after that time.
+     */
+    public int ceilingIndex(long timestamp) {
+        //No point orders before this key at the same time
+        return -(this.search(timestamp, Integer.MAX_VALUE) + 1);
+    }
+
+    /**
+     * Finds the position of the latest point at or before the given time
+     * @param timestamp - long being the time in milliseconds to search back from
+     * @return integer being the zero based position of the point or -1 if no
+     * point exists at or before that time.
+     */
+    public int floorIndex(long timestamp) {
+        //Every point at the same time orders before this key
+        return -(this.search(timestamp, Integer.MIN_VALUE) + 1) - 1;
+    }
+
+    //Position of the point equal to e or of the first point after it
+    private int ceilingIndex(AbstractGraphPoint e) {
+        int pos = this.search(e.getTimestamp(), e.getOrderingValue());
+        if (0 > pos) {
+            pos = -(pos + 1);
+        }
+        return pos;
+    }
+
+    //Position of the first point after e
+    private int higherIndex(AbstractGraphPoint e) {
+        int pos = this.search(e.getTimestamp(), e.getOrderingValue());
+        if (0 > pos) {
+            pos = -(pos + 1);
+        } else {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Checks a position is inside this set
+     * @param index - integer being the zero based position to check
+     * @return integer being the index if it is valid
+     * @throws IndexOutOfBoundsException if the position is outside the set
+     */
+    protected int checkIndex(int index) {
+        if (0 > index || index >= this.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+        }
+        return index;
+    }
+
+    /**
+     * Binary search of the points in this set using the same ordering as
+     * AbstractGraphPoint.TimeComparator.
+     * @param timestamp - long being the time in milliseconds to find
+     * @param orderingValue - integer being the ordering value of the point to
+     * find, used to order points with the same timestamp
+     * @return integer being the position if found or -(insertion point + 1)
+     */
+    protected int search(long timestamp, int orderingValue) {
+        int result = 0;
+        int low = 0;
+        int high = this.size() - 1;
+        boolean found = false;
+        //Fast path, most new data arrives after the last point
+        if (low > high || this.timestampAt(high) < timestamp) {
+            result = -(high + 2);
+            found = true;
+        }
+        while (!found && low <= high) {
+            int mid = (low + high) >>> 1;
+            long midVal = this.timestampAt(mid);
+            if (midVal < timestamp) {
+                low = mid + 1;
+            } else if (midVal > timestamp) {
+                high = mid - 1;
+            } else {
+                //Same time, a higher ordering value comes first
+                int cmp = Integer.compare(orderingValue, this.orderingValueAt(mid));
+                if (0 < cmp) {
+                    high = mid - 1;
+                } else if (0 > cmp) {
+                    low = mid + 1;
+                } else {
+                    result = mid;
+                    found = true;
+                }
+            }
+        }
+        if (!found) {
+            result = -(low + 1);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean result = false;
+        if (o instanceof AbstractGraphPoint) {
+            AbstractGraphPoint point = (AbstractGraphPoint) o;
+            int pos = this.search(point.getTimestamp(), point.getOrderingValue());
+            if (0 <= pos) {
+                this.removeAt(pos);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        boolean result = false;
+        if (o instanceof AbstractGraphPoint) {
+            AbstractGraphPoint point = (AbstractGraphPoint) o;
+            result = 0 <= this.search(point.getTimestamp(), point.getOrderingValue());
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<AbstractGraphPoint> iterator() {
+        return new IndexIterator(false, false);
+    }
+
+    @Override
+    public Iterator<AbstractGraphPoint> descendingIterator() {
+        return new IndexIterator(true, false);
+    }
+
+    /**
+     * Provides a reverse ordered view of this set. The view is backed by this set
+     * (no points are copied) and is read only.
+     * @return A read only NavigableSet holding the points of this set latest first
+     */
+    @Override
+    public NavigableSet<AbstractGraphPoint> descendingSet() {
+        return new DescendingView();
+    }
+
+    @Override
+    public AbstractGraphPoint lower(AbstractGraphPoint e) {
+        return this.pointOrNull(this.ceilingIndex(e) - 1);
+    }
+
+    @Override
+    public AbstractGraphPoint floor(AbstractGraphPoint e) {
+        return this.pointOrNull(this.higherIndex(e) - 1);
+    }
+
+    @Override
+    public AbstractGraphPoint ceiling(AbstractGraphPoint e) {
+        return this.pointOrNull(this.ceilingIndex(e));
+    }
+
+    @Override
+    public AbstractGraphPoint higher(AbstractGraphPoint e) {
+        return this.pointOrNull(this.higherIndex(e));
+    }
+
+    private AbstractGraphPoint pointOrNull(int index) {
+        AbstractGraphPoint result = null;
+        if (0 <= index && index < this.size()) {
+            result = this.getPointAt(index);
+        }
+        return result;
+    }
+
+    @Override
+    public AbstractGraphPoint pollFirst() {
+        AbstractGraphPoint result = null;
+        if (0 < this.size()) {
+            result = this.getPointAt(0);
+            this.removeAt(0);
+        }
+        return result;
+    }
+
+    @Override
+    public AbstractGraphPoint pollLast() {
+        AbstractGraphPoint result = null;
+        if (0 < this.size()) {
+            result = this.getPointAt(this.size() - 1);
+            this.removeAt(this.size() - 1);
+        }
+        return result;
+    }
+
+    @Override
+    public AbstractGraphPoint first() {
+        if (0 == this.size()) {
+            throw new NoSuchElementException();
+        }
+        return this.getPointAt(0);
+    }
+
+    @Override
+    public AbstractGraphPoint last() {
+        if (0 == this.size()) {
+            throw new NoSuchElementException();
+        }
+        return this.getPointAt(this.size() - 1);
+    }
+
+    @Override
+    public Comparator<? super AbstractGraphPoint> comparator() {
+        //Natural ordering (AbstractGraphPoint.TimeComparator)
+        return null;
+    }
+
+    @Override
+    public NavigableSet<AbstractGraphPoint> subSet(AbstractGraphPoint fromElement, boolean fromInclusive, AbstractGraphPoint toElement, boolean toInclusive) {
+        int from = this.fromIndex(fromElement, fromInclusive);
+        int to = this.toIndex(toElement, toInclusive);
+        return this.checkedRange(from, to);
+    }
+
+    @Override
+    public NavigableSet<AbstractGraphPoint> headSet(AbstractGraphPoint toElement, boolean inclusive) {
+        return this.checkedRange(0, this.toIndex(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<AbstractGraphPoint> tailSet(AbstractGraphPoint fromElement, boolean inclusive) {
+        return this.checkedRange(this.fromIndex(fromElement, inclusive), this.size());
+    }
+
+    @Override
+    public SortedSet<AbstractGraphPoint> subSet(AbstractGraphPoint fromElement, AbstractGraphPoint toElement) {
+        return this.subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<AbstractGraphPoint> headSet(AbstractGraphPoint toElement) {
+        return this.headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<AbstractGraphPoint> tailSet(AbstractGraphPoint fromElement) {
+        return this.tailSet(fromElement, true);
+    }
+
+    //Position of the first point in a range starting at fromElement
+    private int fromIndex(AbstractGraphPoint fromElement, boolean inclusive) {
+        int result = 0;
+        if (inclusive) {
+            result = this.ceilingIndex(fromElement);
+        } else {
+            result = this.higherIndex(fromElement);
+        }
+        return result;
+    }
+
+    //Position after the last point in a range ending at toElement
+    private int toIndex(AbstractGraphPoint toElement, boolean inclusive) {
+        int result = 0;
+        if (inclusive) {
+            result = this.higherIndex(toElement);
+        } else {
+            result = this.ceilingIndex(toElement);
+        }
+        return result;
+    }
+
+    private NavigableSet<AbstractGraphPoint> checkedRange(int from, int to) {
+        if (to < from) {
+            to = from;
+        }
+        return this.range(from, to);
+    }
+
+    /**
+     * Iterates over the points in the set creating each point object as it is
+     * reached. Removing through the iterator is supported if the set supports
+     * removeAt() and the iterator is not read only.
+     */
+    private class IndexIterator implements Iterator<AbstractGraphPoint> {
+
+        private final boolean descending;
+        private final boolean readOnly;
+        private int nextIndex;
+        private int lastIndex;
+
+        IndexIterator(boolean blnDescending, boolean blnReadOnly) {
+            this.descending = blnDescending;
+            this.readOnly = blnReadOnly;
+            this.lastIndex = -1;
+            if (this.descending) {
+                this.nextIndex = size() - 1;
+            } else {
+                this.nextIndex = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return 0 <= this.nextIndex && this.nextIndex < size();
+        }
+
+        @Override
+        public AbstractGraphPoint next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AbstractGraphPoint result = getPointAt(this.nextIndex);
+            this.lastIndex = this.nextIndex;
+            if (this.descending) {
+                this.nextIndex--;
+            } else {
+                this.nextIndex++;
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            if (this.readOnly) {
+                throw new UnsupportedOperationException("A descending view is read only");
+            }
+            if (0 > this.lastIndex) {
+                throw new IllegalStateException();
+            }
+            removeAt(this.lastIndex);
+            if (!this.descending) {
+                this.nextIndex--;
+            }
+            this.lastIndex = -1;
+        }
+    }
+
+    /**
+     * A read only, latest first view of the enclosing set. Every query is mapped
+     * onto the mirror query of the enclosing set so the view costs O(1) to create.
+     */
+    private class DescendingView extends AbstractSet<AbstractGraphPoint> implements NavigableSet<AbstractGraphPoint> {
+
+        @Override
+        public int size() {
+            return AbstractIndexedPointSet.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return AbstractIndexedPointSet.this.contains(o);
+        }
+
+        @Override
+        public Iterator<AbstractGraphPoint> iterator() {
+            return new IndexIterator(true, true);
+        }
+
+        @Override
+        public Iterator<AbstractGraphPoint> descendingIterator() {
+            return new IndexIterator(false, true);
+        }
+
+        @Override
+        public NavigableSet<AbstractGraphPoint> descendingSet() {
+            return Collections.unmodifiableNavigableSet(AbstractIndexedPointSet.this);
+        }
+
+        @Override
+        public boolean add(AbstractGraphPoint e) {
+            throw new UnsupportedOperationException("A descending view is read only");
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            throw new UnsupportedOperationException("A descending view is read only");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("A descending view is read only");
+        }
+
+        @Override
+        public AbstractGraphPoint pollFirst() {
+            throw new UnsupportedOperationException("A descending view is read only");
+        }
+
+        @Override
+        public AbstractGraphPoint pollLast() {
+            throw new UnsupportedOperationException("A descending view is read only");
+        }
+
+        @Override
+        public AbstractGraphPoint lower(AbstractGraphPoint e) {
+            return AbstractIndexedPointSet.this.higher(e);
+        }
+
+        @Override
+        public AbstractGraphPoint floor(AbstractGraphPoint e) {
+            return AbstractIndexedPointSet.this.ceiling(e);
+        }
+
+        @Override
+        public AbstractGraphPoint ceiling(AbstractGraphPoint e) {
+            return AbstractIndexedPointSet.this.floor(e);
+        }
+
+        @Override
+        public AbstractGraphPoint higher(AbstractGraphPoint e) {
+            return AbstractIndexedPointSet.this.lower(e);
+        }
+
+        @Override
+        public AbstractGraphPoint first() {
+            return AbstractIndexedPointSet.this.last();
+        }
+
+        @Override
+        public AbstractGraphPoint last() {
+            return AbstractIndexedPointSet.this.first();
+        }
+
+        @Override
+        public Comparator<? super AbstractGraphPoint> comparator() {
+            return Collections.<AbstractGraphPoint>reverseOrder();
+        }
+
+        @Override
+        public NavigableSet<AbstractGraphPoint> subSet(AbstractGraphPoint fromElement, boolean fromInclusive, AbstractGraphPoint toElement, boolean toInclusive) {
+            return AbstractIndexedPointSet.this.subSet(toElement, toInclusive, fromElement, fromInclusive).descendingSet();
+        }
+
+        @Override
+        public NavigableSet<AbstractGraphPoint> headSet(AbstractGraphPoint toElement, boolean inclusive) {
+            return AbstractIndexedPointSet.this.tailSet(toElement, inclusive).descendingSet();
+        }
+
+        @Override
+        public NavigableSet<AbstractGraphPoint> tailSet(AbstractGraphPoint fromElement, boolean inclusive) {
+            return AbstractIndexedPointSet.this.headSet(fromElement, inclusive).descendingSet();
+        }
+
+        @Override
+        public SortedSet<AbstractGraphPoint> subSet(AbstractGraphPoint fromElement, AbstractGraphPoint toElement) {
+            return this.subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<AbstractGraphPoint> headSet(AbstractGraphPoint toElement) {
+            return this.headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<AbstractGraphPoint> tailSet(AbstractGraphPoint fromElement) {
+            return this.tailSet(fromElement, true);
+        }
+    }
+}
@@ -88,7 +88,7 @@ public class AskPriceResponse extends AbstractGraphPoint {
      * @param askPrice the askPrice to set
      */
     public final void setAskPrice(double askPrice) {
-        this.askPrice = DTUtil.step1Rounding(askPrice).doubleValue();
+        this.askPrice = DTUtil.step1Rounding(askPrice);
     }
 
     @Override
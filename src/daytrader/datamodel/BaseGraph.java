@@ -5,10 +5,13 @@
 package daytrader.datamodel;
 
 import daytrader.interfaces.ICSVPersistable;
+import daytrader.interfaces.IGraphFlat;
+import daytrader.interfaces.IGraphIndex;
 import daytrader.interfaces.IGraphLine;
 import daytrader.interfaces.Lockable;
 import daytrader.interfaces.XMLPersistable;
-import daytrader.utils.DTUtil;
+import daytrader.interfaces.observerpattern.IObserver;
+import daytrader.interfaces.observerpattern.ISubject;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -17,13 +20,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,14 +56,37 @@ import javax.xml.stream.events.XMLEvent;
  * Trader Workstation application.
  * @author Roy
  */
-public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>, ICSVPersistable, XMLPersistable<BaseGraph<T>>, Lockable {
+public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>, ICSVPersistable, XMLPersistable<BaseGraph<T>>, Lockable, ISubject {
 
     /**
      * Used to maintain an ordered list based on the time the response relates to.
      * NB: a response refers to a price time graph point received from the 
-     * stock brokers server.
+     * stock brokers server. This is normally a TreeSet but graphs created by
+     * createColumnarGraph() use a ColumnarPointSet that stores the point data in
+     * primitive arrays and graphs created by createMappedGraph() use a
+     * MappedPointSet that keeps the point data in a memory mapped file.
      */
-    protected TreeSet<T> tsResponses;
+    protected NavigableSet<T> tsResponses;
+    /**
+     * Read only view of tsResponses shared by every reader. Appending a point
+     * after the current last point extends the view in O(1) (see
+     * appendToSnapshot()), any other method that changes tsResponses must set
+     * this back to NULL while it holds the lock so the next reader builds a
+     * fresh one.
+     */
+    private volatile NavigableSet<T> snapshot;
+    /**
+     * Incremented whenever the graph changes in any way other than a new point
+     * being appended after the current last point. Used to decide when the PB
+     * value, range extremes and flat indexes can be extended and when they must be rebuilt.
+     */
+    private int structureVersion;
+    //PB Value index for this graph (built on demand)
+    private PBValueIndex pbIndex;
+    //Range extremes index for this graph (built on demand)
+    private RangeExtremesIndex extremesIndex;
+    //Flat index for this graph (built on demand)
+    private FlatIndex flatIndex;
     //Stores Graphs loaded for previous days
     private HashMap<Integer, BaseGraph> previousGraphs;
     //Temporary Graph (for workings)
@@ -83,6 +112,8 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
     private BaseGraph<AbstractGraphPoint> ylineOneSecGraph;
     //This attribute stores the data downloaded to determine the close of the day value
     private BaseGraph<AbstractGraphPoint> graphClosePrevDayData;
+    //Observers notified (outside the lock) whenever points are added to or removed from this graph
+    private final CopyOnWriteArrayList<IObserver> dataObservers = new CopyOnWriteArrayList<IObserver>();
 
     /**
      * Accessor to retrieve the 'stock ticker' of the stock to which this graph relates.
@@ -245,48 +276,164 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         this.removeInvalidPoints();
     }
 
+    /**
+     * Factory method that creates a graph whose points are stored in primitive
+     * columns (see ColumnarPointSet) rather than as individual point objects.
+     * This is intended for large graphs of bar data that are mostly read, such
+     * as the previous days graphs, where it uses a fraction of the memory of a
+     * TreeSet and can be scanned without creating point objects. Points read
+     * back from the graph are ColumnarGraphPoints created as they are read so
+     * the same point may be returned as different (but equal) objects.
+     * @param c - A Java Collection of Price Time data points to store in the graph
+     * or NULL to create an empty graph.
+     * @return A BaseGraph backed by a ColumnarPointSet
+     */
+    public static BaseGraph<AbstractGraphPoint> createColumnarGraph(Collection<? extends AbstractGraphPoint> c) {
+        BaseGraph<AbstractGraphPoint> result = new BaseGraph<AbstractGraphPoint>();
+        result.tsResponses = new ColumnarPointSet();
+        if (null != c) {
+            result.tsResponses.addAll(c);
+            result.refreshMaxMin();
+            result.removeInvalidPoints();
+        }
+        return result;
+    }
+
+    /**
+     * Tests if this graph stores its points in primitive columns
+     * @return boolean True if the graph was created by createColumnarGraph(),
+     * False otherwise.
+     */
+    public boolean isColumnar() {
+        return this.tsResponses instanceof ColumnarPointSet;
+    }
+
+    /**
+     * Factory method that creates a graph whose points are stored in a memory
+     * mapped file (see MappedPointSet) rather than on the Java heap. This is
+     * intended for the previous days graphs which are loaded once, kept for the
+     * whole day and only read. The points are collected in a columnar graph (see
+     * createColumnarGraph()) and written to the file once (see mapToFile()), if
+     * the file cannot be created the graph remains columnar.
+     * @param ticker - The stock ticker the points are for
+     * @param day - integer being the trading day of the points in the form YYYYMMDD
+     * @param c - A Java Collection of Price Time data points to store in the graph
+     * or NULL to create an empty graph.
+     * @return A BaseGraph backed by a MappedPointSet
+     */
+    public static BaseGraph<AbstractGraphPoint> createMappedGraph(String ticker, int day, Collection<? extends AbstractGraphPoint> c) {
+        BaseGraph<AbstractGraphPoint> result = BaseGraph.createColumnarGraph(c);
+        result.mapToFile(ticker, day);
+        return result;
+    }
+
+    /**
+     * Moves the points of a columnar graph (see createColumnarGraph()) into a
+     * memory mapped file (see MappedPointSet) that is written once. Call this
+     * when a previous days graph has been completely loaded so it stops using
+     * space on the Java heap. The graph holds exactly the same points afterwards.
+     * @param ticker - The stock ticker the points are for
+     * @param day - integer being the trading day of the points in the form YYYYMMDD
+     * @return boolean True if the graph is now backed by a mapped file, False if
+     * it is neither columnar nor mapped or the file could not be written.
+     */
+    public boolean mapToFile(String ticker, int day) {
+        boolean result = false;
+        lock.lock();
+        try {
+            if (this.tsResponses instanceof ColumnarPointSet) {
+                MappedPointSet mappedPoints = new MappedPointSet(ticker, Integer.toString(day), (ColumnarPointSet) this.tsResponses);
+                //Columnar graphs are only made by createColumnarGraph() so T is AbstractGraphPoint
+                @SuppressWarnings("unchecked")
+                NavigableSet<T> newPoints = (NavigableSet<T>) mappedPoints;
+                this.tsResponses = newPoints;
+                //Same points so the indexes remain valid, only the snapshot must change
+                this.snapshot = null;
+                result = true;
+            } else {
+                result = this.isMapped();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(BaseGraph.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Tests if this graph stores its points in a memory mapped file
+     * @return boolean True if the graph was created by createMappedGraph(),
+     * False otherwise.
+     */
+    public boolean isMapped() {
+        return this.tsResponses instanceof MappedPointSet;
+    }
+
     private boolean addDataPoint(T newItem) {
         boolean result = false;
         if (null != newItem && this.isPointInTradingHours(newItem)) {
             lock.lock();
             try {
                 result = this.tsResponses.add(newItem);
-                if (null == this.objHighest) {
-                    this.objHighest = newItem;
-                }
-                if (null == this.objLowest) {
-                    this.objLowest = newItem;
-                }
-                if (this.objHighest.getLastPrice() < newItem.getLastPrice()) {
-                    this.objHighest = newItem;
-                }
-                if (this.objLowest.getLastPrice() >= newItem.getLastPrice()) {
-                    this.objLowest = newItem;
+                if (result) {
+                    if (null != this.tsResponses.higher(newItem)) {
+                        this.snapshot = null;
+                        this.structureVersion++;
+                    } else {
+                        this.appendToSnapshot(newItem);
+                    }
                 }
+                this.updateMaxMin(newItem);
             } finally {
                 lock.unlock();
             }
+            if (result) {
+                this.notifyObservers();
+            }
         }
         return result;
     }
 
+    private void updateMaxMin(T newItem) {
+        if (null == this.objHighest) {
+            this.objHighest = newItem;
+        }
+        if (null == this.objLowest) {
+            this.objLowest = newItem;
+        }
+        if (this.objHighest.getLastPrice() < newItem.getLastPrice()) {
+            this.objHighest = newItem;
+        }
+        if (this.objLowest.getLastPrice() >= newItem.getLastPrice()) {
+            this.objLowest = newItem;
+        }
+    }
+
     private void refreshMaxMin() {
         lock.lock();
         try {
             this.objHighest = null;
             this.objLowest = null;
-            for (T currItem : this.tsResponses) {
-                if (null == this.objHighest) {
-                    this.objHighest = currItem;
-                }
-                if (null == this.objLowest) {
-                    this.objLowest = currItem;
-                }
-                if (this.objHighest.getLastPrice() <= currItem.getLastPrice()) {
-                    this.objHighest = currItem;
-                }
-                if (this.objLowest.getLastPrice() >= currItem.getLastPrice()) {
-                    this.objLowest = currItem;
+            if (null != this.extremesIndex) {
+                //The range queries are in use on this graph, the index is cheaper than a scan
+                RangeExtremesIndex index = this.getExtremesIndex();
+                this.objHighest = this.pointAtPosition(index, index.getHighest(0, index.size()));
+                this.objLowest = this.pointAtPosition(index, index.getLowest(0, index.size()));
+            } else {
+                for (T currItem : this.tsResponses) {
+                    if (null == this.objHighest) {
+                        this.objHighest = currItem;
+                    }
+                    if (null == this.objLowest) {
+                        this.objLowest = currItem;
+                    }
+                    if (this.objHighest.getLastPrice() <= currItem.getLastPrice()) {
+                        this.objHighest = currItem;
+                    }
+                    if (this.objLowest.getLastPrice() >= currItem.getLastPrice()) {
+                        this.objLowest = currItem;
+                    }
                 }
             }
         } finally {
@@ -490,6 +637,10 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         lock.lock();
         try {
             result = this.tsResponses.pollFirst();
+            if (null != result) {
+                this.snapshot = null;
+                this.structureVersion++;
+            }
         } finally {
             lock.unlock();
         }
@@ -502,6 +653,10 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         lock.lock();
         try {
             result = this.tsResponses.pollLast();
+            if (null != result) {
+                this.snapshot = null;
+                this.structureVersion++;
+            }
         } finally {
             lock.unlock();
         }
@@ -510,51 +665,29 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
 
     @Override
     public Iterator<T> iterator() {
-        return this.deepCopyResponses().iterator();
+        return this.getSnapshot().iterator();
     }
 
     @Override
     public NavigableSet<T> descendingSet() {
-        NavigableSet<T> result = null;
-        TreeSet<T> backingSet = null;
-        lock.lock();
-        try {
-            backingSet = new TreeSet<T>(this.tsResponses);
-        } finally {
-            lock.unlock();
-        }
-        if (null != backingSet) {
-            result = backingSet.descendingSet();
-        }
-        return result;
+        return this.getSnapshot().descendingSet();
     }
 
     @Override
     public Iterator<T> descendingIterator() {
-        Iterator<T> iterator = null;
-        TreeSet<T> backingSet = null;
-        lock.lock();
-        try {
-            backingSet = new TreeSet<T>(this.tsResponses);
-        } finally {
-            lock.unlock();
-        }
-        if (null != backingSet) {
-            iterator = backingSet.descendingIterator();
-        }
-        return iterator;
+        return this.getSnapshot().descendingIterator();
     }
 
     @Override
     public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
         NavigableSet<T> result = null;
-        TreeSet<T> deepCopyResponses = this.deepCopyResponses();
-        if(null != deepCopyResponses){
+        NavigableSet<T> currSnapshot = this.getSnapshot();
+        if(null != currSnapshot){
             //Ensure from and to are the right way around
             if(fromElement.getTimestamp() <= toElement.getTimestamp()){
-                result = deepCopyResponses.subSet(fromElement, fromInclusive, toElement, toInclusive);
+                result = currSnapshot.subSet(fromElement, fromInclusive, toElement, toInclusive);
             } else {
-                result = deepCopyResponses.subSet(toElement, fromInclusive, fromElement, toInclusive);
+                result = currSnapshot.subSet(toElement, fromInclusive, fromElement, toInclusive);
             }
         }
         return result;
@@ -562,41 +695,27 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
 
     @Override
     public NavigableSet<T> headSet(T toElement, boolean inclusive) {
-        NavigableSet<T> headSet = null;
-        lock.lock();
-        try {
-            headSet = this.deepCopyResponses().headSet(toElement, inclusive);
-        } finally {
-            lock.unlock();
-        }
-        return headSet;
+        return this.getSnapshot().headSet(toElement, inclusive);
     }
 
     @Override
     public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
-        return this.deepCopyResponses().tailSet(fromElement, inclusive);
+        return this.getSnapshot().tailSet(fromElement, inclusive);
     }
 
     @Override
     public SortedSet<T> subSet(T fromElement, T toElement) {
-        return this.deepCopyResponses().subSet(fromElement, toElement);
+        return this.getSnapshot().subSet(fromElement, toElement);
     }
 
     @Override
     public SortedSet<T> headSet(T toElement) {
-        SortedSet<T> headSet = null;
-        lock.lock();
-        try {
-            headSet = this.deepCopyResponses().headSet(toElement);
-        } finally {
-            lock.unlock();
-        }
-        return headSet;
+        return this.getSnapshot().headSet(toElement);
     }
 
     @Override
     public SortedSet<T> tailSet(T fromElement) {
-        return this.deepCopyResponses().tailSet(fromElement);
+        return this.getSnapshot().tailSet(fromElement);
     }
 
     @Override
@@ -677,12 +796,12 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
 
     @Override
     public Object[] toArray() {
-        return this.deepCopyResponses().toArray();
+        return this.getSnapshot().toArray();
     }
 
     @Override
     public <T> T[] toArray(T[] a) {
-        return this.deepCopyResponses().toArray(a);
+        return this.getSnapshot().toArray(a);
     }
 
     @Override
@@ -696,9 +815,16 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         lock.lock();
         try {
             result = this.tsResponses.remove(o);
+            if (result) {
+                this.snapshot = null;
+                this.structureVersion++;
+            }
         } finally {
             lock.unlock();
         }
+        if (result) {
+            this.notifyObservers();
+        }
         return result;
     }
 
@@ -719,14 +845,47 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         boolean result = false;
         lock.lock();
         try {
+            T lastPoint = null;
+            long lastTime = Long.MIN_VALUE;
+            if (!this.tsResponses.isEmpty()) {
+                lastPoint = this.tsResponses.last();
+                lastTime = lastPoint.getTimestamp();
+            }
             result = this.tsResponses.addAll(c);
             if (result) {
-                this.refreshMaxMin();
-                this.removeInvalidPoints();
+                boolean appended = true;
+                for (T currItem : c) {
+                    if (currItem.getTimestamp() <= lastTime) {
+                        appended = false;
+                        break;
+                    }
+                }
+                if (appended && this.snapshot instanceof SnapshotPointSet) {
+                    //Only the new points need to be added to the snapshot and max / min
+                    Collection<T> newPoints = this.tsResponses;
+                    if (null != lastPoint) {
+                        newPoints = this.tsResponses.tailSet(lastPoint, false);
+                    }
+                    for (T currItem : newPoints) {
+                        this.appendToSnapshot(currItem);
+                        this.updateMaxMin(currItem);
+                    }
+                } else {
+                    this.snapshot = null;
+                    if (!appended) {
+                        this.structureVersion++;
+                    }
+                    this.refreshMaxMin();
+                }
+                //Points already in the graph have been checked
+                this.removeInvalidPoints(c);
             }
         } finally {
             lock.unlock();
         }
+        if (result) {
+            this.notifyObservers();
+        }
         return result;
     }
 
@@ -736,10 +895,19 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         lock.lock();
         try {
             result = this.tsResponses.retainAll(c);
-            this.removeInvalidPoints();
+            if (result) {
+                this.snapshot = null;
+                this.structureVersion++;
+            }
+            if (this.removeInvalidPoints()) {
+                result = true;
+            }
         } finally {
             lock.unlock();
         }
+        if (result) {
+            this.notifyObservers();
+        }
         return result;
     }
 
@@ -749,9 +917,16 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         lock.lock();
         try {
             result = this.tsResponses.removeAll(c);
+            if (result) {
+                this.snapshot = null;
+                this.structureVersion++;
+            }
         } finally {
             lock.unlock();
         }
+        if (result) {
+            this.notifyObservers();
+        }
         return result;
     }
 
@@ -760,9 +935,49 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         lock.lock();
         try {
             this.tsResponses.clear();
+            this.snapshot = null;
+            this.structureVersion++;
         } finally {
             lock.unlock();
         }
+        this.notifyObservers();
+    }
+
+    /**
+     * Registers an observer to be told whenever points are added to or removed
+     * from this graph. Observers are notified on the thread that changed the
+     * graph after the graph lock is released so update() should do very little
+     * (for example schedule work on another thread).
+     * @param newObserver - Any object that implements the IObserver interface
+     * @return boolean True if the observer was registered, False otherwise
+     */
+    @Override
+    public boolean registerObserver(IObserver newObserver) {
+        boolean result = false;
+        if (null != newObserver) {
+            result = this.dataObservers.addIfAbsent(newObserver);
+        }
+        return result;
+    }
+
+    /**
+     * Removes an observer registered with registerObserver()
+     * @param oldObserver - Any object that implements the IObserver interface
+     * @return boolean True if the observer was removed, False otherwise
+     */
+    @Override
+    public boolean removeObserver(IObserver oldObserver) {
+        return this.dataObservers.remove(oldObserver);
+    }
+
+    /**
+     * Tells every registered observer that the points in this graph have changed
+     */
+    @Override
+    public void notifyObservers() {
+        for (IObserver currObserver : this.dataObservers) {
+            currObserver.update();
+        }
     }
 
     /**
@@ -839,10 +1054,476 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
     }
 
     private TreeSet<T> deepCopyResponses() {
-        TreeSet<T> result = null;
+        return new TreeSet<T>(this.getSnapshot());
+    }
+
+    /**
+     * Extends the current snapshot with a point that has just been appended after
+     * the last point in the graph. For a time ordered graph the snapshot is a
+     * SnapshotPointSet whose append only array is shared with every earlier
+     * snapshot so this costs O(1) rather than a copy of the graph. Other snapshots
+     * are cheap to rebuild (columnar and mapped copies share their storage) or
+     * are price ordered so they are simply discarded. The caller MUST hold the
+     * graphs lock.
+     * @param newItem - The point appended to tsResponses
+     */
+    @SuppressWarnings("unchecked")
+    private void appendToSnapshot(T newItem) {
+        NavigableSet<T> currSnapshot = this.snapshot;
+        if (currSnapshot instanceof SnapshotPointSet) {
+            this.snapshot = (NavigableSet<T>) ((SnapshotPointSet) currSnapshot).append(newItem);
+        } else {
+            this.snapshot = null;
+        }
+    }
+
+    /**
+     * Retrieves the current read only snapshot of the graph's data points. The
+     * snapshot is shared by every reader and, while points are only appended to
+     * the graph, is extended rather than rebuilt (see appendToSnapshot()), so
+     * reading a live graph between ticks does not copy it. Readers holding a
+     * snapshot are never affected by later writes and never block writers.
+     * @return An unmodifiable NavigableSet holding the graph points as they were
+     * at the time of the last modification to the graph.
+     */
+    @SuppressWarnings("unchecked")
+    private NavigableSet<T> getSnapshot() {
+        NavigableSet<T> result = this.snapshot;
+        if (null == result) {
+            lock.lock();
+            try {
+                result = this.snapshot;
+                if (null == result) {
+                    if (this.tsResponses instanceof ColumnarPointSet) {
+                        //A read only columnar copy is already immutable
+                        result = (NavigableSet<T>) ((ColumnarPointSet) this.tsResponses).copy();
+                    } else if (this.tsResponses instanceof MappedPointSet) {
+                        //As is a copy sharing the current (never modified) mapping
+                        result = (NavigableSet<T>) ((MappedPointSet) this.tsResponses).copy();
+                    } else if (null == this.tsResponses.comparator()) {
+                        //Time ordered, build an array that later appends can share
+                        result = (NavigableSet<T>) SnapshotPointSet.create(this.tsResponses);
+                    } else {
+                        result = Collections.unmodifiableNavigableSet(new TreeSet<T>(this.tsResponses));
+                    }
+                    this.snapshot = result;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the PB value index for the current data in this graph (see
+     * PBValueIndex). The index is built the first time it is needed and is then
+     * extended as new points are appended to the graph, it is only rebuilt if
+     * points are inserted before the end of the graph or removed.
+     * @return A PBValueIndex covering every point currently in the graph.
+     */
+    public PBValueIndex getPBValueIndex() {
+        PBValueIndex result = null;
+        lock.lock();
+        try {
+            if (null == this.pbIndex || this.pbIndex.getVersion() != this.structureVersion) {
+                this.pbIndex = new PBValueIndex(this.structureVersion);
+            }
+            this.extendIndex(this.pbIndex);
+            result = this.pbIndex;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the range extremes index for the current data in this graph (see
+     * RangeExtremesIndex). Like the PB value index it is built the first time it
+     * is needed and then extended as new points are appended. The caller MUST
+     * hold the graphs lock while it uses the index.
+     * @return A RangeExtremesIndex covering every point currently in the graph.
+     */
+    private RangeExtremesIndex getExtremesIndex() {
+        if (null == this.extremesIndex || this.extremesIndex.getVersion() != this.structureVersion) {
+            this.extremesIndex = new RangeExtremesIndex(this.structureVersion);
+        }
+        this.extendIndex(this.extremesIndex);
+        return this.extremesIndex;
+    }
+
+    /**
+     * Brings one of the graphs indexes up to date. The caller MUST hold the
+     * graphs lock and MUST already have replaced the index with a new (empty)
+     * one if the structure version has changed, so the only points the index
+     * can be missing are those appended to the end of the graph since it was
+     * last extended.
+     * @param index - The index to extend
+     */
+    private void extendIndex(IGraphIndex index) {
+        int missing = this.tsResponses.size() - index.size();
+        if (0 == index.size()) {
+            for (T currPoint : this.tsResponses) {
+                index.append(currPoint);
+            }
+        } else if (0 < missing) {
+            //Only new points have been added to the end of the graph, index them
+            long lastIndexed = index.getLastTimestamp();
+            LinkedList<T> newPoints = new LinkedList<T>();
+            Iterator<T> descIter = this.tsResponses.descendingIterator();
+            while (descIter.hasNext() && newPoints.size() < missing) {
+                T currPoint = descIter.next();
+                if (currPoint.getTimestamp() < lastIndexed) {
+                    break;
+                }
+                newPoints.addFirst(currPoint);
+            }
+            for (T currPoint : newPoints) {
+                index.append(currPoint);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T pointAtPosition(RangeExtremesIndex index, int position) {
+        T result = null;
+        if (0 <= position) {
+            //Graph points are ordered (and so found) by their timestamp
+            result = this.tsResponses.floor((T) new DummyGraphPoint(index.getTimestamp(position)));
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the lowest (price) point between two times without creating a
+     * sub graph. Where several points share the lowest price the latest is
+     * returned. This is an O(log n) operation on a time ordered graph.
+     * @param fromTime - long being the time in milliseconds to search from (inclusive)
+     * @param toTime - long being the time in milliseconds to search to (inclusive)
+     * @return The point with the lowest price in the time range or NULL if there
+     * are no points in the range
+     */
+    public T getLowestPointBetween(long fromTime, long toTime) {
+        T result = null;
+        lock.lock();
+        try {
+            RangeExtremesIndex index = this.getExtremesIndex();
+            int position = index.getLowest(index.countBefore(fromTime), index.countUpTo(toTime));
+            result = this.pointAtPosition(index, position);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the highest (price) point between two times without creating a
+     * sub graph. Where several points share the highest price the latest is
+     * returned. This is an O(log n) operation on a time ordered graph.
+     * @param fromTime - long being the time in milliseconds to search from (inclusive)
+     * @param toTime - long being the time in milliseconds to search to (inclusive)
+     * @return The point with the highest price in the time range or NULL if there
+     * are no points in the range
+     */
+    public T getHighestPointBetween(long fromTime, long toTime) {
+        T result = null;
+        lock.lock();
+        try {
+            RangeExtremesIndex index = this.getExtremesIndex();
+            int position = index.getHighest(index.countBefore(fromTime), index.countUpTo(toTime));
+            result = this.pointAtPosition(index, position);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the earliest point at or after the given time whose last price
+     * (WAP) is strictly below the given price. This is an O(log n) operation on
+     * a time ordered graph.
+     * @param price - double being the price the point must be below
+     * @param fromTime - long being the time in milliseconds to search forward from (inclusive)
+     * @return The first point below the price or NULL if no such point exists
+     */
+    public T getFirstPointBelow(double price, long fromTime) {
+        T result = null;
+        lock.lock();
+        try {
+            RangeExtremesIndex index = this.getExtremesIndex();
+            int position = index.findFirstBelow(index.countBefore(fromTime), price);
+            result = this.pointAtPosition(index, position);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the earliest point at or after the given time whose last price
+     * (WAP) is at or above the given price. This is an O(log n) operation on a
+     * time ordered graph.
+     * @param price - double being the minimum price of the point
+     * @param fromTime - long being the time in milliseconds to search forward from (inclusive)
+     * @return The first point at or above the price or NULL if no such point exists
+     */
+    public T getFirstPointAtOrAbove(double price, long fromTime) {
+        T result = null;
+        lock.lock();
+        try {
+            RangeExtremesIndex index = this.getExtremesIndex();
+            int position = index.findFirstAtOrAbove(index.countBefore(fromTime), price);
+            result = this.pointAtPosition(index, position);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the latest point at or before the given time whose last price
+     * (WAP) is at or above the given price. This is an O(log n) operation on a
+     * time ordered graph.
+     * @param price - double being the minimum price of the point
+     * @param toTime - long being the time in milliseconds to search back from (inclusive)
+     * @return The latest point at or above the price or NULL if no such point exists
+     */
+    public T getLatestPointAtOrAbove(double price, long toTime) {
+        T result = null;
+        lock.lock();
+        try {
+            RangeExtremesIndex index = this.getExtremesIndex();
+            int position = index.findLatestAtOrAbove(index.countUpTo(toTime), price);
+            result = this.pointAtPosition(index, position);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the flat index for the current data in this graph (see FlatIndex).
+     * Like the range extremes index it is built the first time it is needed and
+     * then extended as new points are appended. The caller MUST hold the graphs
+     * lock while it uses the index.
+     * @return A FlatIndex covering every point currently in the graph.
+     */
+    private FlatIndex getFlatIndex() {
+        if (null == this.flatIndex || this.flatIndex.getVersion() != this.structureVersion) {
+            this.flatIndex = new FlatIndex(this.structureVersion);
+        }
+        this.extendIndex(this.flatIndex);
+        return this.flatIndex;
+    }
+
+    /**
+     * Builds the flat for the part of a run that lies between two times. The
+     * flat for a whole run is kept by the index and reused, so every flat built
+     * here is read only.
+     * @return The GraphFlat or NULL if the part of the run between the times is
+     * shorter than the minimum length
+     */
+    @SuppressWarnings("unchecked")
+    private GraphFlat getRunFlat(FlatIndex index, int run, long fromTime, long toTime, long minMillis) {
+        GraphFlat result = null;
+        T firstPoint = (T) index.getFirstPoint(run);
+        T lastPoint = (T) index.getLastPoint(run);
+        boolean isWholeRun = true;
+        if (firstPoint.getTimestamp() < fromTime) {
+            firstPoint = this.getFirstPointAtOrAfter(fromTime);
+            isWholeRun = false;
+        }
+        if (lastPoint.getTimestamp() > toTime) {
+            lastPoint = this.getLastPointAtOrBefore(toTime);
+            isWholeRun = false;
+        }
+        if (null != firstPoint && null != lastPoint && firstPoint.getTimestamp() < lastPoint.getTimestamp()
+                && minMillis <= lastPoint.getTimestamp() - firstPoint.getTimestamp()) {
+            if (isWholeRun) {
+                result = index.getFlat(run);
+            }
+            if (null == result) {
+                result = new GraphFlat(this.tsResponses.subSet(firstPoint, true, lastPoint, true));
+                if (isWholeRun) {
+                    index.setFlat(run, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    //Several points may share a time (they are then ordered by type) so step back over them
+    @SuppressWarnings("unchecked")
+    private T getFirstPointAtOrAfter(long timestamp) {
+        T result = this.tsResponses.ceiling((T) new DummyGraphPoint(timestamp));
+        T prev = (null != result) ? this.tsResponses.lower(result) : this.tsResponses.floor((T) new DummyGraphPoint(timestamp));
+        while (null != prev && prev.getTimestamp() >= timestamp) {
+            result = prev;
+            prev = this.tsResponses.lower(prev);
+        }
+        return result;
+    }
+
+    //Several points may share a time (they are then ordered by type) so step forward over them
+    @SuppressWarnings("unchecked")
+    private T getLastPointAtOrBefore(long timestamp) {
+        T result = this.tsResponses.floor((T) new DummyGraphPoint(timestamp));
+        T next = (null != result) ? this.tsResponses.higher(result) : this.tsResponses.ceiling((T) new DummyGraphPoint(timestamp));
+        while (null != next && next.getTimestamp() <= timestamp) {
+            result = next;
+            next = this.tsResponses.higher(next);
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves every flat of at least the given length between two times without
+     * creating a sub graph. The result is the same as DTUtil.findAllFlatsOfAtLeastLength()
+     * would give for a graph holding only the points between the two times. The flats
+     * are read from a flat index that is kept up to date as points are appended so
+     * this costs the number of flats rather than the number of points.
+     * @param length - The time in seconds that the price must be unchanged for a flat to exist
+     * @param fromTime - long being the time in milliseconds to search from (inclusive)
+     * @param toTime - long being the time in milliseconds to search to (inclusive)
+     * @return A GraphFlatCollection of the flats between the times (empty if there are none)
+     */
+    @SuppressWarnings("unchecked")
+    public GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> getFlats(int length, long fromTime, long toTime) {
+        GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> result = new GraphFlatCollection<IGraphFlat<AbstractGraphPoint>>((BaseGraph<AbstractGraphPoint>) this);
+        if (0 < length) {
+            long minMillis = length * 1000L;
+            boolean useLongRuns = FlatIndex.DEFAULT_FLAT_LENGTH <= length;
+            lock.lock();
+            try {
+                FlatIndex index = this.getFlatIndex();
+                int lastRun = index.findRun(toTime);
+                int run = Math.max(index.findRun(fromTime), 0);
+                while (run <= lastRun) {
+                    GraphFlat flat = this.getRunFlat(index, run, fromTime, toTime, minMillis);
+                    if (null != flat) {
+                        result.add(flat);
+                    }
+                    if (useLongRuns && run < lastRun) {
+                        //Only the first and last runs may be cut short, no other short run can be a flat
+                        run = Math.min(index.nextLongRun(run), lastRun);
+                    } else {
+                        run++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the flat of at least the given length that a point lies on, looking
+     * only at the points between two times. This is an O(log n) operation on a time
+     * ordered graph.
+     * @param aPoint - The point on the graph whose flat is required
+     * @param length - The time in seconds that the price must be unchanged for a flat to exist
+     * @param fromTime - long being the time of the earliest point that may be on the flat
+     * @param toTime - long being the time of the latest point that may be on the flat
+     * @return The IGraphFlat the point lies on or NULL if the point is not on a flat
+     */
+    public IGraphFlat<AbstractGraphPoint> getFlatFromPoint(AbstractGraphPoint aPoint, int length, long fromTime, long toTime) {
+        IGraphFlat<AbstractGraphPoint> result = null;
+        if (null != aPoint && 0 < length && fromTime <= aPoint.getTimestamp() && toTime >= aPoint.getTimestamp()) {
+            lock.lock();
+            try {
+                if (this.tsResponses.contains(aPoint)) {
+                    FlatIndex index = this.getFlatIndex();
+                    int run = index.findRun(aPoint.getTimestamp());
+                    //Where several points share the time find the run with the points price
+                    while (0 < run && index.getFirstTime(run) == aPoint.getTimestamp()
+                            && index.getPrice(run) != aPoint.getLastPrice()) {
+                        run--;
+                    }
+                    if (0 <= run) {
+                        result = this.getRunFlat(index, run, fromTime, toTime, length * 1000L);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the pair of consecutive flats (of the default length) for which
+     * the start of the later flat is at or before the given time and the end of
+     * the earlier flat is at or after it. This is the test made by
+     * DTUtil.getFlatPairAroundTimePoint() and is an O(log n) operation on a time
+     * ordered graph.
+     * @param timestamp - long being the time in milliseconds the pair must straddle
+     * @return The GraphFlatPair found or NULL if no pair passes the test
+     */
+    @SuppressWarnings("unchecked")
+    public GraphFlatPair getFlatPairAroundTime(long timestamp) {
+        GraphFlatPair result = null;
         lock.lock();
         try {
-            result = new TreeSet<T>(this.tsResponses);
+            FlatIndex index = this.getFlatIndex();
+            int later = index.findRun(timestamp);
+            if (0 <= later && !index.isLongRun(later)) {
+                later = index.previousLongRun(later);
+            }
+            if (0 <= later) {
+                int earlier = index.previousLongRun(later);
+                if (0 <= earlier && index.getLastTime(earlier) >= timestamp) {
+                    long minMillis = FlatIndex.DEFAULT_FLAT_LENGTH * 1000L;
+                    GraphFlat laterFlat = this.getRunFlat(index, later, Long.MIN_VALUE, Long.MAX_VALUE, minMillis);
+                    GraphFlat earlierFlat = this.getRunFlat(index, earlier, Long.MIN_VALUE, Long.MAX_VALUE, minMillis);
+                    result = new GraphFlatPair(laterFlat, earlierFlat, (BaseGraph<AbstractGraphPoint>) this);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the structure version of this graph. The version changes
+     * whenever the graph changes in any way other than a new point being appended
+     * after the current last point, so a caller that has remembered the version and
+     * size of the graph can tell if the only change since is new points at the end.
+     * @return integer being the current structure version
+     */
+    public int getStructureVersion() {
+        int result = 0;
+        lock.lock();
+        try {
+            result = this.structureVersion;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the most recent points in this graph without copying the rest of
+     * the graph.
+     * @param count - integer being the number of points required
+     * @return An ArrayList holding the last count points of the graph in time order
+     * (or every point if the graph holds no more than count points).
+     */
+    public ArrayList<T> getLastPoints(int count) {
+        ArrayList<T> result = new ArrayList<T>();
+        lock.lock();
+        try {
+            if (count >= this.tsResponses.size()) {
+                result.addAll(this.tsResponses);
+            } else if (0 < count) {
+                LinkedList<T> lastPoints = new LinkedList<T>();
+                Iterator<T> descIter = this.tsResponses.descendingIterator();
+                while (descIter.hasNext() && lastPoints.size() < count) {
+                    lastPoints.addFirst(descIter.next());
+                }
+                result.addAll(lastPoints);
+            }
         } finally {
             lock.unlock();
         }
@@ -1179,7 +1860,16 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         BaseGraph<T> result = null;
         lock.lock();
         try {
-            result = new BaseGraph<T>(this);
+            if (this.isColumnar() || this.isMapped()) {
+                //Only the createColumnarGraph() / createMappedGraph() factories make columnar
+                //or mapped graphs and both return BaseGraph<AbstractGraphPoint>, so here T
+                //is always AbstractGraphPoint and the cast cannot fail
+                @SuppressWarnings("unchecked")
+                BaseGraph<T> columnarCopy = (BaseGraph<T>) BaseGraph.createColumnarGraph(this);
+                result = columnarCopy;
+            } else {
+                result = new BaseGraph<T>(this);
+            }
             //Add Putup, PrevDayClose, YLines and Trading days
             result.setPutup(this.getPutup());
             result.setPrevDayClose(this.getPrevDayClose());
@@ -1249,26 +1939,48 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
     private boolean isPointInTradingHours(AbstractGraphPoint aPoint) {
         boolean result = false;
         if (null != aPoint) {
-            Calendar exchOpeningCalendar = DTUtil.getExchOpeningCalendar(aPoint.getCalDate());
-            Calendar exchClosingCalendar = DTUtil.getExchClosingCalendar(aPoint.getCalDate());
-            long openTime = exchOpeningCalendar.getTimeInMillis();
-            long closingTime = exchClosingCalendar.getTimeInMillis();
-            long pointTime = aPoint.getTimestamp();
-            if (pointTime >= openTime && pointTime <= closingTime) {
-                result = true;
-            }
+            result = StockExchangeHours.isInTradingHours(aPoint.getTimestamp());
         }
         return result;
     }
 
-    private void removeInvalidPoints() {
+    private boolean removeInvalidPoints() {
+        boolean result = false;
         if (null != this.tsResponses) {
-            for (T currPoint : this.tsResponses) {
+            result = this.removeInvalidPoints(this.getSnapshot());
+        }
+        return result;
+    }
+
+    /**
+     * Removes the candidate points that are outside trading hours. Observers are
+     * NOT notified, callers may hold the lock and must call notifyObservers()
+     * themselves once it is released if this returns true.
+     */
+    private boolean removeInvalidPoints(Collection<? extends T> candidates) {
+        boolean result = false;
+        if (null != this.tsResponses) {
+            //Remove in one call, a mapped graph rewrites its file on every removal
+            ArrayList<T> invalidPoints = new ArrayList<T>();
+            for (T currPoint : candidates) {
                 if (!this.isPointInTradingHours(currPoint)) {
-                    this.remove(currPoint);
+                    invalidPoints.add(currPoint);
+                }
+            }
+            if (0 < invalidPoints.size()) {
+                lock.lock();
+                try {
+                    result = this.tsResponses.removeAll(invalidPoints);
+                    if (result) {
+                        this.snapshot = null;
+                        this.structureVersion++;
+                    }
+                } finally {
+                    lock.unlock();
                 }
             }
         }
+        return result;
     }
 
     /**
@@ -1316,6 +2028,29 @@ public class BaseGraph<T extends AbstractGraphPoint> implements NavigableSet<T>,
         }
     }
 
+    /**
+     * Adds every previous days graph cached in another graph to this graphs
+     * cache of previous days graphs (see addPreviousGraph())
+     * @param source - The BaseGraph whose previous days graphs should be cached
+     * in this graph
+     */
+    @SuppressWarnings("rawtypes")
+    public void copyPreviousGraphs(BaseGraph<T> source) {
+        if (null != source && this != source) {
+            //Read the source before locking this graph so the two locks are never held together
+            HashMap<Integer, BaseGraph> sourceGraphs = source.getPreviousGraphs();
+            lock.lock();
+            try {
+                if (null == this.previousGraphs) {
+                    this.previousGraphs = new HashMap<Integer, BaseGraph>();
+                }
+                this.previousGraphs.putAll(sourceGraphs);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
     /**
      * Accessor to retrieve the current 'working' or scratch pad graph cached in this
      * graph.
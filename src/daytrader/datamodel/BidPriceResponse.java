@@ -87,7 +87,7 @@ public class BidPriceResponse extends AbstractGraphPoint {
      * @param bidPrice double being the new bid price to set
      */
     public final void setBidPrice(double bidPrice) {
-        this.bidPrice = DTUtil.step1Rounding(bidPrice).doubleValue();
+        this.bidPrice = DTUtil.step1Rounding(bidPrice);
     }
     
     @Override
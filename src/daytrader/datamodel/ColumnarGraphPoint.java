@@ -0,0 +1,153 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.Calendar;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A light weight graph point handed out by a ColumnarPointSet when a caller
+ * needs a point object. The price, volume and time values are copied straight
+ * out of the sets primitive columns (they have already been rounded when first
+ * stored) and the Java Calendar and stockbroker date string are only built if
+ * a caller actually asks for them. Ordering and equality behave exactly as for
+ * a HistoricDataGraphPoint.
+ *
+ * @author Roy
+ */
+public class ColumnarGraphPoint extends HistoricDataGraphPoint {
+
+    private boolean calendarReady;
+
+    /**
+     * Default constructor, required so that points written to XML can be re-loaded
+     */
+    public ColumnarGraphPoint() {
+        this.calendarReady = true;
+    }
+
+    /**
+     * Constructor used by the ColumnarPointSet to materialise a point from its
+     * primitive columns. No rounding is applied as the values were rounded when
+     * they were first stored.
+     * @param newReqId - The request ID that generated this point
+     * @param newTimestamp - The time of this point in milliseconds since the epoch
+     * @param newOpen - The scaled open price
+     * @param newHigh - The scaled high price
+     * @param newLow - The scaled low price
+     * @param newClose - The scaled close price
+     * @param newWAP - The scaled weighted average price
+     * @param newVolume - The volume traded at this point
+     * @param newCount - The count of trades at this point
+     * @param newHasGaps - The has gaps flag for this point
+     */
+    ColumnarGraphPoint(int newReqId, long newTimestamp, double newOpen, double newHigh, double newLow, double newClose, double newWAP, long newVolume, int newCount, boolean newHasGaps) {
+        this.reqId = newReqId;
+        this.timestamp = newTimestamp;
+        this.open = newOpen;
+        this.high = newHigh;
+        this.low = newLow;
+        this.close = newClose;
+        this.WAP = newWAP;
+        this.volume = newVolume;
+        this.count = newCount;
+        this.hasGaps = newHasGaps;
+        this.calendarReady = false;
+    }
+
+    private void ensureCalendar() {
+        if (!this.calendarReady) {
+            this.createCalendarFromTimestamp(this.timestamp);
+            this.calendarReady = true;
+        }
+    }
+
+    @Override
+    public long getTimestamp() {
+        long result = this.timestamp;
+        if (this.calendarReady && null != this.calDate) {
+            result = this.calDate.getTimeInMillis();
+        }
+        return result;
+    }
+
+    @Override
+    public Calendar getCalDate() {
+        this.ensureCalendar();
+        return super.getCalDate();
+    }
+
+    @Override
+    public String getDate() {
+        this.ensureCalendar();
+        return super.getDate();
+    }
+
+    @Override
+    public String getDayAsCSVString() {
+        this.ensureCalendar();
+        return super.getDayAsCSVString();
+    }
+
+    @Override
+    public int getYear() {
+        this.ensureCalendar();
+        return super.getYear();
+    }
+
+    @Override
+    public int getMonth() {
+        this.ensureCalendar();
+        return super.getMonth();
+    }
+
+    @Override
+    public int getDay() {
+        this.ensureCalendar();
+        return super.getDay();
+    }
+
+    @Override
+    public int getDateAsNumber() {
+        this.ensureCalendar();
+        return super.getDateAsNumber();
+    }
+
+    @Override
+    public boolean isStartOfDay() {
+        this.ensureCalendar();
+        return super.isStartOfDay();
+    }
+
+    @Override
+    public String toCSVString() {
+        this.ensureCalendar();
+        return super.toCSVString();
+    }
+
+    @Override
+    public boolean writeAsXMLToStream(XMLStreamWriter writer) {
+        this.ensureCalendar();
+        return super.writeAsXMLToStream(writer);
+    }
+
+    @Override
+    public void setCalDate(long newTimestamp) {
+        super.setCalDate(newTimestamp);
+        this.timestamp = newTimestamp;
+        this.calendarReady = true;
+    }
+
+    @Override
+    public String toString() {
+        this.ensureCalendar();
+        return super.toString();
+    }
+
+    @Override
+    protected String getTypeAsString() {
+        return "ColumnarGraphPoint";
+    }
+}
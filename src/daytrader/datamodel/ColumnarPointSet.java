@@ -0,0 +1,295 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A time ordered set of price / time points that stores its data in parallel
+ * primitive arrays (one column each for the timestamp, open, high, low, close,
+ * WAP, volume, count, request ID and has gaps flag) rather than as one object
+ * per point. The columns grow in chunks of CHUNK_SIZE points. Point objects
+ * (ColumnarGraphPoint) are only created when a caller asks for one, so a full
+ * trading day of 1 second bars costs a handful of arrays rather than tens of
+ * thousands of objects each with their own Calendar and String.
+ *
+ * Only historic bars are stored so a set holds at most one point for any
+ * timestamp, adding a point at the time of an existing point does nothing
+ * (see AbstractIndexedPointSet for the ordering). A set
+ * is either writable or read only. A
+ * read only set (see copy()) never changes its columns so its sub sets share
+ * them without copying. A copy of a writable set also shares its columns; the
+ * writable set only ever appends after the points seen by its copies and takes
+ * its own columns before it changes any of those points. Sub sets of a
+ * writable set are read only copies. This
+ * class is NOT thread safe, the owning BaseGraph provides the locking.
+ *
+ * The primitive accessors (getTimestampAt(), getWAPAt() etc) allow the rules
+ * to scan the data without creating any point objects at all.
+ *
+ * @author Roy
+ */
+public class ColumnarPointSet extends AbstractIndexedPointSet {
+
+    /**
+     * The number of points by which the columns grow each time they fill up
+     */
+    public static final int CHUNK_SIZE = 4096;
+    private long[] timestamps;
+    private double[] opens;
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private double[] waps;
+    private long[] volumes;
+    private int[] counts;
+    private int[] reqIds;
+    private boolean[] gaps;
+    //True if a read only copy shares this (writable) sets columns
+    private boolean shared;
+    //The range of the columns used by this set [start, end)
+    private int start;
+    private int end;
+    private final boolean readOnly;
+
+    /**
+     * Default constructor creates an empty writable set
+     */
+    public ColumnarPointSet() {
+        this.timestamps = new long[0];
+        this.opens = new double[0];
+        this.highs = new double[0];
+        this.lows = new double[0];
+        this.closes = new double[0];
+        this.waps = new double[0];
+        this.volumes = new long[0];
+        this.counts = new int[0];
+        this.reqIds = new int[0];
+        this.gaps = new boolean[0];
+        this.start = 0;
+        this.end = 0;
+        this.readOnly = false;
+    }
+
+    /**
+     * Constructor creates a writable set containing the provided points
+     * @param c - A Java Collection of Price / Time points to store
+     */
+    public ColumnarPointSet(Collection<? extends AbstractGraphPoint> c) {
+        this();
+        this.addAll(c);
+    }
+
+    private ColumnarPointSet(ColumnarPointSet source, int newStart, int newEnd) {
+        this.timestamps = source.timestamps;
+        this.opens = source.opens;
+        this.highs = source.highs;
+        this.lows = source.lows;
+        this.closes = source.closes;
+        this.waps = source.waps;
+        this.volumes = source.volumes;
+        this.counts = source.counts;
+        this.reqIds = source.reqIds;
+        this.gaps = source.gaps;
+        this.start = newStart;
+        this.end = newEnd;
+        this.readOnly = true;
+    }
+
+    /**
+     * Creates a read only copy of this set. The copy shares the columns of this
+     * set, points appended to this set later are written after the end of the
+     * copy and any other change first gives this set its own columns, so the
+     * copy costs O(1) and never changes.
+     * @return A read only ColumnarPointSet holding the same points as this set
+     */
+    public ColumnarPointSet copy() {
+        ColumnarPointSet result = null;
+        if (this.readOnly) {
+            result = this;
+        } else {
+            this.shared = true;
+            result = new ColumnarPointSet(this, this.start, this.end);
+        }
+        return result;
+    }
+
+    private ColumnarPointSet copyRange(int from, int to) {
+        ColumnarPointSet source = new ColumnarPointSet();
+        source.timestamps = Arrays.copyOfRange(this.timestamps, from, to);
+        source.opens = Arrays.copyOfRange(this.opens, from, to);
+        source.highs = Arrays.copyOfRange(this.highs, from, to);
+        source.lows = Arrays.copyOfRange(this.lows, from, to);
+        source.closes = Arrays.copyOfRange(this.closes, from, to);
+        source.waps = Arrays.copyOfRange(this.waps, from, to);
+        source.volumes = Arrays.copyOfRange(this.volumes, from, to);
+        source.counts = Arrays.copyOfRange(this.counts, from, to);
+        source.reqIds = Arrays.copyOfRange(this.reqIds, from, to);
+        source.gaps = Arrays.copyOfRange(this.gaps, from, to);
+        return new ColumnarPointSet(source, 0, to - from);
+    }
+
+    /**
+     * Tests if this set may be modified
+     * @return boolean True if this set is read only, False if points may be
+     * added to or removed from it.
+     */
+    public boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    @Override
+    protected long timestampAt(int index) {
+        return this.timestamps[this.start + index];
+    }
+
+    /**
+     * Retrieves the scaled WAP (and therefore last price) of the point at the given
+     * position in this set
+     * @param index - integer being the zero based position of the point (earliest first)
+     * @return double being the WAP for the point
+     */
+    public double getWAPAt(int index) {
+        return this.waps[this.start + this.checkIndex(index)];
+    }
+
+    /**
+     * Retrieves the scaled high price of the point at the given position in this set
+     * @param index - integer being the zero based position of the point (earliest first)
+     * @return double being the high price for the point
+     */
+    public double getHighAt(int index) {
+        return this.highs[this.start + this.checkIndex(index)];
+    }
+
+    /**
+     * Retrieves the scaled low price of the point at the given position in this set
+     * @param index - integer being the zero based position of the point (earliest first)
+     * @return double being the low price for the point
+     */
+    public double getLowAt(int index) {
+        return this.lows[this.start + this.checkIndex(index)];
+    }
+
+    @Override
+    public AbstractGraphPoint getPointAt(int index) {
+        int i = this.start + this.checkIndex(index);
+        return new ColumnarGraphPoint(this.reqIds[i], this.timestamps[i], this.opens[i], this.highs[i], this.lows[i], this.closes[i], this.waps[i], this.volumes[i], this.counts[i], this.gaps[i]);
+    }
+
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("This ColumnarPointSet is read only");
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (this.timestamps.length < required) {
+            int chunks = (required / CHUNK_SIZE) + 1;
+            this.copyColumns(chunks * CHUNK_SIZE);
+        }
+    }
+
+    //Stops sharing the columns with any read only copies before existing points are changed
+    private void unshare() {
+        if (this.shared) {
+            this.copyColumns(this.timestamps.length);
+        }
+    }
+
+    private void copyColumns(int newCapacity) {
+        this.timestamps = Arrays.copyOf(this.timestamps, newCapacity);
+        this.opens = Arrays.copyOf(this.opens, newCapacity);
+        this.highs = Arrays.copyOf(this.highs, newCapacity);
+        this.lows = Arrays.copyOf(this.lows, newCapacity);
+        this.closes = Arrays.copyOf(this.closes, newCapacity);
+        this.waps = Arrays.copyOf(this.waps, newCapacity);
+        this.volumes = Arrays.copyOf(this.volumes, newCapacity);
+        this.counts = Arrays.copyOf(this.counts, newCapacity);
+        this.reqIds = Arrays.copyOf(this.reqIds, newCapacity);
+        this.gaps = Arrays.copyOf(this.gaps, newCapacity);
+        this.shared = false;
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(this.timestamps, from, this.timestamps, to, length);
+        System.arraycopy(this.opens, from, this.opens, to, length);
+        System.arraycopy(this.highs, from, this.highs, to, length);
+        System.arraycopy(this.lows, from, this.lows, to, length);
+        System.arraycopy(this.closes, from, this.closes, to, length);
+        System.arraycopy(this.waps, from, this.waps, to, length);
+        System.arraycopy(this.volumes, from, this.volumes, to, length);
+        System.arraycopy(this.counts, from, this.counts, to, length);
+        System.arraycopy(this.reqIds, from, this.reqIds, to, length);
+        System.arraycopy(this.gaps, from, this.gaps, to, length);
+    }
+
+    @Override
+    protected void removeAt(int index) {
+        this.checkWritable();
+        int pos = this.start + this.checkIndex(index);
+        int moved = this.end - pos - 1;
+        this.unshare();
+        if (0 < moved) {
+            this.shift(pos + 1, pos, moved);
+        }
+        this.end--;
+    }
+
+    @Override
+    public boolean add(AbstractGraphPoint e) {
+        boolean result = false;
+        this.checkWritable();
+        if (null == e) {
+            throw new NullPointerException();
+        }
+        int pos = this.ceilingIndex(e.getTimestamp());
+        if (pos == this.size() || this.timestampAt(pos) != e.getTimestamp()) {
+            pos = this.start + pos;
+            this.ensureCapacity(this.end + 1);
+            if (pos < this.end) {
+                this.unshare();
+                this.shift(pos, pos + 1, this.end - pos);
+            }
+            this.timestamps[pos] = e.getTimestamp();
+            this.opens[pos] = e.getOpen();
+            this.highs[pos] = e.getHigh();
+            this.lows[pos] = e.getLow();
+            this.closes[pos] = e.getClose();
+            this.waps[pos] = e.getWAP();
+            this.volumes[pos] = e.getVolume();
+            this.counts[pos] = e.getCount();
+            this.reqIds[pos] = e.getReqId();
+            this.gaps[pos] = e.isHasGaps();
+            this.end++;
+            result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        this.checkWritable();
+        this.unshare();
+        this.end = this.start;
+    }
+
+    @Override
+    public int size() {
+        return this.end - this.start;
+    }
+
+    @Override
+    protected ColumnarPointSet range(int from, int to) {
+        ColumnarPointSet result = null;
+        if (this.readOnly) {
+            result = new ColumnarPointSet(this, this.start + from, this.start + to);
+        } else {
+            result = this.copyRange(this.start + from, this.start + to);
+        }
+        return result;
+    }
+}
@@ -13,6 +13,7 @@ import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class provides a central place for the Day Trader application constants 
@@ -63,6 +64,16 @@ public class DTConstants {
      */
     public static final int EXCH_CLOSING_SEC = 00;
     
+    /**
+     * The hour when the stock market closes on an early close day (24 hour clock)
+     */
+    public static final int EXCH_EARLY_CLOSING_HOUR = 13;
+    
+    /**
+     * The minute when the stock market closes on an early close day (0 - 59)
+     */
+    public static final int EXCH_EARLY_CLOSING_MIN = 00;
+    
     /**
      * The time zone in which the stock market is located.
      */
@@ -97,12 +108,24 @@ public class DTConstants {
      */
     public static final BSRangeValues BSRANGES = new BSRangeValues();
     
+    /**
+     * A cache of line gradients shared by every GraphLine
+     */
+    public static final GradientCache GRADIENT_CACHE = new GradientCache();
+    
     /**
      * A general thread pool for use in running concurrent tasks. Sized to the number of
      * processors on the machine +1.
      */
     public static final ExecutorService THREAD_POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
     
+    /**
+     * A shared fork / join pool for CPU bound work that can be split into batches (for
+     * example filtering potential CE lines). Sized to the number of processors on the
+     * machine. Tasks submitted here should not block waiting on data.
+     */
+    public static final ForkJoinPool COMPUTE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    
     /**
      * The System.out byte stream. Used to ensure that all threads write to the same output stream.
      */
@@ -264,7 +287,7 @@ public class DTConstants {
     public static File getRecoveryFolder(){
         File result = null;
         if(null != DTConstants.backupManager){
-            DTConstants.backupManager.getRecoveryFolder();
+            result = DTConstants.backupManager.getRecoveryFolder();
         }
         return result;
     }
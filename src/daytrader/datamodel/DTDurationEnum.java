@@ -4,6 +4,7 @@
  */
 package daytrader.datamodel;
 
+import daytrader.utils.TradingTimeAxis;
 import java.util.Calendar;
 
 /**
@@ -81,6 +82,141 @@ public enum DTDurationEnum {
         return result;
     }
     
+    /**
+     * Retrieves the length of time covered by this duration. Durations of a day
+     * or more vary in length so the shortest possible length is returned, use
+     * getStartTime() to find the exact period a request covers.
+     * @return long being the duration in milliseconds
+     */
+    public long getDurationInMillis() {
+        long result = 0;
+        long msPerDay = 24 * 60 * 60 * 1000;
+        switch (this) {
+            case S60:
+                result = 60 * 1000;
+                break;
+            case S300:
+                result = 300 * 1000;
+                break;
+            case S900:
+                result = 900 * 1000;
+                break;
+            case S1800:
+                result = 1800 * 1000;
+                break;
+            case S3600:
+                result = 3600 * 1000;
+                break;
+            case S7200:
+                result = 7200 * 1000;
+                break;
+            case S14400:
+                result = 14400 * 1000;
+                break;
+            case D1:
+                result = msPerDay;
+                break;
+            case D2:
+                result = 2 * msPerDay;
+                break;
+            case W1:
+                result = 7 * msPerDay;
+                break;
+            case M1:
+                result = 28 * msPerDay;
+                break;
+            case M3:
+                result = 89 * msPerDay;
+                break;
+            case M6:
+                result = 181 * msPerDay;
+                break;
+            case Y1:
+                result = 365 * msPerDay;
+                break;
+            default:
+                result = 0;
+        }
+        return result;
+    }
+    
+    /**
+     * Retrieves the number of trading days covered by this duration. The stock
+     * brokers server counts day and week durations in trading days (a week is
+     * five trading days) rather than in calendar time.
+     * @return integer being the number of trading days or zero if this duration
+     * is not measured in trading days
+     */
+    public int getTradingDays() {
+        int result = 0;
+        switch (this) {
+            case D1:
+                result = 1;
+                break;
+            case D2:
+                result = 2;
+                break;
+            case W1:
+                result = 5;
+                break;
+            default:
+                result = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the number of calendar months covered by this duration
+     * @return integer being the number of months or zero if this duration is
+     * not measured in months
+     */
+    public int getMonths() {
+        int result = 0;
+        switch (this) {
+            case M1:
+                result = 1;
+                break;
+            case M3:
+                result = 3;
+                break;
+            case M6:
+                result = 6;
+                break;
+            case Y1:
+                result = 12;
+                break;
+            default:
+                result = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the start of the period covered by a request of this duration
+     * that ends at the given time. Durations in seconds are exact, day and week
+     * durations start at the opening of the earliest trading day covered (see
+     * TradingTimeAxis.getTradingDaysStart()) and month and year durations go
+     * back whole calendar months.
+     * @param endTime - long being the end of the request period in milliseconds
+     * @return long being the start of the request period in milliseconds
+     */
+    public long getStartTime(long endTime) {
+        long result = 0;
+        int tradingDays = this.getTradingDays();
+        int months = this.getMonths();
+        if (0 < tradingDays) {
+            result = TradingTimeAxis.getTradingDaysStart(endTime, tradingDays);
+        } else if (0 < months) {
+            Calendar cal = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+            cal.setTimeInMillis(endTime);
+            cal.add(Calendar.MONTH, -months);
+            result = cal.getTimeInMillis();
+        } else {
+            result = endTime - this.getDurationInMillis();
+        }
+        return result;
+    }
+
     public static DTDurationEnum getDurationToCover(Calendar startCal, Calendar endCal){
         DTDurationEnum result = DTDurationEnum.M3;
         Long lngdiff = startCal.getTimeInMillis() - endCal.getTimeInMillis();
@@ -82,9 +82,10 @@ public class DatasetFinaliseYLines implements Comparable<DatasetFinaliseYLines>
      * The Y-Line finalisation process uses a recursive algorithum that caches
      * data about the original 'C' point in a Recursion cache object as it 
      * executes. This accessor method retrieves that recursion cache.
+     * @param caches - The RecursionCacheTable of the putup the 'C' point belongs to
      * @return - The Recursion Cache object for the original 'C' point.
      */
-    public RecursionCache getRecursionCache(){
-        return this.originalCPoint.getRecursionCache();
+    public RecursionCache getRecursionCache(RecursionCacheTable caches){
+        return caches.getRecursionCache(this.originalCPoint);
     }
 }
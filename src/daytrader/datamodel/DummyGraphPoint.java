@@ -46,7 +46,7 @@ public class DummyGraphPoint extends AbstractGraphPoint {
      */
     public DummyGraphPoint(long timestamp, double newPrice){
         this(timestamp);
-        this.dblLastPrice = DTUtil.step1Rounding(newPrice).doubleValue();
+        this.dblLastPrice = DTUtil.step1Rounding(newPrice);
         this.open = this.dblLastPrice;
         this.high = this.dblLastPrice;
         this.low = this.dblLastPrice;
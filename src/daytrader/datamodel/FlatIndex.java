@@ -0,0 +1,304 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import daytrader.interfaces.IGraphIndex;
+import java.util.Arrays;
+
+/**
+ * An index of the 'runs' of a BaseGraph (in time order). A run is a time
+ * sequential group of points that all have the same last price and that cannot
+ * be made any longer, so every graph flat (see GraphFlat) is either a run or,
+ * when only part of the graph is examined, the part of a run within the
+ * examined times.
+ *
+ * As each point is appended it either extends the current (last) run or starts
+ * a new one, so the index is kept up to date without ever re-scanning the graph.
+ * The runs that are at least DEFAULT_FLAT_LENGTH seconds long (Bryn's default flat)
+ * are also listed separately so the flats of a graph are found without visiting
+ * the many short runs and the flat around a time is found in O(log n). The GraphFlat
+ * built for a run is kept once the run can no longer change.
+ *
+ * If the graph changes in any way other than a point being appended a new index
+ * is built. This class is NOT threadsafe, the owning BaseGraph appends to and
+ * queries the index under its lock.
+ *
+ * @author Roy
+ */
+public class FlatIndex implements IGraphIndex {
+
+    /**
+     * The default minimum length of a flat in seconds
+     */
+    public static final int DEFAULT_FLAT_LENGTH = 2;
+    private static final long DEFAULT_FLAT_MILLIS = DEFAULT_FLAT_LENGTH * 1000L;
+    private static final int INITIAL_CAPACITY = 256;
+    private final int version;
+    private long[] firstTimes;
+    private long[] lastTimes;
+    private double[] prices;
+    //First and last points of each run
+    private AbstractGraphPoint[] firstPoints;
+    private AbstractGraphPoint[] lastPoints;
+    //GraphFlat built for each run (NULL until first needed)
+    private GraphFlat[] flats;
+    private int runCount;
+    //Positions of the runs that are at least DEFAULT_FLAT_LENGTH long, in time order
+    private int[] longRuns;
+    private int longRunCount;
+    private int size;
+
+    /**
+     * Constructor creates an empty index.
+     * @param newVersion - integer being the owning graphs structure version at
+     * the time the index was created. The owner uses this to decide when the index
+     * must be rebuilt.
+     */
+    public FlatIndex(int newVersion) {
+        this.version = newVersion;
+        this.firstTimes = new long[INITIAL_CAPACITY];
+        this.lastTimes = new long[INITIAL_CAPACITY];
+        this.prices = new double[INITIAL_CAPACITY];
+        this.firstPoints = new AbstractGraphPoint[INITIAL_CAPACITY];
+        this.lastPoints = new AbstractGraphPoint[INITIAL_CAPACITY];
+        this.flats = new GraphFlat[INITIAL_CAPACITY];
+        this.longRuns = new int[INITIAL_CAPACITY];
+        this.runCount = 0;
+        this.longRunCount = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Accessor to retrieve the owning graphs structure version at the time this
+     * index was created
+     * @return integer being the version number
+     */
+    @Override
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Accessor to retrieve the number of points held in the index
+     * @return integer being the number of indexed points
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Accessor to retrieve the number of runs in the index
+     * @return integer being the number of runs
+     */
+    public int getRunCount() {
+        return this.runCount;
+    }
+
+    /**
+     * Accessor to retrieve the time of the last point in the index
+     * @return long being the timestamp of the last point or Long.MIN_VALUE if
+     * the index is empty
+     */
+    @Override
+    public long getLastTimestamp() {
+        long result = Long.MIN_VALUE;
+        if (0 < this.runCount) {
+            result = this.lastTimes[this.runCount - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Adds a point to the end of the index. The point MUST NOT be earlier than
+     * the last point already indexed. If the point has the same last price as
+     * the current run it extends that run otherwise it starts a new run.
+     * @param aPoint - The Price / Time point to add to the index
+     */
+    @Override
+    public void append(AbstractGraphPoint aPoint) {
+        long timestamp = aPoint.getTimestamp();
+        double price = aPoint.getLastPrice();
+        int run = this.runCount - 1;
+        //Same test as GraphFlat.addPoint()
+        if (0 <= run && this.prices[run] == price) {
+            this.lastTimes[run] = timestamp;
+            this.lastPoints[run] = aPoint;
+        } else {
+            if (this.runCount == this.firstTimes.length) {
+                int newCapacity = 2 * this.runCount;
+                this.firstTimes = Arrays.copyOf(this.firstTimes, newCapacity);
+                this.lastTimes = Arrays.copyOf(this.lastTimes, newCapacity);
+                this.prices = Arrays.copyOf(this.prices, newCapacity);
+                this.firstPoints = Arrays.copyOf(this.firstPoints, newCapacity);
+                this.lastPoints = Arrays.copyOf(this.lastPoints, newCapacity);
+                this.flats = Arrays.copyOf(this.flats, newCapacity);
+            }
+            run = this.runCount;
+            this.firstTimes[run] = timestamp;
+            this.lastTimes[run] = timestamp;
+            this.prices[run] = price;
+            this.firstPoints[run] = aPoint;
+            this.lastPoints[run] = aPoint;
+            this.runCount = run + 1;
+        }
+        //Runs only ever grow so once listed a run stays listed
+        if (DEFAULT_FLAT_MILLIS <= this.lastTimes[run] - this.firstTimes[run]
+                && (0 == this.longRunCount || this.longRuns[this.longRunCount - 1] != run)) {
+            if (this.longRunCount == this.longRuns.length) {
+                this.longRuns = Arrays.copyOf(this.longRuns, 2 * this.longRunCount);
+            }
+            this.longRuns[this.longRunCount++] = run;
+        }
+        this.size++;
+    }
+
+    /**
+     * Finds the run that a time falls in (or the run before the time if it falls
+     * between two runs)
+     * @param timestamp - long being the time in milliseconds
+     * @return integer being the position of the last run that starts at or before
+     * the given time or -1 if every run starts after it
+     */
+    public int findRun(long timestamp) {
+        int low = 0;
+        int high = this.runCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.firstTimes[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Finds the next run after a given run that is at least DEFAULT_FLAT_LENGTH
+     * seconds long
+     * @param run - integer being the position of a run
+     * @return integer being the position of the next long run or the run count
+     * if there are no more long runs
+     */
+    public int nextLongRun(int run) {
+        int low = 0;
+        int high = this.longRunCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.longRuns[mid] <= run) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int result = this.runCount;
+        if (low < this.longRunCount) {
+            result = this.longRuns[low];
+        }
+        return result;
+    }
+
+    /**
+     * Finds the previous run before a given run that is at least DEFAULT_FLAT_LENGTH
+     * seconds long
+     * @param run - integer being the position of a run
+     * @return integer being the position of the previous long run or -1 if there
+     * is no earlier long run
+     */
+    public int previousLongRun(int run) {
+        int low = 0;
+        int high = this.longRunCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.longRuns[mid] < run) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int result = -1;
+        if (0 < low) {
+            result = this.longRuns[low - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether a run is at least DEFAULT_FLAT_LENGTH seconds long
+     * @param run - integer being the position of a run
+     * @return boolean True if the run is a flat of the default length, False otherwise
+     */
+    public boolean isLongRun(int run) {
+        return DEFAULT_FLAT_MILLIS <= this.lastTimes[run] - this.firstTimes[run];
+    }
+
+    /**
+     * Accessor to retrieve the time of the first point in a run
+     * @param run - integer being the position of the run
+     * @return long being the timestamp of the runs first point
+     */
+    public long getFirstTime(int run) {
+        return this.firstTimes[run];
+    }
+
+    /**
+     * Accessor to retrieve the time of the last point in a run
+     * @param run - integer being the position of the run
+     * @return long being the timestamp of the runs last point
+     */
+    public long getLastTime(int run) {
+        return this.lastTimes[run];
+    }
+
+    /**
+     * Accessor to retrieve the first point in a run
+     * @param run - integer being the position of the run
+     * @return The runs first Price / Time point
+     */
+    public AbstractGraphPoint getFirstPoint(int run) {
+        return this.firstPoints[run];
+    }
+
+    /**
+     * Accessor to retrieve the last point in a run
+     * @param run - integer being the position of the run
+     * @return The runs last Price / Time point
+     */
+    public AbstractGraphPoint getLastPoint(int run) {
+        return this.lastPoints[run];
+    }
+
+    /**
+     * Accessor to retrieve the price shared by every point in a run
+     * @param run - integer being the position of the run
+     * @return double being the runs last price
+     */
+    public double getPrice(int run) {
+        return this.prices[run];
+    }
+
+    /**
+     * Retrieves the GraphFlat previously stored for a run
+     * @param run - integer being the position of the run
+     * @return The GraphFlat covering the whole run or NULL if none has been stored
+     */
+    public GraphFlat getFlat(int run) {
+        return this.flats[run];
+    }
+
+    /**
+     * Stores the GraphFlat covering a whole run so it need not be built again.
+     * The last run may still be extended by the next point so its flat is never
+     * stored.
+     * @param run - integer being the position of the run
+     * @param newFlat - The GraphFlat holding every point of the run
+     */
+    public void setFlat(int run, GraphFlat newFlat) {
+        if (run < this.runCount - 1) {
+            this.flats[run] = newFlat;
+        }
+    }
+}
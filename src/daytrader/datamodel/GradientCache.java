@@ -0,0 +1,200 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of line gradients shared by every GraphLine. Many rules build
+ * new lines between the same pairs of points, the gradient of a line depends only
+ * on the time and price of its current 'C' and 'E' points and (for lines that
+ * cross days) on the trading days in between. The cache is keyed on exactly these
+ * values, the trading days being identified by their TradingDayIndex version.
+ *
+ * The cache holds two generations of entries. New entries go into the current
+ * generation, when it reaches MAX_ENTRIES it becomes the previous generation and
+ * the old previous generation is discarded. Entries found in the previous
+ * generation are copied forward so gradients still in use are kept. Hit and miss
+ * counts are kept for display and tuning. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class GradientCache {
+
+    /**
+     * The number of entries in one generation of the cache
+     */
+    public static final int MAX_ENTRIES = 50000;
+    private volatile ConcurrentHashMap<Key, Double> current;
+    private volatile ConcurrentHashMap<Key, Double> previous;
+    private final ReentrantLock lock;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Default Constructor creates an empty cache
+     */
+    public GradientCache() {
+        this.current = new ConcurrentHashMap<Key, Double>();
+        this.previous = new ConcurrentHashMap<Key, Double>();
+        this.lock = new ReentrantLock();
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+    }
+
+    /**
+     * Retrieves the cached gradient of a line between two points
+     * @param start - The lines current 'C' point
+     * @param end - The lines current 'E' point
+     * @param calendarVersion - integer being the version of the lines TradingDayIndex
+     * (0 if it has none)
+     * @return Double being the cached gradient or NULL if it is not in the cache
+     */
+    public Double getGradient(AbstractGraphPoint start, AbstractGraphPoint end, int calendarVersion) {
+        Key key = new Key(start, end, calendarVersion);
+        Double result = this.current.get(key);
+        if (null == result) {
+            result = this.previous.get(key);
+            if (null != result) {
+                this.putKey(key, result);
+            }
+        }
+        if (null != result) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Stores the gradient of a line between two points
+     * @param start - The lines current 'C' point
+     * @param end - The lines current 'E' point
+     * @param calendarVersion - integer being the version of the lines TradingDayIndex
+     * (0 if it has none)
+     * @param gradient - double being the gradient of the line
+     */
+    public void putGradient(AbstractGraphPoint start, AbstractGraphPoint end, int calendarVersion, double gradient) {
+        this.putKey(new Key(start, end, calendarVersion), gradient);
+    }
+
+    private void putKey(Key key, Double gradient) {
+        ConcurrentHashMap<Key, Double> target = this.current;
+        if (target.size() >= MAX_ENTRIES) {
+            lock.lock();
+            try {
+                //Another thread may already have started a new generation
+                if (this.current.size() >= MAX_ENTRIES) {
+                    this.previous = this.current;
+                    this.current = new ConcurrentHashMap<Key, Double>();
+                }
+                target = this.current;
+            } finally {
+                lock.unlock();
+            }
+        }
+        target.put(key, gradient);
+    }
+
+    /**
+     * Removes every entry from the cache and resets the hit and miss counts
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            this.current = new ConcurrentHashMap<Key, Double>();
+            this.previous = new ConcurrentHashMap<Key, Double>();
+            this.hits.set(0);
+            this.misses.set(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accessor to retrieve the number of gradients held in the cache
+     * @return integer being the number of cached gradients (both generations)
+     */
+    public int size() {
+        return this.current.size() + this.previous.size();
+    }
+
+    /**
+     * Accessor to retrieve the number of lookups that found a cached gradient
+     * @return long being the hit count
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Accessor to retrieve the number of lookups that did not find a cached gradient
+     * @return long being the miss count
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Builds a one line summary of the cache metrics
+     * @return String describing the cache size, hits and misses
+     */
+    public String getMetricsSummary() {
+        long hitCount = this.getHits();
+        long total = hitCount + this.getMisses();
+        double hitRate = 0;
+        if (0 < total) {
+            hitRate = (100d * hitCount) / total;
+        }
+        return String.format("Gradients cached: %d, Hits: %d, Misses: %d, Hit rate: %.1f%%",
+                this.size(), hitCount, this.getMisses(), hitRate);
+    }
+
+    /**
+     * Cache key, the time and price of both points plus the trading calendar version
+     */
+    private static final class Key {
+
+        private final long startTime;
+        private final double startPrice;
+        private final long endTime;
+        private final double endPrice;
+        private final int calendarVersion;
+
+        Key(AbstractGraphPoint start, AbstractGraphPoint end, int newCalendarVersion) {
+            this.startTime = start.getTimestamp();
+            this.startPrice = start.getLastPrice();
+            this.endTime = end.getTimestamp();
+            this.endPrice = end.getLastPrice();
+            this.calendarVersion = newCalendarVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = this.startTime * 31 + Double.doubleToLongBits(this.startPrice);
+            bits = bits * 31 + this.endTime;
+            bits = bits * 31 + Double.doubleToLongBits(this.endPrice);
+            bits = bits * 31 + this.calendarVersion;
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean result = false;
+            if (obj instanceof Key) {
+                Key target = (Key) obj;
+                result = this.startTime == target.startTime
+                        && this.endTime == target.endTime
+                        && this.calendarVersion == target.calendarVersion
+                        && Double.doubleToLongBits(this.startPrice) == Double.doubleToLongBits(target.startPrice)
+                        && Double.doubleToLongBits(this.endPrice) == Double.doubleToLongBits(target.endPrice);
+            }
+            return result;
+        }
+    }
+}
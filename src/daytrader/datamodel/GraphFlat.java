@@ -5,6 +5,7 @@
 package daytrader.datamodel;
 
 import daytrader.interfaces.IGraphFlat;
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
@@ -12,11 +13,15 @@ import java.util.TreeSet;
  * sequential group of graph points where the price value does not change.
  * Therefore when plotted on a price time graph these points appear as a 
  * horizontal straight line.
+ * 
+ * The flats a BaseGraph builds from its flat index are shared between callers
+ * and so are read only, no point can be added to them (addPoint() returns false).
  * @author Roy
  */
 public class GraphFlat implements IGraphFlat<AbstractGraphPoint>{
     
-    private TreeSet<AbstractGraphPoint> pointList;
+    private final TreeSet<AbstractGraphPoint> pointList;
+    private final boolean readOnly;
     
     /**
      * Constructor creates a Graph Flat with a single AbstractGraphPoint in its
@@ -26,16 +31,28 @@ public class GraphFlat implements IGraphFlat<AbstractGraphPoint>{
      */
     public GraphFlat(AbstractGraphPoint firstPoint){
         this.pointList = new TreeSet<AbstractGraphPoint>();
+        this.readOnly = false;
         if(null != firstPoint){
             this.pointList.add(firstPoint);
         }
     }
+    
+    /**
+     * Constructor creates a read only Graph Flat holding a copy of the given points.
+     * The caller must ensure that every point has the same last price.
+     * @param runPoints - A time ordered set of points with the same last price
+     */
+    GraphFlat(SortedSet<? extends AbstractGraphPoint> runPoints){
+        this.pointList = new TreeSet<AbstractGraphPoint>();
+        this.pointList.addAll(runPoints);
+        this.readOnly = true;
+    }
 
     @Override
     public boolean addPoint(AbstractGraphPoint item) {
         //Only points with the same last price can be added to the flat
         boolean result = false;
-        if(null != item && 0 < this.pointList.size()){
+        if(!this.readOnly && null != item && 0 < this.pointList.size()){
             AbstractGraphPoint last = this.pointList.last();
             double lastPrice = last.getLastPrice();
             if(lastPrice == item.getLastPrice()){
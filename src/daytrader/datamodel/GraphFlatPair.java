@@ -5,7 +5,6 @@
 package daytrader.datamodel;
 
 import daytrader.interfaces.IGraphFlat;
-import java.util.NavigableSet;
 
 /**
  * This groups flats into pairs so that a price score can be calculated between them.
@@ -44,10 +43,10 @@ public class GraphFlatPair implements Comparable<GraphFlatPair>{
      */
     public double getPairScore(){
         double result = 0;
-        //subset graph to give range to examine
-        NavigableSet<AbstractGraphPoint> subSet = this.graph.subSet(this.secondFlat.getEarliestPoint(), true, this.firstFlat.getLatestPoint(), true);
-        BaseGraph<AbstractGraphPoint> graphSection = new BaseGraph<AbstractGraphPoint>(subSet);
-        result = graphSection.getHighestPointSoFar().getLastPrice() - graphSection.getLowestPointSoFar().getLastPrice();
+        //range of the graph to examine
+        long start = this.secondFlat.getEarliestPoint().getTimestamp();
+        long end = this.firstFlat.getLatestPoint().getTimestamp();
+        result = this.graph.getHighestPointBetween(start, end).getLastPrice() - this.graph.getLowestPointBetween(start, end).getLastPrice();
         return result;
     }
     
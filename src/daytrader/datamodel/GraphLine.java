@@ -6,7 +6,6 @@ package daytrader.datamodel;
 
 import daytrader.interfaces.IGraphLine;
 import daytrader.utils.DTUtil;
-import java.util.Calendar;
 import java.util.TreeSet;
 
 /**
@@ -27,6 +26,8 @@ public class GraphLine implements IGraphLine {
     //This attribute maintains a list of trading days. It does not have to be set but gradient calcs across multiple days will not work
     //if it is not
     private TreeSet<Integer> tradingDays;
+    //The shared index of the trading days above, used to count the days a line crosses
+    private TradingDayIndex tradingDayIndex;
 
     /**
      * Constructor defines a new Graph Line with the given start and end points and associates it with the provided graph
@@ -56,35 +57,28 @@ public class GraphLine implements IGraphLine {
                 //Get the start point (original or stand in)
                 AbstractGraphPoint myCurrStart = this.getCurrentC();
                 AbstractGraphPoint myCurrEnd = this.getCurrentE();
-                //IF start and end are the same day THEN a normal gradient calc can occur
-                if (myCurrStart.getDateAsNumber() == myCurrEnd.getDateAsNumber()) {
+                //Other lines between the same points may already have calculated the gradient
+                int calendarVersion = (null != this.tradingDayIndex) ? this.tradingDayIndex.getVersion() : 0;
+                Double sharedGradient = DTConstants.GRADIENT_CACHE.getGradient(myCurrStart, myCurrEnd, calendarVersion);
+                if (null != sharedGradient) {
+                    result = sharedGradient.doubleValue();
+                    this.dblGradientCache = sharedGradient;
+                } else if (myCurrStart.getDateAsNumber() == myCurrEnd.getDateAsNumber()) {
+                    //IF start and end are the same day THEN a normal gradient calc can occur
                     //Calc Change in X
                     double deltaX = myCurrEnd.getTimestamp() - myCurrStart.getTimestamp();
                     //deltaX /= 1000; //Convert from milliseconds to seconds
                     double deltaY = myCurrEnd.getLastPrice() - myCurrStart.getLastPrice();
                     result = deltaY / deltaX;
                     this.dblGradientCache = result;
+                    DTConstants.GRADIENT_CACHE.putGradient(myCurrStart, myCurrEnd, calendarVersion, result);
                     System.out.println("Delta Y = " + deltaY);
                     System.out.println("Delta X = " + deltaX);
                 } else {
-                    if (null != this.tradingDays) {
-                        TreeSet<AbstractGraphPoint> tradingDayData = new TreeSet<AbstractGraphPoint>();
-                        for (Integer currDay : this.tradingDays) {
-                            String val = currDay.toString();
-                            int length = val.length();
-                            String strDay = val.substring(length - 2);
-                            String strMonth = val.substring(length - 4, length - 2);
-                            String strYear = val.substring(0, length - 4);
-                            int intDay = Integer.parseInt(strDay);
-                            int intMonth = Integer.parseInt(strMonth);
-                            intMonth--;
-                            int intYear = Integer.parseInt(strYear);
-                            Calendar cal = DTUtil.createCalendar(intYear, intMonth, intDay, DTConstants.EXCH_CLOSING_HOUR, DTConstants.EXCH_CLOSING_MIN, DTConstants.EXCH_CLOSING_SEC, DTConstants.EXCH_TIME_ZONE);
-                            DummyGraphPoint newPoint = new DummyGraphPoint(cal);
-                            tradingDayData.add(newPoint);
-                        }
-                        result = DTUtil.getGraidentBasedOnTradingDays(this, tradingDayData);
+                    if (null != this.tradingDayIndex) {
+                        result = DTUtil.getGradientBasedOnTradingDays(this, this.tradingDayIndex);
                         this.dblGradientCache = result;
+                        DTConstants.GRADIENT_CACHE.putGradient(myCurrStart, myCurrEnd, calendarVersion, result);
                     } else {
                         this.dblGradientCache = null;
                         throw new IllegalArgumentException("Trading days missing for gradient calculation");
@@ -283,8 +277,10 @@ public class GraphLine implements IGraphLine {
     public void setTradingDays(TreeSet<Integer> tradingDays) {
         if (null != tradingDays) {
             this.tradingDays = new TreeSet<Integer>(tradingDays);
+            this.tradingDayIndex = TradingDayIndex.getIndex(this.tradingDays);
         } else {
             this.tradingDays = null;
+            this.tradingDayIndex = null;
         }
         this.dblGradientCache = null;
     }
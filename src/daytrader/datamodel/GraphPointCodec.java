@@ -0,0 +1,153 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes graph points to and reads them from a compact binary form. Each point is
+ * written as a one byte type code followed by the same values that are saved by
+ * AbstractGraphPoint.writeAsXMLToStream(). The point types used by the real time
+ * system have their own type code, any other type is written as UNKNOWN_TYPE
+ * followed by its class name.
+ *
+ * A point is re-loaded the same way the XML loader re-loads it, a new object of
+ * the saved class is created with its default constructor and the values are set
+ * through the IGraphPoint setters, so a loaded point is identical to one loaded
+ * from an XML file. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public final class GraphPointCodec {
+
+    /**
+     * The type code of a point whose class has no code of its own
+     */
+    public static final byte UNKNOWN_TYPE = 0;
+    //Point classes with their own type code, the code is the position in this array
+    private static final Class<?>[] KNOWN_TYPES = {
+        null,
+        HistoricDataGraphPoint.class,
+        RealTimeBarGraphPoint.class,
+        RTVolumeResponse.class,
+        BidPriceResponse.class,
+        AskPriceResponse.class,
+        ColumnarGraphPoint.class
+    };
+    private static final HashMap<Class<?>, Byte> TYPE_CODES = new HashMap<Class<?>, Byte>();
+    //Classes of UNKNOWN_TYPE points already looked up, keyed by class name
+    private static final HashMap<String, Class<?>> NAMED_TYPES = new HashMap<String, Class<?>>();
+
+    static {
+        for (int i = 1; i < KNOWN_TYPES.length; i++) {
+            TYPE_CODES.put(KNOWN_TYPES[i], (byte) i);
+        }
+    }
+
+    private GraphPointCodec() {
+    }
+
+    /**
+     * Writes a graph point to a binary stream
+     * @param out - The DataOutput to write to
+     * @param aPoint - The Price / Time point to write
+     * @throws IOException if the point could not be written
+     */
+    public static void writePoint(DataOutput out, AbstractGraphPoint aPoint) throws IOException {
+        Byte code = TYPE_CODES.get(aPoint.getClass());
+        if (null != code) {
+            out.writeByte(code);
+        } else {
+            out.writeByte(UNKNOWN_TYPE);
+            out.writeUTF(aPoint.getClass().getName());
+        }
+        out.writeInt(aPoint.getReqId());
+        out.writeLong(aPoint.getTimestamp());
+        out.writeDouble(aPoint.getOpen());
+        out.writeDouble(aPoint.getHigh());
+        out.writeDouble(aPoint.getLow());
+        out.writeDouble(aPoint.getClose());
+        out.writeDouble(aPoint.getWAP());
+        out.writeLong(aPoint.getVolume());
+        out.writeInt(aPoint.getCount());
+        out.writeBoolean(aPoint.isHasGaps());
+    }
+
+    /**
+     * Reads a graph point written by writePoint() from a binary stream
+     * @param in - The DataInput to read from
+     * @return The loaded Price / Time point or NULL if the points class could not
+     * be created (the points data is still read so the next point can be read).
+     * @throws IOException if the point could not be read (for example the stream
+     * ends part way through the point)
+     */
+    public static AbstractGraphPoint readPoint(DataInput in) throws IOException {
+        AbstractGraphPoint result = null;
+        int code = in.readByte();
+        Class<?> pointClass = null;
+        if (UNKNOWN_TYPE == code) {
+            pointClass = getNamedType(in.readUTF());
+        } else if (0 < code && KNOWN_TYPES.length > code) {
+            pointClass = KNOWN_TYPES[code];
+        } else {
+            throw new IOException("Unknown graph point type code " + code);
+        }
+        int reqId = in.readInt();
+        long timestamp = in.readLong();
+        double open = in.readDouble();
+        double high = in.readDouble();
+        double low = in.readDouble();
+        double close = in.readDouble();
+        double wap = in.readDouble();
+        long volume = in.readLong();
+        int count = in.readInt();
+        boolean hasGaps = in.readBoolean();
+        if (null != pointClass) {
+            try {
+                Object newInstance = pointClass.newInstance();
+                if (newInstance instanceof AbstractGraphPoint) {
+                    result = (AbstractGraphPoint) newInstance;
+                    //Same order as AbstractGraphPoint.loadFromXMLStream()
+                    result.setReqId(reqId);
+                    result.setOpen(open);
+                    result.setClose(close);
+                    result.setHigh(high);
+                    result.setLow(low);
+                    result.setWAP(wap);
+                    result.setCalDate(timestamp);
+                    result.setVolume(volume);
+                    result.setCount(count);
+                    result.setHasGaps(hasGaps);
+                }
+            } catch (InstantiationException ex) {
+                Logger.getLogger(GraphPointCodec.class.getName()).log(Level.SEVERE, null, ex);
+            } catch (IllegalAccessException ex) {
+                Logger.getLogger(GraphPointCodec.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return result;
+    }
+
+    private static Class<?> getNamedType(String className) {
+        Class<?> result = null;
+        synchronized (NAMED_TYPES) {
+            result = NAMED_TYPES.get(className);
+            if (null == result && !NAMED_TYPES.containsKey(className)) {
+                try {
+                    result = Class.forName(className);
+                } catch (ClassNotFoundException ex) {
+                    Logger.getLogger(GraphPointCodec.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                NAMED_TYPES.put(className, result);
+            }
+        }
+        return result;
+    }
+}
@@ -16,9 +16,11 @@ public class GraphPointPriceComparator<T extends AbstractGraphPoint> implements
     @Override
     public int compare(AbstractGraphPoint o1, AbstractGraphPoint o2) {
         int result = 0;
-        if(o1.getLastPrice() < o2.getLastPrice()){
+        double price1 = o1.getLastPrice();
+        double price2 = o2.getLastPrice();
+        if(price1 < price2){
             result = -1;
-        }else if(o1.getLastPrice() > o2.getLastPrice()){
+        }else if(price1 > price2){
             result = 1;
         }
         return result;
@@ -0,0 +1,325 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import daytrader.utils.DTUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Historic bars for a period never change once the period has ended. This class provides a local on disk store of such bars so that
+ * historic data requests that have already been made once do not need to go
+ * back to the stockbroker (with the associated 2 second pacing delay).
+ *
+ * Bars are held in one file per ticker, bar size, type of data, trading hours
+ * setting and trading day (HistoricBars/TICKER/BARSIZE/WHATTOSHOW_RTH/YYYYMMDD.bars
+ * or .../WHATTOSHOW_ALL/... for requests that include data outside regular
+ * trading hours), so bars loaded by one kind of request are never used to
+ * answer another. Each file is an append only
+ * sequence of binary records:
+ * 'B' - A bar: timestamp, open, high, low, close, WAP, volume, count, hasGaps
+ * 'C' - A coverage record: the start and end time of a period for which ALL
+ * bars have been stored (a period with no trades has no bars but is still covered).
+ * Coverage records are always written after the bars they cover so a file cut
+ * short by a crash never claims to hold bars it does not have.
+ *
+ * NB: Only bars for periods that have ended are ever stored.
+ *
+ * @author Roy
+ */
+public class HistoricBarStore {
+
+    private static final String FOLDER_NAME = "HistoricBars";
+    private static final String FILE_EXTENSION = ".bars";
+    private static final byte BAR_RECORD = 'B';
+    private static final byte COVER_RECORD = 'C';
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000;
+    private static HistoricBarStore self;
+    private final File rootFolder;
+    private final ReentrantLock lock;
+
+    private HistoricBarStore(File newRootFolder) {
+        this.rootFolder = newRootFolder;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Accessor to retrieve the single instance of the historic bar store
+     * @return The HistoricBarStore for this application
+     */
+    public static synchronized HistoricBarStore getInstance() {
+        if (null == self) {
+            self = new HistoricBarStore(new File(FOLDER_NAME));
+        }
+        return self;
+    }
+
+    /**
+     * Retrieves the bars for a period from the store. The bars are only returned
+     * if the store holds ALL bars for the period.
+     * @param ticker - The stock ticker the bars are for
+     * @param barSize - The size of the bars
+     * @param whatToShow - The type of data the bars hold
+     * @param useRTH - integer being 1 if the bars only cover regular trading hours
+     * or 0 if they include data outside regular trading hours
+     * @param fromTime - The start of the period (inclusive) as a timestamp
+     * @param toTime - The end of the period (exclusive) as a timestamp
+     * @param reqId - The request ID to give to the loaded points
+     * @return A TreeSet of the stored bars in the period (may be empty) or NULL if
+     * the store does not hold the whole period and the bars must be requested from
+     * the stockbroker.
+     */
+    public TreeSet<AbstractGraphPoint> loadBars(String ticker, BarSizeSettingEnum barSize, WhatToShowEnum whatToShow, int useRTH, long fromTime, long toTime, int reqId) {
+        TreeSet<AbstractGraphPoint> result = null;
+        if (null != ticker && null != barSize && null != whatToShow && fromTime < toTime) {
+            TreeSet<AbstractGraphPoint> bars = new TreeSet<AbstractGraphPoint>();
+            boolean covered = true;
+            lock.lock();
+            try {
+                long dayStart = this.getDayStart(fromTime);
+                while (covered && dayStart < toTime) {
+                    long dayEnd = this.getDayStart(dayStart + MS_PER_DAY + (MS_PER_DAY / 2));
+                    long start = Math.max(fromTime, dayStart);
+                    long end = Math.min(toTime, dayEnd);
+                    File dayFile = this.getDayFile(ticker, barSize, whatToShow, useRTH, dayStart);
+                    covered = this.readDayFile(dayFile, start, end, reqId, bars);
+                    dayStart = dayEnd;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (covered) {
+                result = bars;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Saves the bars loaded from the stockbroker for a period into the store.
+     * Only the parts of the period that have already ended are saved, so a
+     * window that is still open is never recorded as covered. If the stockbroker
+     * returned bars but none of them fall inside the period then the period does
+     * not match the one the stockbroker used (for example it lands on an exchange
+     * closure) and nothing is saved, the empty period must not be recorded as covered.
+     * @param ticker - The stock ticker the bars are for
+     * @param barSize - The size of the bars
+     * @param whatToShow - The type of data the bars hold
+     * @param useRTH - integer being 1 if the bars only cover regular trading hours
+     * or 0 if they include data outside regular trading hours
+     * @param fromTime - The start of the period (inclusive) as a timestamp
+     * @param toTime - The end of the period (exclusive) as a timestamp
+     * @param bars - A Collection holding ALL the bars the stockbroker returned for the period
+     * @return boolean True if at least one trading day was saved, False otherwise.
+     */
+    public boolean storeBars(String ticker, BarSizeSettingEnum barSize, WhatToShowEnum whatToShow, int useRTH, long fromTime, long toTime, Collection<AbstractGraphPoint> bars) {
+        boolean result = false;
+        if (null != ticker && null != barSize && null != whatToShow && null != bars && fromTime < toTime) {
+            ArrayList<AbstractGraphPoint> sortedBars = new ArrayList<AbstractGraphPoint>(bars);
+            Collections.sort(sortedBars, AbstractGraphPoint.TimeComparator);
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                //Bars returned but none in the period means the period is wrong
+                boolean periodMatched = sortedBars.isEmpty() || this.hasBarInPeriod(sortedBars, fromTime, toTime);
+                int index = 0;
+                long dayStart = this.getDayStart(fromTime);
+                while (periodMatched && dayStart < toTime) {
+                    long dayEnd = this.getDayStart(dayStart + MS_PER_DAY + (MS_PER_DAY / 2));
+                    long start = Math.max(fromTime, dayStart);
+                    long end = Math.min(toTime, dayEnd);
+                    //Gather this days bars
+                    ArrayList<AbstractGraphPoint> dayBars = new ArrayList<AbstractGraphPoint>();
+                    while (index < sortedBars.size() && sortedBars.get(index).getTimestamp() < end) {
+                        AbstractGraphPoint currBar = sortedBars.get(index);
+                        if (currBar.getTimestamp() >= start) {
+                            dayBars.add(currBar);
+                        }
+                        index++;
+                    }
+                    //Only a window that has ended is final
+                    if (end <= now) {
+                        File dayFile = this.getDayFile(ticker, barSize, whatToShow, useRTH, dayStart);
+                        if (this.appendToDayFile(dayFile, start, end, dayBars)) {
+                            result = true;
+                        }
+                    }
+                    dayStart = dayEnd;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests if any of the time ordered bars is in the period from start (inclusive) to end (exclusive)
+     */
+    private boolean hasBarInPeriod(ArrayList<AbstractGraphPoint> sortedBars, long start, long end) {
+        boolean result = false;
+        for (int i = 0; !result && i < sortedBars.size(); i++) {
+            long timestamp = sortedBars.get(i).getTimestamp();
+            result = timestamp >= start && timestamp < end;
+        }
+        return result;
+    }
+
+    /**
+     * Reads the bars in the period from a day file into the provided set
+     * @return boolean True if the file covers the whole period, False otherwise
+     */
+    private boolean readDayFile(File dayFile, long start, long end, int reqId, TreeSet<AbstractGraphPoint> bars) {
+        boolean result = false;
+        if (dayFile.exists()) {
+            ArrayList<long[]> coverage = new ArrayList<long[]>();
+            ArrayList<AbstractGraphPoint> found = new ArrayList<AbstractGraphPoint>();
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(dayFile)));
+                boolean more = true;
+                while (more) {
+                    int type = in.read();
+                    if (BAR_RECORD == type) {
+                        long timestamp = in.readLong();
+                        double open = in.readDouble();
+                        double high = in.readDouble();
+                        double low = in.readDouble();
+                        double close = in.readDouble();
+                        double wap = in.readDouble();
+                        long volume = in.readLong();
+                        int count = in.readInt();
+                        boolean hasGaps = in.readBoolean();
+                        if (timestamp >= start && timestamp < end) {
+                            found.add(new ColumnarGraphPoint(reqId, timestamp, open, high, low, close, wap, volume, count, hasGaps));
+                        }
+                    } else if (COVER_RECORD == type) {
+                        long[] period = new long[2];
+                        period[0] = in.readLong();
+                        period[1] = in.readLong();
+                        coverage.add(period);
+                    } else {
+                        //End of file or an unknown record, stop reading
+                        more = false;
+                    }
+                }
+            } catch (EOFException ex) {
+                //A record cut short by a crash, everything before it is still valid
+            } catch (IOException ex) {
+                Logger.getLogger(HistoricBarStore.class.getName()).log(Level.SEVERE, null, ex);
+                coverage.clear();
+            } finally {
+                if (null != in) {
+                    try {
+                        in.close();
+                    } catch (IOException ex) {
+                        Logger.getLogger(HistoricBarStore.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            }
+            if (this.isCovered(coverage, start, end)) {
+                bars.addAll(found);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests if the union of the coverage periods includes the whole period from start to end
+     */
+    private boolean isCovered(ArrayList<long[]> coverage, long start, long end) {
+        long coveredTo = start;
+        boolean extended = true;
+        //Coverage records are few, repeatedly extend the covered range until it stops growing
+        while (coveredTo < end && extended) {
+            extended = false;
+            for (long[] period : coverage) {
+                if (period[0] <= coveredTo && period[1] > coveredTo) {
+                    coveredTo = period[1];
+                    extended = true;
+                }
+            }
+        }
+        return coveredTo >= end;
+    }
+
+    private boolean appendToDayFile(File dayFile, long start, long end, ArrayList<AbstractGraphPoint> dayBars) {
+        boolean result = false;
+        File folder = dayFile.getParentFile();
+        if (folder.exists() || folder.mkdirs()) {
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dayFile, true)));
+                for (AbstractGraphPoint currBar : dayBars) {
+                    out.writeByte(BAR_RECORD);
+                    out.writeLong(currBar.getTimestamp());
+                    out.writeDouble(currBar.getOpen());
+                    out.writeDouble(currBar.getHigh());
+                    out.writeDouble(currBar.getLow());
+                    out.writeDouble(currBar.getClose());
+                    out.writeDouble(currBar.getWAP());
+                    out.writeLong(currBar.getVolume());
+                    out.writeInt(currBar.getCount());
+                    out.writeBoolean(currBar.isHasGaps());
+                }
+                out.writeByte(COVER_RECORD);
+                out.writeLong(start);
+                out.writeLong(end);
+                out.flush();
+                result = true;
+            } catch (IOException ex) {
+                Logger.getLogger(HistoricBarStore.class.getName()).log(Level.SEVERE, null, ex);
+            } finally {
+                if (null != out) {
+                    try {
+                        out.close();
+                    } catch (IOException ex) {
+                        Logger.getLogger(HistoricBarStore.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private File getDayFile(String ticker, BarSizeSettingEnum barSize, WhatToShowEnum whatToShow, int useRTH, long dayStart) {
+        Calendar cal = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        cal.setTimeInMillis(dayStart);
+        int intDate = DTUtil.convertCalendarToIntDate(cal);
+        File tickerFolder = new File(this.rootFolder, ticker);
+        File barFolder = new File(tickerFolder, barSize.name());
+        File dataFolder = new File(barFolder, whatToShow.name() + (1 == useRTH ? "_RTH" : "_ALL"));
+        return new File(dataFolder, intDate + FILE_EXTENSION);
+    }
+
+    /**
+     * Retrieves midnight (exchange time) at the start of the day containing the timestamp
+     */
+    private long getDayStart(long timestamp) {
+        Calendar cal = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        cal.setTimeInMillis(timestamp);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+}
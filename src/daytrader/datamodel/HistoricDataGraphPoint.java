@@ -40,19 +40,19 @@ public class HistoricDataGraphPoint extends AbstractGraphPoint implements IGraph
      * timestamp
      */
     public HistoricDataGraphPoint(long timestamp, double value){
-        RoundToTenthCent rounder = new RoundToTenthCent();
         this.reqId = 0;
         Date theDate = new Date(timestamp);
         DTUtil.dateToCalendar(theDate, TimeZone.getTimeZone("Europe/London"));
         SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMdd  HH:mm:ss");
         this.date = formatter.format(theDate);
-        this.open = (rounder.performRounding(value)).doubleValue();//value;
-        this.high = (rounder.performRounding(value)).doubleValue();
-        this.low = (rounder.performRounding(value)).doubleValue();
-        this.close = (rounder.performRounding(value)).doubleValue();
+        double price = RoundToTenthCent.round(value);
+        this.open = price;//value;
+        this.high = price;
+        this.low = price;
+        this.close = price;
         this.volume = 0;
         this.count = 0;
-        this.WAP = (rounder.performRounding(value)).doubleValue();
+        this.WAP = price;
         this.hasGaps = true;
         
         this.createCalendarFromTimestamp(timestamp);
@@ -125,12 +125,11 @@ public class HistoricDataGraphPoint extends AbstractGraphPoint implements IGraph
     protected void setValues(double open, double high, double low, double close, double WAP) {
         super.setValues(open, high, low, close, WAP);
         //Now apply stage two rounding
-        BrynRoundingStep2 rounder = new BrynRoundingStep2();
-        this.open = rounder.performRounding(this.open).doubleValue();
-        this.high = rounder.performRounding(this.high).doubleValue();
-        this.low = rounder.performRounding(this.low).doubleValue();
-        this.close = rounder.performRounding(this.close).doubleValue();
-        this.WAP = rounder.performRounding(this.WAP).doubleValue();
+        this.open = BrynRoundingStep2.round(this.open);
+        this.high = BrynRoundingStep2.round(this.high);
+        this.low = BrynRoundingStep2.round(this.low);
+        this.close = BrynRoundingStep2.round(this.close);
+        this.WAP = BrynRoundingStep2.round(this.WAP);
     }
     
     
@@ -138,15 +137,10 @@ public class HistoricDataGraphPoint extends AbstractGraphPoint implements IGraph
     @Override
     public Calendar getCalDate() {
         Calendar result = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-        result.setTime(calDate.getTime());
+        result.setTimeInMillis(this.getTimestamp());
         return result;
     }
 
-    @Override
-    public long getTimestamp() {
-        return this.calDate.getTimeInMillis();
-    }
-
 //    @Override
 //    public boolean equals(Object obj) {
 //        boolean result = false;
@@ -204,8 +198,8 @@ public class HistoricDataGraphPoint extends AbstractGraphPoint implements IGraph
         DateFormat usFormatter = DateFormat.getDateTimeInstance();
         usFormatter.setTimeZone(DTConstants.EXCH_TIME_ZONE);
         gmtFormatter.setTimeZone(TimeZone.getTimeZone("GMT"));
-        String gmtFormat = gmtFormatter.format(this.calDate.getTime());
-        String usFormat = usFormatter.format(this.calDate.getTime());
+        String gmtFormat = gmtFormatter.format(this.getCalendarValue().getTime());
+        String usFormat = usFormatter.format(this.getCalendarValue().getTime());
         result.append(gmtFormat);
         result.append(" GMT, ");
         result.append(usFormat);
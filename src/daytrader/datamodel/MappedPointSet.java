@@ -0,0 +1,425 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A time ordered set of price / time points held in a binary file of fixed
+ * length records that is memory mapped (MappedByteBuffer) rather than held on
+ * the Java heap. The operating systems page cache holds the data, so a previous
+ * days graph costs almost nothing on the heap however many putups are running
+ * and pages that are not being read can be dropped and re-read by the OS.
+ *
+ * File layout (big endian):
+ * Header - int MAGIC, int VERSION, int point count, int RECORD_SIZE
+ * Records - long timestamp, double open, high, low, close, WAP, long volume,
+ * int count, int request ID, byte has gaps, 7 bytes padding
+ *
+ * The mapped data is never modified. A set is written once from a complete
+ * set of points (see BaseGraph.mapToFile()), add(), addAll() and remove() are
+ * supported but each writes a complete new file and maps that in its place so
+ * they should be rare. Sub sets and the copies returned by copy() keep the
+ * mapping they were created from and so never change. A file (for example one
+ * that has been replaced) is deleted as soon as no set still maps it and any
+ * files left behind by an earlier run are removed at startup (see
+ * deleteStaleFiles()). This class
+ * is NOT thread safe, the owning BaseGraph provides the locking.
+ *
+ * @author Roy
+ */
+public class MappedPointSet extends AbstractIndexedPointSet {
+
+    private static final String FOLDER_NAME = "MappedGraphs";
+    private static final String FILE_EXTENSION = ".pts";
+    private static final int MAGIC = 0x44545054;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 72;
+    private static final int OFFSET_OPEN = 8;
+    private static final int OFFSET_HIGH = 16;
+    private static final int OFFSET_LOW = 24;
+    private static final int OFFSET_CLOSE = 32;
+    private static final int OFFSET_WAP = 40;
+    private static final int OFFSET_VOLUME = 48;
+    private static final int OFFSET_COUNT = 56;
+    private static final int OFFSET_REQID = 60;
+    private static final int OFFSET_GAPS = 64;
+    //Used to give every file written in this run a unique name
+    private static final AtomicLong fileCounter = new AtomicLong(System.currentTimeMillis());
+    //Every file written, waiting for the last set that maps it to be garbage collected
+    private static final ReferenceQueue<MappedFile> released = new ReferenceQueue<MappedFile>();
+    private static final Set<FileReference> mappedFiles = Collections.newSetFromMap(new ConcurrentHashMap<FileReference, Boolean>());
+    //Files no longer mapped that could not be deleted yet (the OS may still hold the mapping)
+    private static final ConcurrentLinkedQueue<File> undeletedFiles = new ConcurrentLinkedQueue<File>();
+    private final String baseName;
+    private final boolean readOnly;
+    private MappedFile mapping;
+    //The range of records used by this set [start, end)
+    private int start;
+    private int end;
+
+    /**
+     * Constructor creates a writable set whose files will be named from the
+     * given ticker and name holding the provided points. The points are written
+     * to the file once.
+     * @param ticker - String being the stock ticker the points are for (used as the folder name)
+     * @param name - String used as the start of the file name (usually the day as YYYYMMDD)
+     * @param data - An AbstractIndexedPointSet (usually a ColumnarPointSet) holding
+     * the points to store
+     * @throws IOException if the file cannot be written or mapped
+     */
+    public MappedPointSet(String ticker, String name, AbstractIndexedPointSet data) throws IOException {
+        File folder = new File(new File(FOLDER_NAME), ticker);
+        this.baseName = new File(folder, name).getPath();
+        this.readOnly = false;
+        this.rewrite(data);
+    }
+
+    private MappedPointSet(MappedPointSet source, int newStart, int newEnd) {
+        this.baseName = source.baseName;
+        this.readOnly = true;
+        this.mapping = source.mapping;
+        this.start = newStart;
+        this.end = newEnd;
+    }
+
+    /**
+     * Deletes every mapped graph file in the folder. Mapped files only ever hold
+     * data for the run that wrote them, so this MUST be called once when the
+     * application starts (before any MappedPointSet is created) to remove files
+     * left behind when an earlier run ended without deleting them.
+     */
+    public static void deleteStaleFiles() {
+        File root = new File(FOLDER_NAME);
+        File[] tickerFolders = root.listFiles();
+        if (null != tickerFolders) {
+            for (File currFolder : tickerFolders) {
+                File[] files = currFolder.listFiles();
+                if (null != files) {
+                    for (File currFile : files) {
+                        if (currFile.getName().endsWith(FILE_EXTENSION)) {
+                            currFile.delete();
+                        }
+                    }
+                }
+                currFolder.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates a read only copy of this set. No data is copied, the copy shares
+     * the current mapping which is never modified.
+     * @return A read only MappedPointSet holding the same points as this set
+     */
+    public MappedPointSet copy() {
+        MappedPointSet result = null;
+        if (this.readOnly) {
+            result = this;
+        } else {
+            result = new MappedPointSet(this, this.start, this.end);
+        }
+        return result;
+    }
+
+    /**
+     * Tests if this set may be modified
+     * @return boolean True if this set is read only, False if points may be
+     * added to or removed from it.
+     */
+    public boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    /**
+     * Accessor to retrieve the file currently mapped by this set
+     * @return The File holding the points
+     */
+    public File getFile() {
+        return this.mapping.file;
+    }
+
+    private int offsetOf(int index) {
+        return HEADER_SIZE + ((this.start + index) * RECORD_SIZE);
+    }
+
+    @Override
+    protected long timestampAt(int index) {
+        return this.mapping.buffer.getLong(this.offsetOf(index));
+    }
+
+    /**
+     * Retrieves the scaled WAP (and therefore last price) of the point at the given
+     * position in this set
+     * @param index - integer being the zero based position of the point (earliest first)
+     * @return double being the WAP for the point
+     */
+    public double getWAPAt(int index) {
+        return this.mapping.buffer.getDouble(this.offsetOf(this.checkIndex(index)) + OFFSET_WAP);
+    }
+
+    @Override
+    public AbstractGraphPoint getPointAt(int index) {
+        int offset = this.offsetOf(this.checkIndex(index));
+        ByteBuffer data = this.mapping.buffer;
+        return new ColumnarGraphPoint(data.getInt(offset + OFFSET_REQID),
+                data.getLong(offset),
+                data.getDouble(offset + OFFSET_OPEN),
+                data.getDouble(offset + OFFSET_HIGH),
+                data.getDouble(offset + OFFSET_LOW),
+                data.getDouble(offset + OFFSET_CLOSE),
+                data.getDouble(offset + OFFSET_WAP),
+                data.getLong(offset + OFFSET_VOLUME),
+                data.getInt(offset + OFFSET_COUNT),
+                0 != data.get(offset + OFFSET_GAPS));
+    }
+
+    @Override
+    public int size() {
+        return this.end - this.start;
+    }
+
+    @Override
+    protected MappedPointSet range(int from, int to) {
+        return new MappedPointSet(this, this.start + from, this.start + to);
+    }
+
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("This MappedPointSet is read only");
+        }
+    }
+
+    /**
+     * Copies the points of this set into a writable columnar set so they can be changed
+     */
+    private ColumnarPointSet toColumnar() {
+        ColumnarPointSet result = new ColumnarPointSet();
+        int size = this.size();
+        for (int i = 0; i < size; i++) {
+            result.add(this.getPointAt(i));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean add(AbstractGraphPoint e) {
+        boolean result = false;
+        this.checkWritable();
+        if (null == e) {
+            throw new NullPointerException();
+        }
+        int pos = this.ceilingIndex(e.getTimestamp());
+        if (pos == this.size() || this.timestampAt(pos) != e.getTimestamp()) {
+            ColumnarPointSet newData = this.toColumnar();
+            newData.add(e);
+            this.rewriteOrFail(newData);
+            result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends AbstractGraphPoint> c) {
+        boolean result = false;
+        this.checkWritable();
+        if (null != c && 0 < c.size()) {
+            ColumnarPointSet newData = this.toColumnar();
+            result = newData.addAll(c);
+            if (result) {
+                this.rewriteOrFail(newData);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean result = false;
+        this.checkWritable();
+        if (null != c && 0 < c.size() && 0 < this.size()) {
+            ColumnarPointSet newData = this.toColumnar();
+            result = newData.removeAll(c);
+            if (result) {
+                this.rewriteOrFail(newData);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean result = false;
+        this.checkWritable();
+        if (0 < this.size()) {
+            ColumnarPointSet newData = this.toColumnar();
+            result = newData.retainAll(c);
+            if (result) {
+                this.rewriteOrFail(newData);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected void removeAt(int index) {
+        this.checkWritable();
+        this.checkIndex(index);
+        ColumnarPointSet newData = this.toColumnar();
+        newData.removeAt(index);
+        this.rewriteOrFail(newData);
+    }
+
+    @Override
+    public void clear() {
+        this.checkWritable();
+        if (0 < this.size()) {
+            this.rewriteOrFail(new ColumnarPointSet());
+        }
+    }
+
+    private void rewriteOrFail(ColumnarPointSet newData) {
+        try {
+            this.rewrite(newData);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to write mapped graph file " + this.baseName, ex);
+        }
+    }
+
+    /**
+     * Writes the points to a new file and maps it in place of the current file.
+     * The old file is left for any read only copies still using it and deleted
+     * once they have all been garbage collected (see deleteReleasedFiles()).
+     */
+    private void rewrite(AbstractIndexedPointSet newData) throws IOException {
+        MappedPointSet.deleteReleasedFiles();
+        File newFile = new File(this.baseName + "_" + fileCounter.incrementAndGet() + FILE_EXTENSION);
+        File folder = newFile.getParentFile();
+        if (null != folder && !folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Unable to create folder " + folder.getPath());
+        }
+        int size = newData.size();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(RECORD_SIZE);
+            for (int i = 0; i < size; i++) {
+                AbstractGraphPoint currPoint = newData.getPointAt(i);
+                out.writeLong(currPoint.getTimestamp());
+                out.writeDouble(currPoint.getOpen());
+                out.writeDouble(currPoint.getHigh());
+                out.writeDouble(currPoint.getLow());
+                out.writeDouble(currPoint.getClose());
+                out.writeDouble(currPoint.getWAP());
+                out.writeLong(currPoint.getVolume());
+                out.writeInt(currPoint.getCount());
+                out.writeInt(currPoint.getReqId());
+                out.writeByte(currPoint.isHasGaps() ? 1 : 0);
+                out.write(new byte[RECORD_SIZE - OFFSET_GAPS - 1]);
+            }
+        } finally {
+            out.close();
+        }
+        MappedFile newMapping = null;
+        try {
+            newMapping = new MappedFile(newFile, MappedPointSet.map(newFile));
+        } finally {
+            if (null == newMapping) {
+                newFile.delete();
+            }
+        }
+        mappedFiles.add(new FileReference(newMapping, released));
+        this.mapping = newMapping;
+        this.start = 0;
+        this.end = size;
+    }
+
+    /**
+     * Deletes the files that are no longer mapped by any set
+     */
+    private static void deleteReleasedFiles() {
+        int retries = undeletedFiles.size();
+        for (int i = 0; i < retries; i++) {
+            File currFile = undeletedFiles.poll();
+            if (null != currFile && currFile.exists() && !currFile.delete()) {
+                undeletedFiles.add(currFile);
+            }
+        }
+        Reference<? extends MappedFile> currRef = released.poll();
+        while (null != currRef) {
+            FileReference fileRef = (FileReference) currRef;
+            mappedFiles.remove(fileRef);
+            if (!fileRef.file.delete()) {
+                undeletedFiles.add(fileRef.file);
+            }
+            currRef = released.poll();
+        }
+    }
+
+    private static MappedByteBuffer map(File aFile) throws IOException {
+        MappedByteBuffer result = null;
+        RandomAccessFile raf = new RandomAccessFile(aFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            //The mapping remains valid after the channel is closed
+            result = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        if (MAGIC != result.getInt(0) || VERSION != result.getInt(4) || RECORD_SIZE != result.getInt(12)) {
+            throw new IOException("Not a mapped graph file " + aFile.getPath());
+        }
+        return result;
+    }
+
+    /**
+     * A mapped file and its mapping. Every set using the mapping shares this
+     * object so it becomes unreachable only when no set maps the file.
+     */
+    private static class MappedFile {
+
+        private final File file;
+        private final ByteBuffer buffer;
+
+        MappedFile(File newFile, ByteBuffer newBuffer) {
+            this.file = newFile;
+            this.buffer = newBuffer;
+        }
+    }
+
+    /**
+     * Tracks a MappedFile so its file can be deleted once the mapping is no
+     * longer used
+     */
+    private static class FileReference extends PhantomReference<MappedFile> {
+
+        private final File file;
+
+        FileReference(MappedFile target, ReferenceQueue<MappedFile> queue) {
+            super(target, queue);
+            this.file = target.file;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import daytrader.utils.MarketClock;
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replays the real time data recorded for a trading day (the backups written
+ * by the BackgroundSaveManager) through the trading rules without connecting to
+ * the stockbroker. This lets the CPU cost of the rules be measured over a whole
+ * day and lets the decisions made by the rules be compared before and after a
+ * change to the code.
+ *
+ * For each recorded putup a new run manager in replay mode is created holding the
+ * recorded putup, previous day close and the historic data of the previous days.
+ * The recorded 5 second bars, market data and todays historic data are then added
+ * to its graphs in time order. Before each point is added the MarketClock is set to
+ * the points time so the rules see the same 'NOW' as on the recorded day. After
+ * all the points for a time have been added the rules are run once for every
+ * putup that received data, just as the RealTimeScheduler would run them. The rules
+ * run on the thread that calls call() so a replay of the same data always produces
+ * the same events.
+ *
+ * The replay can be throttled to run at a multiple of real time (speed 60 replays
+ * an hour of trading in a minute) or UNTHROTTLED to run as fast as possible. Every
+ * change of rules state and every potential entry (a new 'clue' Single / Double
+ * pattern) is recorded as a ReplayEvent. The MarketClock is shared by the whole
+ * application so call() claims it from the RealTimeScheduler (see beginReplay())
+ * and refuses to replay while live putups are running. No live putup can start
+ * until the replay ends.
+ *
+ * @author Roy
+ */
+public class MarketReplayEngine implements Callable<MarketReplayEngine> {
+
+    /**
+     * The speed that replays the recorded data as fast as possible
+     */
+    public static final double UNTHROTTLED = 0;
+    private final ReentrantLock lock;
+    private final double speed;
+    private final ArrayList<RealTimeRunManager> recordings;
+    private final ArrayList<ReplayEvent> events;
+    private int pointsReplayed;
+    private int rulesPasses;
+    private long rulesCpuTime;
+    private long rulesTime;
+    private long elapsedTime;
+
+    /**
+     * Constructor that creates a replay engine with no recorded data
+     * @param newSpeed - double being the multiple of real time at which to replay
+     * the data or UNTHROTTLED (any value of zero or less) to replay as fast as possible
+     */
+    public MarketReplayEngine(double newSpeed) {
+        this.lock = new ReentrantLock();
+        this.speed = newSpeed;
+        this.recordings = new ArrayList<RealTimeRunManager>();
+        this.events = new ArrayList<ReplayEvent>();
+    }
+
+    /**
+     * Adds the data recorded for a putup to the replay
+     * @param recorded - A RealTimeRunManager holding the recorded data (for example
+     * as loaded from a backup file)
+     * @return boolean True if the recording has real time data to replay and was
+     * added, False otherwise.
+     */
+    public boolean addRecording(RealTimeRunManager recorded) {
+        boolean result = false;
+        if (null != recorded
+                && null != recorded.getGraph5SecBars().getPrevDayClose()
+                && (0 < recorded.getGraph5SecBars().size() || 0 < recorded.getGraphReqMarketData().size())) {
+            lock.lock();
+            try {
+                this.recordings.add(recorded);
+                result = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the data recorded for a putup to the replay
+     * @param target - A binary snapshot (see RunManagerSnapshot) or XML backup file
+     * @return boolean True if the file was loaded and added to the replay, False otherwise.
+     */
+    public boolean addRecording(File target) {
+        boolean result = false;
+        if (null != target) {
+            RealTimeRunManager recorded = null;
+            if (target.getName().endsWith(RunManagerSnapshot.FILE_EXTENSION)) {
+                recorded = RealTimeRunManager.loadManagerFromSnapshotFile(target);
+            } else {
+                recorded = RealTimeRunManager.loadManagerFromXMLFile(target);
+            }
+            result = this.addRecording(recorded);
+        }
+        return result;
+    }
+
+    /**
+     * Adds every putup recorded in a backup folder (such as a recovery folder)
+     * to the replay. As when recovering a run the binary snapshot of a putup is
+     * used in preference to its XML backup.
+     * @param folder - The folder containing the backup files
+     * @return integer being the number of putups added to the replay
+     */
+    public int addRecordingsFromFolder(File folder) {
+        int result = 0;
+        if (null != folder && folder.canRead()) {
+            FileFilter snapFilter = new SnapshotFileFilter();
+            File[] snapList = folder.listFiles(snapFilter);
+            FileFilter xmlFilter = new XmlFileFilter();
+            File[] fileList = folder.listFiles(xmlFilter);
+            HashSet<String> addedTickers = new HashSet<String>();
+            if (null != snapList) {
+                for (File currFile : snapList) {
+                    String ticker = currFile.getName().substring(0, currFile.getName().length() - RunManagerSnapshot.FILE_EXTENSION.length());
+                    if (this.addRecording(currFile)) {
+                        addedTickers.add(ticker);
+                        result++;
+                    }
+                }
+            }
+            if (null != fileList) {
+                for (File currFile : fileList) {
+                    String ticker = currFile.getName().substring(0, currFile.getName().length() - 4);
+                    if (!addedTickers.contains(ticker) && this.addRecording(currFile)) {
+                        result++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replays all the recorded data through the rules. The events and statistics
+     * of the replay are available from this object once this method returns.
+     * @return This MarketReplayEngine
+     * @throws IllegalStateException if live putups are running or another
+     * replay is running, the MarketClock cannot be used for this replay
+     */
+    @Override
+    public MarketReplayEngine call() throws Exception {
+        RealTimeScheduler scheduler = RealTimeScheduler.getInstance();
+        if (!scheduler.beginReplay()) {
+            throw new IllegalStateException("Cannot replay while live putups or another replay are running");
+        }
+        lock.lock();
+        try {
+            this.events.clear();
+            this.pointsReplayed = 0;
+            this.rulesPasses = 0;
+            this.rulesCpuTime = 0;
+            this.rulesTime = 0;
+            long startTime = System.nanoTime();
+            try {
+                ArrayList<ReplayPoint> timeline = new ArrayList<ReplayPoint>();
+                for (RealTimeRunManager currRecording : this.recordings) {
+                    this.prepareReplay(currRecording, timeline);
+                }
+                //Stable sort, points with the same time keep the order they were added in
+                Collections.sort(timeline, new ReplayPointComparator());
+                this.replayTimeline(timeline);
+            } finally {
+                MarketClock.useSystemTime();
+            }
+            this.elapsedTime = System.nanoTime() - startTime;
+        } finally {
+            lock.unlock();
+            scheduler.endReplay();
+        }
+        return this;
+    }
+
+    /**
+     * Creates the replay manager for a recording and adds the recorded points
+     * that it must receive during the replay to the timeline
+     */
+    private void prepareReplay(RealTimeRunManager recorded, ArrayList<ReplayPoint> timeline) {
+        BaseGraph<AbstractGraphPoint> recorded5SecBars = recorded.getGraph5SecBars();
+        BaseGraph<AbstractGraphPoint> recordedReqMarketData = recorded.getGraphReqMarketData();
+        BaseGraph<AbstractGraphPoint> recordedHistoricData = recorded.getGraphHistoricData();
+        AbstractGraphPoint firstPoint = null;
+        if (0 < recorded5SecBars.size()) {
+            firstPoint = recorded5SecBars.first();
+        }
+        if (0 < recordedReqMarketData.size()
+                && (null == firstPoint || recordedReqMarketData.first().getTimestamp() < firstPoint.getTimestamp())) {
+            firstPoint = recordedReqMarketData.first();
+        }
+        int replayDay = firstPoint.getDateAsNumber();
+        //The manager takes 'today' from the clock so set it to the recorded day
+        MarketClock.setSimulatedTime(firstPoint.getTimestamp());
+        BaseGraph<AbstractGraphPoint> new5SecBars = new BaseGraph<AbstractGraphPoint>();
+        BaseGraph<AbstractGraphPoint> newReqMarketData = new BaseGraph<AbstractGraphPoint>();
+        BaseGraph<AbstractGraphPoint> newHistoricData = new BaseGraph<AbstractGraphPoint>();
+        //Historic data for previous days is available from the start, todays arrives as the day is replayed
+        ArrayList<AbstractGraphPoint> todaysHistoricData = new ArrayList<AbstractGraphPoint>();
+        ArrayList<AbstractGraphPoint> earlierHistoricData = new ArrayList<AbstractGraphPoint>();
+        for (AbstractGraphPoint currPoint : recordedHistoricData) {
+            if (currPoint.getDateAsNumber() < replayDay) {
+                earlierHistoricData.add(currPoint);
+            } else {
+                todaysHistoricData.add(currPoint);
+            }
+        }
+        newHistoricData.addAll(earlierHistoricData);
+        RealTimeRunManager replay = RealTimeRunManager.createReplayManager();
+        replay.initialiseLoadedData(recorded.getMyPutup(), new5SecBars, newReqMarketData, newHistoricData, recorded5SecBars.getPrevDayClose());
+        new5SecBars.copyPreviousGraphs(recorded5SecBars);
+        newReqMarketData.copyPreviousGraphs(recordedReqMarketData);
+        newHistoricData.copyPreviousGraphs(recordedHistoricData);
+        replay.startReplayRun();
+        for (AbstractGraphPoint currPoint : recorded5SecBars) {
+            timeline.add(new ReplayPoint(currPoint, new5SecBars, replay));
+        }
+        for (AbstractGraphPoint currPoint : recordedReqMarketData) {
+            timeline.add(new ReplayPoint(currPoint, newReqMarketData, replay));
+        }
+        for (AbstractGraphPoint currPoint : todaysHistoricData) {
+            timeline.add(new ReplayPoint(currPoint, newHistoricData, replay));
+        }
+    }
+
+    /**
+     * Adds each point on the timeline to its graph at its recorded time and runs
+     * the rules of every putup that received data once all the points for a time
+     * have been added
+     */
+    private void replayTimeline(ArrayList<ReplayPoint> timeline) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean measureCpu = threadBean.isCurrentThreadCpuTimeSupported();
+        LinkedHashSet<RealTimeRunManager> updatedManagers = new LinkedHashSet<RealTimeRunManager>();
+        long wallStart = System.nanoTime();
+        long replayStart = 0;
+        if (0 < timeline.size()) {
+            replayStart = timeline.get(0).timestamp;
+        }
+        boolean stopped = false;
+        int i = 0;
+        while (i < timeline.size() && !stopped) {
+            ReplayPoint currPoint = timeline.get(i);
+            MarketClock.setSimulatedTime(currPoint.timestamp);
+            if (0 < this.speed) {
+                //Wait until the real time that corresponds to this points time
+                long due = wallStart + (long) ((currPoint.timestamp - replayStart) * 1000000d / this.speed);
+                long wait = due - System.nanoTime();
+                if (0 < wait) {
+                    try {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException ex) {
+                        //Stop the replay and leave the interrupt for the caller
+                        Thread.currentThread().interrupt();
+                        stopped = true;
+                    }
+                }
+            }
+            if (!stopped) {
+                currPoint.graph.add(currPoint.point);
+                this.pointsReplayed++;
+                updatedManagers.add(currPoint.manager);
+                i++;
+                if (i == timeline.size() || timeline.get(i).timestamp != currPoint.timestamp) {
+                    for (RealTimeRunManager currManager : updatedManagers) {
+                        this.runRulesPass(currManager, currPoint.timestamp, threadBean, measureCpu);
+                    }
+                    updatedManagers.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one pass of the rules for a putup timing it and recording any change
+     * of state or potential entry
+     */
+    private void runRulesPass(RealTimeRunManager manager, long timestamp, ThreadMXBean threadBean, boolean measureCpu) {
+        RulesStateEnum oldState = manager.getCurrentState();
+        long cpuStart = 0;
+        if (measureCpu) {
+            cpuStart = threadBean.getCurrentThreadCpuTime();
+        }
+        long passStart = System.nanoTime();
+        boolean passed = manager.runRulesPass();
+        this.rulesTime += System.nanoTime() - passStart;
+        if (measureCpu) {
+            this.rulesCpuTime += threadBean.getCurrentThreadCpuTime() - cpuStart;
+        }
+        this.rulesPasses++;
+        RulesStateEnum newState = manager.getCurrentState();
+        String tickerCode = manager.getMyPutup().getTickerCode();
+        if (passed && RulesStateEnum.FIVESECBARONLY != oldState) {
+            //The Single / Double clue rules have found a new pattern
+            this.events.add(new ReplayEvent(timestamp, tickerCode, ReplayEventType.POTENTIALENTRY, oldState, this.getLastPrice(manager)));
+        }
+        if (oldState != newState) {
+            this.events.add(new ReplayEvent(timestamp, tickerCode, ReplayEventType.STATECHANGE, newState, this.getLastPrice(manager)));
+        }
+    }
+
+    //The latest price received by a putup from either real time data graph
+    private double getLastPrice(RealTimeRunManager manager) {
+        double result = 0;
+        AbstractGraphPoint lastPoint = null;
+        BaseGraph<AbstractGraphPoint> graph5SecBars = manager.getGraph5SecBars();
+        BaseGraph<AbstractGraphPoint> graphReqMarketData = manager.getGraphReqMarketData();
+        if (0 < graph5SecBars.size()) {
+            lastPoint = graph5SecBars.last();
+        }
+        if (0 < graphReqMarketData.size()
+                && (null == lastPoint || graphReqMarketData.last().getTimestamp() >= lastPoint.getTimestamp())) {
+            lastPoint = graphReqMarketData.last();
+        }
+        if (null != lastPoint) {
+            result = lastPoint.getLastPrice();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the events recorded by the last replay
+     * @return An ArrayList of the ReplayEvents in the order they occurred
+     */
+    public ArrayList<ReplayEvent> getEvents() {
+        ArrayList<ReplayEvent> result = null;
+        lock.lock();
+        try {
+            result = new ArrayList<ReplayEvent>(this.events);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the number of recorded points added to the graphs by
+     * the last replay
+     * @return integer being the number of points replayed
+     */
+    public int getPointsReplayed() {
+        int result = 0;
+        lock.lock();
+        try {
+            result = this.pointsReplayed;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the number of times the rules were run by the last replay
+     * @return integer being the number of rules passes
+     */
+    public int getRulesPasses() {
+        int result = 0;
+        lock.lock();
+        try {
+            result = this.rulesPasses;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the CPU time used running the rules in the last replay
+     * @return long being the CPU time in nanoseconds or zero if the JVM cannot
+     * measure thread CPU time
+     */
+    public long getRulesCpuTime() {
+        long result = 0;
+        lock.lock();
+        try {
+            result = this.rulesCpuTime;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the elapsed time spent running the rules in the last replay
+     * @return long being the time in nanoseconds
+     */
+    public long getRulesTime() {
+        long result = 0;
+        lock.lock();
+        try {
+            result = this.rulesTime;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the elapsed time taken by the last replay (including
+     * setting up the replay and any throttling)
+     * @return long being the time in nanoseconds
+     */
+    public long getElapsedTime() {
+        long result = 0;
+        lock.lock();
+        try {
+            result = this.elapsedTime;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * A recorded point waiting to be added to a replay managers graph
+     */
+    private static class ReplayPoint {
+
+        private final long timestamp;
+        private final AbstractGraphPoint point;
+        private final BaseGraph<AbstractGraphPoint> graph;
+        private final RealTimeRunManager manager;
+
+        ReplayPoint(AbstractGraphPoint newPoint, BaseGraph<AbstractGraphPoint> newGraph, RealTimeRunManager newManager) {
+            this.timestamp = newPoint.getTimestamp();
+            this.point = newPoint;
+            this.graph = newGraph;
+            this.manager = newManager;
+        }
+    }
+
+    /**
+     * Orders replay points by time
+     */
+    private static class ReplayPointComparator implements Comparator<ReplayPoint> {
+
+        @Override
+        public int compare(ReplayPoint o1, ReplayPoint o2) {
+            return Long.compare(o1.timestamp, o2.timestamp);
+        }
+    }
+}
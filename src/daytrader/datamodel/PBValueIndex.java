@@ -0,0 +1,292 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import daytrader.interfaces.IGraphIndex;
+import java.util.Arrays;
+
+/**
+ * An index over the points of a BaseGraph (in time order) that answers the
+ * questions needed to calculate PB values without re-scanning the graph:
+ * 1) For each point, which is the nearest EARLIER point with a HIGHER price
+ * (the 'previous higher' point)
+ * 2) For each point, which is the earliest LOWEST point between the previous
+ * higher point and itself (the 'lowest since' point)
+ * 3) For each point, which is the nearest earlier point with a LOWER price
+ * (used to jump quickly back to a point at least a PB value below a price)
+ *
+ * All three are found with monotonic stacks in one pass over the data and are
+ * maintained incrementally as new points are appended to the end of the graph.
+ * Points are never changed once stored so any number of threads may query the
+ * index while a single thread (the owning BaseGraph, under its lock) appends.
+ * The arrays and the count of points are published together through one volatile
+ * Columns holder, a reader that takes the holder sees every point it counts even
+ * if the arrays are replaced by a later append.
+ * If the graph changes in any way other than an append a new index is built.
+ *
+ * @author Roy
+ */
+public class PBValueIndex implements IGraphIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private final int version;
+    //Written only by the appending thread, published to readers through data
+    private long[] timestamps;
+    private double[] prices;
+    private int[] prevHigher;
+    private int[] lowestSince;
+    private int[] prevLower;
+    private volatile Columns data;
+    //Stack of indexes with strictly decreasing prices (for prevHigher / lowestSince)
+    private int[] highStack;
+    private int highTop;
+    //Stack of indexes with strictly increasing prices (for prevLower)
+    private int[] lowStack;
+    private int lowTop;
+
+    /**
+     * Constructor creates an empty index.
+     * @param newVersion - integer being the owning graphs structure version at
+     * the time the index was created. The owner uses this to decide when the index
+     * must be rebuilt.
+     */
+    public PBValueIndex(int newVersion) {
+        this.version = newVersion;
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.prices = new double[INITIAL_CAPACITY];
+        this.prevHigher = new int[INITIAL_CAPACITY];
+        this.lowestSince = new int[INITIAL_CAPACITY];
+        this.prevLower = new int[INITIAL_CAPACITY];
+        this.highStack = new int[INITIAL_CAPACITY];
+        this.lowStack = new int[INITIAL_CAPACITY];
+        this.highTop = -1;
+        this.lowTop = -1;
+        this.publish(0);
+    }
+
+    /**
+     * Accessor to retrieve the owning graphs structure version at the time this
+     * index was created
+     * @return integer being the version number
+     */
+    @Override
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Accessor to retrieve the number of points held in the index
+     * @return integer being the number of indexed points
+     */
+    @Override
+    public int size() {
+        return this.data.size;
+    }
+
+    /**
+     * Accessor to retrieve the time of the last point in the index
+     * @return long being the timestamp of the last point or Long.MIN_VALUE if
+     * the index is empty
+     */
+    @Override
+    public long getLastTimestamp() {
+        long result = Long.MIN_VALUE;
+        Columns currData = this.data;
+        if (0 < currData.size) {
+            result = currData.timestamps[currData.size - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Adds a point to the end of the index. The point MUST NOT be earlier than
+     * the last point already indexed. This operation is amortised O(1).
+     * NB: Only one thread may append at a time.
+     * @param aPoint - The Price / Time point to add to the index
+     */
+    @Override
+    public void append(AbstractGraphPoint aPoint) {
+        int i = this.data.size;
+        this.ensureCapacity(i + 1);
+        double price = aPoint.getLastPrice();
+        this.timestamps[i] = aPoint.getTimestamp();
+        this.prices[i] = price;
+        //Previous higher point and the earliest lowest point since it. Every index
+        //popped covers the range (prevHigher[j], j], together they cover (prevHigher[i], i)
+        int lowest = i;
+        while (0 <= this.highTop && this.prices[this.highStack[this.highTop]] <= price) {
+            int candidate = this.lowestSince[this.highStack[this.highTop]];
+            //Later pops are earlier in time so prefer them on a tie
+            if (this.prices[candidate] <= this.prices[lowest]) {
+                lowest = candidate;
+            }
+            this.highTop--;
+        }
+        this.prevHigher[i] = (0 <= this.highTop) ? this.highStack[this.highTop] : -1;
+        this.lowestSince[i] = lowest;
+        this.highStack[++this.highTop] = i;
+        //Previous lower point
+        while (0 <= this.lowTop && this.prices[this.lowStack[this.lowTop]] >= price) {
+            this.lowTop--;
+        }
+        this.prevLower[i] = (0 <= this.lowTop) ? this.lowStack[this.lowTop] : -1;
+        this.lowStack[++this.lowTop] = i;
+        //Publish the new point
+        this.publish(i + 1);
+    }
+
+    private void publish(int newSize) {
+        this.data = new Columns(this.timestamps, this.prices, this.prevHigher, this.lowestSince, this.prevLower, newSize);
+    }
+
+    private void ensureCapacity(int required) {
+        if (this.timestamps.length < required) {
+            int newCapacity = Math.max(required, 2 * this.timestamps.length);
+            this.timestamps = Arrays.copyOf(this.timestamps, newCapacity);
+            this.prices = Arrays.copyOf(this.prices, newCapacity);
+            this.prevHigher = Arrays.copyOf(this.prevHigher, newCapacity);
+            this.lowestSince = Arrays.copyOf(this.lowestSince, newCapacity);
+            this.prevLower = Arrays.copyOf(this.prevLower, newCapacity);
+            this.highStack = Arrays.copyOf(this.highStack, newCapacity);
+            this.lowStack = Arrays.copyOf(this.lowStack, newCapacity);
+        }
+    }
+
+    /**
+     * Counts the number of indexed points that are strictly earlier than the given time
+     * @param timestamp - long being the time in milliseconds
+     * @return integer being the count of earlier points, this is also the position
+     * of the first point at or after the given time.
+     */
+    public int countBefore(long timestamp) {
+        return PBValueIndex.countBefore(this.data, timestamp);
+    }
+
+    private static int countBefore(Columns currData, long timestamp) {
+        int low = 0;
+        int high = currData.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (currData.timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the position of the indexed point with the given time and price
+     * @param timestamp - long being the time of the point in milliseconds
+     * @param price - double being the last price of the point
+     * @return integer being the position of the point or -1 if it is not indexed
+     */
+    public int indexOf(long timestamp, double price) {
+        int result = -1;
+        Columns currData = this.data;
+        for (int i = PBValueIndex.countBefore(currData, timestamp); i < currData.size && currData.timestamps[i] == timestamp; i++) {
+            if (currData.prices[i] == price) {
+                result = i;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the time of an indexed point
+     * @param index - integer being the position of the point
+     * @return long being the points timestamp
+     */
+    public long getTimestamp(int index) {
+        return this.data.timestamps[index];
+    }
+
+    /**
+     * Accessor to retrieve the last price of an indexed point
+     * @param index - integer being the position of the point
+     * @return double being the points last price
+     */
+    public double getPrice(int index) {
+        return this.data.prices[index];
+    }
+
+    /**
+     * Accessor to retrieve the position of the nearest earlier point with a higher price
+     * @param index - integer being the position of the point
+     * @return integer being the position of the previous higher point or -1 if none
+     */
+    public int getPrevHigher(int index) {
+        return this.data.prevHigher[index];
+    }
+
+    /**
+     * Accessor to retrieve the position of the earliest lowest point after the
+     * previous higher point up to and including the given point
+     * @param index - integer being the position of the point
+     * @return integer being the position of the lowest point since the previous higher
+     */
+    public int getLowestSince(int index) {
+        return this.data.lowestSince[index];
+    }
+
+    /**
+     * Accessor to retrieve the position of the nearest earlier point with a lower price
+     * @param index - integer being the position of the point
+     * @return integer being the position of the previous lower point or -1 if none
+     */
+    public int getPrevLower(int index) {
+        return this.data.prevLower[index];
+    }
+
+    /**
+     * Finds the latest point strictly before position end and strictly after
+     * position start whose price is at least pbLimit below the given price.
+     * @param start - integer being the position to search back to (exclusive, may be -1)
+     * @param end - integer being the position to search back from (exclusive)
+     * @param price - double being the price to measure down from
+     * @param pbLimit - double being the minimum price difference required
+     * @return integer being the position of the point found or -1 if none
+     */
+    public int findLatestPBBelow(int start, int end, double price, double pbLimit) {
+        int result = -1;
+        Columns currData = this.data;
+        int k = end - 1;
+        //Every point skipped by a prevLower jump is at or above the price of the
+        //point jumped from and so is also less than pbLimit below the price
+        while (k > start && price - currData.prices[k] < pbLimit) {
+            k = currData.prevLower[k];
+        }
+        if (k > start) {
+            result = k;
+        }
+        return result;
+    }
+
+    /**
+     * Immutable view of the index columns and the number of points in them. A
+     * later append may write beyond size (or replace the arrays) but never changes
+     * the first size entries.
+     */
+    private static final class Columns {
+
+        private final long[] timestamps;
+        private final double[] prices;
+        private final int[] prevHigher;
+        private final int[] lowestSince;
+        private final int[] prevLower;
+        private final int size;
+
+        private Columns(long[] newTimestamps, double[] newPrices, int[] newPrevHigher, int[] newLowestSince, int[] newPrevLower, int newSize) {
+            this.timestamps = newTimestamps;
+            this.prices = newPrices;
+            this.prevHigher = newPrevHigher;
+            this.lowestSince = newLowestSince;
+            this.prevLower = newPrevLower;
+            this.size = newSize;
+        }
+    }
+}
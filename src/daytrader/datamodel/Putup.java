@@ -19,6 +19,8 @@ import daytrader.interfaces.observerpattern.IObserver;
 import daytrader.interfaces.observerpattern.ISubject;
 import daytrader.interfaces.observerpattern.ISubjectDelegate;
 import daytrader.utils.DTUtil;
+import daytrader.utils.MarketClock;
+import daytrader.utils.MinGradientLineFinder;
 import daytradertasks.LoadHistoricDataBatchTask;
 import daytradertasks.LoadHistoricDataPointBatchResult;
 import daytradertasks.PreLoadYLinesTask;
@@ -69,6 +71,8 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
     private RealTimeRunManager runManager;
     //This stores the C points used in Y-Line calc regadless of whether they where included in a provisional Y-Line
     private TreeSet<AbstractGraphPoint> yLineCs;
+    //Records made by the recursive Y-Line algorithm for each 'C' point
+    private final RecursionCacheTable recursionCaches = new RecursionCacheTable();
 
     /**
      * Default constructor that creates an inactive Putup for an UNKNOWN stock
@@ -84,7 +88,7 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
         this.putupType = PutupTypeEnum.LONGS;
         threeMlPrice = 0;
         atrClass = AtrClassEnum.UU;
-        todaysDate = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        todaysDate = MarketClock.getNow();
         lock = new ReentrantLock();
         this.yLineCs = new TreeSet<AbstractGraphPoint>();
         this.initDisplay();
@@ -110,7 +114,7 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
         this.putupType = newType;
         this.threeMlPrice = newThreeMlPrice;
         this.atrClass = newClass;
-        todaysDate = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        todaysDate = MarketClock.getNow();
         lock = new ReentrantLock();
         this.yLineCs = new TreeSet<AbstractGraphPoint>();
         this.initDisplay();
@@ -733,46 +737,17 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
             } finally {
                 this.lock.unlock();
             }
-            //For each high point generate a line from it to every other point between it and end of the graph
-            //Get a graph iterator
-            Iterator<AbstractGraphPoint> iterator = cPointGraph.iterator();
-            while (iterator.hasNext()) {
-                ArrayList<GraphLine> tempList = new ArrayList<GraphLine>();
-                AbstractGraphPoint currPoint = iterator.next();
-                NavigableSet<AbstractGraphPoint> subSet = dataGraph.subSet(currPoint, false, dataGraph.last(), true);
-                for (AbstractGraphPoint subPoint : subSet) {
-                    GraphLine graphLine = new GraphLine(currPoint, subPoint, dataGraph);
-                    graphLine.setTradingDays(dataGraph.getTradingDays());
-                    tempList.add(graphLine);
-                }
-
-                System.out.println("Starting gradients");
-                //Now go through generated lines and find the line with the lowest gradient
-                GraphLine smallestGradient = null;
-                for (GraphLine currLine : tempList) {
-                    if (null != smallestGradient) {
-                        double currSmallGradient = DTUtil.getGraidentBasedOnTradingDays(smallestGradient, this.getMonthCache());
-                        double currLineGradient = DTUtil.getGraidentBasedOnTradingDays(currLine, this.getMonthCache());
-                        StringBuilder msg = new StringBuilder("");
-                        msg.append(currLine.toString());
-                        msg.append(" : Gradient = ");
-                        msg.append(Double.toString(currLineGradient));
-                        System.out.println(msg.toString());
-                        if (Math.abs(currLineGradient) <= Math.abs(currSmallGradient)) {
-                            smallestGradient = currLine;
-                        }
-                    } else {
-                        smallestGradient = currLine;
-                        double currLineGradient = DTUtil.getGraidentBasedOnTradingDays(currLine, this.getMonthCache());
-                        StringBuilder msg = new StringBuilder("");
-                        msg.append(currLine.toString());
-                        msg.append(" : Gradient = ");
-                        msg.append(Double.toString(currLineGradient));
-                        System.out.println(msg.toString());
-                    }
-                }
+            //For each high point find the line from it to a later point in the graph with the smallest gradient
+            System.out.println("Starting gradients");
+            MinGradientLineFinder finder = new MinGradientLineFinder(dataGraph, this.getMonthCache());
+            HashMap<AbstractGraphPoint, AbstractGraphPoint> ePoints = finder.findMinGradientPoints(cPointGraph);
+            TreeSet<Integer> tradingDays = dataGraph.getTradingDays();
+            for (AbstractGraphPoint currPoint : cPointGraph) {
+                AbstractGraphPoint ePoint = ePoints.get(currPoint);
                 //Add smallest gradient to the result (last point of the graph generates a null do not add this)
-                if (null != smallestGradient) {
+                if (null != ePoint) {
+                    GraphLine smallestGradient = new GraphLine(currPoint, ePoint, dataGraph);
+                    smallestGradient.setTradingDays(tradingDays);
                     tempList2.add(smallestGradient);
                 }
             }
@@ -1072,7 +1047,7 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
                                 //Setup cache to store recursion record
                                 RecursionCache cache = new RecursionCache(currentC);
                                 cache.addNewLineToCache(currLine);
-                                currentC.setRecursionCache(cache);
+                                this.recursionCaches.setRecursionCache(currentC, cache);
                                 IGraphLine alternateYLineForPoint = this.getAlternateYLineForPoint(currentE, sourceGraph);
                                 if (null != alternateYLineForPoint) {
                                     ArrayList<IGraphLine> newProvYLine = new ArrayList<IGraphLine>();
@@ -1173,35 +1148,13 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
                 BaseGraph<AbstractGraphPoint> subGraph = graph.replicateGraph();
                 subGraph.clear();
                 subGraph.addAll(subSet);
-                ArrayList<IGraphLine> tempList = new ArrayList<IGraphLine>();
-                for (AbstractGraphPoint subPoint : subGraph) {
-                    IGraphLine graphLine = new GraphLine(aPoint, subPoint, subGraph);
-                    graphLine.setTradingDays(graph.getTradingDays());
-                    tempList.add(graphLine);
-                }
-                //For all these lines find the one with the smallest gradient
+                //Find the line with the smallest gradient
+                MinGradientLineFinder finder = new MinGradientLineFinder(subGraph, this.getMonthCache());
+                AbstractGraphPoint ePoint = finder.findMinGradientPoint(aPoint);
                 IGraphLine smallestGradient = null;
-                for (IGraphLine currLine : tempList) {
-                    if (null != smallestGradient) {
-                        double currSmallGradient = DTUtil.getGraidentBasedOnTradingDays(smallestGradient, this.getMonthCache());
-                        double currLineGradient = DTUtil.getGraidentBasedOnTradingDays(currLine, this.getMonthCache());
-                        StringBuilder msg = new StringBuilder("");
-                        msg.append(currLine.toString());
-                        msg.append(" : Gradient = ");
-                        msg.append(Double.toString(currLineGradient));
-                        System.out.println(msg.toString());
-                        if (Math.abs(currLineGradient) <= Math.abs(currSmallGradient)) {
-                            smallestGradient = currLine;
-                        }
-                    } else {
-                        smallestGradient = currLine;
-                        double currLineGradient = DTUtil.getGraidentBasedOnTradingDays(currLine, this.getMonthCache());
-                        StringBuilder msg = new StringBuilder("");
-                        msg.append(currLine.toString());
-                        msg.append(" : Gradient = ");
-                        msg.append(Double.toString(currLineGradient));
-                        System.out.println(msg.toString());
-                    }
+                if (null != ePoint) {
+                    smallestGradient = new GraphLine(aPoint, ePoint, subGraph);
+                    smallestGradient.setTradingDays(graph.getTradingDays());
                 }
                 result = smallestGradient;
             }
@@ -1287,4 +1240,13 @@ public class Putup implements XMLPersistable<Putup>, Lockable, ICallback, ISubje
     public TreeSet<AbstractGraphPoint> getyLineCs() {
         return yLineCs;
     }
+
+    /**
+     * Retrieves the table of records made by the recursive Y-Line algorithm for
+     * the 'C' points of this putup (see checkYLinesForStandIns())
+     * @return The RecursionCacheTable for this putup
+     */
+    public RecursionCacheTable getRecursionCaches() {
+        return this.recursionCaches;
+    }
 }
\ No newline at end of file
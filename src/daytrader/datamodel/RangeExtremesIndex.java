@@ -0,0 +1,371 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import daytrader.interfaces.IGraphIndex;
+import java.util.Arrays;
+
+/**
+ * An index over the points of a BaseGraph (in time order) that answers range
+ * questions about price without scanning or copying the graph:
+ * 1) Which is the lowest / highest point between two positions
+ * 2) Which is the first point at or after a position whose price is below a
+ * given price (or at or above a given price)
+ * 3) Which is the latest point at or before a position whose price is at or
+ * above a given price
+ *
+ * The price indexed is the points last price (the WAP for all bar data). Two
+ * segment trees of point positions (one for the minimum and one for the maximum
+ * price) are kept so every query is O(log n). Where several points share the
+ * lowest or highest price the LATEST of them is used, the same choice the graph
+ * makes when it calculates its lowest and highest points.
+ *
+ * New points appended to the end of the graph are added in O(log n). If the graph
+ * changes in any other way a new index is built. This class is NOT threadsafe,
+ * the owning BaseGraph appends to and queries the index under its lock.
+ *
+ * @author Roy
+ */
+public class RangeExtremesIndex implements IGraphIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private final int version;
+    private long[] timestamps;
+    private double[] prices;
+    //Segment trees, node n covers nodes 2n and 2n + 1, the leaves start at capacity
+    private int[] minTree;
+    private int[] maxTree;
+    private int capacity;
+    private int size;
+
+    /**
+     * Constructor creates an empty index.
+     * @param newVersion - integer being the owning graphs structure version at
+     * the time the index was created. The owner uses this to decide when the index
+     * must be rebuilt.
+     */
+    public RangeExtremesIndex(int newVersion) {
+        this.version = newVersion;
+        this.allocate(INITIAL_CAPACITY);
+        this.size = 0;
+    }
+
+    private void allocate(int newCapacity) {
+        this.capacity = newCapacity;
+        if (null == this.timestamps) {
+            this.timestamps = new long[newCapacity];
+            this.prices = new double[newCapacity];
+        } else {
+            this.timestamps = Arrays.copyOf(this.timestamps, newCapacity);
+            this.prices = Arrays.copyOf(this.prices, newCapacity);
+        }
+        this.minTree = new int[2 * newCapacity];
+        this.maxTree = new int[2 * newCapacity];
+        Arrays.fill(this.minTree, -1);
+        Arrays.fill(this.maxTree, -1);
+    }
+
+    /**
+     * Accessor to retrieve the owning graphs structure version at the time this
+     * index was created
+     * @return integer being the version number
+     */
+    @Override
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Accessor to retrieve the number of points held in the index
+     * @return integer being the number of indexed points
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Accessor to retrieve the time of the last point in the index
+     * @return long being the timestamp of the last point or Long.MIN_VALUE if
+     * the index is empty
+     */
+    @Override
+    public long getLastTimestamp() {
+        long result = Long.MIN_VALUE;
+        if (0 < this.size) {
+            result = this.timestamps[this.size - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Adds a point to the end of the index. The point MUST NOT be earlier than
+     * the last point already indexed. This operation is O(log n) (the index
+     * doubles in size when full).
+     * @param aPoint - The Price / Time point to add to the index
+     */
+    @Override
+    public void append(AbstractGraphPoint aPoint) {
+        if (this.size == this.capacity) {
+            this.grow();
+        }
+        int i = this.size;
+        this.timestamps[i] = aPoint.getTimestamp();
+        this.prices[i] = aPoint.getLastPrice();
+        this.size = i + 1;
+        int node = this.capacity + i;
+        this.minTree[node] = i;
+        this.maxTree[node] = i;
+        node >>>= 1;
+        while (0 < node) {
+            this.minTree[node] = this.lowerOf(this.minTree[2 * node], this.minTree[2 * node + 1]);
+            this.maxTree[node] = this.higherOf(this.maxTree[2 * node], this.maxTree[2 * node + 1]);
+            node >>>= 1;
+        }
+    }
+
+    private void grow() {
+        this.allocate(2 * this.capacity);
+        for (int i = 0; i < this.size; i++) {
+            this.minTree[this.capacity + i] = i;
+            this.maxTree[this.capacity + i] = i;
+        }
+        for (int node = this.capacity - 1; 0 < node; node--) {
+            this.minTree[node] = this.lowerOf(this.minTree[2 * node], this.minTree[2 * node + 1]);
+            this.maxTree[node] = this.higherOf(this.maxTree[2 * node], this.maxTree[2 * node + 1]);
+        }
+    }
+
+    //Position of the lower priced point, the later point on a tie, -1 is 'no point'
+    private int lowerOf(int a, int b) {
+        int result = a;
+        if (0 > a) {
+            result = b;
+        } else if (0 <= b) {
+            if (this.prices[b] < this.prices[a] || (this.prices[b] == this.prices[a] && b > a)) {
+                result = b;
+            }
+        }
+        return result;
+    }
+
+    //Position of the higher priced point, the later point on a tie, -1 is 'no point'
+    private int higherOf(int a, int b) {
+        int result = a;
+        if (0 > a) {
+            result = b;
+        } else if (0 <= b) {
+            if (this.prices[b] > this.prices[a] || (this.prices[b] == this.prices[a] && b > a)) {
+                result = b;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the number of indexed points that are strictly earlier than the given time
+     * @param timestamp - long being the time in milliseconds
+     * @return integer being the count of earlier points, this is also the position
+     * of the first point at or after the given time.
+     */
+    public int countBefore(long timestamp) {
+        int low = 0;
+        int high = this.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Counts the number of indexed points that are at or earlier than the given time
+     * @param timestamp - long being the time in milliseconds
+     * @return integer being the count of points up to and including the time, this
+     * is also the position after the last point at or before the given time.
+     */
+    public int countUpTo(long timestamp) {
+        int low = 0;
+        int high = this.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Accessor to retrieve the time of an indexed point
+     * @param index - integer being the position of the point
+     * @return long being the points timestamp
+     */
+    public long getTimestamp(int index) {
+        return this.timestamps[index];
+    }
+
+    /**
+     * Accessor to retrieve the last price of an indexed point
+     * @param index - integer being the position of the point
+     * @return double being the points last price
+     */
+    public double getPrice(int index) {
+        return this.prices[index];
+    }
+
+    /**
+     * Finds the lowest priced point in a range of positions
+     * @param from - integer being the position of the first point in the range (inclusive)
+     * @param to - integer being the position after the last point in the range (exclusive)
+     * @return integer being the position of the lowest point (the latest if several
+     * share the lowest price) or -1 if the range is empty
+     */
+    public int getLowest(int from, int to) {
+        int result = -1;
+        int l = Math.max(from, 0) + this.capacity;
+        int r = Math.min(to, this.size) + this.capacity;
+        while (l < r) {
+            if (1 == (l & 1)) {
+                result = this.lowerOf(result, this.minTree[l++]);
+            }
+            if (1 == (r & 1)) {
+                result = this.lowerOf(result, this.minTree[--r]);
+            }
+            l >>>= 1;
+            r >>>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the highest priced point in a range of positions
+     * @param from - integer being the position of the first point in the range (inclusive)
+     * @param to - integer being the position after the last point in the range (exclusive)
+     * @return integer being the position of the highest point (the latest if several
+     * share the highest price) or -1 if the range is empty
+     */
+    public int getHighest(int from, int to) {
+        int result = -1;
+        int l = Math.max(from, 0) + this.capacity;
+        int r = Math.min(to, this.size) + this.capacity;
+        while (l < r) {
+            if (1 == (l & 1)) {
+                result = this.higherOf(result, this.maxTree[l++]);
+            }
+            if (1 == (r & 1)) {
+                result = this.higherOf(result, this.maxTree[--r]);
+            }
+            l >>>= 1;
+            r >>>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the earliest point at or after a position whose price is strictly
+     * below the given price
+     * @param from - integer being the position to search forward from (inclusive)
+     * @param price - double being the price the point must be below
+     * @return integer being the position of the point found or -1 if none
+     */
+    public int findFirstBelow(int from, double price) {
+        int result = -1;
+        if (0 < this.size) {
+            result = this.findFirstBelow(1, 0, this.capacity, Math.max(from, 0), price);
+        }
+        return result;
+    }
+
+    private int findFirstBelow(int node, int nodeStart, int nodeEnd, int from, double price) {
+        int result = -1;
+        int lowest = this.minTree[node];
+        //Skip nodes wholly before the start position or with no point low enough
+        if (nodeEnd > from && 0 <= lowest && this.prices[lowest] < price) {
+            if (node >= this.capacity) {
+                result = node - this.capacity;
+            } else {
+                int mid = (nodeStart + nodeEnd) >>> 1;
+                result = this.findFirstBelow(2 * node, nodeStart, mid, from, price);
+                if (0 > result) {
+                    result = this.findFirstBelow(2 * node + 1, mid, nodeEnd, from, price);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the earliest point at or after a position whose price is at or above
+     * the given price
+     * @param from - integer being the position to search forward from (inclusive)
+     * @param price - double being the price the point must be at or above
+     * @return integer being the position of the point found or -1 if none
+     */
+    public int findFirstAtOrAbove(int from, double price) {
+        int result = -1;
+        if (0 < this.size) {
+            result = this.findFirstAtOrAbove(1, 0, this.capacity, Math.max(from, 0), price);
+        }
+        return result;
+    }
+
+    private int findFirstAtOrAbove(int node, int nodeStart, int nodeEnd, int from, double price) {
+        int result = -1;
+        int highest = this.maxTree[node];
+        //Skip nodes wholly before the start position or with no point high enough
+        if (nodeEnd > from && 0 <= highest && this.prices[highest] >= price) {
+            if (node >= this.capacity) {
+                result = node - this.capacity;
+            } else {
+                int mid = (nodeStart + nodeEnd) >>> 1;
+                result = this.findFirstAtOrAbove(2 * node, nodeStart, mid, from, price);
+                if (0 > result) {
+                    result = this.findFirstAtOrAbove(2 * node + 1, mid, nodeEnd, from, price);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the latest point before a position whose price is at or above the
+     * given price
+     * @param to - integer being the position to search back from (exclusive)
+     * @param price - double being the price the point must be at or above
+     * @return integer being the position of the point found or -1 if none
+     */
+    public int findLatestAtOrAbove(int to, double price) {
+        int result = -1;
+        if (0 < this.size) {
+            result = this.findLatestAtOrAbove(1, 0, this.capacity, Math.min(to, this.size), price);
+        }
+        return result;
+    }
+
+    private int findLatestAtOrAbove(int node, int nodeStart, int nodeEnd, int to, double price) {
+        int result = -1;
+        int highest = this.maxTree[node];
+        //Skip nodes wholly after the end position or with no point high enough
+        if (nodeStart < to && 0 <= highest && this.prices[highest] >= price) {
+            if (node >= this.capacity) {
+                result = node - this.capacity;
+            } else {
+                int mid = (nodeStart + nodeEnd) >>> 1;
+                result = this.findLatestAtOrAbove(2 * node + 1, mid, nodeEnd, to, price);
+                if (0 > result) {
+                    result = this.findLatestAtOrAbove(2 * node, nodeStart, mid, to, price);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -6,6 +6,7 @@ package daytrader.datamodel;
 
 import daytradertasks.RealTimeFiveSecBarRequest;
 import static daytrader.datamodel.CallbackType.HISTORICDATATRADINGDAYS;
+import daytrader.backgroundSaveManager.BackgroundSaveManager;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
 import daytrader.historicRequestSystem.PriorityEnum;
@@ -13,7 +14,9 @@ import daytrader.historicRequestSystem.TWSAccount;
 import daytrader.historicRequestSystem.TWSAccountList;
 import daytrader.interfaces.ICallback;
 import daytrader.interfaces.XMLPersistable;
+import daytrader.interfaces.observerpattern.IObserver;
 import daytrader.utils.DTUtil;
+import daytrader.utils.MarketClock;
 import daytradertasks.LoadHistoricDataPointBatchResult;
 import daytradertasks.LoadPrevDayClose;
 import daytradertasks.PreLoadYLinesTask;
@@ -25,9 +28,6 @@ import java.io.IOException;
 import java.util.Calendar;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,17 +54,14 @@ import rules.ThreeMLRanging;
  */
 public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersistable<RealTimeRunManager> {
 
-    private static final long SLEEP_TIME = 750;
     private ReentrantLock lock;
+    //Registered with the graphs while the rules are running to request a rules pass when data arrives
+    private final DataChangedObserver dataObserver = new DataChangedObserver();
     private Putup myPutup;
     private BaseGraph<AbstractGraphPoint> graph5SecBars;
     private BaseGraph<AbstractGraphPoint> graphReqMarketData;
     private BaseGraph<AbstractGraphPoint> graphHistoricData;
     private TWSAccount genAcc;
-    private ExecutorService exec5SecBar;
-    private ExecutorCompletionService execService5SecBar;
-    private ExecutorService execReqMktData;
-    private ExecutorCompletionService execServiceReqMktData;
     private RealTimeFiveSecBarRequest initialReq;
     private RequestMarketDataTask reqMrkDataReq;
     private RulesStateManager rulesManager;
@@ -76,6 +73,13 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
     //Also need a checker for the final 3m range test
     private ThreeMLRanging threeMChecker;
     private ShowJOptionWinError errorWin;
+    //Write ahead journal of the real time data for this putup (opened when first needed)
+    private TickJournal tickJournal;
+    private File tickJournalFile;
+    //Journal offsets (per channel) recorded by the snapshot this manager was loaded from
+    private long[] tickJournalReplayStart;
+    //True if this manager is driven by a MarketReplayEngine rather than live data
+    private boolean replaying;
 
     private RealTimeRunManager() {
         this.lock = new ReentrantLock();
@@ -91,9 +95,6 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
         //Initialise Historic Data graph
         this.graphHistoricData = new BaseGraph<AbstractGraphPoint>();
 
-        this.exec5SecBar = Executors.newFixedThreadPool(1);
-        this.execService5SecBar = new ExecutorCompletionService(this.exec5SecBar);
-
         TWSAccountList accountList = HistoricRequestProcessingSystem.getInstance().getAccounts();
         //Use the first account on the list for non historic data requests
         if (0 < accountList.size()) {
@@ -126,7 +127,7 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
         this.graphHistoricData.setPutup(this.myPutup);
         this.graphHistoricData.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
 
-        this.myPutup.setTodaysDate(Calendar.getInstance(DTConstants.EXCH_TIME_ZONE));
+        this.myPutup.setTodaysDate(MarketClock.getNow());
         this.rulesManager = new RulesStateManager(this.myPutup.getPutupType(), this);
         this.patternChecker = new SingleDoubleCheck(this.graphHistoricData);
 
@@ -171,12 +172,156 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
         return result;
     }
 
+    /**
+     * This method loads a binary recovery snapshot (see RunManagerSnapshot) and
+     * creates an instance of this class initialised using the data it holds. It
+     * is the binary equivalent of loadManagerFromXMLFile().
+     * @param target - A File containing a snapshot of a RealTimeRunManager object
+     * @return The loaded RealTimeRunManager object or NULL if no data could be found
+     */
+    public static RealTimeRunManager loadManagerFromSnapshotFile(File target) {
+        RealTimeRunManager result = null;
+        if (null != target && target.canRead()) {
+            result = new RealTimeRunManager();
+            if (!RunManagerSnapshot.loadSnapshot(target, result)) {
+                result = null;
+            }
+        }
+        return result;
+    }
+
     private void makeInitialRequest() {
         lock.lock();
         try {
             if (null != this.genAcc) {
                 this.initialReq = new RealTimeFiveSecBarRequest(this.graph5SecBars, this.genAcc);
-                this.execService5SecBar.submit(initialReq);
+                this.initialReq.setTickJournal(this.getTickJournal());
+                RealTimeScheduler.getInstance().startDataRequest(this.initialReq);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private File getTickJournalFile() {
+        return new File(BackgroundSaveManager.getTodaysRecoveryFolder(), this.myPutup.getTickerCode() + TickJournal.FILE_EXTENSION);
+    }
+
+    /**
+     * Retrieves the write ahead journal for this putup, opening it the first time
+     * it is needed. A journal left open from a previous trading day is closed and
+     * todays journal opened in its place.
+     * @return The putups TickJournal or NULL if it could not be opened
+     */
+    private TickJournal getTickJournal() {
+        TickJournal result = null;
+        lock.lock();
+        try {
+            File todaysFile = this.getTickJournalFile();
+            if (null != this.tickJournal && !todaysFile.equals(this.tickJournalFile)) {
+                this.closeTickJournal();
+            }
+            if (null == this.tickJournal) {
+                try {
+                    this.tickJournal = new TickJournal(todaysFile);
+                    this.tickJournalFile = todaysFile;
+                } catch (IOException ex) {
+                    Logger.getLogger(RealTimeRunManager.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+            result = this.tickJournal;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Replays the points held in this putups write ahead journal (see TickJournal)
+     * into the 5 second bar and market data graphs so that the real time data
+     * received since the last background save is recovered without requesting it
+     * again. Points the graphs already hold are ignored. This should be called
+     * when a run is recovered, before the real time data requests are restarted.
+     * @return boolean True if the journal was replayed, False if this putup has no journal
+     */
+    public boolean replayTickJournal() {
+        boolean result = false;
+        if (this.getTickJournalFile().exists()) {
+            TickJournal journal = this.getTickJournal();
+            if (null != journal) {
+                //A snapshot already holds the points journalled before its offsets
+                long fiveSecStart = 0;
+                long marketDataStart = 0;
+                lock.lock();
+                try {
+                    if (null != this.tickJournalReplayStart) {
+                        fiveSecStart = this.tickJournalReplayStart[TickJournal.FIVE_SEC_BARS];
+                        marketDataStart = this.tickJournalReplayStart[TickJournal.MARKET_DATA];
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                this.graph5SecBars.addAll(journal.readPoints(TickJournal.FIVE_SEC_BARS, fiveSecStart));
+                this.graphReqMarketData.addAll(journal.readPoints(TickJournal.MARKET_DATA, marketDataStart));
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the offsets in this putups journal before which every point is
+     * in the graphs (see TickJournal.getAppliedOffset()). Read these BEFORE the
+     * graphs are backed up.
+     * @return An array of the offsets indexed by journal channel or NULL if the
+     * journal is not open
+     */
+    long[] getTickJournalOffsets() {
+        long[] result = null;
+        lock.lock();
+        try {
+            if (null != this.tickJournal) {
+                result = new long[]{this.tickJournal.getAppliedOffset(TickJournal.FIVE_SEC_BARS),
+                    this.tickJournal.getAppliedOffset(TickJournal.MARKET_DATA)};
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Sets the journal offsets recorded by the snapshot this manager was loaded
+     * from, replayTickJournal() only replays the points after them
+     * @param offsets - An array of the offsets indexed by journal channel or NULL
+     * to replay the whole journal
+     */
+    void setTickJournalReplayStart(long[] offsets) {
+        lock.lock();
+        try {
+            this.tickJournalReplayStart = offsets;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops journalling this putups real time data, the journal is forced to disk
+     * and closed. Called when the putups rules run ends (at the end of the trading
+     * day) or the putup is removed. The journal is re-opened if it is needed again.
+     */
+    public void closeTickJournal() {
+        lock.lock();
+        try {
+            if (null != this.tickJournal) {
+                if (null != this.initialReq) {
+                    this.initialReq.setTickJournal(null);
+                }
+                if (null != this.reqMrkDataReq) {
+                    this.reqMrkDataReq.setTickJournal(null);
+                }
+                this.tickJournal.close();
+                this.tickJournal = null;
             }
         } finally {
             lock.unlock();
@@ -201,38 +346,127 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
         return result;
     }
 
+    /**
+     * Starts testing the trading rules against this putup (see startRulesRun())
+     * @return Void
+     * @throws Exception never thrown
+     */
     @Override
     public Void call() throws Exception {
+        this.startRulesRun();
+        return null;
+    }
+
+    /**
+     * Starts testing the trading rules against this putup until the end of the
+     * trading day. The rules are run by the shared RealTimeScheduler whenever one
+     * of this putups graphs receives new data so this method returns immediately.
+     * @return boolean True if the rules run started, False if it is already
+     * running or a market replay is running (the replay owns the MarketClock)
+     */
+    public boolean startRulesRun() {
         //Store this running manager as the owner for the rules group
         this.rulesManager.setRealTimeRunManager(this);
-        //From now until the end of the day test the rules every second against this putup
+        //From now until the end of the day test the rules against this putup
         //Determine end of trading day
         long endTime = DTUtil.getExchClosingCalendar(this.myPutup.getTodaysDate()).getTimeInMillis();
-        long nextCheckTime = System.currentTimeMillis() + 1000;                 //One second after the start of running
-        boolean blnEnd = false;
-        while (!blnEnd) {
-            long currentTimeMillis = System.currentTimeMillis();
-            if (currentTimeMillis > endTime) {
-                blnEnd = true;
-            } else {
-                if (currentTimeMillis >= nextCheckTime) {
-                    nextCheckTime += 1000;                                          //Advance another second
-                    //Test rules group to see if we should proceed
-                    try {
-                        if (this.rulesManager.checkCurrentRules()) {
-                            this.changeToNextState();
-                        }
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        this.printToConsole("Exception in rules testing, " + ex.getMessage());
-                    }
+        boolean result = RealTimeScheduler.getInstance().startRulesRun(this, endTime);
+        if (result) {
+            //Only the run that started listens for data, a refused start leaves any running run untouched
+            this.graph5SecBars.registerObserver(this.dataObserver);
+            this.graphReqMarketData.registerObserver(this.dataObserver);
+            this.graphHistoricData.registerObserver(this.dataObserver);
+            //Cover any data that arrived before the observers were registered
+            this.requestRulesPass();
+        }
+        return result;
+    }
+
+    /**
+     * Creates an empty run manager to be driven by a MarketReplayEngine. Once it
+     * has been initialised with the recorded data (see initialiseLoadedData()) the
+     * engine adds the recorded points to its graphs and runs the rules itself. A
+     * replaying manager never requests data from the stockbroker.
+     * @return A new RealTimeRunManager in replay mode
+     */
+    static RealTimeRunManager createReplayManager() {
+        RealTimeRunManager result = new RealTimeRunManager();
+        result.replaying = true;
+        return result;
+    }
+
+    /**
+     * Test to determine if this manager is driven by a MarketReplayEngine
+     * @return boolean True if the manager is replaying recorded data, False if
+     * it is running against live data
+     */
+    boolean isReplaying() {
+        return this.replaying;
+    }
+
+    /**
+     * Prepares a replaying manager to have its rules tested. Unlike startRulesRun()
+     * the rules are not run by the RealTimeScheduler, the MarketReplayEngine calls
+     * runRulesPass() as it replays each point in time.
+     */
+    void startReplayRun() {
+        this.rulesManager.setRealTimeRunManager(this);
+    }
+
+    /**
+     * Runs one pass of the trading rules for this putup. Called only by the
+     * RealTimeScheduler (or a MarketReplayEngine) which never runs two passes for
+     * one putup at the same time.
+     * @return boolean True if the current rules were passed, False otherwise
+     */
+    boolean runRulesPass() {
+        boolean result = false;
+        //Test rules group to see if we should proceed
+        try {
+            if (this.rulesManager.checkCurrentRules()) {
+                result = true;
+                RulesStateEnum oldState = this.rulesManager.getCurrState();
+                this.changeToNextState();
+                if (oldState != this.rulesManager.getCurrState()) {
+                    //Test the new rules against the data already held
+                    this.requestRulesPass();
                 }
             }
-            //Yield any remaining CPU time in this time slice - Changed to sleep to avoid constantly holding a CPU
-            //Thread.yield();
-            Thread.sleep(SLEEP_TIME);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            this.printToConsole("Exception in rules testing, " + ex.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Called by the RealTimeScheduler when the rules run for this putup ends
+     */
+    void rulesRunEnded() {
+        this.graph5SecBars.removeObserver(this.dataObserver);
+        this.graphReqMarketData.removeObserver(this.dataObserver);
+        this.graphHistoricData.removeObserver(this.dataObserver);
+        this.closeTickJournal();
+    }
+
+    /**
+     * Requests a pass of the trading rules for this putup. Requests made while a
+     * pass is running, or before a requested pass starts, are combined into one
+     * further pass. This method never blocks and may be called from any thread.
+     */
+    public void requestRulesPass() {
+        RealTimeScheduler.getInstance().requestRulesPass(this);
+    }
+
+    /**
+     * Registered with this putups graphs to start a rules pass when their data changes
+     */
+    private class DataChangedObserver implements IObserver {
+
+        @Override
+        public void update() {
+            requestRulesPass();
         }
-        return null;
     }
 
     /**
@@ -346,36 +580,17 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
                             //This is for today
                             this.graphHistoricData.addAll(aResult.loadedPoints);
                         } else {
-                            //This is for previous day
-                            int key = lastPoint.getDateAsNumber();
-                            //See if the graph already exists
-                            if (this.graphHistoricData.getPreviousGraphs().containsKey(key)) {
-                                //Get existing Graph and add the new points
-                                BaseGraph prevDayGraph = this.graphHistoricData.getPreviousGraphs().get(key);
-                                prevDayGraph.addAll(aResult.loadedPoints);
-                            } else {
-                                //No graph exists add this as a new graph
-                                BaseGraph<AbstractGraphPoint> pointsAsGraph = aResult.getPointsAsGraph();
-                                this.graphHistoricData.addPreviousGraph(key, pointsAsGraph);
-                            }
+                            //This is for previous day (one batch of it)
+                            this.storePreviousDayData(lastPoint.getDateAsNumber(), aResult, false);
                         }
                     }
                     break;
                 case HISTORICDATAPREVIOUSDAYS:
                     if (data instanceof LoadHistoricDataPointBatchResult) {
                         LoadHistoricDataPointBatchResult aResult = (LoadHistoricDataPointBatchResult) data;
-                        BaseGraph<AbstractGraphPoint> pointsAsGraph = aResult.getPointsAsGraph();
                         AbstractGraphPoint lastPoint = aResult.loadedPoints.last();
-                        int key = lastPoint.getDateAsNumber();
-                        //See if the graph already exists
-                        if (this.graphHistoricData.getPreviousGraphs().containsKey(key)) {
-                            //Get existing Graph and add the new points
-                            BaseGraph prevDayGraph = this.graphHistoricData.getPreviousGraphs().get(key);
-                            prevDayGraph.addAll(aResult.loadedPoints);
-                        } else {
-                            //No graph exists add this as a new graph
-                            this.graphHistoricData.addPreviousGraph(key, pointsAsGraph);
-                        }
+                        //This is a whole previous day
+                        this.storePreviousDayData(lastPoint.getDateAsNumber(), aResult, true);
                     }
                     break;
                 case HISTORICDATATODAY:
@@ -451,6 +666,37 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
         return graphHistoricData;
     }
 
+    /**
+     * Adds loaded data for a previous day to that days graph. The graph is built
+     * up on the heap (as a columnar graph) while its batches arrive and is only
+     * written to a memory mapped file, once, when the whole day has been loaded.
+     * @param key - integer being the previous day in the form YYYYMMDD
+     * @param aResult - The loaded data for the day
+     * @param wholeDay - boolean True if the result holds the whole day, False if
+     * it is one batch that may be followed by earlier batches.
+     */
+    private void storePreviousDayData(int key, LoadHistoricDataPointBatchResult aResult, boolean wholeDay) {
+        BaseGraph prevDayGraph = this.graphHistoricData.getPreviousGraphs().get(key);
+        if (null != prevDayGraph) {
+            //Add the new points to the existing graph
+            prevDayGraph.addAll(aResult.loadedPoints);
+        } else {
+            //No graph exists add this as a new graph
+            BaseGraph<AbstractGraphPoint> newGraph = aResult.getPointsAsColumnarGraph();
+            this.graphHistoricData.addPreviousGraph(key, newGraph);
+            prevDayGraph = newGraph;
+        }
+        //Batches are loaded backwards from the close, the day is complete once the opening is reached
+        boolean loaded = wholeDay;
+        if (!loaded && 0 < prevDayGraph.size()) {
+            AbstractGraphPoint firstPoint = prevDayGraph.first();
+            loaded = firstPoint.getTimestamp() <= DTUtil.getExchOpeningCalendar(firstPoint.getCalDate()).getTimeInMillis();
+        }
+        if (loaded && prevDayGraph.isColumnar()) {
+            prevDayGraph.mapToFile(this.myPutup.getTickerCode(), key);
+        }
+    }
+
     private void changeToNextState() {
         RulesStateEnum currState = this.rulesManager.getCurrState();
         //Lock out rules testing while we change state
@@ -475,17 +721,13 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
                     break;
                 case FIVESECBARPLUSMARKETDATA:
                     this.rulesManager.changeRuleStateTo(RulesStateEnum.FIVESECBARPLUSMARKETDATA);
-                    //Make the request for market data
-                    if (null == this.reqMrkDataReq || (null != this.reqMrkDataReq && !this.reqMrkDataReq.isRunning())) {
+                    //Make the request for market data (a replay already has the recorded market data)
+                    if (!this.replaying && (null == this.reqMrkDataReq || (null != this.reqMrkDataReq && !this.reqMrkDataReq.isRunning()))) {
                         this.reqMrkDataReq = null;
-                        this.execReqMktData = Executors.newFixedThreadPool(1);
-                        //this.execServiceReqMktData = new ExecutorCompletionService(DTConstants.THREAD_POOL);
                         RequestMarketDataTask newReq = new RequestMarketDataTask(this.graphReqMarketData, this.genAcc);
+                        newReq.setTickJournal(this.getTickJournal());
                         this.reqMrkDataReq = newReq;
-                        //this.execServiceReqMktData.submit(newReq);
-                        CallableToRunnable task = new CallableToRunnable(newReq);
-                        Thread newThread = new Thread(task);
-                        newThread.start();
+                        RealTimeScheduler.getInstance().startDataRequest(newReq);
                     }
                     break;
                 case TESTINGSINGLEDOUBLE:
@@ -635,44 +877,63 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
                 }
             }
             //Ensure we have valid results for all temp variables
-            if (null != tempPutup
-                    && null != tempGraph5SecBars
-                    && null != tempGraphReqMarketData
-                    && null != tempGraphHistoricData
-                    && null != tempGraphPrevDayData
-                    && null != prevDayClose) {
-                //We have valid data setup the relationships for the manager to work
-                dest.myPutup = tempPutup;
-                dest.myPutup.setRunManager(dest);
-                dest.graph5SecBars = tempGraph5SecBars;
-                dest.graphReqMarketData = tempGraphReqMarketData;
-                dest.graphHistoricData = tempGraphHistoricData;
-
-                //Initialise 5 Sec bar graph
-                dest.graph5SecBars.setPutup(dest.myPutup);
-                dest.graph5SecBars.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
-
-                //Initialise Request Market Data graph
-                dest.graphReqMarketData.setPutup(dest.myPutup);
-                dest.graphReqMarketData.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
-
-                //Initialise Historic Data graph
-                dest.graphHistoricData.setPutup(dest.myPutup);
-                dest.graphHistoricData.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
-
-                dest.graph5SecBars.setPrevDayClose(prevDayClose);
-                dest.graphReqMarketData.setPrevDayClose(prevDayClose);
-                dest.graphHistoricData.setPrevDayClose(prevDayClose);
-
-                dest.myPutup.setTodaysDate(Calendar.getInstance(DTConstants.EXCH_TIME_ZONE));
-                dest.rulesManager = new RulesStateManager(dest.myPutup.getPutupType(), dest);
-                dest.patternChecker = new SingleDoubleCheck(dest.graphHistoricData);
-                result = true;
+            if (null != tempGraphPrevDayData) {
+                result = dest.initialiseLoadedData(tempPutup, tempGraph5SecBars, tempGraphReqMarketData, tempGraphHistoricData, prevDayClose);
             }
         }
         return result;
     }
 
+    /**
+     * Sets up a run manager created to hold data loaded from a backup (XML file or
+     * binary snapshot) so that it is ready to run.
+     * @param newPutup - The loaded Putup
+     * @param new5SecBars - The loaded 5 second bar graph
+     * @param newReqMarketData - The loaded market data graph
+     * @param newHistoricData - The loaded historic data graph
+     * @param prevDayClose - The loaded previous day close point
+     * @return boolean True if all the data was provided and the manager initialised,
+     * False otherwise.
+     */
+    boolean initialiseLoadedData(Putup newPutup, BaseGraph<AbstractGraphPoint> new5SecBars, BaseGraph<AbstractGraphPoint> newReqMarketData,
+            BaseGraph<AbstractGraphPoint> newHistoricData, AbstractGraphPoint prevDayClose) {
+        boolean result = false;
+        if (null != newPutup
+                && null != new5SecBars
+                && null != newReqMarketData
+                && null != newHistoricData
+                && null != prevDayClose) {
+            //We have valid data setup the relationships for the manager to work
+            this.myPutup = newPutup;
+            this.myPutup.setRunManager(this);
+            this.graph5SecBars = new5SecBars;
+            this.graphReqMarketData = newReqMarketData;
+            this.graphHistoricData = newHistoricData;
+
+            //Initialise 5 Sec bar graph
+            this.graph5SecBars.setPutup(this.myPutup);
+            this.graph5SecBars.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
+
+            //Initialise Request Market Data graph
+            this.graphReqMarketData.setPutup(this.myPutup);
+            this.graphReqMarketData.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
+
+            //Initialise Historic Data graph
+            this.graphHistoricData.setPutup(this.myPutup);
+            this.graphHistoricData.setTradingDays(DTConstants.TRADINGDAYSLASTWEEK);
+
+            this.graph5SecBars.setPrevDayClose(prevDayClose);
+            this.graphReqMarketData.setPrevDayClose(prevDayClose);
+            this.graphHistoricData.setPrevDayClose(prevDayClose);
+
+            this.myPutup.setTodaysDate(MarketClock.getNow());
+            this.rulesManager = new RulesStateManager(this.myPutup.getPutupType(), this);
+            this.patternChecker = new SingleDoubleCheck(this.graphHistoricData);
+            result = true;
+        }
+        return result;
+    }
+
     @Override
     public boolean writeAsXMLToStream(XMLStreamWriter writer) {
         boolean result = false;
@@ -783,27 +1044,4 @@ public class RealTimeRunManager implements Callable<Void>, ICallback, XMLPersist
             System.out.println(this.strMsg);
         }
     }
-
-    /**
-     * Wrapper class to convert a Java Callable to a Java Runnable
-     */
-    private class CallableToRunnable implements Runnable {
-
-        private Callable callable;
-
-        public CallableToRunnable(Callable target) {
-            this.callable = target;
-        }
-
-        @Override
-        public void run() {
-            try {
-                this.callable.call();
-            } catch (Exception ex) {
-                Logger.getLogger(RealTimeRunManager.class.getName()).log(Level.SEVERE, null, ex);
-                System.err.println("Callable error was: " + ex.getMessage());
-                ex.printStackTrace();
-            }
-        }
-    }
 }
@@ -0,0 +1,449 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the real time work of every running putup on a small fixed set of
+ * threads rather than on threads of their own:
+ * 1) Rules passes run on a work stealing pool with one thread per CPU. The passes
+ * for any one putup always run one at a time (never in parallel) and requests
+ * made while a pass is queued or running are combined into one further pass.
+ * 2) Real time data requests (AbstractDataRequest) are polled every SLEEP_TIME
+ * by a small pool of I/O threads. The data itself arrives on the stock brokers
+ * socket reader thread. A poll must never block these threads, connecting to the
+ * stock brokers server (which can hang) is run on a separate pool of connect
+ * threads (see executeConnect()).
+ * 3) One of the I/O threads runs a heartbeat that ends each putups run at the
+ * close of trading. No rules pass is run without new data, every rule works out
+ * the time of day from the timestamps of the graph points it tests, not from the
+ * clock. A pass that moves a putup on to its next rules state is followed by a
+ * further pass so the new rules are tested against the data already held.
+ *
+ * The MarketClock is shared by the whole application so a market replay (see
+ * MarketReplayEngine) and live putups must never run at the same time. A replay
+ * must call beginReplay() before it sets a simulated time, this refuses while any
+ * live putup is running and while the replay runs no live rules run may start.
+ *
+ * Queue depth and pass latency metrics are kept for display and tuning. This is
+ * a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class RealTimeScheduler {
+
+    /**
+     * Time in milliseconds between checks for putups that have reached the end of their run
+     */
+    public static final long HEARTBEAT_TIME = 1000;
+    private static final int IO_THREADS = 2;
+    //Run states of a putup
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int RUNNING_RERUN = 3;
+    private static RealTimeScheduler self;
+    private final ForkJoinPool rulesPool;
+    private final ScheduledExecutorService ioPool;
+    private final ExecutorService connectPool;
+    private final ConcurrentHashMap<RealTimeRunManager, RulesRun> runs;
+    //Guards starting live runs against starting a replay
+    private final ReentrantLock replayLock;
+    private boolean replaying;
+    //Metrics
+    private final AtomicInteger queuedPasses;
+    private final AtomicLong passCount;
+    private final AtomicLong totalPassNanos;
+    private final AtomicLong maxPassNanos;
+    private final AtomicLong totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+
+    private RealTimeScheduler() {
+        this.rulesPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        ScheduledThreadPoolExecutor ioExec = new ScheduledThreadPoolExecutor(IO_THREADS, new DaemonThreadFactory("RealTime-IO-"));
+        ioExec.setRemoveOnCancelPolicy(true);
+        this.ioPool = ioExec;
+        this.connectPool = Executors.newCachedThreadPool(new DaemonThreadFactory("RealTime-Connect-"));
+        this.runs = new ConcurrentHashMap<RealTimeRunManager, RulesRun>();
+        this.replayLock = new ReentrantLock();
+        this.queuedPasses = new AtomicInteger(0);
+        this.passCount = new AtomicLong(0);
+        this.totalPassNanos = new AtomicLong(0);
+        this.maxPassNanos = new AtomicLong(0);
+        this.totalWaitNanos = new AtomicLong(0);
+        this.maxWaitNanos = new AtomicLong(0);
+        this.ioPool.scheduleWithFixedDelay(new Heartbeat(), HEARTBEAT_TIME, HEARTBEAT_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Accessor to retrieve the single instance of the real time scheduler
+     * @return The RealTimeScheduler for this application
+     */
+    public static synchronized RealTimeScheduler getInstance() {
+        if (null == self) {
+            self = new RealTimeScheduler();
+        }
+        return self;
+    }
+
+    /**
+     * Starts running the trading rules for a putup. Passes are run whenever
+     * requestRulesPass() is called for the manager until the end time is reached.
+     * @param manager - The RealTimeRunManager whose rules should be run
+     * @param endTime - long being the time in milliseconds at which to stop (end of the trading day)
+     * @return boolean True if the run was started, False if it was already running
+     * or a market replay is running
+     */
+    public boolean startRulesRun(RealTimeRunManager manager, long endTime) {
+        boolean result = false;
+        if (null != manager) {
+            RulesRun newRun = new RulesRun(manager, endTime);
+            replayLock.lock();
+            try {
+                if (!this.replaying) {
+                    result = null == this.runs.putIfAbsent(manager, newRun);
+                }
+            } finally {
+                replayLock.unlock();
+            }
+            if (result) {
+                this.schedule(newRun);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Claims the MarketClock for a market replay. The claim is refused while any
+     * live putup is running or has been set up to run (see DTConstants.getRunningRecords2())
+     * or while another replay is running. Until endReplay() is called no live
+     * rules run may start.
+     * @return boolean True if the replay may run, False otherwise.
+     */
+    public boolean beginReplay() {
+        boolean result = false;
+        replayLock.lock();
+        try {
+            if (!this.replaying && this.runs.isEmpty() && DTConstants.getRunningRecords2().isEmpty()) {
+                this.replaying = true;
+                result = true;
+            }
+        } finally {
+            replayLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Releases the claim on the MarketClock made by beginReplay(), live rules
+     * runs may start again
+     */
+    public void endReplay() {
+        replayLock.lock();
+        try {
+            this.replaying = false;
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    /**
+     * Test to determine if a market replay is running
+     * @return boolean True if a replay has claimed the MarketClock, False otherwise.
+     */
+    public boolean isReplaying() {
+        boolean result = false;
+        replayLock.lock();
+        try {
+            result = this.replaying;
+        } finally {
+            replayLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Stops running the trading rules for a putup. A pass that is already running
+     * is allowed to finish.
+     * @param manager - The RealTimeRunManager whose rules should stop
+     */
+    public void stopRulesRun(RealTimeRunManager manager) {
+        if (null != manager) {
+            RulesRun oldRun = this.runs.remove(manager);
+            if (null != oldRun) {
+                manager.rulesRunEnded();
+            }
+        }
+    }
+
+    /**
+     * Requests a rules pass for a putup. If a pass is already queued for the putup
+     * nothing more is done, if one is running a further pass is run after it.
+     * This method never blocks.
+     * @param manager - The RealTimeRunManager whose rules should be run
+     */
+    public void requestRulesPass(RealTimeRunManager manager) {
+        if (null != manager) {
+            RulesRun run = this.runs.get(manager);
+            if (null != run) {
+                this.schedule(run);
+            }
+        }
+    }
+
+    /**
+     * Starts polling a real time data request on the shared I/O threads. The
+     * request is polled every SLEEP_TIME milliseconds until its poll() method
+     * returns false.
+     * @param request - The AbstractDataRequest to run
+     */
+    public void startDataRequest(AbstractDataRequest request) {
+        if (null != request) {
+            this.ioPool.execute(new DataRequestPoller(request));
+        }
+    }
+
+    /**
+     * Runs a connection attempt to the stock brokers server on the connect
+     * threads rather than the I/O threads, so a slow or hanging connection never
+     * delays the polling of other requests or the heartbeat.
+     * @param connectTask - A Runnable that connects to the stock brokers server
+     */
+    public void executeConnect(Runnable connectTask) {
+        if (null != connectTask) {
+            this.connectPool.execute(connectTask);
+        }
+    }
+
+    private void schedule(RulesRun run) {
+        boolean submit = false;
+        boolean done = false;
+        while (!done) {
+            int state = run.state.get();
+            switch (state) {
+                case IDLE:
+                    if (run.state.compareAndSet(IDLE, QUEUED)) {
+                        submit = true;
+                        done = true;
+                    }
+                    break;
+                case RUNNING:
+                    done = run.state.compareAndSet(RUNNING, RUNNING_RERUN);
+                    break;
+                default:
+                    //Already queued or already due to run again
+                    done = true;
+                    break;
+            }
+        }
+        if (submit) {
+            run.requestedAt = System.nanoTime();
+            this.queuedPasses.incrementAndGet();
+            this.rulesPool.execute(run);
+        }
+    }
+
+    /**
+     * Accessor to retrieve the number of putups whose rules are being run
+     * @return integer being the number of running putups
+     */
+    public int getRunningPutups() {
+        return this.runs.size();
+    }
+
+    /**
+     * Accessor to retrieve the number of rules passes waiting for a thread
+     * @return integer being the number of queued rules passes
+     */
+    public int getQueueDepth() {
+        return this.queuedPasses.get();
+    }
+
+    /**
+     * Accessor to retrieve the number of rules passes run
+     * @return long being the number of completed rules passes
+     */
+    public long getPassCount() {
+        return this.passCount.get();
+    }
+
+    /**
+     * Accessor to retrieve the mean time taken to run a rules pass
+     * @return double being the mean pass time in milliseconds
+     */
+    public double getMeanPassMillis() {
+        return this.mean(this.totalPassNanos.get());
+    }
+
+    /**
+     * Accessor to retrieve the longest time taken to run a rules pass
+     * @return double being the maximum pass time in milliseconds
+     */
+    public double getMaxPassMillis() {
+        return this.maxPassNanos.get() / 1000000d;
+    }
+
+    /**
+     * Accessor to retrieve the mean time a rules pass waited for a thread after
+     * it was requested
+     * @return double being the mean wait in milliseconds
+     */
+    public double getMeanWaitMillis() {
+        return this.mean(this.totalWaitNanos.get());
+    }
+
+    /**
+     * Accessor to retrieve the longest time a rules pass waited for a thread
+     * after it was requested
+     * @return double being the maximum wait in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return this.maxWaitNanos.get() / 1000000d;
+    }
+
+    /**
+     * Builds a one line summary of the scheduler metrics
+     * @return String describing the queue depth and pass latency
+     */
+    public String getMetricsSummary() {
+        return String.format("Putups: %d, Queued: %d, Passes: %d, Pass ms (mean / max): %.2f / %.2f, Wait ms (mean / max): %.2f / %.2f",
+                this.getRunningPutups(), this.getQueueDepth(), this.getPassCount(),
+                this.getMeanPassMillis(), this.getMaxPassMillis(),
+                this.getMeanWaitMillis(), this.getMaxWaitMillis());
+    }
+
+    private double mean(long totalNanos) {
+        double result = 0;
+        long count = this.passCount.get();
+        if (0 < count) {
+            result = (totalNanos / (double) count) / 1000000d;
+        }
+        return result;
+    }
+
+    private static void recordMax(AtomicLong max, long value) {
+        long curr = max.get();
+        while (value > curr && !max.compareAndSet(curr, value)) {
+            curr = max.get();
+        }
+    }
+
+    /**
+     * The rules run of one putup. Runs one rules pass each time it is executed
+     * and re-submits itself if another pass was requested while it ran.
+     */
+    private class RulesRun implements Runnable {
+
+        private final RealTimeRunManager manager;
+        private final long endTime;
+        private final AtomicInteger state;
+        private volatile long requestedAt;
+
+        RulesRun(RealTimeRunManager newManager, long newEndTime) {
+            this.manager = newManager;
+            this.endTime = newEndTime;
+            this.state = new AtomicInteger(IDLE);
+        }
+
+        @Override
+        public void run() {
+            queuedPasses.decrementAndGet();
+            this.state.set(RUNNING);
+            long start = System.nanoTime();
+            long wait = start - this.requestedAt;
+            try {
+                if (runs.get(this.manager) == this) {
+                    this.manager.runRulesPass();
+                }
+            } finally {
+                long passTime = System.nanoTime() - start;
+                passCount.incrementAndGet();
+                totalPassNanos.addAndGet(passTime);
+                totalWaitNanos.addAndGet(wait);
+                recordMax(maxPassNanos, passTime);
+                recordMax(maxWaitNanos, wait);
+                if (!this.state.compareAndSet(RUNNING, IDLE)) {
+                    //Another pass was requested while this one ran
+                    this.state.set(IDLE);
+                    schedule(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends the run of any putup whose end time has passed
+     */
+    private class Heartbeat implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                long now = System.currentTimeMillis();
+                for (Map.Entry<RealTimeRunManager, RulesRun> currEntry : runs.entrySet()) {
+                    RulesRun currRun = currEntry.getValue();
+                    if (now > currRun.endTime) {
+                        stopRulesRun(currEntry.getKey());
+                    }
+                }
+            } catch (Exception ex) {
+                //Never let an exception stop the heartbeat
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Polls a real time data request and re-schedules itself until the request finishes
+     */
+    private class DataRequestPoller implements Runnable {
+
+        private final AbstractDataRequest request;
+
+        DataRequestPoller(AbstractDataRequest newRequest) {
+            this.request = newRequest;
+        }
+
+        @Override
+        public void run() {
+            if (this.request.poll()) {
+                ioPool.schedule(this, this.request.SLEEP_TIME, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Creates named daemon threads so the I/O threads never keep the application alive
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        DaemonThreadFactory(String newPrefix) {
+            this.prefix = newPrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = new Thread(r, this.prefix + this.counter.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the RecursionCache records made by the recursive Y-Line algorithm for
+ * the 'C' points of a putup. The records are kept here rather than on the
+ * points themselves so that graph points never change once they are built.
+ *
+ * Records are keyed on the time of the point, the same key used to order and
+ * find points in a graph, so a record is found whichever copy of a point is
+ * used to look it up. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class RecursionCacheTable {
+
+    private final ConcurrentHashMap<Long, RecursionCache> caches;
+
+    /**
+     * Default Constructor creates an empty table
+     */
+    public RecursionCacheTable() {
+        this.caches = new ConcurrentHashMap<Long, RecursionCache>();
+    }
+
+    /**
+     * Retrieves a copy of the recursion cache record for a point
+     * @param aPoint - The Price / Time point (usually a 'C' point) whose record is required
+     * @return A deep copy of the points RecursionCache or NULL if it has none
+     */
+    public RecursionCache getRecursionCache(AbstractGraphPoint aPoint) {
+        RecursionCache result = null;
+        if (null != aPoint) {
+            RecursionCache cache = this.caches.get(aPoint.getTimestamp());
+            if (null != cache) {
+                result = new RecursionCache(cache);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the recursion cache record for a point replacing any existing record
+     * @param aPoint - The Price / Time point (usually a 'C' point) the record is for
+     * @param newCache - A Recursion Cache generated by the Y-Line calculations
+     * @return boolean True if the cache was accepted and stored, False otherwise.
+     */
+    public boolean setRecursionCache(AbstractGraphPoint aPoint, RecursionCache newCache) {
+        boolean result = false;
+        if (null != aPoint && null != newCache) {
+            this.caches.put(aPoint.getTimestamp(), newCache);
+            result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Removes every recursion cache record
+     */
+    public void clear() {
+        this.caches.clear();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Records an event that occurred while a MarketReplayEngine replayed a trading
+ * day. The events of two replays of the same recorded data can be compared
+ * (for example as the text produced by toString()) to confirm that a change to
+ * the code has not changed the decisions made by the rules.
+ *
+ * This is an immutable and therefore THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class ReplayEvent {
+
+    private final long timestamp;
+    private final String tickerCode;
+    private final ReplayEventType type;
+    private final RulesStateEnum state;
+    private final double price;
+
+    /**
+     * Constructor that creates a new event
+     * @param newTimestamp - long being the simulated time at which the event occurred
+     * @param newTickerCode - String being the ticker code of the putup
+     * @param newType - The kind of event
+     * @param newState - The rules state changed to (STATECHANGE) or in which the
+     * potential entry was found (POTENTIALENTRY)
+     * @param newPrice - double being the last price of the putup at the time of the event
+     */
+    public ReplayEvent(long newTimestamp, String newTickerCode, ReplayEventType newType, RulesStateEnum newState, double newPrice) {
+        this.timestamp = newTimestamp;
+        this.tickerCode = newTickerCode;
+        this.type = newType;
+        this.state = newState;
+        this.price = newPrice;
+    }
+
+    /**
+     * Accessor to retrieve the simulated time at which the event occurred
+     * @return long being the time in milliseconds
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * Accessor to retrieve the ticker code of the putup the event relates to
+     * @return String being the ticker code
+     */
+    public String getTickerCode() {
+        return this.tickerCode;
+    }
+
+    /**
+     * Accessor to retrieve the kind of event
+     * @return A ReplayEventType
+     */
+    public ReplayEventType getType() {
+        return this.type;
+    }
+
+    /**
+     * Accessor to retrieve the rules state the event relates to
+     * @return A RulesStateEnum being the state changed to (STATECHANGE) or the
+     * state in which the potential entry was found (POTENTIALENTRY)
+     */
+    public RulesStateEnum getState() {
+        return this.state;
+    }
+
+    /**
+     * Accessor to retrieve the last price of the putup at the time of the event
+     * @return double being the price
+     */
+    public double getPrice() {
+        return this.price;
+    }
+
+    @Override
+    public String toString() {
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        formatter.setTimeZone(DTConstants.EXCH_TIME_ZONE);
+        String result = formatter.format(new Date(this.timestamp)) + " " + this.tickerCode + " " + this.type + " " + this.state + " " + this.price;
+        return result;
+    }
+}
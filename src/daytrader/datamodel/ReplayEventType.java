@@ -0,0 +1,22 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+/**
+ * This enumeration describes the kinds of event recorded by a MarketReplayEngine
+ * @author Roy
+ */
+public enum ReplayEventType {
+
+    /**
+     * A putups RulesStateManager changed to a new rules state
+     */
+    STATECHANGE,
+    /**
+     * A putup that is scanning for a Single / Double pattern found a new 'clue'
+     * pattern, the stock is behaving in a manner likely to lead to entry
+     */
+    POTENTIALENTRY;
+}
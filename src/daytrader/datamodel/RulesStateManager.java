@@ -242,9 +242,12 @@ public class RulesStateManager {
             case TESTINGSINGLEDOUBLE:
                 //A new 'clue' single double has been found start a thread to update the historic graph
                 //Perform FTG, 3M checks, confirm single double from historic data and ensure not IG'd
-                TestRoundOneComplete task = new TestRoundOneComplete(this.owner);
-                ExecutorService serv = DTConstants.THREAD_POOL;
-                serv.submit(task);
+                //(a replay cannot load historic data from the stockbroker so it skips this test)
+                if (!this.owner.isReplaying()) {
+                    TestRoundOneComplete task = new TestRoundOneComplete(this.owner);
+                    ExecutorService serv = DTConstants.THREAD_POOL;
+                    serv.submit(task);
+                }
                 break;
         }
     }
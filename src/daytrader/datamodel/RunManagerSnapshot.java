@@ -0,0 +1,402 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * A binary recovery snapshot of a RealTimeRunManager. Every backup used to write
+ * the whole of a putups data as XML, so each backup took longer as the day went
+ * on. A snapshot file is instead an append only sequence of binary records and
+ * each backup only appends the points that have been added to the graphs since
+ * the previous backup (see BaseGraph.getStructureVersion()):
+ * 'H' - Header: MAGIC, VERSION (always the first record)
+ * 'U' - The putup as XML (only written when it has changed)
+ * 'C' - The previous day close point (only written when it has changed)
+ * 'X' - Clear a graph, written before re-writing all of a graphs points if the
+ * graph has changed in any way other than new points being added to the end
+ * 'P' - Points to add to a graph: graph number, point count, points (see GraphPointCodec)
+ * 'J' - Tick journal offsets: the 5 second bar and market data offsets before
+ * which every journalled point is in the graphs (see TickJournal.getAppliedOffset()).
+ * Read before the graphs so recovery only replays the journal after them. Only
+ * written when they have changed.
+ * 'K' - Commit: the time of the backup. Written last so that a backup cut short
+ * by a crash is ignored when the snapshot is loaded.
+ *
+ * The file is re-written from scratch when the snapshot is first written by this
+ * run of the application, after a failed backup and when cleared graphs have left
+ * it holding more than twice the points in the graphs.
+ *
+ * The same data the XML backup restores is saved (the previous days graph and
+ * the rules state are not restored from an XML backup and are not saved). The
+ * writer is THREADSAFE, one snapshot object should be kept for each putup for
+ * the life of the backup system.
+ *
+ * @author Roy
+ */
+public class RunManagerSnapshot {
+
+    /**
+     * The file extension used for snapshot files
+     */
+    public static final String FILE_EXTENSION = ".snap";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int MAGIC = 0x44545253;
+    private static final int VERSION = 2;
+    //Version 1 snapshots have no journal offsets and can still be loaded
+    private static final int FIRST_VERSION = 1;
+    private static final byte HEADER_RECORD = 'H';
+    private static final byte PUTUP_RECORD = 'U';
+    private static final byte CLOSE_RECORD = 'C';
+    private static final byte CLEAR_RECORD = 'X';
+    private static final byte POINTS_RECORD = 'P';
+    private static final byte JOURNAL_RECORD = 'J';
+    private static final byte COMMIT_RECORD = 'K';
+    //Graph numbers: 5 sec bars, market data and historic data
+    private static final int GRAPH_COUNT = 3;
+    //Cleared graphs may leave the file at most this many times the size of the graphs
+    private static final int MAX_FILE_GROWTH = 2;
+    private final File file;
+    private final ReentrantLock lock;
+    //Length of the file after the last successful backup, -1 if it must be re-written
+    private long committedLength;
+    //The state of the putup and graphs as last written to the file
+    private byte[] savedPutup;
+    private AbstractGraphPoint savedPrevDayClose;
+    private long[] savedJournalOffsets;
+    private final BaseGraph<?>[] savedGraphs;
+    private final int[] savedVersions;
+    private final int[] savedSizes;
+    //Number of points held in the file (including those in cleared graphs)
+    private long savedPointCount;
+
+    /**
+     * Constructor creates a snapshot writer for the putup of a run manager
+     * @param recoveryFolder - File object representing the directory to store the snapshot in
+     * @param manager - The RealTimeRunManager that will be backed up
+     */
+    public RunManagerSnapshot(File recoveryFolder, RealTimeRunManager manager) {
+        this.file = new File(recoveryFolder, manager.getMyPutup().getTickerCode() + FILE_EXTENSION);
+        this.lock = new ReentrantLock();
+        this.committedLength = -1;
+        this.savedGraphs = new BaseGraph<?>[GRAPH_COUNT];
+        this.savedVersions = new int[GRAPH_COUNT];
+        this.savedSizes = new int[GRAPH_COUNT];
+    }
+
+    /**
+     * Accessor to retrieve the snapshot file
+     * @return A File object representing the snapshot file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Backs up a run manager to the snapshot file. Only the changes since the
+     * last backup are written unless the file must be re-written.
+     * @param manager - The RealTimeRunManager to backup (the same manager on every call)
+     * @return boolean True if the backup was written, False otherwise.
+     */
+    public boolean writeSnapshot(RealTimeRunManager manager) {
+        boolean result = false;
+        if (null != manager) {
+            lock.lock();
+            try {
+                boolean rewrite = 0 > this.committedLength
+                        || this.file.length() != this.committedLength
+                        || this.savedPointCount > MAX_FILE_GROWTH * this.getSavedSize();
+                File target = this.file;
+                if (rewrite) {
+                    target = new File(this.file.getPath() + TEMP_EXTENSION);
+                    this.savedPutup = null;
+                    this.savedPrevDayClose = null;
+                    this.savedJournalOffsets = null;
+                    Arrays.fill(this.savedGraphs, null);
+                    this.savedPointCount = 0;
+                }
+                DataOutputStream out = null;
+                try {
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target, !rewrite)));
+                    if (rewrite) {
+                        out.writeByte(HEADER_RECORD);
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                    }
+                    this.writeChanges(out, manager);
+                    out.writeByte(COMMIT_RECORD);
+                    out.writeLong(System.currentTimeMillis());
+                    out.close();
+                    out = null;
+                    if (rewrite) {
+                        //Only replace the last good snapshot once the new one is complete, atomically so
+                        //a crash always leaves either the old or the new snapshot in place
+                        Files.move(target.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    this.committedLength = this.file.length();
+                    result = true;
+                } catch (IOException ex) {
+                    Logger.getLogger(RunManagerSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+                } finally {
+                    if (null != out) {
+                        try {
+                            out.close();
+                        } catch (IOException ex) {
+                            Logger.getLogger(RunManagerSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+                    }
+                }
+                if (!result) {
+                    this.committedLength = -1;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    private long getSavedSize() {
+        long result = 0;
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            if (null != this.savedGraphs[i]) {
+                result += this.savedSizes[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes every change made to the run manager since the last backup. The saved
+     * state is updated as it goes, if the write fails the file is re-written next time.
+     */
+    private void writeChanges(DataOutputStream out, RealTimeRunManager manager) throws IOException {
+        byte[] putupXML = toXML(manager.getMyPutup());
+        if (null == this.savedPutup || !Arrays.equals(putupXML, this.savedPutup)) {
+            out.writeByte(PUTUP_RECORD);
+            out.writeInt(putupXML.length);
+            out.write(putupXML);
+            this.savedPutup = putupXML;
+        }
+        AbstractGraphPoint prevDayClose = manager.getGraph5SecBars().getPrevDayClose();
+        if (null != prevDayClose && prevDayClose != this.savedPrevDayClose) {
+            out.writeByte(CLOSE_RECORD);
+            GraphPointCodec.writePoint(out, prevDayClose);
+            this.savedPrevDayClose = prevDayClose;
+        }
+        //Every point journalled before these offsets is in the graphs saved below
+        long[] journalOffsets = manager.getTickJournalOffsets();
+        if (null != journalOffsets && !Arrays.equals(journalOffsets, this.savedJournalOffsets)) {
+            out.writeByte(JOURNAL_RECORD);
+            out.writeLong(journalOffsets[TickJournal.FIVE_SEC_BARS]);
+            out.writeLong(journalOffsets[TickJournal.MARKET_DATA]);
+            this.savedJournalOffsets = journalOffsets;
+        }
+        this.writeGraphChanges(out, 0, manager.getGraph5SecBars());
+        this.writeGraphChanges(out, 1, manager.getGraphReqMarketData());
+        this.writeGraphChanges(out, 2, manager.getGraphHistoricData());
+    }
+
+    private void writeGraphChanges(DataOutputStream out, int graphNo, BaseGraph<AbstractGraphPoint> graph) throws IOException {
+        ArrayList<AbstractGraphPoint> newPoints = null;
+        graph.acquireObjectLock();
+        try {
+            int version = graph.getStructureVersion();
+            int size = graph.size();
+            if (graph == this.savedGraphs[graphNo]
+                    && version == this.savedVersions[graphNo]
+                    && size >= this.savedSizes[graphNo]) {
+                //Only new points have been added to the end of the graph
+                newPoints = graph.getLastPoints(size - this.savedSizes[graphNo]);
+            } else {
+                if (null != this.savedGraphs[graphNo]) {
+                    out.writeByte(CLEAR_RECORD);
+                    out.writeByte(graphNo);
+                }
+                newPoints = graph.getLastPoints(size);
+            }
+            this.savedGraphs[graphNo] = graph;
+            this.savedVersions[graphNo] = version;
+            this.savedSizes[graphNo] = size;
+        } finally {
+            graph.releaseObjectLock();
+        }
+        if (0 < newPoints.size()) {
+            out.writeByte(POINTS_RECORD);
+            out.writeByte(graphNo);
+            out.writeInt(newPoints.size());
+            for (AbstractGraphPoint currPoint : newPoints) {
+                GraphPointCodec.writePoint(out, currPoint);
+            }
+            this.savedPointCount += newPoints.size();
+        }
+    }
+
+    private static byte[] toXML(Putup putup) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        putup.acquireObjectLock();
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(bytes, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            putup.writeAsXMLToStream(writer);
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            putup.releaseObjectLock();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Putup fromXML(byte[] putupXML) {
+        Putup result = null;
+        try {
+            XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(new ByteArrayInputStream(putupXML));
+            while (null == result && reader.hasNext()) {
+                XMLEvent nextEvent = reader.nextEvent();
+                if (nextEvent.isStartElement() && nextEvent.asStartElement().getName().getLocalPart().equals("Putup")) {
+                    Putup newPutup = new Putup();
+                    if (newPutup.loadFromXMLStream(reader, newPutup)) {
+                        result = newPutup;
+                    }
+                    break;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            Logger.getLogger(RunManagerSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Loads the data held in a snapshot file into a newly created run manager.
+     * Only backups that were completely written (ended with a commit record) are
+     * loaded.
+     * @param target - A File containing a snapshot written by writeSnapshot()
+     * @param dest - The RealTimeRunManager to initialise with the loaded data
+     * @return boolean True if the snapshot was loaded, False otherwise
+     */
+    static boolean loadSnapshot(File target, RealTimeRunManager dest) {
+        boolean result = false;
+        //Data as read so far and as it was at the last commit record
+        byte[] putupXML = null;
+        byte[] committedPutupXML = null;
+        AbstractGraphPoint prevDayClose = null;
+        AbstractGraphPoint committedPrevDayClose = null;
+        long[] journalOffsets = null;
+        long[] committedJournalOffsets = null;
+        ArrayList<ArrayList<AbstractGraphPoint>> graphPoints = new ArrayList<ArrayList<AbstractGraphPoint>>();
+        ArrayList<ArrayList<AbstractGraphPoint>> committedPoints = new ArrayList<ArrayList<AbstractGraphPoint>>();
+        int[] committedSizes = new int[GRAPH_COUNT];
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            graphPoints.add(new ArrayList<AbstractGraphPoint>());
+            committedPoints.add(graphPoints.get(i));
+        }
+        boolean committed = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(target)));
+            boolean more = HEADER_RECORD == in.read() && MAGIC == in.readInt();
+            if (more) {
+                int version = in.readInt();
+                more = FIRST_VERSION <= version && VERSION >= version;
+            }
+            while (more) {
+                int type = in.read();
+                if (PUTUP_RECORD == type) {
+                    putupXML = new byte[in.readInt()];
+                    in.readFully(putupXML);
+                } else if (CLOSE_RECORD == type) {
+                    prevDayClose = GraphPointCodec.readPoint(in);
+                } else if (JOURNAL_RECORD == type) {
+                    journalOffsets = new long[]{in.readLong(), in.readLong()};
+                } else if (CLEAR_RECORD == type) {
+                    //Start a new list, the last commit may still need the old one
+                    graphPoints.set(in.readByte(), new ArrayList<AbstractGraphPoint>());
+                } else if (POINTS_RECORD == type) {
+                    ArrayList<AbstractGraphPoint> points = graphPoints.get(in.readByte());
+                    int count = in.readInt();
+                    points.ensureCapacity(points.size() + count);
+                    for (int i = 0; i < count; i++) {
+                        AbstractGraphPoint currPoint = GraphPointCodec.readPoint(in);
+                        if (null != currPoint) {
+                            points.add(currPoint);
+                        }
+                    }
+                } else if (COMMIT_RECORD == type) {
+                    in.readLong();
+                    committedPutupXML = putupXML;
+                    committedPrevDayClose = prevDayClose;
+                    committedJournalOffsets = journalOffsets;
+                    for (int i = 0; i < GRAPH_COUNT; i++) {
+                        committedPoints.set(i, graphPoints.get(i));
+                        committedSizes[i] = graphPoints.get(i).size();
+                    }
+                    committed = true;
+                } else {
+                    //End of file or an unknown record, stop reading
+                    more = false;
+                }
+            }
+        } catch (EOFException ex) {
+            //A backup cut short by a crash, everything before its commit record is still valid
+        } catch (IOException ex) {
+            //A damaged record, everything before it is still valid
+            Logger.getLogger(RunManagerSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IndexOutOfBoundsException ex) {
+            //A corrupt graph number
+            Logger.getLogger(RunManagerSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(RunManagerSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        //As for an XML backup the putup and previous day close are required
+        if (committed && null != committedPutupXML && null != committedPrevDayClose) {
+            Putup putup = fromXML(committedPutupXML);
+            if (null != putup) {
+                ArrayList<BaseGraph<AbstractGraphPoint>> graphs = new ArrayList<BaseGraph<AbstractGraphPoint>>();
+                for (int i = 0; i < GRAPH_COUNT; i++) {
+                    BaseGraph<AbstractGraphPoint> graph = new BaseGraph<AbstractGraphPoint>();
+                    graph.addAll(committedPoints.get(i).subList(0, committedSizes[i]));
+                    graphs.add(graph);
+                }
+                result = dest.initialiseLoadedData(putup, graphs.get(0), graphs.get(1), graphs.get(2), committedPrevDayClose);
+                if (result) {
+                    dest.setTickJournalReplayStart(committedJournalOffsets);
+                }
+            }
+        }
+        return result;
+    }
+}
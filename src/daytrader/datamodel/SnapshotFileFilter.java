@@ -0,0 +1,27 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.io.File;
+import java.io.FileFilter;
+
+/**
+ * An implementation of the FileFilter interface to select binary recovery
+ * snapshot files (see RunManagerSnapshot) only
+ * @author Roy
+ */
+public class SnapshotFileFilter implements FileFilter {
+
+    @Override
+    public boolean accept(File pathname) {
+        boolean result = false;
+        if (null != pathname) {
+            if (pathname.getName().endsWith(RunManagerSnapshot.FILE_EXTENSION)) {
+                result = true;
+            }
+        }
+        return result;
+    }
+}
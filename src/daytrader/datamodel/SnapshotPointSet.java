@@ -0,0 +1,107 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NavigableSet;
+
+/**
+ * A read only, time ordered set of price / time points that is a view over a
+ * range of a shared, append only array of points. BaseGraph uses this class for
+ * the snapshots it hands to readers. When a point is appended to a graph the
+ * new snapshot writes the point into the next free slot of the same array and
+ * covers one more position, the points seen by earlier snapshots are never
+ * changed so they (and their sub sets) remain valid without any copying.
+ *
+ * The points held are the original point objects, not copies. Any change that
+ * is not an append (a removal or an insert before the last point) must build a
+ * new array (see create()) rather than modify the shared one.
+ *
+ * This class is immutable once published and therefore THREADSAFE.
+ *
+ * @author Roy
+ */
+public class SnapshotPointSet extends AbstractIndexedPointSet {
+
+    /**
+     * The minimum number of slots allocated for the shared array
+     */
+    public static final int MIN_CAPACITY = 1024;
+    private final AbstractGraphPoint[] points;
+    //The range of the array used by this set [start, end)
+    private final int start;
+    private final int end;
+
+    private SnapshotPointSet(AbstractGraphPoint[] newPoints, int newStart, int newEnd) {
+        this.points = newPoints;
+        this.start = newStart;
+        this.end = newEnd;
+    }
+
+    /**
+     * Factory method that builds a new snapshot holding the provided points in a
+     * new array with room to append further points.
+     * @param c - A Java Collection of Price / Time points in time order
+     * @return A SnapshotPointSet holding the points
+     */
+    public static SnapshotPointSet create(Collection<? extends AbstractGraphPoint> c) {
+        AbstractGraphPoint[] newPoints = c.toArray(new AbstractGraphPoint[Math.max(MIN_CAPACITY, c.size() * 2)]);
+        return new SnapshotPointSet(newPoints, 0, c.size());
+    }
+
+    /**
+     * Creates a snapshot holding all the points in this snapshot followed by the
+     * new point. The shared array is only copied when it is full, so on average
+     * this costs O(1). This MUST only be called on the latest snapshot created
+     * from the shared array (the graph lock ensures this) and the new point
+     * MUST be after the last point in this set.
+     * @param newPoint - The Price / Time point to append
+     * @return A SnapshotPointSet holding the points of this set and the new point
+     */
+    public SnapshotPointSet append(AbstractGraphPoint newPoint) {
+        AbstractGraphPoint[] target = this.points;
+        if (this.end == target.length) {
+            target = Arrays.copyOf(target, target.length * 2);
+        }
+        target[this.end] = newPoint;
+        return new SnapshotPointSet(target, this.start, this.end + 1);
+    }
+
+    @Override
+    protected long timestampAt(int index) {
+        return this.points[this.start + index].getTimestamp();
+    }
+
+    @Override
+    public AbstractGraphPoint getPointAt(int index) {
+        return this.points[this.start + this.checkIndex(index)];
+    }
+
+    @Override
+    protected NavigableSet<AbstractGraphPoint> range(int from, int to) {
+        return new SnapshotPointSet(this.points, this.start + from, this.start + to);
+    }
+
+    @Override
+    protected void removeAt(int index) {
+        throw new UnsupportedOperationException("A SnapshotPointSet is read only");
+    }
+
+    @Override
+    public boolean add(AbstractGraphPoint e) {
+        throw new UnsupportedOperationException("A SnapshotPointSet is read only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("A SnapshotPointSet is read only");
+    }
+
+    @Override
+    public int size() {
+        return this.end - this.start;
+    }
+}
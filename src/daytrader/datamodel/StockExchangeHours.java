@@ -5,10 +5,12 @@
 package daytrader.datamodel;
 
 import daytrader.utils.DTUtil;
+import daytrader.utils.ExchangeHolidays;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Given a year, month and day this class can be used to create a Java Calender
@@ -20,6 +22,12 @@ import java.util.TimeZone;
  */
 public final class StockExchangeHours {
 
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+    //Opening and closing times (including early closes) of each trading day keyed on the day number in New York,
+    //shared by every graph. The times of a day never change so an entry is never replaced or removed
+    private static final ConcurrentHashMap<Long, TradingDay> TRADING_DAYS = new ConcurrentHashMap<Long, TradingDay>();
+    //Nearly every point tested is on the same day as the one before it
+    private static volatile TradingDay lastDay;
     private Calendar startCalendar;
     private Calendar endCalendar;
 
@@ -46,7 +54,9 @@ public final class StockExchangeHours {
     }
 
     /**
-     * Accessor method to change the date value being worked with
+     * Accessor method to change the date value being worked with. On a day the
+     * market closes early (see ExchangeHolidays.isEarlyClose()) the end of the
+     * trading day is the early closing time.
      * @param year - integer representing the year
      * @param month - integer representing the month
      * @param day - integer representing the day
@@ -69,11 +79,41 @@ public final class StockExchangeHours {
         this.endCalendar.set(Calendar.YEAR, year);
         this.endCalendar.set(Calendar.MONTH, month);
         this.endCalendar.set(Calendar.DATE, day);
-        this.endCalendar.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_CLOSING_HOUR);
-        this.endCalendar.set(Calendar.MINUTE, DTConstants.EXCH_CLOSING_MIN);
+        if (ExchangeHolidays.isEarlyClose((year * 10000) + ((month + 1) * 100) + day)) {
+            this.endCalendar.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_EARLY_CLOSING_HOUR);
+            this.endCalendar.set(Calendar.MINUTE, DTConstants.EXCH_EARLY_CLOSING_MIN);
+        } else {
+            this.endCalendar.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_CLOSING_HOUR);
+            this.endCalendar.set(Calendar.MINUTE, DTConstants.EXCH_CLOSING_MIN);
+        }
         this.endCalendar.set(Calendar.SECOND, DTConstants.EXCH_CLOSING_SEC);
     }
 
+    /**
+     * Tests if a time falls within the trading hours of its day (opening and
+     * closing times inclusive). The opening and closing times of each day are
+     * calculated once and cached so this test is normally two comparisons and
+     * creates no objects.
+     * @param timestamp - long being the time to test in milliseconds
+     * @return boolean True if the market is open at the time, False otherwise.
+     */
+    public static boolean isInTradingHours(long timestamp) {
+        long dayNumber = Math.floorDiv(timestamp + DTConstants.EXCH_TIME_ZONE.getOffset(timestamp), MILLIS_PER_DAY);
+        TradingDay tradingDay = lastDay;
+        if (null == tradingDay || tradingDay.dayNumber != dayNumber) {
+            tradingDay = TRADING_DAYS.get(dayNumber);
+            if (null == tradingDay) {
+                Calendar exchCal = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+                exchCal.setTimeInMillis(timestamp);
+                StockExchangeHours hours = new StockExchangeHours(exchCal.get(Calendar.YEAR), exchCal.get(Calendar.MONTH), exchCal.get(Calendar.DATE));
+                tradingDay = new TradingDay(dayNumber, hours.getStartCalendar().getTimeInMillis(), hours.getEndCalendar().getTimeInMillis());
+                TRADING_DAYS.putIfAbsent(dayNumber, tradingDay);
+            }
+            lastDay = tradingDay;
+        }
+        return timestamp >= tradingDay.openTime && timestamp <= tradingDay.closeTime;
+    }
+
     /**
      * Retrieves a calendar object with the time trading starts on the market
      *
@@ -419,4 +459,20 @@ public final class StockExchangeHours {
         }
         return result;
     }
+
+    /**
+     * The opening and closing times of one trading day as milliseconds
+     */
+    private static final class TradingDay {
+
+        private final long dayNumber;
+        private final long openTime;
+        private final long closeTime;
+
+        TradingDay(long newDayNumber, long newOpenTime, long newCloseTime) {
+            this.dayNumber = newDayNumber;
+            this.openTime = newOpenTime;
+            this.closeTime = newCloseTime;
+        }
+    }
 }
@@ -0,0 +1,382 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A write ahead journal of the real time data received for a putup. The real
+ * time data requests add every point they receive through the journal (see add())
+ * which writes it to the journal before adding it to a graph so that the points
+ * received since the last background save are not lost if the application dies.
+ * On restart the journal is replayed into the graphs (see
+ * RealTimeRunManager.replayTickJournal()) so nothing needs to be re-requested
+ * from the stockbroker.
+ *
+ * For each channel the journal tracks the offset before which every point is
+ * known to be in its graph (see getAppliedOffset()). A backup records these
+ * offsets with the graphs it saves so that recovery only replays the points
+ * journalled after them.
+ *
+ * The journal is an append only file that is memory mapped. An appended point is
+ * in the operating systems page cache as soon as append() returns, so it survives
+ * the application dying. Forcing the data to disk is slow so it is done in groups
+ * (group commit), at most once every COMMIT_INTERVAL_MS for all the points
+ * appended in that time.
+ *
+ * File layout (big endian):
+ * Header - int MAGIC, int VERSION
+ * Records - int payload length, int CRC32 of the payload, payload: byte channel
+ * (FIVE_SEC_BARS or MARKET_DATA) then the point (see GraphPointCodec)
+ * The unused end of the file is zero filled, a zero length ends the journal. The
+ * length of a record is written last so a record cut short reads as the end.
+ *
+ * The journal covers one trading day and is never truncated, the graphs ignore a
+ * replayed point they already hold. Once close() is called no more points are
+ * journalled. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class TickJournal {
+
+    /**
+     * The file extension used for journal files
+     */
+    public static final String FILE_EXTENSION = ".journal";
+    /**
+     * Channel for points received by a RealTimeFiveSecBarRequest
+     */
+    public static final int FIVE_SEC_BARS = 0;
+    /**
+     * Channel for points received by a RequestMarketDataTask
+     */
+    public static final int MARKET_DATA = 1;
+    /**
+     * The longest time in milliseconds between a point being appended and it
+     * being forced to disk
+     */
+    public static final long COMMIT_INTERVAL_MS = 250;
+    private static final int MAGIC = 0x4454544A;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_SIZE = 1024 * 1024;
+    private static final int CHANNEL_COUNT = 2;
+    //Runs the group commits of every journal
+    private static final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = new Thread(r, "TickJournal commit");
+            result.setDaemon(true);
+            return result;
+        }
+    });
+    private final File file;
+    private final ReentrantLock lock;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    //Position at which the next record will be written
+    private int position;
+    //True while a group commit is scheduled
+    private boolean commitPending;
+    private boolean closed;
+    //Per channel: points journalled but not yet added to their graph, the end of
+    //the last point journalled and the end of the last point known to be in the graph
+    private final int[] inFlight;
+    private final long[] channelEnd;
+    private final long[] appliedOffset;
+    private final ByteArrayOutputStream recordBytes;
+    private final DataOutputStream recordOut;
+    private final CRC32 crc;
+
+    /**
+     * Constructor opens (or creates) a journal file. New points are appended after
+     * the points already in the file.
+     * @param newFile - The journal File
+     * @throws IOException if the file cannot be opened and mapped or is not a journal
+     */
+    public TickJournal(File newFile) throws IOException {
+        this.file = newFile;
+        this.lock = new ReentrantLock();
+        this.recordBytes = new ByteArrayOutputStream();
+        this.recordOut = new DataOutputStream(this.recordBytes);
+        this.crc = new CRC32();
+        this.inFlight = new int[CHANNEL_COUNT];
+        this.channelEnd = new long[CHANNEL_COUNT];
+        this.appliedOffset = new long[CHANNEL_COUNT];
+        File folder = this.file.getAbsoluteFile().getParentFile();
+        if (null != folder && !folder.exists()) {
+            folder.mkdirs();
+        }
+        this.raf = new RandomAccessFile(this.file, "rw");
+        boolean isNew = 0 == this.raf.length();
+        this.channel = this.raf.getChannel();
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, this.raf.length()));
+        if (isNew) {
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putInt(4, VERSION);
+        } else if (MAGIC != this.buffer.getInt(0) || VERSION != this.buffer.getInt(4)) {
+            this.channel.close();
+            this.raf.close();
+            throw new IOException(this.file.getPath() + " is not a tick journal");
+        }
+        this.position = HEADER_SIZE;
+        int length = this.getRecordLength(this.position);
+        while (0 <= length) {
+            this.position += RECORD_HEADER_SIZE + length;
+            length = this.getRecordLength(this.position);
+        }
+        //Points already in the file are in the graphs once the journal has been replayed
+        Arrays.fill(this.channelEnd, this.position);
+        Arrays.fill(this.appliedOffset, this.position);
+    }
+
+    /**
+     * Accessor to retrieve the journal file
+     * @return A File object representing the journal file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Length of the valid record at a position
+     * @return integer being the records payload length or -1 if there is no
+     * complete, valid record at the position (the end of the journal)
+     */
+    private int getRecordLength(int recordStart) {
+        int result = -1;
+        if (recordStart + RECORD_HEADER_SIZE <= this.buffer.capacity()) {
+            int length = this.buffer.getInt(recordStart);
+            if (0 < length && recordStart + RECORD_HEADER_SIZE + length <= this.buffer.capacity()) {
+                ByteBuffer payload = this.buffer.duplicate();
+                payload.limit(recordStart + RECORD_HEADER_SIZE + length);
+                payload.position(recordStart + RECORD_HEADER_SIZE);
+                this.crc.reset();
+                this.crc.update(payload);
+                if ((int) this.crc.getValue() == this.buffer.getInt(recordStart + 4)) {
+                    result = length;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Journals a point and then adds it to its graph. The point is forced to disk
+     * by the next group commit. The point is added to the graph even if it could
+     * not be journalled.
+     * @param dataChannel - integer being the channel the point was received on
+     * (FIVE_SEC_BARS or MARKET_DATA)
+     * @param aPoint - The Price / Time point received
+     * @param graph - The graph the channel's points are added to
+     * @return boolean True if the point was added to the graph, False otherwise.
+     */
+    public boolean add(int dataChannel, AbstractGraphPoint aPoint, BaseGraph<AbstractGraphPoint> graph) {
+        boolean result = false;
+        boolean journalled = this.append(dataChannel, aPoint);
+        try {
+            result = graph.add(aPoint);
+        } finally {
+            if (journalled) {
+                this.pointApplied(dataChannel);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a point to the end of the journal and counts it as in flight until
+     * pointApplied() is called for its channel
+     * @return boolean True if the point was written to the journal, False otherwise.
+     */
+    private boolean append(int dataChannel, AbstractGraphPoint aPoint) {
+        boolean result = false;
+        if (null != aPoint && 0 <= dataChannel && CHANNEL_COUNT > dataChannel) {
+            lock.lock();
+            try {
+                //A closed journal journals nothing more
+                if (!this.closed) {
+                    this.recordBytes.reset();
+                    this.recordOut.writeByte(dataChannel);
+                    GraphPointCodec.writePoint(this.recordOut, aPoint);
+                    this.recordOut.flush();
+                    byte[] payload = this.recordBytes.toByteArray();
+                    //Leave room for the zero length that ends the journal
+                    int needed = this.position + RECORD_HEADER_SIZE + payload.length + 4;
+                    if (needed > this.buffer.capacity()) {
+                        this.buffer.force();
+                        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(needed, 2L * this.buffer.capacity()));
+                    }
+                    this.crc.reset();
+                    this.crc.update(payload);
+                    this.buffer.putInt(this.position + 4, (int) this.crc.getValue());
+                    ByteBuffer record = this.buffer.duplicate();
+                    record.position(this.position + RECORD_HEADER_SIZE);
+                    record.put(payload);
+                    this.buffer.putInt(this.position, payload.length);
+                    this.position += RECORD_HEADER_SIZE + payload.length;
+                    this.channelEnd[dataChannel] = this.position;
+                    this.inFlight[dataChannel]++;
+                    if (!this.commitPending) {
+                        this.commitPending = true;
+                        committer.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                commit();
+                            }
+                        }, COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    }
+                    result = true;
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(TickJournal.class.getName()).log(Level.SEVERE, null, ex);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    //Once no point of the channel is in flight every point journalled on it is in the graph
+    private void pointApplied(int dataChannel) {
+        lock.lock();
+        try {
+            this.inFlight[dataChannel]--;
+            if (0 == this.inFlight[dataChannel]) {
+                this.appliedOffset[dataChannel] = this.channelEnd[dataChannel];
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the offset in the journal before which every point received on a
+     * channel has been added to its graph. A backup of the graph taken after this
+     * call holds all those points, so recovery need only replay the points after
+     * the offset (see readPoints()).
+     * @param dataChannel - integer being the channel (FIVE_SEC_BARS or MARKET_DATA)
+     * @return long being the offset of the end of the last applied point
+     */
+    public long getAppliedOffset(int dataChannel) {
+        long result = HEADER_SIZE;
+        lock.lock();
+        try {
+            result = this.appliedOffset[dataChannel];
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Forces every point appended so far to disk
+     */
+    public void commit() {
+        MappedByteBuffer toForce = null;
+        lock.lock();
+        try {
+            this.commitPending = false;
+            if (!this.closed) {
+                toForce = this.buffer;
+            }
+        } finally {
+            lock.unlock();
+        }
+        //Points appended while forcing are committed by the next group commit
+        if (null != toForce) {
+            toForce.force();
+        }
+    }
+
+    /**
+     * Forces every point appended to disk and closes the journal file. No more
+     * points are journalled, the points already journalled can still be read.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (!this.closed) {
+                this.closed = true;
+                this.buffer.force();
+                this.channel.close();
+                this.raf.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(TickJournal.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the points held in the journal that were received on one channel
+     * @param dataChannel - integer being the channel to read (FIVE_SEC_BARS or MARKET_DATA)
+     * @return An ArrayList of the points in the order they were received
+     */
+    public ArrayList<AbstractGraphPoint> readPoints(int dataChannel) {
+        return this.readPoints(dataChannel, HEADER_SIZE);
+    }
+
+    /**
+     * Reads the points held in the journal that were received on one channel
+     * after an offset
+     * @param dataChannel - integer being the channel to read (FIVE_SEC_BARS or MARKET_DATA)
+     * @param fromOffset - long being an offset returned by getAppliedOffset(). If
+     * it is not within this journal every point on the channel is read.
+     * @return An ArrayList of the points after the offset in the order they were received
+     */
+    public ArrayList<AbstractGraphPoint> readPoints(int dataChannel, long fromOffset) {
+        ArrayList<AbstractGraphPoint> result = new ArrayList<AbstractGraphPoint>();
+        lock.lock();
+        try {
+            int recordStart = HEADER_SIZE;
+            if (HEADER_SIZE < fromOffset && this.position >= fromOffset) {
+                recordStart = (int) fromOffset;
+            }
+            while (recordStart < this.position) {
+                int length = this.buffer.getInt(recordStart);
+                if (dataChannel == this.buffer.get(recordStart + RECORD_HEADER_SIZE)) {
+                    byte[] payload = new byte[length];
+                    ByteBuffer record = this.buffer.duplicate();
+                    record.position(recordStart + RECORD_HEADER_SIZE);
+                    record.get(payload);
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, length - 1));
+                    AbstractGraphPoint currPoint = GraphPointCodec.readPoint(in);
+                    if (null != currPoint) {
+                        result.add(currPoint);
+                    }
+                }
+                recordStart += RECORD_HEADER_SIZE + length;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(TickJournal.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+}
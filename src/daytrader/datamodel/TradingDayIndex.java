@@ -0,0 +1,153 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.datamodel;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable, sorted array of trading days (in the form YYYYMMDD) used to
+ * count the trading days between two dates without building sets of points.
+ * The position of a date in the array is the count of trading days before it
+ * so any count is two binary searches.
+ *
+ * Every distinct set of trading days is given one shared index with its own
+ * version number. Lines using the same trading days therefore share an index and
+ * the version identifies the trading calendar in cached results. This is a 
+ * THREADSAFE class.
+ *
+ * @author Roy
+ */
+public final class TradingDayIndex {
+
+    //The number of distinct calendars kept before the registry is emptied
+    private static final int MAX_INDEXES = 64;
+    private static final AtomicInteger NEXT_VERSION = new AtomicInteger(1);
+    private static final ConcurrentHashMap<DaysKey, TradingDayIndex> INDEXES = new ConcurrentHashMap<DaysKey, TradingDayIndex>();
+    private final int version;
+    private final int[] days;
+
+    private TradingDayIndex(int[] newDays) {
+        this.version = NEXT_VERSION.getAndIncrement();
+        this.days = newDays;
+    }
+
+    /**
+     * Retrieves the shared index for a set of trading days
+     * @param tradingDays - A collection of integers representing the trading days
+     * in the form YYYYMMDD. Duplicates are ignored.
+     * @return The TradingDayIndex for the days or NULL if no collection was given
+     */
+    public static TradingDayIndex getIndex(Collection<Integer> tradingDays) {
+        TradingDayIndex result = null;
+        if (null != tradingDays) {
+            int[] newDays = new int[tradingDays.size()];
+            int i = 0;
+            for (Integer currDay : tradingDays) {
+                newDays[i] = currDay;
+                i++;
+            }
+            Arrays.sort(newDays);
+            //Remove duplicates
+            int count = 0;
+            for (int j = 0; j < newDays.length; j++) {
+                if (0 == count || newDays[count - 1] != newDays[j]) {
+                    newDays[count] = newDays[j];
+                    count++;
+                }
+            }
+            DaysKey key = new DaysKey(Arrays.copyOf(newDays, count));
+            result = INDEXES.get(key);
+            if (null == result) {
+                if (INDEXES.size() >= MAX_INDEXES) {
+                    INDEXES.clear();
+                }
+                TradingDayIndex newIndex = new TradingDayIndex(key.days);
+                result = INDEXES.putIfAbsent(key, newIndex);
+                if (null == result) {
+                    result = newIndex;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the version number of this trading calendar. Two
+     * indexes with the same version hold the same trading days.
+     * @return integer being the version number (always greater than 0)
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Accessor to retrieve the number of trading days in the index
+     * @return integer being the number of trading days
+     */
+    public int size() {
+        return this.days.length;
+    }
+
+    /**
+     * Counts the trading days strictly between two dates
+     * @param startDay - integer being the first date in the form YYYYMMDD (excluded)
+     * @param endDay - integer being the last date in the form YYYYMMDD (excluded)
+     * @return integer being the number of trading days after startDay and before
+     * endDay (0 if endDay is not after startDay)
+     */
+    public int countDaysBetween(int startDay, int endDay) {
+        int result = 0;
+        if (endDay > startDay) {
+            result = this.countBefore(endDay) - this.countBefore(startDay + 1);
+        }
+        return result;
+    }
+
+    //Number of trading days before the given date
+    private int countBefore(int day) {
+        int low = 0;
+        int high = this.days.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Registry key comparing the content of a sorted day array
+     */
+    private static final class DaysKey {
+
+        private final int[] days;
+        private final int hash;
+
+        DaysKey(int[] newDays) {
+            this.days = newDays;
+            this.hash = Arrays.hashCode(newDays);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean result = false;
+            if (obj instanceof DaysKey) {
+                result = Arrays.equals(this.days, ((DaysKey) obj).days);
+            }
+            return result;
+        }
+    }
+}
@@ -7,6 +7,7 @@ package daytrader.gui;
 import com.ib.client.EClientSocket;
 import daytrader.datamodel.AtrClassGrid;
 import daytrader.datamodel.DTConstants;
+import daytrader.datamodel.MappedPointSet;
 import daytrader.datamodel.PrimeDataModel;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
 import java.awt.EventQueue;
@@ -35,6 +36,8 @@ public class DaytraderMainForm extends javax.swing.JFrame {
             this.addWindowListener(new CloseOperations());
         }
         if(EventQueue.isDispatchThread()){
+            //Mapped graph files only hold data for the run that wrote them
+            MappedPointSet.deleteStaleFiles();
             DTConstants.startBackupManager();
         }
     }
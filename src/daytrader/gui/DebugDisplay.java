@@ -23,10 +23,13 @@ import daytrader.datamodel.GraphLine;
 import daytrader.datamodel.HistoricDataGraph;
 import daytrader.datamodel.HistoricDataGraphPoint;
 import daytrader.datamodel.MarketEnum;
+import daytrader.datamodel.MarketReplayEngine;
 import daytrader.datamodel.Putup;
 import daytrader.datamodel.PutupTypeEnum;
 import daytrader.datamodel.RealTimeRunManager;
 import daytrader.datamodel.RealTimeRunRecord;
+import daytrader.datamodel.RealTimeScheduler;
+import daytrader.datamodel.ReplayEvent;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
 import daytrader.historicRequestSystem.TWSAccount;
@@ -63,6 +66,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import rules.FinaliseProvYLines;
 import rules.GeneratePotentialCELines;
 import rules.TestRoundOneComplete;
@@ -125,6 +129,7 @@ public class DebugDisplay extends javax.swing.JPanel implements EWrapper {
         btnYLineTest = new javax.swing.JButton();
         btnLoadADay = new javax.swing.JButton();
         btnSwitch = new javax.swing.JButton();
+        btnReplay = new javax.swing.JButton();
 
         btnConnect.setBackground(new java.awt.Color(255, 102, 102));
         btnConnect.setText("Connect");
@@ -214,6 +219,13 @@ public class DebugDisplay extends javax.swing.JPanel implements EWrapper {
             }
         });
 
+        btnReplay.setText("Replay Day");
+        btnReplay.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                btnReplayActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout pnlHistoricDataLayout = new javax.swing.GroupLayout(pnlHistoricData);
         pnlHistoricData.setLayout(pnlHistoricDataLayout);
         pnlHistoricDataLayout.setHorizontalGroup(
@@ -257,7 +269,8 @@ public class DebugDisplay extends javax.swing.JPanel implements EWrapper {
                                 .addGap(39, 39, 39)
                                 .addGroup(pnlHistoricDataLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                     .addComponent(jButton1)
-                                    .addComponent(btnSwitch))))
+                                    .addComponent(btnSwitch)
+                                    .addComponent(btnReplay))))
                         .addGap(19, 19, 19)))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
@@ -298,7 +311,8 @@ public class DebugDisplay extends javax.swing.JPanel implements EWrapper {
                 .addGap(18, 18, 18)
                 .addGroup(pnlHistoricDataLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(btnYLineTest)
-                    .addComponent(btnLoadADay))
+                    .addComponent(btnLoadADay)
+                    .addComponent(btnReplay))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -374,12 +388,18 @@ public class DebugDisplay extends javax.swing.JPanel implements EWrapper {
         // TODO add your handling code here:
         switchAcc();
     }//GEN-LAST:event_btnSwitchActionPerformed
+
+    private void btnReplayActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnReplayActionPerformed
+        // TODO add your handling code here:
+        replayDay();
+    }//GEN-LAST:event_btnReplayActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnCSV;
     private javax.swing.JButton btnConnect;
     private javax.swing.JButton btnLoadADay;
     private javax.swing.JButton btnLoadBAX;
     private javax.swing.JButton btnLowestPoint;
+    private javax.swing.JButton btnReplay;
     private javax.swing.JButton btnRetrieveData;
     private javax.swing.JButton btnSwitch;
     private javax.swing.JButton btnYLineTest;
@@ -1084,6 +1104,54 @@ public class DebugDisplay extends javax.swing.JPanel implements EWrapper {
 
     }
 
+    private void replayDay() {
+        //Replay every putup recorded in a backup folder through the rules as fast as possible
+        //The replay moves the shared MarketClock so it cannot run alongside live putups
+        if (0 < RealTimeScheduler.getInstance().getRunningPutups() || 0 < DTConstants.getRunningRecords2().size()) {
+            JOptionPane.showMessageDialog(this, "Live putups are running or pre-loaded, a day cannot be replayed until they are stopped", "Cannot replay", JOptionPane.ERROR_MESSAGE);
+        } else {
+            String defaultFolder = "";
+            File recoveryFolder = DTConstants.getRecoveryFolder();
+            if (null != recoveryFolder) {
+                defaultFolder = recoveryFolder.getPath();
+            }
+            String folderName = JOptionPane.showInputDialog(this, "Folder of recorded putups to replay", defaultFolder);
+            if (null != folderName) {
+                final MarketReplayEngine engine = new MarketReplayEngine(MarketReplayEngine.UNTHROTTLED);
+                if (0 < engine.addRecordingsFromFolder(new File(folderName))) {
+                    Thread replayThread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                engine.call();
+                                for (ReplayEvent currEvent : engine.getEvents()) {
+                                    System.out.println(currEvent.toString());
+                                }
+                                System.out.println("Replayed " + engine.getPointsReplayed() + " points in " + (engine.getElapsedTime() / 1000000) + " ms, "
+                                        + engine.getRulesPasses() + " rules passes used " + (engine.getRulesCpuTime() / 1000000) + " ms CPU ("
+                                        + (engine.getRulesTime() / 1000000) + " ms elapsed)");
+                            } catch (IllegalStateException ex) {
+                                //Live putups started (or another replay) before this replay could claim the clock
+                                final String msg = ex.getMessage();
+                                SwingUtilities.invokeLater(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        JOptionPane.showMessageDialog(DebugDisplay.this, msg, "Cannot replay", JOptionPane.ERROR_MESSAGE);
+                                    }
+                                });
+                            } catch (Exception ex) {
+                                Logger.getLogger(DebugDisplay.class.getName()).log(Level.SEVERE, null, ex);
+                            }
+                        }
+                    }, "Market replay");
+                    replayThread.start();
+                } else {
+                    JOptionPane.showMessageDialog(this, "No recorded putups found in " + folderName, "Nothing to replay", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+    }
+
     private void switchAcc() {
         Putup objABC = new Putup(txtTicker.getText(), ((MarketEnum) cbxMarket.getSelectedItem()), PutupTypeEnum.LONGS, 82100, AtrClassEnum.MH);
         Calendar dateTime = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
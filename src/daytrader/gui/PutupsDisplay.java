@@ -11,6 +11,8 @@ import daytrader.datamodel.PrimeDataModel;
 import daytrader.datamodel.Putup;
 import daytrader.datamodel.RealTimeRunManager;
 import daytrader.datamodel.RealTimeRunRecord;
+import daytrader.datamodel.RealTimeScheduler;
+import daytrader.datamodel.SnapshotFileFilter;
 import daytrader.datamodel.XmlFileFilter;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
@@ -25,9 +27,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFrame;
@@ -275,7 +275,9 @@ public class PutupsDisplay extends javax.swing.JPanel {
 
     private void btnStartActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnStartActionPerformed
         // TODO add your handling code here:
-        startMonitoring();
+        if (!this.isReplayRunning()) {
+            startMonitoring();
+        }
     }//GEN-LAST:event_btnStartActionPerformed
 
     private void btnSaveGraphsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSaveGraphsActionPerformed
@@ -290,7 +292,9 @@ public class PutupsDisplay extends javax.swing.JPanel {
 
     private void btnPreLoadActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPreLoadActionPerformed
         // TODO add your handling code here:
-        preLoad();
+        if (!this.isReplayRunning()) {
+            preLoad();
+        }
     }//GEN-LAST:event_btnPreLoadActionPerformed
 
     private void btnTestBreakActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnTestBreakActionPerformed
@@ -305,7 +309,9 @@ public class PutupsDisplay extends javax.swing.JPanel {
 
     private void btnRecoverActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRecoverActionPerformed
         // TODO add your handling code here:
-        recoverPreviousRun();
+        if (!this.isReplayRunning()) {
+            recoverPreviousRun();
+        }
     }//GEN-LAST:event_btnRecoverActionPerformed
 
     private void btnSelectAllActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSelectAllActionPerformed
@@ -349,6 +355,13 @@ public class PutupsDisplay extends javax.swing.JPanel {
         Object value = this.tblPutups.getValueAt(row, col);
         if (value instanceof Putup) {
             Putup item = (Putup) value;
+            //Stop any running rules for the putup, this closes its tick journal
+            for (RealTimeRunManager currManager : DTConstants.getRunningRecords2()) {
+                if (currManager.isThisPutup(item)) {
+                    RealTimeScheduler.getInstance().stopRulesRun(currManager);
+                    currManager.closeTickJournal();
+                }
+            }
             this.tblPutups.getMyDataModel().removePutup(item);
         }
     }
@@ -380,12 +393,9 @@ public class PutupsDisplay extends javax.swing.JPanel {
                 }
             }
         }
-        //Now submit all managers in the array list to start their real time rules testing
-        //Initialise thread pool based on number of active putups
-        ExecutorService exec = Executors.newFixedThreadPool(activePutups.size() + 1);
-        ExecutorCompletionService service = new ExecutorCompletionService(exec);
+        //Now start real time rules testing for all managers in the array list (run on the shared RealTimeScheduler)
         for (RealTimeRunManager currManager : managers) {
-            service.submit(currManager);
+            currManager.startRulesRun();
         }
         //Now store the actually running putup managers and disable real time run button and pre load buttons
         this.btnPreLoad.setEnabled(false);
@@ -518,22 +528,45 @@ public class PutupsDisplay extends javax.swing.JPanel {
         status.setVisible(true);
     }
 
+    private boolean isReplayRunning() {
+        //A market replay moves the shared MarketClock, live putups must not be set up or run until it ends
+        boolean result = RealTimeScheduler.getInstance().isReplaying();
+        if (result) {
+            JOptionPane.showMessageDialog(null, "A market replay is running, wait for it to finish before running live putups", "Replay running", JOptionPane.ERROR_MESSAGE);
+        }
+        return result;
+    }
+
     private void recoverPreviousRun() {
         //Use this command to recover from a crash or other loss of data / shutdown during the day
         //Test to see if recovery folder exists
         File recoveryFolder = DTConstants.getRecoveryFolder();
         if (recoveryFolder.exists()) {
             if (recoveryFolder.canRead()) {
-                //Get a List of all XML files in the folder.
+                //Get a List of all binary snapshot and XML files in the folder.
+                FileFilter snapFilter = new SnapshotFileFilter();
+                File[] snapList = recoveryFolder.listFiles(snapFilter);
                 FileFilter xmlFilter = new XmlFileFilter();
                 File[] fileList = recoveryFolder.listFiles(xmlFilter);
                 ArrayList<RealTimeRunManager> recoveredManagers = new ArrayList<RealTimeRunManager>();
-                if (0 < fileList.length) {
-                    //We have XML Files to load RealTimeRunManagers from
-                    for (File currFile : fileList) {
-                        RealTimeRunManager loadedManager = RealTimeRunManager.loadManagerFromXMLFile(currFile);
+                if (0 < snapList.length || 0 < fileList.length) {
+                    //Load RealTimeRunManagers from the snapshots first, they are much faster to load
+                    HashSet<String> recoveredTickers = new HashSet<String>();
+                    for (File currFile : snapList) {
+                        RealTimeRunManager loadedManager = RealTimeRunManager.loadManagerFromSnapshotFile(currFile);
                         if (null != loadedManager) {
                             recoveredManagers.add(loadedManager);
+                            recoveredTickers.add(loadedManager.getMyPutup().getTickerCode());
+                        }
+                    }
+                    //Use an XML file (written by older versions) for any putup without a snapshot
+                    for (File currFile : fileList) {
+                        String ticker = currFile.getName().substring(0, currFile.getName().length() - 4);
+                        if (!recoveredTickers.contains(ticker)) {
+                            RealTimeRunManager loadedManager = RealTimeRunManager.loadManagerFromXMLFile(currFile);
+                            if (null != loadedManager) {
+                                recoveredManagers.add(loadedManager);
+                            }
                         }
                     }
                     //Now for each recovered manager update Prime Model Putups and then start it running again
@@ -545,14 +578,14 @@ public class PutupsDisplay extends javax.swing.JPanel {
                             Putup myPutup = manager.getMyPutup();
                             data.addPutup(myPutup);
                         }
-                        //Submit RealTimeRunManagers for execution
-                        ArrayList<Putup> activePutups = data.getActivePutups();
-                        //Initialise thread pool based on number of active putups
-                        ExecutorService exec = Executors.newFixedThreadPool(activePutups.size() + 1);
-                        ExecutorCompletionService service = new ExecutorCompletionService(exec);
+                        //Recover the real time data received since the last backup from each putups journal
+                        for (RealTimeRunManager currManager : recoveredManagers) {
+                            currManager.replayTickJournal();
+                        }
+                        //Start RealTimeRunManagers running (on the shared RealTimeScheduler)
                         for (RealTimeRunManager currManager : recoveredManagers) {
                             if (currManager.getMyPutup().isActive()) {
-                                service.submit(currManager);
+                                currManager.startRulesRun();
                             }
                         }
                         //Now store the actually running putup managers and disable real time run button and pre load buttons
@@ -562,7 +595,7 @@ public class PutupsDisplay extends javax.swing.JPanel {
                         DTConstants.STATUS_DISPLAY.generateStatusDisplay();
                     }
                 } else {
-                    JOptionPane.showMessageDialog(null, "No XML files found in recovery folder", "Error in recovery operation", JOptionPane.ERROR_MESSAGE);
+                    JOptionPane.showMessageDialog(null, "No recovery files found in recovery folder", "Error in recovery operation", JOptionPane.ERROR_MESSAGE);
                 }
             } else {
                 JOptionPane.showMessageDialog(null, "Recover Folder cannot be read", "Error in recovery operation", JOptionPane.ERROR_MESSAGE);
@@ -14,9 +14,13 @@ import com.ib.client.Order;
 import com.ib.client.OrderState;
 import com.ib.client.UnderComp;
 import daytrader.datamodel.AbstractGraphPoint;
+import daytrader.datamodel.BarSizeSettingEnum;
 import daytrader.datamodel.DTConstants;
+import daytrader.datamodel.DTDurationEnum;
+import daytrader.datamodel.HistoricBarStore;
 import daytrader.datamodel.HistoricDataGraphPoint;
 import daytrader.datamodel.Putup;
+import daytrader.datamodel.WhatToShowEnum;
 import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
 import daytrader.interfaces.ICallback;
 import daytrader.interfaces.IHDTCallable;
@@ -29,6 +33,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.swing.JOptionPane;
 
@@ -114,7 +120,8 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
      */
     protected boolean doesConnect;
     /**
-     *Moving to a wait / notifyAll system rather than a blocking while loop this is the monitor object to wait on
+     * Monitor notified when the task completes or aborts. Tasks should wait with
+     * awaitLoadComplete() which uses the completion condition instead.
      */
     protected final Object monitor = new Object();
     /**
@@ -125,6 +132,16 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
      * A lock to manage multi-threaded access to objects of this class
      */
     private ReentrantLock hdtCallableLock;
+    /**
+     * Signalled (from historicalData(... "finished" ...), an error or an abort)
+     * when the task completes or aborts
+     */
+    private Condition completion;
+    /**
+     * The request key of a pacing permit obtained by acquirePacingPermit() that
+     * the next reqHistoricalData() call for the same request should use
+     */
+    private String permittedRequestKey;
 
     /**
      * Default Constructor initialises attributes and the stock broker API
@@ -217,6 +234,56 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
         return result;
     }
 
+    /**
+     * By default a task is never merged with another. Tasks that make one fixed
+     * request override this method (see buildRequestKey()).
+     * @return NULL
+     */
+    @Override
+    public String getRequestKey() {
+        return null;
+    }
+
+    /**
+     * Builds a request key from the task class, the security requested (the
+     * contract and the putups market) and the parameters that define the data
+     * the task loads. Requests from different putups for the same security are
+     * merged, each follower receives the result bound to its own putup (see
+     * shareResult()).
+     * @param params - String holding every parameter that affects the result
+     * @return String being the key to return from getRequestKey()
+     */
+    protected String buildRequestKey(String params) {
+        String security = "";
+        if (null != this.objContract) {
+            security = this.objContract.m_symbol + "|" + this.objContract.m_secType + "|" + this.objContract.m_exchange + "|" + this.objContract.m_currency;
+        } else if (null != this.putup) {
+            security = this.putup.getTickerCode();
+        }
+        String market = "";
+        if (null != this.putup) {
+            market = String.valueOf(this.putup.getMarket());
+        }
+        return this.getClass().getName() + "|" + security + "|" + market + "|" + params;
+    }
+
+    /**
+     * Creates the result of this task from the result of the identical request
+     * it was merged into. The loaded points are copied and the result is bound
+     * to this tasks putup and callbacks rather than those of the other request.
+     * @param sharedResult - The result of the request this task was merged into
+     * @return A LoadHistoricDataPointBatchResult for this task
+     */
+    public LoadHistoricDataPointBatchResult shareResult(LoadHistoricDataPointBatchResult sharedResult) {
+        TreeSet<AbstractGraphPoint> points = new TreeSet<AbstractGraphPoint>();
+        if (null != sharedResult.loadedPoints) {
+            //Keeps the ordering of the shared points
+            points = new TreeSet<AbstractGraphPoint>(sharedResult.loadedPoints);
+        }
+        LoadHistoricDataPointBatchResult result = new LoadHistoricDataPointBatchResult(this.putup, points, this.cbDelegate, new ArrayList<ICallback>(this.cbList), sharedResult.getCallbackType());
+        return result;
+    }
+
     @Override
     public abstract LoadHistoricDataPointBatchResult call() throws Exception;
 
@@ -226,6 +293,7 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
      */
     protected final void init() {
         this.hdtCallableLock = new ReentrantLock();
+        this.completion = this.hdtCallableLock.newCondition();
         this.resubmitAttempts = 0;
         this.cbList = new LinkedList<ICallback>();
         this.doesConnect = true;
@@ -271,6 +339,70 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
         return result;
     }
 
+    /**
+     * Blocks until the executing account's pacing rules allow a historic data
+     * request with these parameters to be sent (see PacingScheduler). Tasks call
+     * this BEFORE they connect so that a task waiting for a place in the 10 minute
+     * request window does not hold the account's connection while it waits. The
+     * following reqHistoricalData() call for the same request then sends without
+     * waiting again.
+     * @param endDateTime - String being the end of the period in the stock brokers time format
+     * @param durationStr - String being the length of the period (see DTDurationEnum)
+     * @param barSizeSetting - String being the size of the bars (see BarSizeSettingEnum)
+     * @param whatToShow - String being the type of data to return (see WhatToShowEnum)
+     * @param useRTH - integer 1 to return only data in regular trading hours, 0 for all data
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    protected void acquirePacingPermit(String endDateTime, String durationStr, String barSizeSetting, String whatToShow, int useRTH) throws InterruptedException {
+        this.permittedRequestKey = null;
+        if (null != this.executingAccount) {
+            String requestKey = this.buildPacingRequestKey(endDateTime, durationStr, barSizeSetting, whatToShow, useRTH);
+            this.executingAccount.awaitPacingPermit(this.buildPacingContractKey(whatToShow), requestKey);
+            this.permittedRequestKey = requestKey;
+        }
+    }
+
+    //The conId is unique to this request so the contract is identified by symbol and exchange
+    private String buildPacingContractKey(String whatToShow) {
+        return this.objContract.m_symbol + "|" + this.objContract.m_secType + "|" + this.objContract.m_exchange + "|" + whatToShow;
+    }
+
+    private String buildPacingRequestKey(String endDateTime, String durationStr, String barSizeSetting, String whatToShow, int useRTH) {
+        return this.buildPacingContractKey(whatToShow) + "|" + endDateTime + "|" + durationStr + "|" + barSizeSetting + "|" + useRTH;
+    }
+
+    /**
+     * Sends a historic data request for this tasks contract to the stock brokers
+     * server. Unless a permit for this request was obtained by acquirePacingPermit()
+     * the thread blocks until the executing account's pacing rules allow
+     * the request to be sent (see PacingScheduler) so no pacing delay is needed
+     * after this call.
+     * @param endDateTime - String being the end of the period in the stock brokers time format
+     * @param durationStr - String being the length of the period (see DTDurationEnum)
+     * @param barSizeSetting - String being the size of the bars (see BarSizeSettingEnum)
+     * @param whatToShow - String being the type of data to return (see WhatToShowEnum)
+     * @param useRTH - integer 1 to return only data in regular trading hours, 0 for all data
+     * @param formatDate - integer being the date format the server should use for bars
+     * @throws InterruptedException if the thread is interrupted while waiting to send
+     */
+    protected void reqHistoricalData(String endDateTime, String durationStr, String barSizeSetting, String whatToShow, int useRTH, int formatDate) throws InterruptedException {
+        if (null != this.executingAccount) {
+            String requestKey = this.buildPacingRequestKey(endDateTime, durationStr, barSizeSetting, whatToShow, useRTH);
+            if (!requestKey.equals(this.permittedRequestKey)) {
+                this.executingAccount.awaitPacingPermit(this.buildPacingContractKey(whatToShow), requestKey);
+            }
+            this.permittedRequestKey = null;
+        }
+        this.m_client.reqHistoricalData(this.objContract.m_conId,
+                this.objContract,
+                endDateTime,
+                durationStr,
+                barSizeSetting,
+                whatToShow,
+                useRTH,
+                formatDate);
+    }
+
     /**
      * Each historic request must include a Contract object (class defined in
      * stock brokers API). This defines a unique ID for this request the 
@@ -347,6 +479,55 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
         }
     }
 
+    /**
+     * Historic bars never change once their trading day has closed. This method
+     * looks for the bars this request needs in the local HistoricBarStore and, if
+     * the store holds the whole period, places them into loadedPoints so no
+     * request needs to be made to the stockbroker's server.
+     * @param brokerTime - The end date / time of the request in the stockbroker's API format
+     * @param duration - The duration of the request
+     * @param barSize - The size of the bars requested
+     * @param whatToShow - The type of data requested
+     * @param useRTH - integer being 1 if the request is for regular trading hours
+     * only or 0 if it includes data outside regular trading hours
+     * @return boolean True if the bars were loaded from the store, False if they
+     * must be requested from the stockbroker.
+     */
+    protected boolean loadFromBarStore(String brokerTime, DTDurationEnum duration, BarSizeSettingEnum barSize, WhatToShowEnum whatToShow, int useRTH) {
+        boolean result = false;
+        long toTime = DTUtil.convertBrokerTimeToTimestamp(brokerTime);
+        if (0 <= toTime && null != this.putup) {
+            long fromTime = duration.getStartTime(toTime);
+            HistoricBarStore store = HistoricBarStore.getInstance();
+            TreeSet<AbstractGraphPoint> bars = store.loadBars(this.putup.getTickerCode(), barSize, whatToShow, useRTH, fromTime, toTime, this.getReqId());
+            if (null != bars) {
+                this.loadedPoints = bars;
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Saves the bars loaded from the stockbroker's server into the local HistoricBarStore
+     * so that later requests for the same period do not need to be sent to the stockbroker.
+     * This must be called with ALL the bars returned (ie before they are filtered).
+     * @param brokerTime - The end date / time of the request in the stockbroker's API format
+     * @param duration - The duration of the request
+     * @param barSize - The size of the bars requested
+     * @param whatToShow - The type of data requested
+     * @param useRTH - integer being 1 if the request is for regular trading hours
+     * only or 0 if it includes data outside regular trading hours
+     */
+    protected void saveToBarStore(String brokerTime, DTDurationEnum duration, BarSizeSettingEnum barSize, WhatToShowEnum whatToShow, int useRTH) {
+        long toTime = DTUtil.convertBrokerTimeToTimestamp(brokerTime);
+        if (0 <= toTime && null != this.putup && null != this.loadedPoints) {
+            long fromTime = duration.getStartTime(toTime);
+            HistoricBarStore store = HistoricBarStore.getInstance();
+            store.storeBars(this.putup.getTickerCode(), barSize, whatToShow, useRTH, fromTime, toTime, this.loadedPoints);
+        }
+    }
+
     private void abortOperation(String msg) {
         if (!this.isAbort()) {
             this.strAbortMsg = msg;
@@ -992,6 +1173,36 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
         return result;
     }
 
+    /**
+     * Blocks the calling thread until this task is marked complete or aborted. The
+     * thread sleeps on a condition that is signalled by setLoadComplete(true) and
+     * setAbort(true) so it wakes as soon as the result arrives. If the abort time
+     * (see setAbortTime()) passes first the task is aborted and an exception thrown.
+     * @param timeoutMsg - String being the abort message to use on a time out
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws TWSConnectionException if the abort time passes before the task completes
+     */
+    protected void awaitLoadComplete(String timeoutMsg) throws InterruptedException, TWSConnectionException {
+        boolean timedOut = false;
+        hdtCallableLock.lock();
+        try {
+            long waitFor = this.abortTime - System.currentTimeMillis();
+            while (!this.loadComplete && !this.abort && 0 < waitFor) {
+                this.completion.await(waitFor, TimeUnit.MILLISECONDS);
+                waitFor = this.abortTime - System.currentTimeMillis();
+            }
+            timedOut = !this.loadComplete && !this.abort;
+        } finally {
+            hdtCallableLock.unlock();
+        }
+        if (timedOut) {
+            this.strAbortMsg = timeoutMsg;
+            this.setAbort(true);
+            this.disconnect();
+            throw new TWSConnectionException(this.strAbortMsg);
+        }
+    }
+
     /**
      * Accessor method to retrieve the flag that defines if this request needs a 
      * connection to the stock brokers server. NB: some requests need to 'generate'
@@ -1067,6 +1278,7 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
         try {
             this.abort = abort;
             if (this.abort) {
+                this.completion.signalAll();
                 synchronized (this.monitor) {
                     this.monitor.notifyAll();
                 }
@@ -1085,6 +1297,7 @@ public abstract class AbstractHDTCallable implements IHDTCallable, EWrapper {
         try {
             this.loadComplete = loadComplete;
             if (this.loadComplete) {
+                this.completion.signalAll();
                 synchronized (this.monitor) {
                     this.monitor.notifyAll();
                 }
@@ -13,16 +13,17 @@ import com.ib.client.Order;
 import com.ib.client.OrderState;
 import com.ib.client.UnderComp;
 import daytrader.datamodel.AbstractDataRequest;
-import java.util.HashMap;
-import java.util.Set;
 
 /**
  * This class makes a connection to the stock brokers server and allows multiple
  * requests to be made over it. Responses are delivered to the appropriate
  * handler based on the identifying request ID. Each request provides a unique
- * ID number as an integer and these are mapped using a HashMap to the corresponding
- * request. When a response from the stock brokers server arrives the ID number 
- * identifies the request that asked for the data from the HashMap. Each request
+ * ID number as an integer and these are mapped using a RequestRoutingTable to the
+ * corresponding request. When a response from the stock brokers server arrives the
+ * ID number identifies the request that asked for the data from the table. The
+ * lookup does not lock, box the ID or allocate so the socket reader thread can
+ * dispatch ticks at full rate while requests register and de-register on other
+ * threads. Each request
  * implements the stock brokers EWrapper interface to handle responses. This 
  * class implements that interface and delegates its methods to the data request
  * with the matching ID number.
@@ -31,24 +32,24 @@ import java.util.Set;
  */
 public class ConnectionManager implements EWrapper {
 
-    private HashMap<Integer, EWrapper> requestTable;
+    private final RequestRoutingTable requestTable;
 
     /**
-     * Default Constructor initialises an empty hash map
+     * Default Constructor initialises an empty routing table
      */
     public ConnectionManager() {
-        this.requestTable = new HashMap<Integer, EWrapper>();
+        this.requestTable = new RequestRoutingTable();
     }
 
     /**
      * Given an ID number this method retrieve the appropriate handler from the
-     * HashMap
+     * routing table
      * @param id - ID number for the data request that should be used to handle 
      * the arriving data item
      * @return An object that implements the EWrapper interface to handle arriving
      * data from the stock brokers API
      */
-    private EWrapper getHandler(Integer id) {
+    private EWrapper getHandler(int id) {
         EWrapper result = null;
         result = this.requestTable.get(id);
         return result;
@@ -91,10 +92,10 @@ public class ConnectionManager implements EWrapper {
     
     /**
      * In the event that the provided ID number does not match to any EWrapper data 
-     * handler in the HashMap an IllegalArgumentException must be thrown. 
-     * @param id - Integer being the unmatched ID number
+     * handler in the routing table an IllegalArgumentException must be thrown. 
+     * @param id - integer being the unmatched ID number
      */
-    private void throwIllegalArgumentException(Integer id){
+    private void throwIllegalArgumentException(int id){
         if(-1 != id){
             throw new IllegalArgumentException("The ID: " + id + " is not registered with the connection manager");
         }
@@ -560,9 +561,7 @@ public class ConnectionManager implements EWrapper {
      */
     @Override
     public void currentTime(long time) {
-        Set<Integer> keySet = this.requestTable.keySet();
-        for(Integer key : keySet){
-            EWrapper target = this.requestTable.get(key);
+        for(EWrapper target : this.requestTable.getHandlers()){
             target.currentTime(time);
         }
     }
@@ -632,9 +631,7 @@ public class ConnectionManager implements EWrapper {
      */
     @Override
     public void commissionReport(CommissionReport commissionReport) {
-        Set<Integer> keySet = this.requestTable.keySet();
-        for(Integer key : keySet){
-            EWrapper target = this.requestTable.get(key);
+        for(EWrapper target : this.requestTable.getHandlers()){
             target.commissionReport(commissionReport);
         }
     }
@@ -645,9 +642,7 @@ public class ConnectionManager implements EWrapper {
      */
     @Override
     public void error(Exception e) {
-        Set<Integer> keySet = this.requestTable.keySet();
-        for(Integer key : keySet){
-            EWrapper target = this.requestTable.get(key);
+        for(EWrapper target : this.requestTable.getHandlers()){
             target.error(e);
         }
     }
@@ -658,9 +653,7 @@ public class ConnectionManager implements EWrapper {
      */
     @Override
     public void error(String str) {
-        Set<Integer> keySet = this.requestTable.keySet();
-        for(Integer key : keySet){
-            EWrapper target = this.requestTable.get(key);
+        for(EWrapper target : this.requestTable.getHandlers()){
             target.error(str);
         }
     }
@@ -687,9 +680,7 @@ public class ConnectionManager implements EWrapper {
      */
     @Override
     public void connectionClosed() {
-        Set<Integer> keySet = this.requestTable.keySet();
-        for(Integer key : keySet){
-            EWrapper target = this.requestTable.get(key);
+        for(EWrapper target : this.requestTable.getHandlers()){
             target.connectionClosed();
         }
     }
@@ -0,0 +1,84 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.historicRequestSystem;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This enumeration defines how a TWSAccount creates the threads that execute
+ * its historic data requests. The mode is read from the system property
+ * daytrader.executorMode (for example -Ddaytrader.executorMode=FIXED) and
+ * defaults to ELASTIC.
+ * @author Roy
+ */
+public enum ExecutorModeEnum {
+
+    /**
+     * One thread is created for every request that may execute at the same time
+     * and kept for the life of the account, even when idle.
+     */
+    FIXED,
+    /**
+     * A thread is only created while a request needs one and is released after
+     * it has been idle for THREAD_IDLE_SECONDS. Requests spend most of their time
+     * waiting for the pacing rules or the stock brokers server so few threads
+     * exist at any moment.
+     */
+    ELASTIC;
+
+    /**
+     * Name of the system property that selects the mode
+     */
+    public static final String PROPERTY_NAME = "daytrader.executorMode";
+    /**
+     * Number of seconds an idle thread is kept in ELASTIC mode
+     */
+    public static final long THREAD_IDLE_SECONDS = 30;
+
+    /**
+     * Retrieves the mode selected by the daytrader.executorMode system property
+     * @return The selected ExecutorModeEnum or ELASTIC if none (or an unknown
+     * mode) is given
+     */
+    public static ExecutorModeEnum getConfiguredMode() {
+        ExecutorModeEnum result = ELASTIC;
+        String value = System.getProperty(PROPERTY_NAME);
+        if (null != value) {
+            for (ExecutorModeEnum currMode : ExecutorModeEnum.values()) {
+                if (currMode.name().equalsIgnoreCase(value.trim())) {
+                    result = currMode;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an executor in this mode
+     * @param maxThreads - integer being the maximum number of tasks that may run at once
+     * @return An ExecutorService that runs up to maxThreads tasks at the same time
+     */
+    public ExecutorService createExecutor(int maxThreads) {
+        ExecutorService result = null;
+        switch (this) {
+            case FIXED:
+                result = Executors.newFixedThreadPool(maxThreads);
+                break;
+            case ELASTIC:
+                ThreadPoolExecutor elastic = new ThreadPoolExecutor(maxThreads, maxThreads,
+                        THREAD_IDLE_SECONDS, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>());
+                elastic.allowCoreThreadTimeOut(true);
+                result = elastic;
+                break;
+        }
+        return result;
+    }
+}
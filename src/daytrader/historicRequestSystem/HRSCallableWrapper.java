@@ -4,10 +4,14 @@
  */
 package daytrader.historicRequestSystem;
 
+import daytrader.interfaces.ICallback;
 import daytrader.interfaces.IHDTCallable;
 import daytradertasks.LoadHistoricDataPointBatchResult;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This is a wrapper class designed to wrap any callable and make it look the
@@ -18,7 +22,7 @@ import java.util.concurrent.atomic.AtomicLong;
 public class HRSCallableWrapper implements Callable<LoadHistoricDataPointBatchResult>, Comparable<HRSCallableWrapper> {
 
     //The callable to submit for execution
-    private IHDTCallable myCallable;
+    private IHDTCallable<?> myCallable;
     //The priority level for this callable
     private PriorityEnum priority;
     //The result object returned from the callable
@@ -29,6 +33,14 @@ public class HRSCallableWrapper implements Callable<LoadHistoricDataPointBatchRe
     private AtomicLong submissionTime;
     //This attribute will hold the account that this task was submitted on
     private TWSAccount executingAcc;
+    //The request key fixed when first read (the task may change its own parameters while running)
+    private String requestKey;
+    private boolean requestKeyRead;
+    //Identical requests merged into this one that will share its result
+    private List<HRSCallableWrapper> followers;
+    private boolean followersComplete;
+    //Lock for the followers list (call() holds this objects monitor while the task runs)
+    private final ReentrantLock followerLock = new ReentrantLock();
 
     /**
      * Constructor accepts any class that implements the IHDTCallable and wraps
@@ -37,7 +49,7 @@ public class HRSCallableWrapper implements Callable<LoadHistoricDataPointBatchRe
      * Concurrency Framworks Callable<V> interface and can therefore operate as 
      * a Callable task for multi-threaded execution.
      */
-    public HRSCallableWrapper(IHDTCallable newCallable) {
+    public HRSCallableWrapper(IHDTCallable<?> newCallable) {
         this.myCallable = newCallable;
         this.priority = PriorityEnum.STANDARD;
         this.creationTime = System.currentTimeMillis();
@@ -55,7 +67,7 @@ public class HRSCallableWrapper implements Callable<LoadHistoricDataPointBatchRe
      * @param newPriority - A callback object to be executed after passing the data
      * loaded by this request
      */
-    public HRSCallableWrapper(IHDTCallable newCallable, PriorityEnum newPriority) {
+    public HRSCallableWrapper(IHDTCallable<?> newCallable, PriorityEnum newPriority) {
         this(newCallable);
         this.priority = newPriority;
     }
@@ -191,4 +203,105 @@ public class HRSCallableWrapper implements Callable<LoadHistoricDataPointBatchRe
     public int getReqId(){
         return this.myCallable.getReqId();
     }
+
+    /**
+     * Retrieves the key identifying the data the wrapped task requests (see
+     * IHDTCallable.getRequestKey()). The key is read once and then fixed.
+     * @return String being the request key or NULL if this request must not be merged
+     */
+    public String getRequestKey() {
+        followerLock.lock();
+        try {
+            if (!this.requestKeyRead && this.isValid()) {
+                this.requestKey = this.myCallable.getRequestKey();
+                this.requestKeyRead = true;
+            }
+        } finally {
+            followerLock.unlock();
+        }
+        return this.requestKey;
+    }
+
+    /**
+     * Tests if this wrapper and another wrap the same task object (for example
+     * when a task re-submits itself after a pacing violation)
+     * @param other - The HRSCallableWrapper to compare with
+     * @return boolean True if both wrap the same task, False otherwise.
+     */
+    public boolean wrapsSameTask(HRSCallableWrapper other) {
+        return null != other && this.myCallable == other.myCallable;
+    }
+
+    /**
+     * Retrieves the callbacks of the wrapped task
+     * @return A List of the ICallbacks to make when the task completes
+     */
+    public List<ICallback> getCallBackList() {
+        List<ICallback> result = new ArrayList<ICallback>();
+        if (this.isValid()) {
+            result = this.myCallable.getCallBackList();
+        }
+        return result;
+    }
+
+    /**
+     * Merges an identical request into this one. The follower is never executed,
+     * when this request completes the follower receives its result.
+     * @param follower - The identical request to merge
+     * @return boolean True if the follower was merged, False if this request has
+     * already completed and the follower must be run in its own right.
+     */
+    public boolean addFollower(HRSCallableWrapper follower) {
+        boolean result = false;
+        followerLock.lock();
+        try {
+            if (!this.followersComplete && null != follower) {
+                if (null == this.followers) {
+                    this.followers = new ArrayList<HRSCallableWrapper>();
+                }
+                result = this.followers.add(follower);
+            }
+        } finally {
+            followerLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Marks this request complete so no more followers may be merged and
+     * retrieves the followers that were merged
+     * @return A List of the followers that should share this requests result
+     */
+    public List<HRSCallableWrapper> completeFollowers() {
+        List<HRSCallableWrapper> result = new ArrayList<HRSCallableWrapper>();
+        followerLock.lock();
+        try {
+            this.followersComplete = true;
+            if (null != this.followers) {
+                result.addAll(this.followers);
+                this.followers = null;
+            }
+        } finally {
+            followerLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Completes a follower with the result of the request it was merged into.
+     * The follower receives its own copy of the result bound to its own putup.
+     * Threads waiting on this object (as they would for call()) are notified.
+     * @param sharedResult - The result of the request this follower was merged into
+     * @return The LoadHistoricDataPointBatchResult this follower was completed with
+     */
+    public synchronized LoadHistoricDataPointBatchResult completeAsFollower(LoadHistoricDataPointBatchResult sharedResult) {
+        this.resultObject = sharedResult;
+        if (this.myCallable instanceof AbstractHDTCallable) {
+            AbstractHDTCallable task = (AbstractHDTCallable) this.myCallable;
+            this.resultObject = task.shareResult(sharedResult);
+            task.setLoadComplete(true);
+        }
+        this.notifyAll();
+        return this.resultObject;
+    }
 }
@@ -11,11 +11,15 @@ import daytrader.historicRequestSystem.exceptions.TaskRejectedQueueFullException
 import daytrader.interfaces.observerpattern.IObserver;
 import daytrader.interfaces.observerpattern.ISubject;
 import daytrader.interfaces.observerpattern.ISubjectDelegate;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.swing.JFrame;
 
@@ -34,10 +38,19 @@ public class HistoricRequestProcessingSystem implements ISubject {
     //The list of accounts that can be used to submit requests
     private TWSAccountList accounts;
     //These attributes represent the queues
-    private Queue<HRSCallableWrapper> pendingRequests;                          //Requests awaiting processing are held here
+    private BlockingQueue<HRSCallableWrapper> pendingRequests;                  //Requests awaiting processing are held here
     private ExecutorService pool;                                               //Executor to run thread that moves pending requests to an account for execution
     //Lock for thread safety
     private ReentrantLock lock;
+    //Lock and condition used to wait for an account to free capacity. This is NOT the
+    //main lock as accounts signal while holding their own lock
+    private ReentrantLock capacityLock;
+    private Condition capacityFreed;
+    //Incremented each time any account frees capacity
+    private long capacitySignalCount;
+    //Requests that are pending or executing indexed by their request key so that
+    //identical requests can be merged rather than sent to the stock broker again
+    private HashMap<String, HRSCallableWrapper> activeRequests;
     private HistoricAccRequestPendingDisplay display;
     private ISubjectDelegate iSubjectDelegate;
 
@@ -56,20 +69,69 @@ public class HistoricRequestProcessingSystem implements ISubject {
     /**
      * This method submits a new request for data to the processing system. It will
      * execute as soon as an account is available that can handle the request and
-     * it has reached the top of the systems priority queue.
+     * it has reached the top of the systems priority queue. If an identical request
+     * (see IHDTCallable.getRequestKey()) is already pending or executing the new
+     * request is merged into it. It is then never sent to the stock broker but
+     * receives the same result (and its callbacks are made) when the existing
+     * request completes.
      * @param task - The data request to run as an asynchronous operation
      * @return boolean True if the request was accepted and added to the processing 
-     * systems 'Pending' queue. False otherwise.
+     * systems 'Pending' queue or merged with an identical request. False otherwise.
      */
     public boolean submitRequest(HRSCallableWrapper task) {
         boolean result = false;
+        if (null != task) {
+            boolean merged = false;
+            String key = task.getRequestKey();
+            if (null != key) {
+                lock.lock();
+                try {
+                    HRSCallableWrapper existing = this.activeRequests.get(key);
+                    if (null != existing && !existing.wrapsSameTask(task) && existing.addFollower(task)) {
+                        merged = true;
+                        //A more urgent follower promotes a request that is still pending
+                        if (task.compareTo(existing) < 0 && this.pendingRequests.remove(existing)) {
+                            existing.setPriority(task.getPriority());
+                            this.pendingRequests.offer(existing);
+                        }
+                    } else {
+                        //A task re-submitting itself replaces its old (failing) entry
+                        this.activeRequests.put(key, task);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (merged) {
+                result = true;
+            } else {
+                //The blocking queue is thread safe and wakes the dispatcher if it is waiting
+                result = this.pendingRequests.offer(task);
+            }
+            if (result) {
+                this.notifyObservers();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called by the executing TWSAccount when a request completes. The request can
+     * no longer have other requests merged into it.
+     * @param task - The request that has completed
+     * @return A List of the requests that were merged into the completed request
+     * and should share its result (may be empty).
+     */
+    public List<HRSCallableWrapper> requestCompleted(HRSCallableWrapper task) {
+        List<HRSCallableWrapper> result = new ArrayList<HRSCallableWrapper>();
         if (null != task) {
             lock.lock();
             try {
-                result = this.pendingRequests.offer(task);
-                if (result) {
-                    this.notifyObservers();
+                String key = task.getRequestKey();
+                if (null != key && task == this.activeRequests.get(key)) {
+                    this.activeRequests.remove(key);
                 }
+                result = task.completeFollowers();
             } finally {
                 lock.unlock();
             }
@@ -84,11 +146,8 @@ public class HistoricRequestProcessingSystem implements ISubject {
      */
     public int getPendingRequestCount() {
         int result = 0;
-        lock.lock();
-        try {
+        if (null != this.pendingRequests) {
             result = this.pendingRequests.size();
-        } finally {
-            lock.unlock();
         }
         return result;
     }
@@ -101,9 +160,9 @@ public class HistoricRequestProcessingSystem implements ISubject {
      * This method should be invoked at application exit to properly clean up memory.
      */
     public void shutdown() {
-        //Do Queue and executor shutdown here
+        //Do Queue and executor shutdown here (interrupting the dispatcher if it is waiting)
         if (null != this.pool) {
-            this.pool.shutdown();
+            this.pool.shutdownNow();
             this.pool = null;
         }
         //Shutdown all thread pools in all accounts
@@ -121,12 +180,14 @@ public class HistoricRequestProcessingSystem implements ISubject {
     private HistoricRequestProcessingSystem() {
         this.iSubjectDelegate = new ISubjectDelegate();
         this.lock = new ReentrantLock();
+        this.capacityLock = new ReentrantLock();
+        this.capacityFreed = this.capacityLock.newCondition();
         this.pool = Executors.newFixedThreadPool(1);
-        this.startMonitor();
         //Load the accounts list
         this.accounts = TWSAccountList.loadAccountsList();
         //Now show a monitor window for each account
         for (TWSAccount currAccount : this.accounts) {
+            currAccount.registerCapacityObserver(new CapacityFreedObserver());
             HistoricAccountRequestDisplay accDisplay = currAccount.getDisplay();
             JFrame window = new JFrame();
             window.add(accDisplay);
@@ -136,7 +197,8 @@ public class HistoricRequestProcessingSystem implements ISubject {
         //Pending requests is an unbounded jave queue (we may queue as many requests as we like)
         //A Priority queue is used with the HRSCallableWrapper defining a natural ordering
         //based on the priority level and time when the task was created
-        this.pendingRequests = new PriorityQueue<HRSCallableWrapper>();
+        this.pendingRequests = new PriorityBlockingQueue<HRSCallableWrapper>();
+        this.activeRequests = new HashMap<String, HRSCallableWrapper>();
 
         this.display = new HistoricAccRequestPendingDisplay();
         this.display.setModel(this);
@@ -145,6 +207,8 @@ public class HistoricRequestProcessingSystem implements ISubject {
         window.setTitle("Pending Historic Request Queue");
         window.pack();
         window.setVisible(true);
+        //Start the monitor last, it needs the accounts and pending queue
+        this.startMonitor();
     }
 
     /**
@@ -230,9 +294,61 @@ public class HistoricRequestProcessingSystem implements ISubject {
         this.iSubjectDelegate.notifyObservers();
     }
 
+    /**
+     * Retrieves the number of times any account has signalled that it has freed
+     * capacity. Read this BEFORE looking for an account so that a signal made
+     * between the look and a call to awaitCapacity() is not missed.
+     */
+    private long getCapacitySignalCount() {
+        long result = 0;
+        capacityLock.lock();
+        try {
+            result = this.capacitySignalCount;
+        } finally {
+            capacityLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Blocks the calling thread until an account signals that it has freed
+     * capacity after the given signal count was read.
+     * @param lastSignalCount - long being the value returned by getCapacitySignalCount()
+     * @throws InterruptedException if the thread is interrupted while waiting (shutdown)
+     */
+    private void awaitCapacity(long lastSignalCount) throws InterruptedException {
+        capacityLock.lock();
+        try {
+            while (lastSignalCount == this.capacitySignalCount) {
+                this.capacityFreed.await();
+            }
+        } finally {
+            capacityLock.unlock();
+        }
+    }
+
+    /**
+     * Registered with each TWSAccount, wakes the dispatcher when the account frees capacity
+     */
+    private class CapacityFreedObserver implements IObserver {
+
+        @Override
+        public void update() {
+            capacityLock.lock();
+            try {
+                capacitySignalCount++;
+                capacityFreed.signalAll();
+            } finally {
+                capacityLock.unlock();
+            }
+        }
+    }
+
     /**
      * Inner Class - A Callable that monitors the pending requests queue and
      * submits requests to a TWS account when one is avaliable to process it.
+     * The task blocks on the pending queue while it is empty and on the capacity
+     * freed signal while every account is full so it uses no CPU while waiting.
      */
     private class ProcessPendingRequestsTask implements Callable<Void> {
 
@@ -242,42 +358,38 @@ public class HistoricRequestProcessingSystem implements ISubject {
         public Void call() throws Exception {
             try {
                 while (!Thread.currentThread().isInterrupted()) {
+                    //Blocks until a request is pending, the queue keeps the PriorityEnum ordering
+                    HRSCallableWrapper nextReq = pendingRequests.take();
+                    long signalCount = getCapacitySignalCount();
+                    boolean dispatched = false;
+                    lock.lock();
                     try {
-                        lock.lock();
-                        if (null != pendingRequests) {
-                            if (0 < pendingRequests.size()) {
-                                HRSCallableWrapper nextReq = pendingRequests.peek();
-                                if (null != nextReq) {
-                                    try {
-                                        TWSAccount usableAcc = getNextTWSAccount();
-                                        if (null != usableAcc) {
-                                            //Try to submit request
-                                            try {
-                                                if (usableAcc.submitRequest(nextReq)) {
-                                                    //Submitted remove from task from pending queue
-                                                    pendingRequests.poll();
-                                                    notifyObservers();
-                                                }
-                                            } catch (TaskRejectedQueueFullException ex) {
-                                                //Error (should never get here) but as damage control yield time slice
-                                                if (DEBUG) {
-                                                    System.err.println("Task Rejected when account reported space avaliable");
-                                                }
-                                            }
-                                        } else {
-                                            throw new AllProcessingQueuesFullException();
-                                        }
-                                    } catch (AllProcessingQueuesFullException ex) {
-                                        //All processing queues are full must wait for
-                                        //capacity to be freed. yield the time slice
-                                    }
+                        TWSAccount usableAcc = getNextTWSAccount();
+                        if (null != usableAcc) {
+                            //Try to submit request
+                            try {
+                                if (usableAcc.submitRequest(nextReq)) {
+                                    //Submitted, the task has already left the pending queue
+                                    dispatched = true;
+                                    notifyObservers();
+                                }
+                            } catch (TaskRejectedQueueFullException ex) {
+                                //Error (should never get here) but as damage control wait for capacity
+                                if (DEBUG) {
+                                    System.err.println("Task Rejected when account reported space avaliable");
                                 }
                             }
                         }
-                        //Finally here
+                    } catch (AllProcessingQueuesFullException ex) {
+                        //All processing queues are full must wait for capacity to be freed
                     } finally {
                         lock.unlock();
-                        Thread.yield();
+                    }
+                    if (!dispatched) {
+                        //Return the request to the queue (a higher priority request may
+                        //arrive while waiting) and sleep until an account frees capacity
+                        pendingRequests.offer(nextReq);
+                        awaitCapacity(signalCount);
                     }
                 }
             } catch (Exception ex) {
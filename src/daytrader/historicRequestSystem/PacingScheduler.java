@@ -0,0 +1,236 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.historicRequestSystem;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Models the stock brokers pacing rules for historic data requests made on one
+ * account (See page 387 - 388 of the stock brokers API documentation) and blocks
+ * a request until it may legally be sent. The rules are:
+ * 1) No more than a maximum number of requests in any rolling 10 minute window
+ * 2) No identical request (same contract, end time, duration, bar size and data
+ * type) within 15 seconds
+ * 3) No more than 5 requests for the same contract, exchange and data type
+ * within 2 seconds (six or more is a violation)
+ *
+ * A request is released as soon as all three rules allow it, no fixed delay is
+ * added. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class PacingScheduler {
+
+    /**
+     * The length of the rolling window in milliseconds for rule 1
+     */
+    public static final long WINDOW_MS = 10 * 60 * 1000;
+    /**
+     * The minimum time in milliseconds between identical requests (rule 2)
+     */
+    public static final long IDENTICAL_GAP_MS = 15 * 1000;
+    /**
+     * The length of the window in milliseconds for requests on one contract (rule 3)
+     */
+    public static final long CONTRACT_WINDOW_MS = 2 * 1000;
+    /**
+     * The maximum number of requests for one contract in CONTRACT_WINDOW_MS (rule 3)
+     */
+    public static final int MAX_CONTRACT_REQUESTS = 5;
+    private final int maxRequests;
+    //Send times of every request in the rolling window, oldest first
+    private final ArrayDeque<Long> sendTimes;
+    //Last send time of each distinct request
+    private final HashMap<String, Long> identicalSends;
+    //Send times of the requests for each contract in the contract window, oldest first
+    private final HashMap<String, ArrayDeque<Long>> contractSends;
+    private final ReentrantLock lock;
+    //Signalled each time a request is recorded in the rolling window
+    private final Condition recorded;
+
+    /**
+     * Constructor that defines the maximum number of requests allowed in the
+     * rolling 10 minute window
+     * @param newMaxRequests - integer being the maximum requests per 10 minutes
+     */
+    public PacingScheduler(int newMaxRequests) {
+        this.maxRequests = newMaxRequests;
+        this.sendTimes = new ArrayDeque<Long>();
+        this.identicalSends = new HashMap<String, Long>();
+        this.contractSends = new HashMap<String, ArrayDeque<Long>>();
+        this.lock = new ReentrantLock();
+        this.recorded = this.lock.newCondition();
+    }
+
+    /**
+     * Blocks the calling thread until the pacing rules allow the request to be
+     * sent and then records it as sent. The caller MUST send the request
+     * immediately after this method returns. The wait is a timed sleep (outside
+     * the lock) until the time the rules allow the request, after which the
+     * delay is re-checked in case other requests were sent in the meantime.
+     * @param contractKey - String identifying the contract, exchange and data type of the request
+     * @param requestKey - String identifying the request, identical requests must have equal keys
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire(String contractKey, String requestKey) throws InterruptedException {
+        boolean acquired = false;
+        while (!acquired) {
+            long delay = 0;
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                delay = this.getDelay(contractKey, requestKey, now);
+                if (0 >= delay) {
+                    this.sendTimes.addLast(now);
+                    this.identicalSends.put(requestKey, now);
+                    ArrayDeque<Long> contractTimes = this.contractSends.get(contractKey);
+                    if (null == contractTimes) {
+                        contractTimes = new ArrayDeque<Long>();
+                        this.contractSends.put(contractKey, contractTimes);
+                    }
+                    contractTimes.addLast(now);
+                    this.recorded.signalAll();
+                    acquired = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!acquired) {
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Calculates how long a request must wait before it may be sent.
+     * @param contractKey - String identifying the contract, exchange and data type of the request
+     * @param requestKey - String identifying the request
+     * @param now - long being the current time in milliseconds
+     * @return long being the number of milliseconds to wait, zero if the request
+     * may be sent now.
+     */
+    public long getDelay(String contractKey, String requestKey, long now) {
+        long result = 0;
+        lock.lock();
+        try {
+            this.purge(now);
+            //Rule 1 - Wait for the oldest request to leave the window
+            if (this.sendTimes.size() >= this.maxRequests) {
+                result = Math.max(result, this.sendTimes.peekFirst() + WINDOW_MS - now);
+            }
+            //Rule 2 - Identical requests
+            Long lastSend = this.identicalSends.get(requestKey);
+            if (null != lastSend) {
+                result = Math.max(result, lastSend + IDENTICAL_GAP_MS - now);
+            }
+            //Rule 3 - Requests on the same contract
+            ArrayDeque<Long> contractTimes = this.contractSends.get(contractKey);
+            if (null != contractTimes && contractTimes.size() >= MAX_CONTRACT_REQUESTS) {
+                result = Math.max(result, contractTimes.peekFirst() + CONTRACT_WINDOW_MS - now);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the number of requests sent in the rolling 10 minute window
+     * @return integer being the number of requests sent in the last 10 minutes
+     */
+    public int getRequestsInWindow() {
+        int result = 0;
+        lock.lock();
+        try {
+            this.purge(System.currentTimeMillis());
+            result = this.sendTimes.size();
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Blocks the calling thread until at least one request leaves the rolling 10
+     * minute window. The thread sleeps until the oldest request is due to leave
+     * (or, if the window is empty, until a request is recorded) rather than
+     * polling the window.
+     * @return integer being the number of requests remaining in the window
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public int awaitWindowExit() throws InterruptedException {
+        int result = 0;
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            this.purge(now);
+            while (this.sendTimes.isEmpty()) {
+                this.recorded.await();
+                now = System.currentTimeMillis();
+                this.purge(now);
+            }
+            long leaveTime = this.sendTimes.peekFirst() + WINDOW_MS;
+            while (now < leaveTime) {
+                this.recorded.await(leaveTime - now, TimeUnit.MILLISECONDS);
+                now = System.currentTimeMillis();
+            }
+            this.purge(now);
+            result = this.sendTimes.size();
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Should a pacing violation occur this method fills the rolling window so that
+     * no further requests are released for the next 10 minutes. The stock brokers
+     * API provides no way to measure the number of remaining requests.
+     */
+    public void recordViolation() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            this.purge(now);
+            while (this.sendTimes.size() < this.maxRequests) {
+                this.sendTimes.addLast(now);
+            }
+            this.recorded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every send time that no longer affects any rule
+     */
+    private void purge(long now) {
+        while (!this.sendTimes.isEmpty() && this.sendTimes.peekFirst() + WINDOW_MS <= now) {
+            this.sendTimes.pollFirst();
+        }
+        Iterator<Map.Entry<String, Long>> identicalIter = this.identicalSends.entrySet().iterator();
+        while (identicalIter.hasNext()) {
+            if (identicalIter.next().getValue() + IDENTICAL_GAP_MS <= now) {
+                identicalIter.remove();
+            }
+        }
+        Iterator<Map.Entry<String, ArrayDeque<Long>>> contractIter = this.contractSends.entrySet().iterator();
+        while (contractIter.hasNext()) {
+            ArrayDeque<Long> contractTimes = contractIter.next().getValue();
+            while (!contractTimes.isEmpty() && contractTimes.peekFirst() + CONTRACT_WINDOW_MS <= now) {
+                contractTimes.pollFirst();
+            }
+            if (contractTimes.isEmpty()) {
+                contractIter.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.historicRequestSystem;
+
+import com.ib.client.EWrapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A map from a request ID (a primitive int) to the EWrapper that handles the
+ * responses for that request. It is designed for one hot reader (the stock
+ * brokers socket reader thread) and infrequent writers (requests registering
+ * and de-registering).
+ *
+ * The data is held in an immutable open addressing hash table. A lookup reads
+ * the current table from a volatile field and probes it without locking,
+ * boxing or allocating. Writers take a lock, build a new table and publish it,
+ * so a reader always sees a complete table and never a partly made change.
+ * This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class RequestRoutingTable {
+
+    private static final int MIN_CAPACITY = 64;
+    private volatile Table table;
+    private final ReentrantLock lock;
+
+    /**
+     * Default Constructor creates an empty routing table
+     */
+    public RequestRoutingTable() {
+        this.table = new Table(MIN_CAPACITY);
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Retrieves the handler registered for a request ID. This method never
+     * blocks or allocates.
+     * @param id - integer being the request ID
+     * @return The EWrapper registered for the ID or NULL if there is none
+     */
+    public EWrapper get(int id) {
+        return this.table.get(id);
+    }
+
+    /**
+     * Registers a handler for a request ID, replacing any existing handler
+     * @param id - integer being the request ID
+     * @param handler - The EWrapper that will handle responses for the ID
+     */
+    public void put(int id, EWrapper handler) {
+        if (null == handler) {
+            throw new NullPointerException("A request handler may not be NULL");
+        }
+        lock.lock();
+        try {
+            Table current = this.table;
+            int newSize = current.size;
+            if (null == current.get(id)) {
+                newSize++;
+            }
+            Table newTable = new Table(Table.capacityFor(newSize));
+            newTable.copyFrom(current, id);
+            newTable.insert(id, handler);
+            this.table = newTable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the handler registered for a request ID
+     * @param id - integer being the request ID
+     * @return The EWrapper that was registered for the ID or NULL if there was none
+     */
+    public EWrapper remove(int id) {
+        EWrapper result = null;
+        lock.lock();
+        try {
+            Table current = this.table;
+            result = current.get(id);
+            if (null != result) {
+                Table newTable = new Table(Table.capacityFor(current.size - 1));
+                newTable.copyFrom(current, id);
+                this.table = newTable;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Accessor to retrieve the number of registered handlers
+     * @return integer being the number of request IDs in the table
+     */
+    public int size() {
+        return this.table.size;
+    }
+
+    /**
+     * Retrieves every registered handler. The list is a snapshot, requests
+     * registering or de-registering while it is used do not affect it.
+     * @return A List of the registered EWrappers
+     */
+    public List<EWrapper> getHandlers() {
+        Table current = this.table;
+        List<EWrapper> result = new ArrayList<EWrapper>(current.size);
+        for (EWrapper currHandler : current.handlers) {
+            if (null != currHandler) {
+                result.add(currHandler);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Immutable (once published) linear probing hash table. A NULL handler
+     * marks an empty slot so every int is a valid key.
+     */
+    private static final class Table {
+
+        private final int[] ids;
+        private final EWrapper[] handlers;
+        private final int mask;
+        private int size;
+
+        Table(int capacity) {
+            this.ids = new int[capacity];
+            this.handlers = new EWrapper[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Power of two capacity keeping the table no more than half full
+         */
+        static int capacityFor(int entries) {
+            int result = MIN_CAPACITY;
+            while (result < entries * 2) {
+                result <<= 1;
+            }
+            return result;
+        }
+
+        /**
+         * Spreads the bits of the ID, request IDs are usually sequential
+         */
+        static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        EWrapper get(int id) {
+            EWrapper result = null;
+            int slot = hash(id) & this.mask;
+            EWrapper currHandler = this.handlers[slot];
+            while (null != currHandler) {
+                if (this.ids[slot] == id) {
+                    result = currHandler;
+                    break;
+                }
+                slot = (slot + 1) & this.mask;
+                currHandler = this.handlers[slot];
+            }
+            return result;
+        }
+
+        void insert(int id, EWrapper handler) {
+            int slot = hash(id) & this.mask;
+            while (null != this.handlers[slot] && this.ids[slot] != id) {
+                slot = (slot + 1) & this.mask;
+            }
+            if (null == this.handlers[slot]) {
+                this.size++;
+            }
+            this.ids[slot] = id;
+            this.handlers[slot] = handler;
+        }
+
+        /**
+         * Copies every entry of another table except the one for the excluded ID
+         */
+        void copyFrom(Table source, int excludedId) {
+            for (int i = 0; i < source.handlers.length; i++) {
+                if (null != source.handlers[i] && source.ids[i] != excludedId) {
+                    this.insert(source.ids[i], source.handlers[i]);
+                }
+            }
+        }
+    }
+}
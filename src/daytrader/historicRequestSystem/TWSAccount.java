@@ -15,8 +15,8 @@ import daytrader.interfaces.XMLPersistable;
 import daytrader.interfaces.observerpattern.IObserver;
 import daytrader.interfaces.observerpattern.ISubject;
 import daytrader.interfaces.observerpattern.ISubjectDelegate;
-import daytradertasks.DummyHDT;
 import daytradertasks.LoadHistoricDataPointBatchResult;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -101,9 +101,15 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
      */
     private CompletionService<LoadHistoricDataPointBatchResult> service;
     /**
-     * The queue holding the task executed in the last 10 minute period
+     * The queue holding the tasks assigned to this account that have not yet
+     * completed (waiting, waiting to send or executing)
      */
     private Queue<HRSCallableWrapper> submittedRequests;
+    /**
+     * Releases each request to the stock brokers server as soon as the pacing
+     * rules allow and tracks the requests made in the last 10 minutes
+     */
+    private PacingScheduler pacer;
 
     /**
      * This ArrayList holds the futures for each executing task 
@@ -115,6 +121,11 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
      * concurrently executing tasks has been reached)
      */
     private Queue<HRSCallableWrapper> internalPendingQueue;
+    /**
+     * Observers notified each time a task completes or a request drops out of
+     * the 10 minute window and so this account can accept another request (see registerCapacityObserver())
+     */
+    private ISubjectDelegate capacityDelegate;
     
     //The TWSAccount is to be made responsible for managing the connection to the server
     //These attributes add that support
@@ -159,10 +170,12 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
         this.portNo = -1;
         lock = new ReentrantLock();
         this.iSubjectDelegate = new ISubjectDelegate();
+        this.capacityDelegate = new ISubjectDelegate();
         this.display = new HistoricAccountRequestDisplay();
         this.display.setModel(this);
-        //The accounts thread pool has a number of threads equal to the maximum concurrently executing tasks
-        this.pool = Executors.newFixedThreadPool(MAX_REQUESTS);
+        //The accounts thread pool runs up to the maximum concurrently executing tasks, in ELASTIC
+        //mode (the default) threads only exist while tasks are running (see ExecutorModeEnum)
+        this.pool = ExecutorModeEnum.getConfiguredMode().createExecutor(MAX_REQUESTS);
         //The monitor pool has two threads
         //one will ALWAYS be running the TaskRemover created below this is charged with obtaining the processing result
         //and making the call back with the result to the user defined call back code
@@ -174,6 +187,7 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
         //service = new ExecutorCompletionService<LoadHistoricDataPointBatchResult>(pool, this.workQueue);
         service = new ExecutorCompletionService<LoadHistoricDataPointBatchResult>(pool);
         this.submittedRequests = new ArrayBlockingQueue<HRSCallableWrapper>(MAX_REQUESTS);
+        this.pacer = new PacingScheduler(MAX_REQUESTS);
         this.internalPendingQueue = new ArrayBlockingQueue<HRSCallableWrapper>(MAX_REQUESTS);
         TaskRemover remover = new TaskRemover();
         this.monitorPool.submit(remover);
@@ -209,6 +223,7 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
                         if (this.futures.size() < MAX_CONCURRENT_EXECUTION) {
                             Future<LoadHistoricDataPointBatchResult> submit = this.service.submit(task);
                             this.futures.add(submit);
+                            this.executingRecords.add(new ExecutionRecord(submit, task));
                         } else {
                             //Place on the accounts internal queue for later execution
                             if (!this.internalPendingQueue.offer(task)) {
@@ -238,17 +253,17 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
     }
 
     /**
-     * Accessor method to retrieve the size of the submitted request queue. This
-     * value represents the number of requests for data made by this account in the 
-     * previous 10 minutes
-     * @return - integer the total number of requests in the queue.
+     * Accessor method to retrieve the number of requests this account is using.
+     * This is the larger of the requests for data made by this account in the
+     * previous 10 minutes and the tasks assigned to it that have not completed.
+     * @return - integer the total number of requests in use.
      */
     public int getRequestsUsed() {
         int result = 0;
         if (null != this.submittedRequests) {
             lock.lock();
             try {
-                result = this.submittedRequests.size();
+                result = Math.max(this.submittedRequests.size(), this.pacer.getRequestsInWindow());
             } finally {
                 lock.unlock();
             }
@@ -267,7 +282,7 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
         if (null != this.submittedRequests) {
             lock.lock();
             try {
-                result = MAX_REQUESTS - this.submittedRequests.size();
+                result = MAX_REQUESTS - Math.max(this.submittedRequests.size(), this.pacer.getRequestsInWindow());
             } finally {
                 lock.unlock();
             }
@@ -315,6 +330,19 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
         this.disconnect();
     }
     
+    /**
+     * Blocks the calling thread until the stock brokers pacing rules allow a
+     * historic data request to be sent on this account (see PacingScheduler).
+     * The caller MUST send the request as soon as this method returns.
+     * @param contractKey - String identifying the contract, exchange and data type of the request
+     * @param requestKey - String identifying the request, identical requests must have equal keys
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitPacingPermit(String contractKey, String requestKey) throws InterruptedException {
+        this.pacer.acquire(contractKey, requestKey);
+        this.notifyObservers();
+    }
+
     /**
      * This method is used to allow Real Time data requests to use the Historic
      * Data Processing system and register themselves as handlers for the real time
@@ -418,35 +446,16 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
 
     /**
      * Should a pacing violation occur this method should be called on the
-     * failing account It immediately fills all remaining slots on this accounts
-     * queue with dummy tasks timestamped to expire 10 min after this method is
-     * called. The stock brokers API provides no way to measure the number of
-     * remaining requests so calls to this method should be used to advise the
-     * account that it has used all its remaining requests and must wait 10
-     * minutes before accepting more.
+     * failing account. It immediately fills all remaining slots in the accounts
+     * rolling 10 minute request window. The stock brokers API provides no way to
+     * measure the number of remaining requests so calls to this method should be
+     * used to advise the account that it has used all its remaining requests and
+     * must wait 10 minutes before accepting more.
      */
     public void recordPacingViolation() {
         lock.lock();
         try {
-            //Get current time for pacing violation
-            long pacingVolationTime = System.currentTimeMillis();
-            //Obtain count of free slots in the request queue
-            ArrayBlockingQueue queue = (ArrayBlockingQueue) this.submittedRequests;
-            int remainingCapacity = queue.remainingCapacity();
-            for (int i = 0; i < remainingCapacity; i++) {
-                //Create Dummy task
-                DummyHDT dummyTask = new DummyHDT();
-                HRSCallableWrapper wrapper = new HRSCallableWrapper(dummyTask);
-                wrapper.setSubmissionTime(pacingVolationTime);
-                wrapper.setExecutingAcc(this);
-                //Add To queue
-                try {
-                    queue.add(wrapper);
-                } catch (IllegalStateException ex) {
-                    //Queue is full break out of the loop
-                    break;
-                }
-            }
+            this.pacer.recordViolation();
             this.notifyObservers();
         } finally {
             lock.unlock();
@@ -478,6 +487,19 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
         this.iSubjectDelegate.notifyObservers();
     }
 
+    /**
+     * Registers an observer that is updated each time this account frees
+     * capacity to accept a new request (a task has completed or a request made
+     * more than 10 minutes ago has left the window). Unlike the general observers these are not updated
+     * for every change in the account's status. NB: The update is made without
+     * this account's lock held.
+     * @param newObserver - The IObserver to update when capacity is freed
+     * @return boolean True if the observer was registered, False otherwise.
+     */
+    public boolean registerCapacityObserver(IObserver newObserver) {
+        return this.capacityDelegate.registerObserver(newObserver);
+    }
+
     /**
      * Retrieves the Stock broker provided socket object that is used to 
      * communicate with the server
@@ -505,59 +527,33 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
     }
 
     /**
-     * This inner class defines a task that removes the oldest job in the
-     * submittedRequests queue after a 10 minute interval (measured in
-     * milliseconds). The size of the submittedRequests queue will define how
-     * many requests have been processed in the last 10 minute window of time.
+     * This inner class defines a task that watches the accounts rolling 10 minute
+     * request window (see PacingScheduler). Each time a request leaves the window
+     * the account can accept another task so the capacity observers are updated.
+     * The task sleeps in the PacingScheduler until a request is due to leave the
+     * window rather than polling it.
      */
     private class TaskRemover implements Callable<Void> {
 
-        //The task must remain in the submitted queue for 10 minutes and then be dropped
-        //This is that time in milliseconds
-        private long lngHoldInQueueTime = 10 * 60 * 1000;
         private static final boolean DEBUG = false;
-        private long SLEEP_TIME = 250;
 
         public TaskRemover() {
         }
 
         @Override
         public Void call() throws Exception {
-            while (!Thread.currentThread().isInterrupted()) {
-                //Peek to see if anything in queue
-                HRSCallableWrapper task = submittedRequests.peek();
-                if (null != task) {
-                    long submissionTime = task.getSubmissionTime();
-                    long dropTime = submissionTime + lngHoldInQueueTime;
-                    long currTime = System.currentTimeMillis();
-                    if (currTime > dropTime) {
-                        //Drop this task
-                        lock.lock();
-                        try {
-                            submittedRequests.poll();
-                            notifyObservers();
-                        } finally {
-                            lock.unlock();
-                        }
-                        if (TaskRemover.DEBUG) {
-                            System.out.println("Task dropped at: " + currTime + ", its drop time was: " + dropTime);
-                        }
-                        //Thread.yield();
-                        //Yield time slice
-                        Thread.sleep(SLEEP_TIME);
-                    } else {
-                        if (TaskRemover.DEBUG) {
-                            System.out.println("Nothing to remove at " + System.currentTimeMillis() + ", Next drop at: " + dropTime);
-                        }
-                        //Yield my time slice so other stuff can go on in it
-                        //Thread.yield();
-                        Thread.sleep(SLEEP_TIME);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    int inWindow = pacer.awaitWindowExit();
+                    if (TaskRemover.DEBUG) {
+                        System.out.println("Requests left window at: " + System.currentTimeMillis() + ", " + inWindow + " remain");
                     }
-                } else {
-                    //Yield my time slice so other stuff can go on in it
-                    //Thread.yield();
-                    Thread.sleep(SLEEP_TIME);
+                    notifyObservers();
+                    //A slot is free, wake anything waiting to submit a request
+                    capacityDelegate.notifyObservers();
                 }
+            } catch (InterruptedException ex) {
+                //The account is shutting down
             }
             if (TaskRemover.DEBUG) {
                 System.out.println("Shutdown on account " + getAccName() + ", occurred at " + System.currentTimeMillis());
@@ -593,10 +589,6 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
                             internalPendingQueue.remove(task);
                             executingRecords.add(new ExecutionRecord(submit, task));
                         }
-                        //Those tasks still held in the pending queue must have submission time updated to avoid being dropped until after actual submission
-                        for (HRSCallableWrapper currTask : internalPendingQueue) {
-                            currTask.setSubmissionTime(System.currentTimeMillis());
-                        }
                     } finally {
                         lock.unlock();
                     }
@@ -609,6 +601,32 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
         }
     }
 
+    /**
+     * Completes the requests that were merged into a completed request. If the
+     * request succeeded each follower receives its result and its callbacks are
+     * made. Otherwise each follower is re-submitted to the historic request
+     * processing system to run in its own right.
+     * @param followers - The requests merged into the completed request
+     * @param aResult - The result of the completed request (may be NULL)
+     */
+    private void completeFollowers(List<HRSCallableWrapper> followers, LoadHistoricDataPointBatchResult aResult) {
+        boolean success = null != aResult
+                && null == aResult.getExecException()
+                && CallbackType.HISTORICDATAERROR != aResult.getCallbackType();
+        for (HRSCallableWrapper currFollower : followers) {
+            if (success) {
+                LoadHistoricDataPointBatchResult followerResult = currFollower.completeAsFollower(aResult);
+                for (ICallback currCallback : currFollower.getCallBackList()) {
+                    //Send the callback off in a thread of its own so that it is seperate from processing
+                    Thread cbThread = new Thread(new CallbackOperation(followerResult.getCallbackType(), followerResult, currCallback));
+                    cbThread.start();
+                }
+            } else {
+                HistoricRequestProcessingSystem.getInstance().submitRequest(currFollower);
+            }
+        }
+    }
+
     /**
      * This inner class retrieves the result of executing a task and processes
      * the callback set in the task
@@ -623,18 +641,35 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
                 while (!Thread.interrupted()) {
                     Future<LoadHistoricDataPointBatchResult> f = service.poll(2, TimeUnit.SECONDS);
                     if (null != f) {
+                        HRSCallableWrapper completedTask = null;
+                        //The task has completed (or failed), release its place on this account
+                        lock.lock();
                         try {
-                            LoadHistoricDataPointBatchResult aResult = f.get();
                             //De-register this task with the connection manager
-                            for(ExecutionRecord currRec : executingRecords){
-                                if(currRec.ifThisFuture(f)){
-                                    int reqId = currRec.getCallable().getReqId();
+                            Iterator<ExecutionRecord> recIter = executingRecords.iterator();
+                            while (recIter.hasNext()) {
+                                ExecutionRecord currRec = recIter.next();
+                                if (currRec.ifThisFuture(f)) {
+                                    completedTask = currRec.getCallable();
+                                    int reqId = completedTask.getReqId();
                                     conManager.removeCompletedTask(reqId);
+                                    submittedRequests.remove(currRec.getCallable());
+                                    recIter.remove();
                                     break;
                                 }
                             }
                             //As the task has completed drop its future from the futures list
                             futures.remove(f);
+                            notifyObservers();
+                        } finally {
+                            lock.unlock();
+                        }
+                        capacityDelegate.notifyObservers();
+                        //Identical requests merged into this one share its result
+                        List<HRSCallableWrapper> followers = HistoricRequestProcessingSystem.getInstance().requestCompleted(completedTask);
+                        LoadHistoricDataPointBatchResult aResult = null;
+                        try {
+                            aResult = f.get();
                             if (null != aResult) {
                                 //Look for a callback, if one exists make the callback with the result and appropriate flag
                                 //                                ICallback cbDelegate = aResult.getCbDelegate();
@@ -657,6 +692,9 @@ public class TWSAccount implements XMLPersistable<TWSAccount>, Lockable, ISubjec
                             //An error has occured do the callback passing a null result and the exception
                             System.err.println("An error occured in executing a task. Message was: " + ex.getMessage());
                         }
+                        if (0 < followers.size()) {
+                            completeFollowers(followers, aResult);
+                        }
                     }
                     Thread.sleep(SLEEP_TIME);
                 }
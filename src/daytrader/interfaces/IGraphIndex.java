@@ -0,0 +1,46 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.interfaces;
+
+import daytrader.datamodel.AbstractGraphPoint;
+
+/**
+ * Base interface for the indexes a BaseGraph keeps over its points in time
+ * order (PBValueIndex, RangeExtremesIndex and FlatIndex). An index is built for
+ * one structure version of its graph and is then only ever extended as points
+ * are appended to the end of the graph, any other change to the graph needs a
+ * new index.
+ * @author Roy
+ */
+public interface IGraphIndex {
+
+    /**
+     * Accessor to retrieve the owning graphs structure version at the time this
+     * index was created
+     * @return integer being the version number
+     */
+    int getVersion();
+
+    /**
+     * Accessor to retrieve the number of points held in the index
+     * @return integer being the number of indexed points
+     */
+    int size();
+
+    /**
+     * Accessor to retrieve the time of the last point in the index
+     * @return long being the timestamp of the last point or Long.MIN_VALUE if
+     * the index is empty
+     */
+    long getLastTimestamp();
+
+    /**
+     * Adds a point to the end of the index. The point MUST NOT be earlier than
+     * the last point already indexed.
+     * @param aPoint - The Price / Time point to add to the index
+     */
+    void append(AbstractGraphPoint aPoint);
+
+}
@@ -4,7 +4,6 @@
  */
 package daytrader.interfaces;
 
-import daytrader.datamodel.RecursionCache;
 import java.util.Calendar;
 
 /**
@@ -82,7 +81,7 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      * @param rounder - A rounding function to apply to the value.
      * @return double being the market price rounded using the function provided
      */
-    double getOpen(IRoundFunction rounder);
+    double getOpen(IRoundFunction<Number> rounder);
 
     /**
      * Retrieves the highest price at this graph point
@@ -97,7 +96,7 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      * @param rounder - A rounding function to apply to the value.
      * @return double being the market price
      */
-    double getHigh(IRoundFunction rounder);
+    double getHigh(IRoundFunction<Number> rounder);
 
     /**
      * Retrieves the lowest price at this graph point
@@ -112,7 +111,7 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      * @param rounder - A rounding function to apply to the value.
      * @return double being the market price
      */
-    double getLow(IRoundFunction rounder);
+    double getLow(IRoundFunction<Number> rounder);
 
     /**
      * Retrieves the closing price at this graph point
@@ -127,7 +126,7 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      * @param rounder - A rounding function to apply to the value.
      * @return double being the market price
      */
-    double getClose(IRoundFunction rounder);
+    double getClose(IRoundFunction<Number> rounder);
 
     /**
      * Retrieves the WAP price at this graph point (As used on Stock Brokers
@@ -144,7 +143,7 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      * @param rounder - A rounding function to apply to the value.
      * @return double being the market price
      */
-    double getWAP(IRoundFunction rounder);
+    double getWAP(IRoundFunction<Number> rounder);
 
     /**
      * Retrieves the number of milliseconds since the exchange opened and the
@@ -155,6 +154,10 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      */
     long getMSElapsedSinceStartOfTrading();
 
+    //The setters below are only used while a point is built (for example by
+    //AbstractGraphPoint.loadPointFromStream()). Points are shared between graphs
+    //and threads without locking so a point MUST NOT be changed after it is built.
+
     /**
      * Accessor to set the ID of the request that generated this graph point
      * @param newId - Integer being the new ID for this graph point
@@ -224,19 +227,4 @@ public interface IGraphPoint extends Comparable<IGraphPoint>, ICSVPersistable, X
      * @return The integer number identifying this concrete implementation of the interface.
      */
     int getOrderingValue();
-    
-    /**
-     * During Y-Line calculations a recursive algorithm is used and the data needs to be cached on a 
-     * point by point basis. This accessor provides access to this points cache record.
-     * @return A Recursion Cache object
-     */
-    RecursionCache getRecursionCache();
-    
-    /**
-     * During Y-Line calculations a recursive algorithm is used and the data needs to be cached on a 
-     * point by point basis. This accessor sets this points cache record.
-     * @param newCache - A Recursion Cache generated by the Y-Line calculations
-     * @return boolean True if the cache was accepted and stored, False otherwise.
-     */
-    boolean setRecursionCache(RecursionCache newCache);
 }
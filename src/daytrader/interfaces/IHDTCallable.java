@@ -74,4 +74,13 @@ public interface IHDTCallable<V extends LoadHistoricDataPointBatchResult> extend
      */
     int getReqId();
     
+    /**
+     * Retrieves a key identifying the data this task requests. Two tasks with
+     * equal keys MUST produce the same result so the Historic Request System
+     * may run one of them and share its result with the other.
+     * @return String being the request key or NULL if this task must never be
+     * merged with another.
+     */
+    String getRequestKey();
+    
 }
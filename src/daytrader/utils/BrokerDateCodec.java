@@ -0,0 +1,123 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.utils;
+
+import java.util.TimeZone;
+
+/**
+ * Converts the date / time strings delivered with historic data bars by the
+ * stock brokers API (in the form "yyyyMMdd  HH:mm:ss", note the TWO spaces)
+ * straight into a timestamp without creating Calendar or String objects.
+ *
+ * As explained for DTUtil.convertCalToBrokerTime() the time is London local time.
+ * The London UTC offset of the day being parsed is cached, bars arrive a day at a
+ * time so the cache nearly always holds the right day. Days on which the clocks
+ * change are left to a Calendar so their (rare) results are exactly as before.
+ * This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public final class BrokerDateCodec {
+
+    /**
+     * Value returned when a string is not in the expected format
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+    //Every zone offset is within this of UTC
+    private static final long MAX_ZONE_OFFSET = 14 * 60 * 60 * 1000;
+    private static final int DATE_TIME_LENGTH = 18;
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+    private static volatile DayOffset lastDay;
+
+    private BrokerDateCodec() {
+    }
+
+    /**
+     * Parses a stock broker date / time string to a timestamp.
+     * @param brokerDate - A String in the form "yyyyMMdd  HH:mm:ss" (London time)
+     * @return long being the timestamp in milliseconds or INVALID if the string is
+     * not in exactly that form (the caller should then fall back to a Calendar).
+     */
+    public static long parse(String brokerDate) {
+        long result = INVALID;
+        if (null != brokerDate && DATE_TIME_LENGTH == brokerDate.length()
+                && ' ' == brokerDate.charAt(8) && ' ' == brokerDate.charAt(9)
+                && ':' == brokerDate.charAt(12) && ':' == brokerDate.charAt(15)) {
+            int year = digits(brokerDate, 0, 4);
+            int month = digits(brokerDate, 4, 2);
+            int day = digits(brokerDate, 6, 2);
+            int hour = digits(brokerDate, 10, 2);
+            int minute = digits(brokerDate, 13, 2);
+            int second = digits(brokerDate, 16, 2);
+            if (0 <= year && 1 <= month && 12 >= month && 1 <= day && 31 >= day
+                    && 0 <= hour && 0 <= minute && 0 <= second) {
+                long epochDay = daysFromCivil(year, month, day);
+                DayOffset offset = getDayOffset(epochDay);
+                if (offset.stable) {
+                    long localMillis = (epochDay * MILLIS_PER_DAY) + (hour * 3600000L) + (minute * 60000L) + (second * 1000L);
+                    result = localMillis - offset.offset;
+                } else {
+                    //The clocks change on this day, let a Calendar resolve the offset
+                    result = DTUtil.createCalendar(year, month - 1, day, hour, minute, second, LONDON).getTimeInMillis();
+                }
+            }
+        }
+        return result;
+    }
+
+    //Value of a run of decimal digits or -1 if any character is not a digit
+    private static int digits(String source, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count && 0 <= result; i++) {
+            char c = source.charAt(i);
+            if ('0' <= c && '9' >= c) {
+                result = (result * 10) + (c - '0');
+            } else {
+                result = -1;
+            }
+        }
+        return result;
+    }
+
+    //Number of days from 1970-01-01 to the given date in the proleptic Gregorian calendar
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = (month <= 2) ? year - 1 : year;
+        long era = ((y >= 0) ? y : y - 399) / 400;
+        long yearOfEra = y - (era * 400);
+        long dayOfYear = ((153 * (month + ((month > 2) ? -3 : 9))) + 2) / 5 + day - 1;
+        long dayOfEra = (yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100) + dayOfYear;
+        return (era * 146097) + dayOfEra - 719468;
+    }
+
+    private static DayOffset getDayOffset(long epochDay) {
+        DayOffset result = lastDay;
+        if (null == result || result.epochDay != epochDay) {
+            long dayStart = epochDay * MILLIS_PER_DAY;
+            int startOffset = LONDON.getOffset(dayStart - MAX_ZONE_OFFSET);
+            int endOffset = LONDON.getOffset(dayStart + MILLIS_PER_DAY + MAX_ZONE_OFFSET);
+            result = new DayOffset(epochDay, startOffset, startOffset == endOffset);
+            lastDay = result;
+        }
+        return result;
+    }
+
+    /**
+     * The London UTC offset of one local day
+     */
+    private static final class DayOffset {
+
+        private final long epochDay;
+        private final int offset;
+        //False if the offset changes at some time during the day
+        private final boolean stable;
+
+        DayOffset(long newEpochDay, int newOffset, boolean newStable) {
+            this.epochDay = newEpochDay;
+            this.offset = newOffset;
+            this.stable = newStable;
+        }
+    }
+}
@@ -7,14 +7,15 @@ package daytrader.utils;
 import daytrader.datamodel.AbstractGraphPoint;
 import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.DTConstants;
-import daytrader.datamodel.GraphFlat;
 import daytrader.datamodel.GraphFlatCollection;
 import daytrader.datamodel.GraphFlatPair;
 import daytrader.datamodel.Putup;
 import daytrader.datamodel.RealTimeRunManager;
+import daytrader.datamodel.TradingDayIndex;
 import daytrader.interfaces.IGraphFlat;
 import daytrader.interfaces.IGraphLine;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -131,6 +132,27 @@ public class DTUtil {
         return result;
     }
 
+    /**
+     * Converts a date / time string in the stockbroker's API format (as produced by
+     * convertCalToBrokerTime) back into a timestamp. As explained for convertCalToBrokerTime
+     * the time value is London local time despite the GMT suffix.
+     * @param brokerTime - A String in the format "yyyyMMdd HH:mm:ss GMT"
+     * @return long being the timestamp in milliseconds or -1 if the string could not be parsed
+     */
+    public static long convertBrokerTimeToTimestamp(String brokerTime) {
+        long result = -1;
+        if (null != brokerTime && brokerTime.length() >= 17) {
+            SimpleDateFormat format1 = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
+            format1.setTimeZone(TimeZone.getTimeZone("Europe/London"));
+            try {
+                result = format1.parse(brokerTime.substring(0, 17)).getTime();
+            } catch (ParseException ex) {
+                result = -1;
+            }
+        }
+        return result;
+    }
+
     /**
      * Given a Java Calendar object this function returns a new Calendar initialised
      * to the same date in the New York / NASDAQUE Time Zone and with its time
@@ -154,11 +176,12 @@ public class DTUtil {
     
     /**
      * Creates a Calendar object representing the time at which the New York stock market closes today
+     * (today is taken from the MarketClock)
      * @return A Calendar initialised to today and set to the "America/New_York" which stores
      * the time that the stock market will close at.
      */
     public static Calendar getExchClosingTime() {
-        Calendar result = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        Calendar result = MarketClock.getNow();
         result.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_CLOSING_HOUR);
         result.set(Calendar.MINUTE, DTConstants.EXCH_CLOSING_MIN);
         result.set(Calendar.SECOND, DTConstants.EXCH_CLOSING_SEC);
@@ -344,6 +367,53 @@ public class DTUtil {
         return result;
     }
 
+    /**
+     * Calculates the gradient of a line whose 'C' and 'E' points fall on different
+     * trading days exactly as getGraidentBasedOnTradingDays() does but counts the
+     * trading days crossed using a TradingDayIndex rather than a set of points.
+     * @param aLine - The line whose gradient is required
+     * @param tradingDays - The TradingDayIndex of the trading days the line may cross
+     * @return double being the gradient of the line in price per trading millisecond
+     */
+    public static double getGradientBasedOnTradingDays(IGraphLine aLine, TradingDayIndex tradingDays) {
+        double result = 0;
+        if (null != aLine && null != tradingDays) {
+            AbstractGraphPoint myCurrStart = aLine.getCurrentC();
+            AbstractGraphPoint myCurrEnd = aLine.getCurrentE();
+            int startDay = myCurrStart.getDateAsNumber();
+            int endDay = myCurrEnd.getDateAsNumber();
+            if (startDay != endDay) {
+                //P1 is the time from the start point to the market close on its day
+                Calendar endTrading = DTUtil.deepCopyCalendar(myCurrStart.getCalDate());
+                endTrading.setTimeZone(DTConstants.EXCH_TIME_ZONE);
+                endTrading.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_CLOSING_HOUR);
+                endTrading.set(Calendar.MINUTE, DTConstants.EXCH_CLOSING_MIN);
+                endTrading.set(Calendar.SECOND, DTConstants.EXCH_CLOSING_SEC);
+                double p1 = endTrading.getTimeInMillis() - myCurrStart.getTimestamp();
+                //P2 is the time from the market open on the end day to the end point
+                Calendar startTrading = DTUtil.deepCopyCalendar(myCurrEnd.getCalDate());
+                startTrading.setTimeZone(DTConstants.EXCH_TIME_ZONE);
+                startTrading.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_OPENING_HOUR);
+                startTrading.set(Calendar.MINUTE, DTConstants.EXCH_OPENING_MIN);
+                startTrading.set(Calendar.SECOND, DTConstants.EXCH_OPENING_SEC);
+                double p2 = myCurrEnd.getTimestamp() - startTrading.getTimeInMillis();
+                //P3 is a full trading day for every trading day in between
+                double dayCount = tradingDays.countDaysBetween(startDay, endDay);
+                double p3 = dayCount * DTUtil.msPerTradingDay();
+
+                //Sum all three parts as deltaX
+                double deltaX = p1 + p2 + p3;
+                double deltaY = myCurrEnd.getLastPrice() - myCurrStart.getLastPrice();
+
+                //Gradient is deltaY / deltaX
+                result = deltaY / deltaX;
+            } else {
+                result = aLine.getGradient();
+            }
+        }
+        return result;
+    }
+
     /**
      * Calculates the total number of milliseconds in a trading day based on the
      * Exchange opening and Closing constants in DTConstants
@@ -376,50 +446,71 @@ public class DTUtil {
         return result;
     }
 
+    /**
+     * Given a data graph this function identifies the 'flats' (of the default two second
+     * length) between two times without creating a sub graph. The result is the collection
+     * findAllFlats() would give for a graph holding only the points between the two times.
+     * @param graph - The data graph to scan for 'flats'
+     * @param fromTime - long being the time in milliseconds to search from (inclusive)
+     * @param toTime - long being the time in milliseconds to search to (inclusive)
+     * @return - A collection of IGraphFlat objects representing the 'Flats' found between the times
+     */
+    public static GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> findAllFlatsBetween(BaseGraph<AbstractGraphPoint> graph, long fromTime, long toTime) {
+        GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> result = null;
+        if (null != graph) {
+            //NB a 'FLAT' must be at least 2 seconds long
+            result = graph.getFlats(2, fromTime, toTime);
+        } else {
+            result = new GraphFlatCollection<IGraphFlat<AbstractGraphPoint>>(graph);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the flat (of the default two second length) that a point lies on without
+     * identifying every flat on the graph. The flat is read from the graphs flat index
+     * so this is an O(log n) operation. The result is the flat findAllFlats() would find
+     * for the point on a graph holding only the points between the two times.
+     * @param graph - A data graph of the stocks price movements
+     * @param aPoint - The point on the graph whose flat is required
+     * @param fromTime - long being the time of the earliest point that may be on the flat
+     * @param toTime - long being the time of the latest point that may be on the flat
+     * @return The IGraphFlat the point lies on or NULL if the point is not on a flat
+     */
+    public static IGraphFlat<AbstractGraphPoint> findFlatFromPoint(BaseGraph<AbstractGraphPoint> graph, AbstractGraphPoint aPoint, long fromTime, long toTime) {
+        IGraphFlat<AbstractGraphPoint> result = null;
+        if (null != graph && null != aPoint) {
+            //NB a 'FLAT' must be at least 2 seconds long
+            result = graph.getFlatFromPoint(aPoint, 2, fromTime, toTime);
+        }
+        return result;
+    }
+
     /**
      * Given a data graph and a minimum 'length' this function identifies all 'flats' on the graph.
      * A 'Flat' occurs when stocks price has not changed for a specified period of time (in seconds). By default 
      * Bryn uses a two second flat and the findAllFlats(BaseGraph<AbstractGraphPoint> graph) function
-     * in this class may be used to automatically apply the default; for other length values use this method
+     * in this class may be used to automatically apply the default; for other length values use this method.
+     * The flats are read from the graphs flat index which is kept up to date as points are added to the graph.
      * @param length - The time in seconds that the stocks price must be unchanged for a valid flat to exist
      * @param graph - A data graph of the stocks price movements
      * @return - A collection of IGraphFlat objects representing the 'Flats' found on the graph
      */
     public static GraphFlatCollection<IGraphFlat> findAllFlatsOfAtLeastLength(int length, BaseGraph<AbstractGraphPoint> graph) {
         GraphFlatCollection<IGraphFlat> result = new GraphFlatCollection<IGraphFlat>(graph);
-        if (0 < length && graph != null) {
-            if (1 < graph.size()) {
-                //Get a descending iterator of graph points
-                Iterator<AbstractGraphPoint> descIter = graph.descendingIterator();
-                AbstractGraphPoint currPoint = descIter.next();
-                GraphFlat currFlat = new GraphFlat(currPoint);
-                while (descIter.hasNext()) {
-                    currPoint = descIter.next();
-                    if (!currFlat.addPoint(currPoint)) {
-                        //Value has changed add currFlat to collection
-                        if (currFlat.isAtLeastXLong(length)) {
-                            result.add(currFlat);
-                        }
-                        //This point is the start of a new flat
-                        currFlat = new GraphFlat(currPoint);
-                    }
-                }
-                //If the last flat is at least the required length add it
-                if (currFlat.isAtLeastXLong(length)) {
-                    result.add(currFlat);
-                }
-            }
+        if (graph != null) {
+            result.addAll(graph.getFlats(length, Long.MIN_VALUE, Long.MAX_VALUE));
         }
         return result;
     }
 
     /**
-     * This function generates a Java Calendar object for today with the time
-     * values initialised to the time the stock exchange opens
+     * This function generates a Java Calendar object for today (taken from the
+     * MarketClock) with the time values initialised to the time the stock exchange opens
      * @return A Java Calendar object
      */
     public static Calendar getExchOpeningTime() {
-        Calendar result = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        Calendar result = MarketClock.getNow();
         result.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_OPENING_HOUR);
         result.set(Calendar.MINUTE, DTConstants.EXCH_OPENING_MIN);
         result.set(Calendar.SECOND, DTConstants.EXCH_OPENING_SEC);
@@ -440,7 +531,7 @@ public class DTUtil {
      * for today.
      */
     public static Calendar getExchOpeningTimeFromGraph(BaseGraph<AbstractGraphPoint> graph) {
-        Calendar result = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        Calendar result = MarketClock.getNow();
         result.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_OPENING_HOUR);
         result.set(Calendar.MINUTE, DTConstants.EXCH_OPENING_MIN);
         result.set(Calendar.SECOND, DTConstants.EXCH_OPENING_SEC);
@@ -482,16 +573,7 @@ public class DTUtil {
     public static GraphFlatPair getFlatPairAroundTimePoint(long timestamp, BaseGraph<AbstractGraphPoint> graph) {
         GraphFlatPair result = null;
         if (null != graph && 0 < graph.size()) {
-            GraphFlatCollection<IGraphFlat> allFlats = DTUtil.findAllFlats(graph);
-            TreeSet<GraphFlatPair> flatPairs = allFlats.getFlatPairs();
-            for (GraphFlatPair currPair : flatPairs) {
-                long startTime = currPair.getFirstFlat().getEarliestPoint().getTimestamp();
-                long endTime = currPair.getSecondFlat().getLatestPoint().getTimestamp();
-                if (startTime <= timestamp && endTime >= timestamp) {
-                    result = currPair;
-                    break;
-                }
-            }
+            result = graph.getFlatPairAroundTime(timestamp);
         }
         return result;
     }
@@ -507,6 +589,16 @@ public class DTUtil {
         return rounder.performRounding(value);
     }
 
+    /**
+     * Applies the first step of Bryn's rounding process to a primitive value. This
+     * is the version used by the graph points as it creates no objects.
+     * @param value - double being any numeric value.
+     * @return double being the rounded value (always a whole number).
+     */
+    public static double step1Rounding(double value) {
+        return BrynRounding.round(value);
+    }
+
     /**
      *
      */
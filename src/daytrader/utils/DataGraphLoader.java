@@ -21,6 +21,7 @@ import daytrader.datamodel.DTConstants;
 import daytrader.datamodel.DTDurationEnum;
 import daytrader.datamodel.DTPriceEnum;
 import daytrader.datamodel.GraphLine;
+import daytrader.datamodel.HistoricBarStore;
 import daytrader.datamodel.HistoricDataGraph;
 import daytrader.datamodel.HistoricDataGraphPoint;
 import daytrader.datamodel.MarketEnum;
@@ -189,26 +190,38 @@ public class DataGraphLoader implements EWrapper {
                 objContract.m_currency = "USD";
                 objContract.m_primaryExch = this.market.toString();
                 ArrayList<String> batchesForDateTime = StockExchangeHours.getBatchesForDateTime(gmtCal);
+                ArrayList<String> requestedBatches = new ArrayList<String>();
+                HistoricBarStore barStore = HistoricBarStore.getInstance();
+                BaseGraph<AbstractGraphPoint> loadGraph = this.retrieveBaseGraph(this.lastClientId);
                 this.requestCount = new AtomicInteger(0);
                 for (String currBatchTime : batchesForDateTime) {
-                    if (!this.isConnected()) {
-                        throw new IOException("Connection has been lost");
-                    }
-                    this.requestCount.incrementAndGet();
-                    this.reqHistoricalData(this.lastClientId,
-                            objContract,
-                            currBatchTime,
-                            DTDurationEnum.S1800.toString(),
-                            BarSizeSettingEnum.SEC1.toString(),
-                            WhatToShowEnum.TRADES.toString(),
-                            0,
-                            intDateFormat);
+                    //Bars for a trading day that has closed may already be held locally
+                    long batchEnd = DTUtil.convertBrokerTimeToTimestamp(currBatchTime);
+                    long batchStart = batchEnd - DTDurationEnum.S1800.getDurationInMillis();
+                    TreeSet<AbstractGraphPoint> storedBars = barStore.loadBars(this.ticker, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 0, batchStart, batchEnd, this.lastClientId);
+                    if (null != storedBars && null != loadGraph) {
+                        loadGraph.addAll(storedBars);
+                    } else {
+                        if (!this.isConnected()) {
+                            throw new IOException("Connection has been lost");
+                        }
+                        this.requestCount.incrementAndGet();
+                        this.reqHistoricalData(this.lastClientId,
+                                objContract,
+                                currBatchTime,
+                                DTDurationEnum.S1800.toString(),
+                                BarSizeSettingEnum.SEC1.toString(),
+                                WhatToShowEnum.TRADES.toString(),
+                                0,
+                                intDateFormat);
+                        requestedBatches.add(currBatchTime);
 
-                    //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ex) {
-                        throw new IOException("Thread interrupted while transmitting data request");
+                        //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException ex) {
+                            throw new IOException("Thread interrupted while transmitting data request");
+                        }
                     }
                 }
                 boolean allLoaded = false;
@@ -232,6 +245,12 @@ public class DataGraphLoader implements EWrapper {
                 if (allLoaded) {
                     //All results are back release the block and retrieve results
                     result = this.retrieveBaseGraph(this.lastClientId);
+                    //Keep a copy of the requested batches so they need never be requested again
+                    for (String currBatchTime : requestedBatches) {
+                        long batchEnd = DTUtil.convertBrokerTimeToTimestamp(currBatchTime);
+                        long batchStart = batchEnd - DTDurationEnum.S1800.getDurationInMillis();
+                        barStore.storeBars(this.ticker, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 0, batchStart, batchEnd, result);
+                    }
                     result.setStockTicker(ticker);
                     result.setExchange(market);
                     //Store Previous days close
@@ -579,44 +598,18 @@ public class DataGraphLoader implements EWrapper {
                 AbstractGraphPoint currPoint = dataStore.get(key);
                 cPointGraph.add(currPoint);
             }
-            //Get a graph iterator
-            Iterator<AbstractGraphPoint> iterator = cPointGraph.iterator();
-            while (iterator.hasNext()) {
-                ArrayList<GraphLine> tempList = new ArrayList<GraphLine>();
-                AbstractGraphPoint currPoint = iterator.next();
-                NavigableSet<AbstractGraphPoint> subSet = dataGraph.subSet(currPoint, false, dataGraph.last(), true);
-                for (AbstractGraphPoint subPoint : subSet) {
-                    GraphLine graphLine = new GraphLine(currPoint, subPoint, dataGraph);
-                    graphLine.setTradingDays(dataGraph.getTradingDays());
-                    tempList.add(graphLine);
-                }
-
-                //Now go through and find lowest gradient
-                GraphLine smallestGradient = null;
-                for (GraphLine currLine : tempList) {
-                    if (null != smallestGradient) {
-                        double currSmallGradient = DTUtil.getGraidentBasedOnTradingDays(smallestGradient, this.getMonthCache());
-                        double currLineGradient = DTUtil.getGraidentBasedOnTradingDays(currLine, this.getMonthCache());
-                        StringBuilder msg = new StringBuilder("");
-                        msg.append(currLine.toString());
-                        msg.append(" : Gradient = ");
-                        msg.append(Double.toString(currLineGradient));
-                        System.out.println(msg.toString());
-                        if (Math.abs(currLineGradient) <= Math.abs(currSmallGradient)) {
-                            smallestGradient = currLine;
-                        }
-                    } else {
-                        smallestGradient = currLine;
-                        double currLineGradient = DTUtil.getGraidentBasedOnTradingDays(currLine, this.getMonthCache());
-                        StringBuilder msg = new StringBuilder("");
-                        msg.append(currLine.toString());
-                        msg.append(" : Gradient = ");
-                        msg.append(Double.toString(currLineGradient));
-                        System.out.println(msg.toString());
-                    }
+            //For each high point find the line to a later point with the smallest gradient
+            MinGradientLineFinder finder = new MinGradientLineFinder(dataGraph, this.getMonthCache());
+            HashMap<AbstractGraphPoint, AbstractGraphPoint> ePoints = finder.findMinGradientPoints(cPointGraph);
+            TreeSet<Integer> tradingDays = dataGraph.getTradingDays();
+            for (AbstractGraphPoint currPoint : cPointGraph) {
+                AbstractGraphPoint ePoint = ePoints.get(currPoint);
+                if (null != ePoint) {
+                    GraphLine smallestGradient = new GraphLine(currPoint, ePoint, dataGraph);
+                    smallestGradient.setTradingDays(tradingDays);
+                    //Add smallest gradient to the result
+                    tempList2.add(smallestGradient);
                 }
-                //Add smallest gradient to the result
-                tempList2.add(smallestGradient);
             }
         }
         //Filter out any Y Lines that start on the 'Current' Day
@@ -0,0 +1,253 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.utils;
+
+import daytrader.datamodel.DTConstants;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Knows which week days the exchange is closed. The regular full day holidays
+ * of the New York exchanges are calculated from their rules (New Years Day,
+ * Martin Luther King Jr Day, Washington's Birthday, Good Friday, Memorial Day,
+ * Juneteenth (from 2022), Independence Day, Labor Day, Thanksgiving and
+ * Christmas). A holiday on a Saturday is observed on the Friday before and one on
+ * a Sunday on the Monday after, except that New Years Day is never moved back
+ * into December. Closures that follow no rule (storms, national days of mourning
+ * etc) are held in a fixed list.
+ *
+ * The exchange also closes early (see DTConstants.EXCH_EARLY_CLOSING_HOUR) on
+ * July 3rd and Christmas Eve when they fall on a Monday to Thursday, on the day
+ * after Thanksgiving and on a few other days held in a fixed list.
+ *
+ * Days are identified by integers in the form YYYYMMDD. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class ExchangeHolidays {
+
+    //Unscheduled closures in ascending order
+    private static final int[] SPECIAL_CLOSURES = {
+        19940427, //President Nixon's funeral
+        20010911, 20010912, 20010913, 20010914, //World Trade Center attack
+        20040611, //President Reagan's funeral
+        20070102, //President Ford's funeral
+        20121029, 20121030, //Hurricane Sandy
+        20181205, //President Bush's funeral
+        20250109 //President Carter's funeral
+    };
+    //Early closes that follow no rule in ascending order
+    private static final int[] SPECIAL_EARLY_CLOSES = {
+        19971226, //Day after Christmas
+        20081226 //Day after Christmas
+    };
+    //Regular holidays for each year calculated so far, in ascending order
+    private static final ConcurrentHashMap<Integer, int[]> HOLIDAYS = new ConcurrentHashMap<Integer, int[]>();
+    //Regular early closes for each year calculated so far, in ascending order
+    private static final ConcurrentHashMap<Integer, int[]> EARLY_CLOSES = new ConcurrentHashMap<Integer, int[]>();
+
+    /**
+     * Tests if the exchange is open on the day of the given time
+     * @param cal - A Calendar holding a time in the exchange time zone
+     * @return boolean True if the day is a week day that is not an exchange
+     * holiday, False otherwise.
+     */
+    public static boolean isTradingDay(Calendar cal) {
+        boolean result = false;
+        int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+        if (Calendar.SATURDAY != dayOfWeek && Calendar.SUNDAY != dayOfWeek) {
+            result = !ExchangeHolidays.isHoliday(ExchangeHolidays.toDayCode(cal));
+        }
+        return result;
+    }
+
+    /**
+     * Tests if the exchange is open on a day
+     * @param dayCode - integer being the day in the form YYYYMMDD
+     * @return boolean True if the day is a week day that is not an exchange
+     * holiday, False otherwise.
+     */
+    public static boolean isTradingDay(int dayCode) {
+        Calendar cal = ExchangeHolidays.createDay(dayCode / 10000, ((dayCode / 100) % 100) - 1, dayCode % 100);
+        return ExchangeHolidays.isTradingDay(cal);
+    }
+
+    /**
+     * Tests if a day is an exchange holiday or unscheduled closure. Weekends are
+     * not holidays.
+     * @param dayCode - integer being the day in the form YYYYMMDD
+     * @return boolean True if the exchange is closed for a holiday on the day,
+     * False otherwise.
+     */
+    public static boolean isHoliday(int dayCode) {
+        boolean result = 0 <= Arrays.binarySearch(SPECIAL_CLOSURES, dayCode);
+        if (!result) {
+            result = 0 <= Arrays.binarySearch(ExchangeHolidays.getHolidays(dayCode / 10000), dayCode);
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the regular exchange holidays in a year
+     * @param year - integer being the year (eg 2016)
+     * @return An array of integers in ascending order being the holidays in the
+     * form YYYYMMDD. The array MUST NOT be modified.
+     */
+    public static int[] getHolidays(int year) {
+        int[] result = HOLIDAYS.get(year);
+        if (null == result) {
+            result = ExchangeHolidays.calculateHolidays(year);
+            HOLIDAYS.putIfAbsent(year, result);
+        }
+        return result;
+    }
+
+    /**
+     * Tests if the exchange closes early on a day
+     * @param dayCode - integer being the day in the form YYYYMMDD
+     * @return boolean True if the exchange is open but closes early on the day,
+     * False otherwise.
+     */
+    public static boolean isEarlyClose(int dayCode) {
+        boolean result = 0 <= Arrays.binarySearch(SPECIAL_EARLY_CLOSES, dayCode);
+        if (!result) {
+            result = 0 <= Arrays.binarySearch(ExchangeHolidays.getEarlyCloses(dayCode / 10000), dayCode);
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the regular early close days in a year
+     * @param year - integer being the year (eg 2016)
+     * @return An array of integers in ascending order being the early close days
+     * in the form YYYYMMDD. The array MUST NOT be modified.
+     */
+    public static int[] getEarlyCloses(int year) {
+        int[] result = EARLY_CLOSES.get(year);
+        if (null == result) {
+            result = ExchangeHolidays.calculateEarlyCloses(year);
+            EARLY_CLOSES.putIfAbsent(year, result);
+        }
+        return result;
+    }
+
+    private static int[] calculateEarlyCloses(int year) {
+        int[] result = new int[3];
+        int count = 0;
+        //July 3rd (a Friday is the observed Independence Day)
+        Calendar julyThird = ExchangeHolidays.createDay(year, Calendar.JULY, 3);
+        if (ExchangeHolidays.isMondayToThursday(julyThird)) {
+            result[count++] = ExchangeHolidays.toDayCode(julyThird);
+        }
+        //Day after Thanksgiving
+        Calendar blackFriday = ExchangeHolidays.nthWeekday(year, Calendar.NOVEMBER, Calendar.THURSDAY, 4);
+        blackFriday.add(Calendar.DATE, 1);
+        result[count++] = ExchangeHolidays.toDayCode(blackFriday);
+        //Christmas Eve (a Friday is the observed Christmas Day)
+        Calendar christmasEve = ExchangeHolidays.createDay(year, Calendar.DECEMBER, 24);
+        if (ExchangeHolidays.isMondayToThursday(christmasEve)) {
+            result[count++] = ExchangeHolidays.toDayCode(christmasEve);
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean isMondayToThursday(Calendar day) {
+        int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+        return Calendar.MONDAY <= dayOfWeek && Calendar.THURSDAY >= dayOfWeek;
+    }
+
+    private static int[] calculateHolidays(int year) {
+        int[] result = new int[10];
+        int count = 0;
+        //New Years Day (a Saturday holiday is not observed)
+        Calendar newYear = ExchangeHolidays.createDay(year, Calendar.JANUARY, 1);
+        if (Calendar.SUNDAY == newYear.get(Calendar.DAY_OF_WEEK)) {
+            newYear.add(Calendar.DATE, 1);
+        }
+        if (Calendar.SATURDAY != newYear.get(Calendar.DAY_OF_WEEK)) {
+            result[count++] = ExchangeHolidays.toDayCode(newYear);
+        }
+        //Martin Luther King Jr Day and Washington's Birthday
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.nthWeekday(year, Calendar.JANUARY, Calendar.MONDAY, 3));
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.nthWeekday(year, Calendar.FEBRUARY, Calendar.MONDAY, 3));
+        //Good Friday
+        Calendar goodFriday = ExchangeHolidays.getEasterSunday(year);
+        goodFriday.add(Calendar.DATE, -2);
+        result[count++] = ExchangeHolidays.toDayCode(goodFriday);
+        //Memorial Day
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.nthWeekday(year, Calendar.MAY, Calendar.MONDAY, -1));
+        //Juneteenth
+        if (2022 <= year) {
+            result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.observed(ExchangeHolidays.createDay(year, Calendar.JUNE, 19)));
+        }
+        //Independence Day, Labor Day and Thanksgiving
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.observed(ExchangeHolidays.createDay(year, Calendar.JULY, 4)));
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.nthWeekday(year, Calendar.SEPTEMBER, Calendar.MONDAY, 1));
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.nthWeekday(year, Calendar.NOVEMBER, Calendar.THURSDAY, 4));
+        //Christmas
+        result[count++] = ExchangeHolidays.toDayCode(ExchangeHolidays.observed(ExchangeHolidays.createDay(year, Calendar.DECEMBER, 25)));
+        return Arrays.copyOf(result, count);
+    }
+
+    //Moves a holiday that falls on a weekend to the week day it is observed on
+    private static Calendar observed(Calendar day) {
+        int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+        if (Calendar.SATURDAY == dayOfWeek) {
+            day.add(Calendar.DATE, -1);
+        } else if (Calendar.SUNDAY == dayOfWeek) {
+            day.add(Calendar.DATE, 1);
+        }
+        return day;
+    }
+
+    //Finds the nth given week day of a month, a negative n counts back from the end of the month
+    private static Calendar nthWeekday(int year, int month, int dayOfWeek, int n) {
+        Calendar result = ExchangeHolidays.createDay(year, month, 1);
+        if (0 < n) {
+            while (dayOfWeek != result.get(Calendar.DAY_OF_WEEK)) {
+                result.add(Calendar.DATE, 1);
+            }
+            result.add(Calendar.DATE, 7 * (n - 1));
+        } else {
+            result.set(Calendar.DAY_OF_MONTH, result.getActualMaximum(Calendar.DAY_OF_MONTH));
+            while (dayOfWeek != result.get(Calendar.DAY_OF_WEEK)) {
+                result.add(Calendar.DATE, -1);
+            }
+            result.add(Calendar.DATE, 7 * (n + 1));
+        }
+        return result;
+    }
+
+    //Anonymous Gregorian algorithm for the date of Easter Sunday
+    private static Calendar getEasterSunday(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = ((19 * a) + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + (2 * e) + (2 * i) - h - k) % 7;
+        int m = (a + (11 * h) + (22 * l)) / 451;
+        int month = (h + l - (7 * m) + 114) / 31;
+        int day = ((h + l - (7 * m) + 114) % 31) + 1;
+        return ExchangeHolidays.createDay(year, month - 1, day);
+    }
+
+    private static Calendar createDay(int year, int month, int day) {
+        Calendar result = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        result.clear();
+        result.set(year, month, day, 12, 0, 0);
+        return result;
+    }
+
+    private static int toDayCode(Calendar day) {
+        return (day.get(Calendar.YEAR) * 10000) + ((day.get(Calendar.MONTH) + 1) * 100) + day.get(Calendar.DAY_OF_MONTH);
+    }
+}
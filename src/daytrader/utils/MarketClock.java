@@ -0,0 +1,75 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.utils;
+
+import daytrader.datamodel.DTConstants;
+import java.util.Calendar;
+
+/**
+ * The clock the trading rules use to decide what time 'NOW' is. Normally this
+ * is the system clock but a market replay (see MarketReplayEngine) sets a
+ * simulated time so the rules behave exactly as they did on the recorded day.
+ *
+ * The simulated time is shared by the whole application so it must only be set
+ * while no live putups are running, claim the clock with
+ * RealTimeScheduler.beginReplay() first. This is a THREADSAFE class.
+ *
+ * @author Roy
+ */
+public class MarketClock {
+
+    //Simulated time in milliseconds, NO_SIMULATED_TIME while using the system clock
+    private static final long NO_SIMULATED_TIME = Long.MIN_VALUE;
+    private static volatile long simulatedTime = NO_SIMULATED_TIME;
+
+    /**
+     * Retrieves the current time in milliseconds, use this in place of
+     * System.currentTimeMillis() wherever the rules need the time 'NOW'
+     * @return long being the simulated time if one is set or the system time
+     */
+    public static long currentTimeMillis() {
+        long result = MarketClock.simulatedTime;
+        if (NO_SIMULATED_TIME == result) {
+            result = System.currentTimeMillis();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a Java Calendar object in the "America/New_York" time zone
+     * initialised to the current time (see currentTimeMillis())
+     * @return A new Calendar object representing 'NOW'
+     */
+    public static Calendar getNow() {
+        Calendar result = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        result.setTimeInMillis(MarketClock.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Sets the simulated time, from now on the clock reports this time until
+     * it is set again or useSystemTime() is called
+     * @param timestamp - long being the simulated time in milliseconds
+     */
+    public static void setSimulatedTime(long timestamp) {
+        MarketClock.simulatedTime = timestamp;
+    }
+
+    /**
+     * Clears any simulated time so that the clock reports the system time
+     */
+    public static void useSystemTime() {
+        MarketClock.simulatedTime = NO_SIMULATED_TIME;
+    }
+
+    /**
+     * Test to determine if the clock is reporting a simulated time
+     * @return boolean True if a simulated time is set, False if the clock is
+     * using the system time
+     */
+    public static boolean isSimulated() {
+        return NO_SIMULATED_TIME != MarketClock.simulatedTime;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.utils;
+
+import daytrader.datamodel.AbstractGraphPoint;
+import daytrader.datamodel.BaseGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Y-Line generation needs, for a 'C' point, the later point on the graph that
+ * gives the line with the smallest (absolute) gradient across trading days.
+ * Rather than building a GraphLine to every later point and calculating each
+ * gradient this class converts the graph once onto a TradingTimeAxis and holds
+ * the X / Y values in primitive arrays.
+ *
+ * For a batch of 'C' points the graph is swept from its end back to its start
+ * maintaining the upper convex hull of all points after the sweep position.
+ * The steepest line from a 'C' point to any later point always touches this
+ * hull and is found with a binary search. When that steepest line does not go
+ * up it is also the line with the smallest absolute gradient. Only when some
+ * later point is above the 'C' point is a plain scan of the arrays needed.
+ *
+ * As with the original calculation ties are resolved in favour of the latest point.
+ *
+ * @author Roy
+ */
+public class MinGradientLineFinder {
+
+    private final AbstractGraphPoint[] points;
+    private final long[] timestamps;
+    private final double[] xValues;
+    private final double[] yValues;
+    private final TradingTimeAxis axis;
+    //True if the X values strictly increase along the graph (required by the hull)
+    private final boolean xAscending;
+
+    /**
+     * Constructor that loads the points of a graph onto a trading time axis
+     * @param graph - The BaseGraph of Price / Time points lines may end on
+     * @param tradingDayCache - A TreeSet with a point for each trading day (usually the
+     * putups month cache). May be null in which case only the trading days of the
+     * graph itself are used.
+     */
+    public MinGradientLineFinder(BaseGraph<AbstractGraphPoint> graph, TreeSet<AbstractGraphPoint> tradingDayCache) {
+        ArrayList<AbstractGraphPoint> data = new ArrayList<AbstractGraphPoint>();
+        TreeSet<Integer> days = new TreeSet<Integer>();
+        if (null != graph) {
+            data.addAll(graph);
+            days.addAll(graph.getTradingDays());
+        }
+        if (null != tradingDayCache) {
+            for (AbstractGraphPoint currDay : tradingDayCache) {
+                days.add(currDay.getDateAsNumber());
+            }
+        }
+        int size = data.size();
+        int[] dayCodes = new int[size];
+        for (int i = 0; i < size; i++) {
+            dayCodes[i] = data.get(i).getDateAsNumber();
+            days.add(dayCodes[i]);
+        }
+        this.axis = new TradingTimeAxis(days);
+        this.points = data.toArray(new AbstractGraphPoint[size]);
+        this.timestamps = new long[size];
+        this.xValues = new double[size];
+        this.yValues = new double[size];
+        boolean ascending = true;
+        for (int i = 0; i < size; i++) {
+            this.timestamps[i] = this.points[i].getTimestamp();
+            this.xValues[i] = this.axis.toX(this.timestamps[i], dayCodes[i]);
+            this.yValues[i] = this.points[i].getLastPrice();
+            if (0 < i && this.xValues[i] <= this.xValues[i - 1]) {
+                ascending = false;
+            }
+        }
+        this.xAscending = ascending;
+    }
+
+    /**
+     * Accessor to retrieve the trading time axis used by this finder
+     * @return The TradingTimeAxis covering the graph and trading day cache
+     */
+    public TradingTimeAxis getAxis() {
+        return this.axis;
+    }
+
+    /**
+     * Finds the point AFTER the given 'C' point that gives the line with the
+     * smallest absolute gradient based on trading days. This is a single scan
+     * of the graph, use findMinGradientPoints() when many 'C' points are to be tested.
+     * @param cPoint - The start point of the line
+     * @return The end point of the line with the smallest gradient or NULL if
+     * there are no points after the 'C' point
+     */
+    public AbstractGraphPoint findMinGradientPoint(AbstractGraphPoint cPoint) {
+        AbstractGraphPoint result = null;
+        if (null != cPoint) {
+            int start = this.firstIndexAfter(cPoint.getTimestamp());
+            int index = this.scanForMinGradient(start, this.axis.toX(cPoint), cPoint.getLastPrice());
+            if (0 <= index) {
+                result = this.points[index];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds for each of the given 'C' points the point AFTER it that gives the
+     * line with the smallest absolute gradient based on trading days.
+     * @param cPoints - A Collection of start points
+     * @return A HashMap keyed by 'C' point whose values are the end point of the line with
+     * the smallest gradient. 'C' points with no later points are not included.
+     */
+    public HashMap<AbstractGraphPoint, AbstractGraphPoint> findMinGradientPoints(Collection<AbstractGraphPoint> cPoints) {
+        HashMap<AbstractGraphPoint, AbstractGraphPoint> result = new HashMap<AbstractGraphPoint, AbstractGraphPoint>();
+        if (null != cPoints && 0 < cPoints.size() && 0 < this.points.length) {
+            //Order the queries by the position of the first point after them, latest first
+            final AbstractGraphPoint[] queries = cPoints.toArray(new AbstractGraphPoint[cPoints.size()]);
+            final int[] starts = new int[queries.length];
+            Integer[] order = new Integer[queries.length];
+            for (int i = 0; i < queries.length; i++) {
+                starts[i] = this.firstIndexAfter(queries[i].getTimestamp());
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Integer.compare(starts[o2], starts[o1]);
+                }
+            });
+            //Upper hull of the points from the sweep position to the end of the graph.
+            //hull[0] is the last point of the graph, hull[top] the earliest point.
+            int[] hull = new int[this.points.length];
+            int top = -1;
+            int next = this.points.length;
+            for (Integer currQuery : order) {
+                int start = starts[currQuery];
+                if (start < this.points.length) {
+                    AbstractGraphPoint cPoint = queries[currQuery];
+                    double xc = this.axis.toX(cPoint);
+                    double yc = cPoint.getLastPrice();
+                    int index = -1;
+                    if (this.xAscending && xc < this.xValues[start]) {
+                        //Extend the hull back to the first point after this 'C'
+                        while (next > start) {
+                            next--;
+                            while (top >= 1 && !this.isAbove(hull[top], next, hull[top - 1])) {
+                                top--;
+                            }
+                            hull[++top] = next;
+                        }
+                        //Steepest line from C touches the hull
+                        int low = 0;
+                        int high = top;
+                        while (low < high) {
+                            int mid = (low + high) >>> 1;
+                            //Walk right (towards hull[0]) while the slope does not fall
+                            if (this.compareSlopes(xc, yc, hull[top - mid - 1], hull[top - mid]) >= 0) {
+                                low = mid + 1;
+                            } else {
+                                high = mid;
+                            }
+                        }
+                        int tangent = hull[top - low];
+                        if (this.yValues[tangent] <= yc) {
+                            //No later point is above C so the steepest line is also the flattest
+                            index = tangent;
+                        }
+                    }
+                    if (0 > index) {
+                        index = this.scanForMinGradient(start, xc, yc);
+                    }
+                    if (0 <= index) {
+                        result.put(cPoint, this.points[index]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests if point mid is strictly above the line from point left to point right.
+     */
+    private boolean isAbove(int mid, int left, int right) {
+        double ax = this.xValues[mid] - this.xValues[left];
+        double ay = this.yValues[mid] - this.yValues[left];
+        double bx = this.xValues[right] - this.xValues[left];
+        double by = this.yValues[right] - this.yValues[left];
+        return ay * bx > by * ax;
+    }
+
+    /**
+     * Compares the slope of the line from (xc, yc) to point first against the
+     * slope of the line from (xc, yc) to point second. Both points must be to the
+     * right of xc.
+     * @return positive if first is steeper, 0 if equal, negative if second is steeper
+     */
+    private int compareSlopes(double xc, double yc, int first, int second) {
+        double lhs = (this.yValues[first] - yc) * (this.xValues[second] - xc);
+        double rhs = (this.yValues[second] - yc) * (this.xValues[first] - xc);
+        return Double.compare(lhs, rhs);
+    }
+
+    /**
+     * Scans every point from start to the end of the graph for the line with the
+     * smallest absolute gradient, the latest point wins a tie.
+     */
+    private int scanForMinGradient(int start, double xc, double yc) {
+        int result = -1;
+        double smallest = Double.MAX_VALUE;
+        for (int i = start; i < this.points.length; i++) {
+            double gradient = Math.abs((this.yValues[i] - yc) / (this.xValues[i] - xc));
+            if (gradient <= smallest || 0 > result) {
+                smallest = gradient;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the position of the first point strictly after the given time
+     */
+    private int firstIndexAfter(long timestamp) {
+        int low = 0;
+        int high = this.timestamps.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
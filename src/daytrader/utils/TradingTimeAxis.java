@@ -0,0 +1,152 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package daytrader.utils;
+
+import daytrader.datamodel.AbstractGraphPoint;
+import daytrader.datamodel.DTConstants;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Converts times into a 'trading time' X axis value where all time when the
+ * market is closed (overnight, weekends and holidays) has been removed. The axis
+ * is made up of the trading days it is given, less any weekend day or exchange
+ * holiday (see ExchangeHolidays), so closed days never take up axis space. Each
+ * trading day occupies exactly DTUtil.msPerTradingDay() milliseconds of the
+ * axis so the X distance between two points is the same deltaX used by
+ * DTUtil.getGraidentBasedOnTradingDays() (time to the close on the first day +
+ * a full day for every trading day in between + time since the open on the last day)
+ * but it is calculated once per point rather than once per pair of points.
+ *
+ * @author Roy
+ */
+public class TradingTimeAxis {
+
+    private final long msPerDay;
+    //Trading days (YYYYMMDD) in ascending order
+    private final int[] days;
+    //Exchange opening time for each trading day
+    private final long[] openTimes;
+
+    /**
+     * Constructor that accepts the trading days the axis should cover
+     * @param tradingDays - A collection of integers representing the trading days
+     * in the form YYYYMMDD. Duplicates, weekend days and exchange holidays are ignored.
+     */
+    public TradingTimeAxis(Collection<Integer> tradingDays) {
+        this.msPerDay = DTUtil.msPerTradingDay();
+        TreeSet<Integer> days = new TreeSet<Integer>();
+        if (null != tradingDays) {
+            for (Integer currDay : tradingDays) {
+                if (null != currDay && ExchangeHolidays.isTradingDay(currDay)) {
+                    days.add(currDay);
+                }
+            }
+        }
+        this.days = new int[days.size()];
+        this.openTimes = new long[days.size()];
+        int i = 0;
+        for (Integer currDay : days) {
+            this.days[i] = currDay;
+            int intYear = currDay / 10000;
+            int intMonth = ((currDay / 100) % 100) - 1;
+            int intDay = currDay % 100;
+            Calendar open = DTUtil.createCalendar(intYear, intMonth, intDay, DTConstants.EXCH_OPENING_HOUR, DTConstants.EXCH_OPENING_MIN, DTConstants.EXCH_OPENING_SEC, DTConstants.EXCH_TIME_ZONE);
+            this.openTimes[i] = open.getTimeInMillis();
+            i++;
+        }
+    }
+
+    /**
+     * Finds the start of a period made up of a number of trading days that ends
+     * at the given time. The last day of the period is the trading day in progress
+     * at the end time (or the last trading day before it if the market had not
+     * yet opened) and the period starts at the opening of the trading day the
+     * given number of trading days back. Weekends and exchange holidays (see
+     * ExchangeHolidays) are not trading days.
+     * @param endTime - long being the end of the period in milliseconds
+     * @param tradingDays - integer being the number of trading days in the period
+     * @return long being the opening time of the first trading day in the period
+     */
+    public static long getTradingDaysStart(long endTime, int tradingDays) {
+        Calendar cal = Calendar.getInstance(DTConstants.EXCH_TIME_ZONE);
+        cal.setTimeInMillis(endTime);
+        cal.set(Calendar.HOUR_OF_DAY, DTConstants.EXCH_OPENING_HOUR);
+        cal.set(Calendar.MINUTE, DTConstants.EXCH_OPENING_MIN);
+        cal.set(Calendar.SECOND, DTConstants.EXCH_OPENING_SEC);
+        cal.set(Calendar.MILLISECOND, 0);
+        if (cal.getTimeInMillis() >= endTime) {
+            //The market had not opened on the last day
+            cal.add(Calendar.DATE, -1);
+        }
+        int counted = 0;
+        while (counted < tradingDays) {
+            if (ExchangeHolidays.isTradingDay(cal)) {
+                counted++;
+            }
+            if (counted < tradingDays) {
+                cal.add(Calendar.DATE, -1);
+            }
+        }
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Converts a Price / Time point to its position on the trading time axis
+     * @param aPoint - The point to convert
+     * @return double being the trading time X value in milliseconds
+     */
+    public double toX(AbstractGraphPoint aPoint) {
+        return this.toX(aPoint.getTimestamp(), aPoint.getDateAsNumber());
+    }
+
+    /**
+     * Converts a time on a known trading day to its position on the trading time
+     * axis. Times before the open give a negative offset into the day exactly as
+     * DTUtil.getGraidentBasedOnTradingDays() would.
+     * @param timestamp - long being the time in milliseconds
+     * @param dayCode - integer being the trading day of the time in the form YYYYMMDD
+     * @return double being the trading time X value in milliseconds
+     */
+    public double toX(long timestamp, int dayCode) {
+        double result;
+        int day = Arrays.binarySearch(this.days, dayCode);
+        if (0 <= day) {
+            result = ((double) day * this.msPerDay) + (timestamp - this.openTimes[day]);
+        } else {
+            result = this.toX(timestamp);
+        }
+        return result;
+    }
+
+    /**
+     * Converts a time to its position on the trading time axis. The time should
+     * fall within the trading hours of one of the axis's trading days.
+     * @param timestamp - long being the time in milliseconds
+     * @return double being the trading time X value in milliseconds
+     */
+    public double toX(long timestamp) {
+        //Find the latest trading day that opened at or before the timestamp
+        int low = 0;
+        int high = this.openTimes.length - 1;
+        int day = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.openTimes[mid] <= timestamp) {
+                day = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        double result = timestamp;
+        if (0 < this.openTimes.length) {
+            result = ((double) day * this.msPerDay) + (timestamp - this.openTimes[day]);
+        }
+        return result;
+    }
+}
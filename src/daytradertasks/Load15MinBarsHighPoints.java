@@ -9,7 +9,6 @@ import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.CallbackType;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
-import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
 import daytrader.historicRequestSystem.AbstractHDTCallable;
 import daytrader.interfaces.ICallback;
 import daytrader.utils.DTUtil;
@@ -93,23 +92,7 @@ public class Load15MinBarsHighPoints extends AbstractHDTCallable implements ICal
             long timeOut = System.currentTimeMillis() + (60 * 60 * 1000);        //Timeout after 1 Hour
             this.setAbortTime(timeOut);
             //Wait for data to be delivered
-            synchronized (this.monitor) {
-                do {
-                    long waitFor = timeOut - System.currentTimeMillis();
-                    if (waitFor <= 0) {
-                        waitFor = 1;
-                    }
-                    if (!this.isLoadComplete()) {
-                        this.monitor.wait(waitFor);
-                    }
-                    if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                        this.strAbortMsg = "Timed out waiting for stockbroker server Load15MinBarsHighPoints";
-                        this.setAbort(true);
-                        this.disconnect();
-                        throw new TWSConnectionException(this.strAbortMsg);
-                    }
-                } while (!this.isLoadComplete() && !isAbort());
-            }
+            this.awaitLoadComplete("Timed out waiting for stockbroker server Load15MinBarsHighPoints");
 //                //Wait for data to be delivered
 //                while (!this.isLoadComplete() && !isAbort()) {
 //                    if (System.currentTimeMillis() < timeOut) {
@@ -51,6 +51,19 @@ public class Load1DayBarsHighPoints extends AbstractHDTCallable {
         this.loadedPoints = new TreeSet<AbstractGraphPoint>();
         LoadHistoricDataPointBatchResult finalResult = null;
         try {
+            int intRTH = 1;
+            int intDateFormat = 1;
+            StockExchangeHours smHrs = new StockExchangeHours(endDate.getTime());
+            Calendar gmtEndCal = smHrs.getEndCalendarInGMT();
+            //YLines Pre-Load starts from 'yesterday' move back 1 day from current day (endDate is today)
+            gmtEndCal.add(Calendar.DAY_OF_MONTH, -1);
+            String currBatchTime = DTUtil.convertCalToBrokerTime(gmtEndCal);
+            DTDurationEnum durationToUse = DTDurationEnum.M3;
+            if (null != this.backToDate) {
+                durationToUse = DTDurationEnum.getDurationToCover(endDate, this.backToDate);
+            }
+            //Wait for the pacing rules BEFORE connecting so the wait never holds the connection
+            this.acquirePacingPermit(currBatchTime, durationToUse.toString(), BarSizeSettingEnum.DAY1.toString(), WhatToShowEnum.TRADES.toString(), intRTH);
             //Make the connection
             int maxAttempts = 100;
             int currAttempts = 0;
@@ -69,32 +82,18 @@ public class Load1DayBarsHighPoints extends AbstractHDTCallable {
                 }
             }
             if (this.isConnected()) {
-                int intRTH = 1;
-                int intDateFormat = 1;
                 //Make the request
-                StockExchangeHours smHrs = new StockExchangeHours(endDate.getTime());
-                Calendar gmtEndCal = smHrs.getEndCalendarInGMT();
-                //YLines Pre-Load starts from 'yesterday' move back 1 day from current day (endDate is today)
-                gmtEndCal.add(Calendar.DAY_OF_MONTH, -1);
-                String currBatchTime = DTUtil.convertCalToBrokerTime(gmtEndCal);
-                DTDurationEnum durationToUse = DTDurationEnum.M3;
-                if (null != this.backToDate) {
-                    durationToUse = DTDurationEnum.getDurationToCover(endDate, this.backToDate);
-                }
                 this.setLoadComplete(false);
                 this.setAbort(false);
                 this.strAbortMsg = "";
-                this.m_client.reqHistoricalData(this.objContract.m_conId,
-                        objContract,
-                        currBatchTime,
-                        durationToUse.toString(),
-                        BarSizeSettingEnum.DAY1.toString(),
-                        WhatToShowEnum.TRADES.toString(),
-                        intRTH,
-                        intDateFormat);
-                //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                //The pacing permit was obtained before connecting so this does not wait
                 try {
-                    Thread.sleep(2000);
+                    this.reqHistoricalData(currBatchTime,
+                            durationToUse.toString(),
+                            BarSizeSettingEnum.DAY1.toString(),
+                            WhatToShowEnum.TRADES.toString(),
+                            intRTH,
+                            intDateFormat);
                 } catch (InterruptedException ex) {
                     this.disconnect();
                     throw new InterruptedException("Thread interrupted while transmitting data request");
@@ -103,23 +102,7 @@ public class Load1DayBarsHighPoints extends AbstractHDTCallable {
                 long timeOut = System.currentTimeMillis() + (30 * 1000);        //Timeout after 30 seconds
                 this.setAbortTime(timeOut);
                 //Wait for data to be delivered
-                synchronized (this.monitor) {
-                    do {
-                        long waitFor = timeOut - System.currentTimeMillis();
-                        if (waitFor <= 0) {
-                            waitFor = 1;
-                        }
-                        if(!this.isLoadComplete()){
-                            this.monitor.wait(waitFor);
-                        }
-                        if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                            this.strAbortMsg = "Timed out waiting for stockbroker server Load1DayBarsHighPoints";
-                            this.setAbort(true);
-                            this.disconnect();
-                            throw new TWSConnectionException(this.strAbortMsg);
-                        }
-                    } while (!this.isLoadComplete() && !isAbort());
-                }
+                this.awaitLoadComplete("Timed out waiting for stockbroker server Load1DayBarsHighPoints");
 //                while (!this.isLoadComplete() && !isAbort()) {
 //                    if (System.currentTimeMillis() < timeOut) {
 //                        //Thread.yield();
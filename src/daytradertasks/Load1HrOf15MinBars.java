@@ -42,16 +42,31 @@ public class Load1HrOf15MinBars extends AbstractHDTCallable {
         this.time = DTUtil.convertCalToBrokerTime(endTime);
     }
 
+    /**
+     * Identical requests for the 15 minute bars for the hour ending at the end time are merged
+     * @return String being the key identifying the data this task requests
+     */
+    @Override
+    public String getRequestKey() {
+        return this.buildRequestKey(this.time);
+    }
+
     @Override
     public LoadHistoricDataPointBatchResult call() throws Exception {
         this.loadedPoints = new TreeSet<AbstractGraphPoint>();
         LoadHistoricDataPointBatchResult finalResult = null;
         try {
+            //Bars for a trading day that has closed may already be held locally
+            boolean fromStore = this.loadFromBarStore(this.time, DTDurationEnum.S3600, BarSizeSettingEnum.MIN15, WhatToShowEnum.TRADES, 1);
+            if (!fromStore) {
+                //Wait for the pacing rules BEFORE connecting so the wait never holds the connection
+                this.acquirePacingPermit(this.time, DTDurationEnum.S3600.toString(), BarSizeSettingEnum.MIN15.toString(), WhatToShowEnum.TRADES.toString(), 1);
+            }
             //Make the connection
             int maxAttempts = 100;
             int currAttempts = 0;
             Random randGen = new Random();
-            while (!this.m_client.isConnected() && currAttempts < maxAttempts) {
+            while (!fromStore && !this.m_client.isConnected() && currAttempts < maxAttempts) {
                 currAttempts++;
                 try {
                     this.connect();
@@ -64,25 +79,23 @@ public class Load1HrOf15MinBars extends AbstractHDTCallable {
                     Thread.sleep(rand.longValue());
                 }
             }
-            if (this.isConnected()) {
+            if (fromStore) {
+                finalResult = new LoadHistoricDataPointBatchResult(putup, loadedPoints, cbDelegate, CallbackType.YLINES15MINBARS);
+            } else if (this.isConnected()) {
                 int intRTH = 1;
                 int intDateFormat = 1;
                 this.setLoadComplete(false);
                 this.setAbort(false);
                 this.strAbortMsg = "";
                 //Make the request
-                this.m_client.reqHistoricalData(this.objContract.m_conId,
-                        objContract,
-                        time,
-                        DTDurationEnum.S3600.toString(),
-                        BarSizeSettingEnum.MIN15.toString(),
-                        WhatToShowEnum.TRADES.toString(),
-                        intRTH,
-                        intDateFormat);
-
-                //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                //The pacing permit was obtained before connecting so this does not wait
                 try {
-                    Thread.sleep(2000);
+                    this.reqHistoricalData(time,
+                            DTDurationEnum.S3600.toString(),
+                            BarSizeSettingEnum.MIN15.toString(),
+                            WhatToShowEnum.TRADES.toString(),
+                            intRTH,
+                            intDateFormat);
                 } catch (InterruptedException ex) {
                     throw new IOException("Thread interrupted while transmitting data request");
                 }
@@ -90,23 +103,7 @@ public class Load1HrOf15MinBars extends AbstractHDTCallable {
                 long timeOut = System.currentTimeMillis() + (60 * 60 * 1000);        //Timeout after 1 hour
                 this.setAbortTime(timeOut);
                 //Wait for data to be delivered
-                synchronized (this.monitor) {
-                    do {
-                        long waitFor = timeOut - System.currentTimeMillis();
-                        if (waitFor <= 0) {
-                            waitFor = 1;
-                        }
-                        if (!this.isLoadComplete()) {
-                            this.monitor.wait(waitFor);
-                        }
-                        if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                            this.strAbortMsg = "Timed out waiting for stockbroker server Load1HrOf15MinBars";
-                            this.setAbort(true);
-                            this.disconnect();
-                            throw new TWSConnectionException(this.strAbortMsg);
-                        }
-                    } while (!this.isLoadComplete() && !isAbort());
-                }
+                this.awaitLoadComplete("Timed out waiting for stockbroker server Load1HrOf15MinBars");
 //                //Wait for data to be delivered
 //                while (!this.isLoadComplete() && !isAbort()) {
 //                    if (System.currentTimeMillis() < timeOut) {
@@ -124,6 +121,8 @@ public class Load1HrOf15MinBars extends AbstractHDTCallable {
                 }
                 //If we reach this point all data was loaded and the loadedPoints will be returned
                 this.disconnect();
+                //Keep a copy of the bars so this request need never be made again
+                this.saveToBarStore(this.time, DTDurationEnum.S3600, BarSizeSettingEnum.MIN15, WhatToShowEnum.TRADES, 1);
                 //However we can sometimes get data Bryn does not want (both before market opening and after market close)
                 //Bryn wants this data removed
                 //this.filterData();
@@ -57,15 +57,31 @@ public class LoadHistoricData15MinBatch extends AbstractHDTCallable {
         super(newPutup, newEndTime, newCallback);
     }
 
+    /**
+     * Identical requests for the 15 minute batch ending at the end time are merged
+     * @return String being the key identifying the data this task requests
+     */
+    @Override
+    public String getRequestKey() {
+        return this.buildRequestKey(DTUtil.convertCalToBrokerTime(this.endDate));
+    }
+
     @Override
     public LoadHistoricDataPointBatchResult call() throws Exception {
         this.loadedPoints = new TreeSet<AbstractGraphPoint>();
         LoadHistoricDataPointBatchResult finalResult = null;
         try {
+            String batchTime = DTUtil.convertCalToBrokerTime(this.endDate);
+            //Bars for a trading day that has closed may already be held locally
+            boolean fromStore = this.loadFromBarStore(batchTime, DTDurationEnum.S900, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 0);
+            if (!fromStore) {
+                //Wait for the pacing rules BEFORE connecting so the wait never holds the connection
+                this.acquirePacingPermit(batchTime, DTDurationEnum.S900.toString(), BarSizeSettingEnum.SEC1.toString(), WhatToShowEnum.TRADES.toString(), 0);
+            }
             //Make the connection
             int maxAttempts = 100;
             int currAttempts = 0;
-            while (!this.m_client.isConnected() && currAttempts < maxAttempts) {
+            while (!fromStore && !this.m_client.isConnected() && currAttempts < maxAttempts) {
                 currAttempts++;
                 try {
                     this.connect();
@@ -73,23 +89,21 @@ public class LoadHistoricData15MinBatch extends AbstractHDTCallable {
                     System.err.println("Connect attempt failed no " + currAttempts + " : Date = " + this.endDate.getTime().toString() + ", Port number: " + this.executingAccount.getPortNo());
                 }
             }
-            if (this.isConnected()) {
-                String batchTime = DTUtil.convertCalToBrokerTime(this.endDate);
+            if (fromStore) {
+                this.filterData();
+                finalResult = new LoadHistoricDataPointBatchResult(putup, loadedPoints, cbDelegate, this.cbList);
+            } else if (this.isConnected()) {
                 this.setLoadComplete(false);
                 this.setAbort(false);
                 this.strAbortMsg = "";
-                this.m_client.reqHistoricalData(this.objContract.m_conId,
-                        objContract,
-                        batchTime,
-                        DTDurationEnum.S900.toString(),
-                        BarSizeSettingEnum.SEC1.toString(),
-                        WhatToShowEnum.TRADES.toString(),
-                        0,
-                        1);
-
-                //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                //The pacing permit was obtained before connecting so this does not wait
                 try {
-                    Thread.sleep(2000);
+                    this.reqHistoricalData(batchTime,
+                            DTDurationEnum.S900.toString(),
+                            BarSizeSettingEnum.SEC1.toString(),
+                            WhatToShowEnum.TRADES.toString(),
+                            0,
+                            1);
                 } catch (InterruptedException ex) {
                     this.disconnect();
                     throw new InterruptedException("Thread interrupted while transmitting data request");
@@ -98,23 +112,7 @@ public class LoadHistoricData15MinBatch extends AbstractHDTCallable {
                 long timeOut = System.currentTimeMillis() + (60 * 60 * 1000);        //Timeout after 1 Hour
                 this.setAbortTime(timeOut);
                 //Wait for data to be delivered
-                synchronized (this.monitor) {
-                    do {
-                        long waitFor = timeOut - System.currentTimeMillis();
-                        if (waitFor <= 0) {
-                            waitFor = 1;
-                        }
-                        if(!this.isLoadComplete()){
-                            this.monitor.wait(waitFor);
-                        }
-                        if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                            this.strAbortMsg = "Timed out waiting for stockbroker server LoadHistoricData15MinBatch";
-                            this.setAbort(true);
-                            this.disconnect();
-                            throw new TWSConnectionException(this.strAbortMsg);
-                        }
-                    } while (!this.isLoadComplete() && !isAbort());
-                }
+                this.awaitLoadComplete("Timed out waiting for stockbroker server LoadHistoricData15MinBatch");
 //                //Wait for data to be delivered
 //                while (!this.isLoadComplete() && !isAbort()) {
 //                    if (System.currentTimeMillis() < timeOut) {
@@ -132,6 +130,8 @@ public class LoadHistoricData15MinBatch extends AbstractHDTCallable {
                 }
                 //If we reach this point all data was loaded and the loadedPoints will be returned
                 this.disconnect();
+                //Keep a copy of the bars so this batch need never be requested again
+                this.saveToBarStore(batchTime, DTDurationEnum.S900, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 0);
                 //However we can sometimes get data Bryn does not want (both before market opening and after market close)
                 //Bryn wants this data removed
                 this.filterData();
@@ -61,15 +61,30 @@ public class LoadHistoricDataBatchTask extends AbstractHDTCallable {
         this.batchTime = DTUtil.convertCalToBrokerTime(this.endDate);
     }
 
+    /**
+     * Identical requests for the 30 minute batch ending at the batch time are merged
+     * @return String being the key identifying the data this task requests
+     */
+    @Override
+    public String getRequestKey() {
+        return this.buildRequestKey(this.batchTime);
+    }
+
     @Override
     public LoadHistoricDataPointBatchResult call() throws Exception {
         this.loadedPoints = new TreeSet<AbstractGraphPoint>();
         LoadHistoricDataPointBatchResult finalResult = null;
         try {
+            //Bars for a trading day that has closed may already be held locally
+            boolean fromStore = this.loadFromBarStore(this.batchTime, DTDurationEnum.S1800, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 0);
+            if (!fromStore) {
+                //Wait for the pacing rules BEFORE connecting so the wait never holds the connection
+                this.acquirePacingPermit(this.batchTime, DTDurationEnum.S1800.toString(), BarSizeSettingEnum.SEC1.toString(), WhatToShowEnum.TRADES.toString(), 0);
+            }
             //Make the connection
             int maxAttempts = 10;
             int currAttempts = 0;
-            while (!this.m_client.isConnected() && currAttempts < maxAttempts) {
+            while (!fromStore && !this.m_client.isConnected() && currAttempts < maxAttempts) {
                 currAttempts++;
                 try {
                     this.connect();
@@ -77,24 +92,23 @@ public class LoadHistoricDataBatchTask extends AbstractHDTCallable {
                     System.err.println("Connect attempt failed no " + currAttempts + " : Date = " + this.endDate.getTime().toString() + ", Port number: " + this.executingAccount.getPortNo());
                 }
             }
-            if (this.isConnected()) {
+            if (fromStore) {
+                this.filterData();
+                finalResult = new LoadHistoricDataPointBatchResult(putup, loadedPoints, cbDelegate, this.cbList);
+            } else if (this.isConnected()) {
                 //String batchTime = DTUtil.convertCalToBrokerTime(this.endDate);
                 System.err.println("Submitted batch for time: " + batchTime);
                 this.setLoadComplete(false);
                 this.setAbort(false);
                 this.strAbortMsg = "";
-                this.m_client.reqHistoricalData(this.objContract.m_conId,
-                        objContract,
-                        this.batchTime,
-                        DTDurationEnum.S1800.toString(),
-                        BarSizeSettingEnum.SEC1.toString(),
-                        WhatToShowEnum.TRADES.toString(),
-                        0,
-                        1);
-
-                //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                //The pacing permit was obtained before connecting so this does not wait
                 try {
-                    Thread.sleep(2000);
+                    this.reqHistoricalData(this.batchTime,
+                            DTDurationEnum.S1800.toString(),
+                            BarSizeSettingEnum.SEC1.toString(),
+                            WhatToShowEnum.TRADES.toString(),
+                            0,
+                            1);
                 } catch (InterruptedException ex) {
                     this.disconnect();
                     throw new InterruptedException("Thread interrupted while transmitting data request");
@@ -102,23 +116,7 @@ public class LoadHistoricDataBatchTask extends AbstractHDTCallable {
                 //Set timeout for waiting operation
                 long timeOut = System.currentTimeMillis() + (5 * 60 * 1000);        //Timeout after 5 min
                 this.setAbortTime(timeOut);
-                synchronized (this.monitor) {
-                    do {
-                        long waitFor = timeOut - System.currentTimeMillis();
-                        if (waitFor <= 0) {
-                            waitFor = 1;
-                        }
-                        if (!this.isLoadComplete()) {
-                            this.monitor.wait(waitFor);
-                        }
-                        if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                            this.strAbortMsg = "Timed out waiting for stockbroker server LoadHistoricDataBatchTask";
-                            this.setAbort(true);
-                            this.disconnect();
-                            throw new TWSConnectionException(this.strAbortMsg);
-                        }
-                    } while (!this.isLoadComplete() && !isAbort());
-                }
+                this.awaitLoadComplete("Timed out waiting for stockbroker server LoadHistoricDataBatchTask");
 //                //Wait for data to be delivered
 //                while (!this.isLoadComplete() && !isAbort()) {
 //                    if (System.currentTimeMillis() < timeOut) {
@@ -137,6 +135,8 @@ public class LoadHistoricDataBatchTask extends AbstractHDTCallable {
                 }
                 //If we reach this point all data was loaded and the loadedPoints will be returned
                 this.disconnect();
+                //Keep a copy of the bars so this batch need never be requested again
+                this.saveToBarStore(this.batchTime, DTDurationEnum.S1800, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 0);
                 //However we can sometimes get data Bryn does not want (both before market opening and after market close)
                 //Bryn wants this data removed
                 this.filterData();
@@ -261,4 +261,20 @@ public class LoadHistoricDataPointBatchResult {
         }
         return result;
     }
+
+    /**
+     * As getPointsAsGraph() but the BaseGraph stores the points in primitive
+     * columns (see BaseGraph.createColumnarGraph()). Use this for graphs that
+     * are kept for the rest of the day, such as previous days data.
+     * @return A columnar BaseGraph object containing the data represented by this
+     * Historic Data result or NULL if no such graph can be constructed.
+     */
+    public BaseGraph<AbstractGraphPoint> getPointsAsColumnarGraph() {
+        BaseGraph<AbstractGraphPoint> result = null;
+        if (null != this.putup && null != this.loadedPoints) {
+            result = BaseGraph.createColumnarGraph(this.loadedPoints);
+            result.setPutup(this.putup);
+        }
+        return result;
+    }
 }
@@ -71,6 +71,15 @@ public class LoadPrevDayClose extends AbstractHDTCallable {
         }
     }
 
+    /**
+     * Identical requests for the close of the trading day before the end time are merged
+     * @return String being the key identifying the data this task requests
+     */
+    @Override
+    public String getRequestKey() {
+        return this.buildRequestKey(DTUtil.convertCalToBrokerTime(this.endDate) + "|" + this.hasMovedBack);
+    }
+
     @Override
     public LoadHistoricDataPointBatchResult call() throws Exception {
         try {
@@ -89,10 +98,18 @@ public class LoadPrevDayClose extends AbstractHDTCallable {
 //                    System.err.println("Connect attempt failed no " + currAttempts + " : Date = " + this.endDate.getTime().toString() + ", Port number: " + this.executingAccount.getPortNo());
 //                }
 //            }
+                SimpleDateFormat format1 = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
+                String timeFMString = format1.format(this.endDate.getTime()) + " GMT";
+                //The previous days bars will already be held locally if they have been loaded before
+                boolean fromStore = this.loadFromBarStore(timeFMString, DTDurationEnum.S1800, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 1);
+                if (!fromStore) {
+                    //Wait for the pacing rules BEFORE connecting so the wait never holds the connection
+                    this.acquirePacingPermit(timeFMString, DTDurationEnum.S1800.toString(), BarSizeSettingEnum.SEC1.toString(), WhatToShowEnum.TRADES.toString(), 1);
+                }
                 //I do not like it but the stockbrokers server does not alway connect on first attempt, retry until it does.
                 long connectFailTime = System.currentTimeMillis() + (5 * 60 * 1000);    //Attemp to connect for 5 min tops
                 long sleepTime = 5000;
-                while (!this.isConnected() && System.currentTimeMillis() < connectFailTime) {
+                while (!fromStore && !this.isConnected() && System.currentTimeMillis() < connectFailTime) {
                     try {
                         this.connect();
                     } catch (Exception ex) {
@@ -101,26 +118,23 @@ public class LoadPrevDayClose extends AbstractHDTCallable {
                         Thread.sleep(sleepTime);
                     }
                 }
-                if (this.isConnected()) {
-                    SimpleDateFormat format1 = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
-                    String timeFMString = format1.format(this.endDate.getTime()) + " GMT";
+                if (fromStore) {
+                    this.filterData();
+                    finalResult = new LoadHistoricDataPointBatchResult(putup, loadedPoints, cbDelegate, this.cbList, CallbackType.HISTORICDATACLOSEPREVDAY);
+                } else if (this.isConnected()) {
                     int intRTH = 1;
                     int intDateFormat = 1;
                     this.setLoadComplete(false);
                     this.setAbort(false);
                     this.strAbortMsg = "";
-                    this.m_client.reqHistoricalData(this.objContract.m_conId,
-                            this.objContract,
-                            timeFMString,
-                            DTDurationEnum.S1800.toString(),
-                            BarSizeSettingEnum.SEC1.toString(),
-                            WhatToShowEnum.TRADES.toString(),
-                            intRTH,
-                            intDateFormat);
-
-                    //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                    //The pacing permit was obtained before connecting so this does not wait
                     try {
-                        Thread.sleep(2000);
+                        this.reqHistoricalData(timeFMString,
+                                DTDurationEnum.S1800.toString(),
+                                BarSizeSettingEnum.SEC1.toString(),
+                                WhatToShowEnum.TRADES.toString(),
+                                intRTH,
+                                intDateFormat);
                     } catch (InterruptedException ex) {
                         this.disconnect();
                         throw new InterruptedException("Thread interrupted while transmitting data request");
@@ -128,23 +142,7 @@ public class LoadPrevDayClose extends AbstractHDTCallable {
                     //Set timeout for waiting operation
                     long timeOut = System.currentTimeMillis() + (60 * 1000);        //Timeout after 1 min 
                     this.setAbortTime(timeOut);
-                    synchronized (this.monitor) {
-                        do {
-                            long waitFor = timeOut - System.currentTimeMillis();
-                            if (waitFor <= 0) {
-                                waitFor = 1;
-                            }
-                            if (!this.isLoadComplete()) {
-                                this.monitor.wait(waitFor);
-                            }
-                            if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                                this.strAbortMsg = "Timed out waiting for stockbroker server LoadPrevDayClose";
-                                this.setAbort(true);
-                                this.disconnect();
-                                throw new TWSConnectionException(this.strAbortMsg);
-                            }
-                        } while (!this.isLoadComplete() && !isAbort());
-                    }
+                    this.awaitLoadComplete("Timed out waiting for stockbroker server LoadPrevDayClose");
                     //Ensure we have not had to abort because of an error
                     if (this.isAbort()) {
                         this.disconnect();
@@ -152,6 +150,8 @@ public class LoadPrevDayClose extends AbstractHDTCallable {
                     }
                     //If we reach this point all data was loaded and the loadedPoints will be returned
                     this.disconnect();
+                    //Keep a copy of the bars so the previous days close need never be requested again
+                    this.saveToBarStore(timeFMString, DTDurationEnum.S1800, BarSizeSettingEnum.SEC1, WhatToShowEnum.TRADES, 1);
                     //However we can sometimes get data Bryn does not want (both before market opening and after market close)
                     //Bryn wants this data removed
                     this.filterData();
@@ -12,7 +12,6 @@ import daytrader.datamodel.Putup;
 import daytrader.historicRequestSystem.AbstractHDTCallable;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
-import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
 import daytrader.interfaces.ICallback;
 import daytrader.utils.DTUtil;
 import java.io.IOException;
@@ -75,6 +74,7 @@ public class LoadToGivenTimeTask extends AbstractHDTCallable implements ICallbac
             //For each 30 min batch generate and submit a task
             HistoricRequestProcessingSystem HRSys = HistoricRequestProcessingSystem.getInstance();
             long abortTime = System.currentTimeMillis() + MAXLOADTIME;
+            this.setAbortTime(abortTime);
             this.setLoadComplete(false);
             this.setAbort(false);
             this.strAbortMsg = "";
@@ -83,23 +83,7 @@ public class LoadToGivenTimeTask extends AbstractHDTCallable implements ICallbac
                 HRSCallableWrapper wrapper = new HRSCallableWrapper(aLoadTask);
                 HRSys.submitRequest(wrapper);
             }
-            synchronized (this.monitor) {
-                do {
-                    long waitFor = abortTime - System.currentTimeMillis();
-                    if (waitFor <= 0) {
-                        waitFor = 1;
-                    }
-                    if (!this.isLoadComplete()) {
-                        this.monitor.wait(waitFor);
-                    }
-                    if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                        this.strAbortMsg = "Timed out waiting for stockbroker server PreLoadYLinesTask";
-                        this.setAbort(true);
-                        this.disconnect();
-                        throw new TWSConnectionException(this.strAbortMsg);
-                    }
-                } while (!this.isLoadComplete() && !isAbort());
-            }
+            this.awaitLoadComplete("Timed out waiting for stockbroker server PreLoadYLinesTask");
 //            while (!this.isLoadComplete() && !isAbort()) {
 //                if (System.currentTimeMillis() >= abortTime) {
 //                    this.setAbort(true);
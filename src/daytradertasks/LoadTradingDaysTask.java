@@ -82,11 +82,31 @@ public class LoadTradingDaysTask extends AbstractHDTCallable {
         this.durationToUse = newDurationToUse;
     }
 
+    /**
+     * Identical requests for the days bars for the duration before the end day are merged
+     * @return String being the key identifying the data this task requests
+     */
+    @Override
+    public String getRequestKey() {
+        return this.buildRequestKey(DTUtil.convertCalendarToIntDate(DTUtil.getExchClosingCalendar(this.endDate)) + "|" + this.durationToUse.toString());
+    }
+
     @Override
     public LoadHistoricDataPointBatchResult call() throws Exception {
         this.loadedPoints = new TreeSet<AbstractGraphPoint>();
         LoadHistoricDataPointBatchResult finalResult = null;
         try {
+            int intRTH = 1;
+            int intDateFormat = 1;
+            //The request is for 1 week of 1 day bars
+            Calendar exchClosingCalendar = DTUtil.getExchClosingCalendar(this.endDate);
+            StockExchangeHours smHrs = new StockExchangeHours(exchClosingCalendar.getTime());
+            Calendar gmtEndCal = smHrs.getEndCalendarInGMT();
+            //YLines Pre-Load starts from 'yesterday' move back 1 day from current day (endDate is today)
+            gmtEndCal.add(Calendar.DAY_OF_MONTH, -1);
+            String currBatchTime = DTUtil.convertCalToBrokerTime(gmtEndCal);
+            //Wait for the pacing rules BEFORE connecting so the wait never holds the connection
+            this.acquirePacingPermit(currBatchTime, this.durationToUse.toString(), BarSizeSettingEnum.DAY1.toString(), WhatToShowEnum.TRADES.toString(), intRTH);
             //Make the connection
             int maxAttempts = 100;
             int currAttempts = 0;
@@ -105,30 +125,18 @@ public class LoadTradingDaysTask extends AbstractHDTCallable {
                 }
             }
             if (this.isConnected()) {
-                int intRTH = 1;
-                int intDateFormat = 1;
                 //Make the request for 1 week of 1 day bars
-                Calendar exchClosingCalendar = DTUtil.getExchClosingCalendar(this.endDate);
-                StockExchangeHours smHrs = new StockExchangeHours(exchClosingCalendar.getTime());
-                Calendar gmtEndCal = smHrs.getEndCalendarInGMT();
-                //YLines Pre-Load starts from 'yesterday' move back 1 day from current day (endDate is today)
-                gmtEndCal.add(Calendar.DAY_OF_MONTH, -1);
-                String currBatchTime = DTUtil.convertCalToBrokerTime(gmtEndCal);
                 this.setLoadComplete(false);
                 this.setAbort(false);
                 this.strAbortMsg = "";
-                this.m_client.reqHistoricalData(this.objContract.m_conId,
-                        objContract,
-                        currBatchTime,
-                        this.durationToUse.toString(),
-                        BarSizeSettingEnum.DAY1.toString(),
-                        WhatToShowEnum.TRADES.toString(),
-                        intRTH,
-                        intDateFormat);
-
-                //To avoid pacing violations the thread MUST now sleep (BLOCK) for 2 secs
+                //The pacing permit was obtained before connecting so this does not wait
                 try {
-                    Thread.sleep(2000);
+                    this.reqHistoricalData(currBatchTime,
+                            this.durationToUse.toString(),
+                            BarSizeSettingEnum.DAY1.toString(),
+                            WhatToShowEnum.TRADES.toString(),
+                            intRTH,
+                            intDateFormat);
                 } catch (InterruptedException ex) {
                     this.disconnect();
                     throw new InterruptedException("Thread interrupted while transmitting data request");
@@ -137,23 +145,7 @@ public class LoadTradingDaysTask extends AbstractHDTCallable {
                 long timeOut = System.currentTimeMillis() + (1 * 10 * 1000);        //Timeout after 1 hour
                 this.setAbortTime(timeOut);
                 //Wait for data to be delivered
-                synchronized (this.monitor) {
-                    do {
-                        long waitFor = timeOut - System.currentTimeMillis();
-                        if (waitFor <= 0) {
-                            waitFor = 1;
-                        }
-                        if (!this.isLoadComplete()) {
-                            this.monitor.wait(waitFor);
-                        }
-                        if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                            this.strAbortMsg = "Timed out waiting for stockbroker server LoadTradingDaysTask";
-                            this.setAbort(true);
-                            this.disconnect();
-                            throw new TWSConnectionException(this.strAbortMsg);
-                        }
-                    } while (!this.isLoadComplete() && !isAbort());
-                }
+                this.awaitLoadComplete("Timed out waiting for stockbroker server LoadTradingDaysTask");
                 //Ensure we have not had to abort because of an error
                 if (this.isAbort()) {
                     this.disconnect();
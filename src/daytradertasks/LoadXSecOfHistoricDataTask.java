@@ -10,7 +10,6 @@ import daytrader.datamodel.Putup;
 import daytrader.historicRequestSystem.AbstractHDTCallable;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
-import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
 import daytrader.interfaces.ICallback;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -81,23 +80,7 @@ public class LoadXSecOfHistoricDataTask extends AbstractHDTCallable implements I
             //Set timeout for waiting operation
             long timeOut = System.currentTimeMillis() + (60 * 60 * 1000);        //Timeout after 1 Hour
             this.setAbortTime(timeOut);
-            synchronized (this.monitor) {
-                do {
-                    long waitFor = timeOut - System.currentTimeMillis();
-                    if (waitFor <= 0) {
-                        waitFor = 1;
-                    }
-                    if (!this.isLoadComplete()) {
-                        this.monitor.wait(waitFor);
-                    }
-                    if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                        this.strAbortMsg = "Timed out waiting for stockbroker server LoadXSecOfHistoricDataTask";
-                        this.setAbort(true);
-                        this.disconnect();
-                        throw new TWSConnectionException(this.strAbortMsg);
-                    }
-                } while (!this.isLoadComplete() && !isAbort());
-            }
+            this.awaitLoadComplete("Timed out waiting for stockbroker server LoadXSecOfHistoricDataTask");
 //            //Wait for data to be delivered
 //            while (!this.isLoadComplete() && !isAbort()) {
 //                if (System.currentTimeMillis() < timeOut) {
@@ -10,7 +10,6 @@ import daytrader.datamodel.Putup;
 import daytrader.datamodel.YLineLoadStatus;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
-import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
 import daytrader.historicRequestSystem.AbstractHDTCallable;
 import daytrader.interfaces.ICallback;
 import java.io.IOException;
@@ -66,23 +65,7 @@ public class PreLoadYLinesTask extends AbstractHDTCallable implements ICallback
                 Load1DayBarsHighPoints loadTask = new Load1DayBarsHighPoints(this.putup, this.endDate, this.maxYLineDate, this);
                 HRSCallableWrapper wrapper = new HRSCallableWrapper(loadTask);
                 HRSys.submitRequest(wrapper);
-                synchronized (this.monitor) {
-                    do {
-                        long waitFor = abortTime - System.currentTimeMillis();
-                        if (waitFor <= 0) {
-                            waitFor = 1;
-                        }
-                        if(!this.isLoadComplete()){
-                            this.monitor.wait(waitFor);
-                        }
-                        if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                            this.strAbortMsg = "Timed out waiting for stockbroker server PreLoadYLinesTask";
-                            this.setAbort(true);
-                            this.disconnect();
-                            throw new TWSConnectionException(this.strAbortMsg);
-                        }
-                    } while (!this.isLoadComplete() && !isAbort());
-                }
+                this.awaitLoadComplete("Timed out waiting for stockbroker server PreLoadYLinesTask");
 //                    while (!this.isLoadComplete() && !isAbort()) {
 //                        if (System.currentTimeMillis() >= abortTime) {
 //                            this.setAbort(true);
@@ -15,10 +15,9 @@ import daytrader.datamodel.AbstractDataRequest;
 import daytrader.datamodel.AbstractGraphPoint;
 import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.RealTimeBarGraphPoint;
+import daytrader.datamodel.TickJournal;
 import daytrader.historicRequestSystem.TWSAccount;
 import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
-import daytrader.utils.DTUtil;
-import java.util.Calendar;
 
 /**
  * This class starts a real time data run for the given put up by requesting
@@ -51,58 +50,15 @@ public class RealTimeFiveSecBarRequest extends AbstractDataRequest {
     }
 
     @Override
-    public Void call() throws Exception {
-        System.out.println("Starting real time bars for putup: " + this.myPutup.getTickerCode());
-        this.running.set(true);
-        try {
-            //Make the connection
-            //I do not like it but the stockbrokers server does not alway connect on first attempt, retry until it does.
-            long connectFailTime = System.currentTimeMillis() + (5 * 60 * 1000);    //Attempt to connect for 5 min tops
-            while (!this.isConnected() && System.currentTimeMillis() < connectFailTime) {
-                try {
-                    this.connect();
-                } catch (Exception ex) {
-                    Thread.sleep(SLEEP_TIME);
-                }
-            }
-            if (this.isConnected()) {
-                System.out.println("CONNECTED to stock broker on startup Real Time Bars: " + this.myPutup.getTickerCode() + " : Object = " + this.toString());
-                //Record end of trading day so I know when to shutdown
-                Calendar exchClosingCalendar = DTUtil.getExchClosingCalendar(this.myPutup.getTodaysDate());
-                long shutdownAt = exchClosingCalendar.getTimeInMillis();
-                //Make request for real time data (5sec bars) Parameters are:
-                //1 - An ID to identify the request
-                //2 - A Contract to use
-                //3 - ONLY 5 SEC BARS supported by API MUST be the value 5
-                //4 - Type of data requested, Bryn ALWAYS wants "TRADES"
-                //5 - Boolean true means only return data from within market trading hours
-                this.connectionAcc.getConnectionSocket().reqRealTimeBars(this.lastClientId, objContract, 5, "TRADES", true);
-                while (!this.shouldDisconnect) {
-                    if (System.currentTimeMillis() > shutdownAt) {
-                        this.disconnect();
-                    }
-                    if (null != this.lastException) {
-                        this.shouldDisconnect = true;
-                        this.running.set(false);
-                        this.disconnect();
-                        throw this.lastException;
-                    }
-                    Thread.sleep(SLEEP_TIME);
-                }
-                this.running.set(false);
-            } else {
-                this.running.set(false);
-                throw new TWSConnectionException("Failed to connect to stock broker on startup Real Time Bars: " + this.myPutup.getTickerCode());
-            }
-        } catch (Exception ex) {
-            this.running.set(false);
-            ex.printStackTrace();
-            this.lastException = ex;
-            if (this.isConnected()) {
-                this.disconnect();
-            }
-        }
-        return null;
+    protected void sendRequest() throws Exception {
+        System.out.println("CONNECTED to stock broker on startup Real Time Bars: " + this.myPutup.getTickerCode() + " : Object = " + this.toString());
+        //Make request for real time data (5sec bars) Parameters are:
+        //1 - An ID to identify the request
+        //2 - A Contract to use
+        //3 - ONLY 5 SEC BARS supported by API MUST be the value 5
+        //4 - Type of data requested, Bryn ALWAYS wants "TRADES"
+        //5 - Boolean true means only return data from within market trading hours
+        this.connectionAcc.getConnectionSocket().reqRealTimeBars(this.lastClientId, objContract, 5, "TRADES", true);
     }
 
     //EWrapper - Stockbrokers API - START
@@ -252,7 +208,8 @@ public class RealTimeFiveSecBarRequest extends AbstractDataRequest {
         //Add the 5 second real time bar point to the graph
         long timestamp = time * 1000;
         RealTimeBarGraphPoint newPoint = new RealTimeBarGraphPoint(reqId, timestamp, open, high, low, close, volume, wap, count);
-        this.graph.add(newPoint);
+        //Journal the point first so it can be recovered if the application dies
+        this.addReceivedPoint(TickJournal.FIVE_SEC_BARS, newPoint);
         if (DEBUG) {
             System.out.println("Stock (RTB): " + this.myPutup.getTickerCode() + " now has " + this.graph.size() + " entries." + ", Thread ID: " + Thread.currentThread().getId());
         }
@@ -8,10 +8,8 @@ import daytrader.datamodel.AbstractDataRequest;
 import daytrader.datamodel.AbstractGraphPoint;
 import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.RTVolumeResponse;
+import daytrader.datamodel.TickJournal;
 import daytrader.historicRequestSystem.TWSAccount;
-import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
-import daytrader.utils.DTUtil;
-import java.util.Calendar;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -26,6 +24,8 @@ public class RequestMarketDataTask extends AbstractDataRequest {
 
     private static final boolean DEBUG = true;
     private AtomicBoolean updated;
+    //Time the last filler point check was made
+    private long lastPollTime;
 
     /**
      * Constructor
@@ -49,92 +49,42 @@ public class RequestMarketDataTask extends AbstractDataRequest {
     }
 
     @Override
-    public Void call() throws Exception {
-        try {
-            //Make the connection
-//            int maxAttempts = 100;
-//            int currAttempts = 0;
-//            while (!this.m_client.isConnected() && currAttempts < maxAttempts) {
-//                currAttempts++;
-//                try {
-//                    this.connect();
-//                } catch (Exception ex) {
-//                }
-//            }
-            //I do not like it but the stockbrokers server does not alway connect on first attempt, retry until it does.
-            long connectFailTime = System.currentTimeMillis() + (5*60*1000);    //Attemp to connect for 5 min tops
-            while (!this.isConnected() && System.currentTimeMillis() < connectFailTime) {
+    protected void sendRequest() throws Exception {
+        //Make the request for market data
+        String tickType = "233";
+        this.connectionAcc.getConnectionSocket().reqMktData(lastClientId, objContract, tickType, false);
+        this.lastPollTime = System.currentTimeMillis();
+    }
+
+    @Override
+    protected void onPoll(long now) {
+        if (now >= (this.lastPollTime + SLEEP_TIME)) {
+            this.lastPollTime = now;
+            //If no update has been received then I must add a point at same price as last item
+            //If update HAS been received then reset update flag
+            if (!this.updated.get()) {
+                //Lock the graph
+                this.graph.acquireObjectLock();
                 try {
-                    this.connect();
-                } catch (Exception ex) {
-                    Thread.sleep(SLEEP_TIME);
-                }
-            }
-            if (this.isConnected()) {
-                //Record end of trading day so I know when to shutdown
-                Calendar exchClosingCalendar = DTUtil.getExchClosingCalendar(this.myPutup.getTodaysDate());
-                long shutdownAt = exchClosingCalendar.getTimeInMillis();
-                //Make the request for market data
-                String tickType = "233";
-                this.connectionAcc.getConnectionSocket().reqMktData(lastClientId, objContract, tickType, false);
-                this.running.set(true);
-                long oldTimestamp = System.currentTimeMillis();
-                long currTimestamp;
-                //Begin a loop that will last as long as we have an open connection to the data server
-                while (!shouldDisconnect) {
-                    currTimestamp = System.currentTimeMillis();
-                    if (currTimestamp >= (oldTimestamp + SLEEP_TIME)) {
-                        oldTimestamp = currTimestamp;
-                        //If no update has been received then I must add a point at same price as last item
-                        //If update HAS been received then reset update flag and yield the time slice
-                        if (!this.updated.get()) {
-                            //Lock the graph
-                            this.graph.acquireObjectLock();
-                            try {
-                                if (null != this.graph && 0 < this.graph.size()) {
-                                    //Add a point
-                                    AbstractGraphPoint last = this.graph.last();
-                                    if (null != last) {
-                                        RTVolumeResponse item = new RTVolumeResponse(last, SLEEP_TIME);
-                                        this.graph.add(item);
-                                        if (DEBUG) {
-                                            System.out.println("Manual " + this.myPutup.getTickerCode() + " Item added. Graph size = " + this.graph.size() + ", Thread ID: " + Thread.currentThread().getId());
-                                        }
-                                    }
-                                }
-                            } finally {
-                                this.graph.releaseObjectLock();
+                    if (null != this.graph && 0 < this.graph.size()) {
+                        //Add a point
+                        AbstractGraphPoint last = this.graph.last();
+                        if (null != last) {
+                            RTVolumeResponse item = new RTVolumeResponse(last, SLEEP_TIME);
+                            this.addReceivedPoint(TickJournal.MARKET_DATA, item);
+                            if (DEBUG) {
+                                System.out.println("Manual " + this.myPutup.getTickerCode() + " Item added. Graph size = " + this.graph.size() + ", Thread ID: " + Thread.currentThread().getId());
                             }
-                        } else {
-                            //Reset the flag
-                            this.updated.set(false);
                         }
                     }
-                    //Standard code to shutdown at end of day or on error
-                    if (System.currentTimeMillis() > shutdownAt) {
-                        this.disconnect();
-                    }
-                    if (null != this.lastException) {
-                        this.shouldDisconnect = true;
-                        this.running.set(false);
-                        this.disconnect();
-                        throw this.lastException;
-                    }
-                    //Thread.yield();
-                    Thread.sleep(SLEEP_TIME);
+                } finally {
+                    this.graph.releaseObjectLock();
                 }
-                this.running.set(false);
             } else {
-                throw new TWSConnectionException("Failed to connect to stock broker on startup Request Market Data: " + this.myPutup.getTickerCode());
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            this.lastException = ex;
-            if (this.isConnected()) {
-                this.disconnect();
+                //Reset the flag
+                this.updated.set(false);
             }
         }
-        return null;
     }
 
     @Override
@@ -164,7 +114,8 @@ public class RequestMarketDataTask extends AbstractDataRequest {
             case 48:
                 //RTvolume response
                 RTVolumeResponse item = new RTVolumeResponse(tickerId, value);
-                this.graph.add(item);
+                //Journal the point first so it can be recovered if the application dies
+                this.addReceivedPoint(TickJournal.MARKET_DATA, item);
                 this.updated.set(true);
                 if (DEBUG) {
                     System.out.println("(reqMktData) Stock: " + this.myPutup.getTickerCode() + " now has " + this.graph.size() + " entries." + ", Thread ID: " + Thread.currentThread().getId());
@@ -13,7 +13,6 @@ import daytrader.datamodel.Putup;
 import daytrader.historicRequestSystem.AbstractHDTCallable;
 import daytrader.historicRequestSystem.HRSCallableWrapper;
 import daytrader.historicRequestSystem.HistoricRequestProcessingSystem;
-import daytrader.historicRequestSystem.exceptions.TWSConnectionException;
 import daytrader.interfaces.ICallback;
 import daytrader.utils.DTUtil;
 import java.io.IOException;
@@ -84,23 +83,7 @@ public class UpdateHistoricDataGraphToNow extends AbstractHDTCallable implements
                 HRSCallableWrapper wrapper = new HRSCallableWrapper(aLoadTask);
                 HRSys.submitRequest(wrapper);
             }
-            synchronized (this.monitor) {
-                do {
-                    long waitFor = abortTime - System.currentTimeMillis();
-                    if (waitFor <= 0) {
-                        waitFor = 1;
-                    }
-                    if (!this.isLoadComplete()) {
-                        this.monitor.wait(waitFor);
-                    }
-                    if (this.isPassedAbortTime() && !this.isLoadComplete()) {
-                        this.strAbortMsg = "Timed out waiting for stockbroker server UpdateHistoricDataGraphToNow";
-                        this.setAbort(true);
-                        this.disconnect();
-                        throw new TWSConnectionException(this.strAbortMsg);
-                    }
-                } while (!this.isLoadComplete() && !isAbort());
-            }
+            this.awaitLoadComplete("Timed out waiting for stockbroker server UpdateHistoricDataGraphToNow");
 //            while (!this.isLoadComplete() && !abort) {
 //                if (System.currentTimeMillis() >= abortTime) {
 //                    this.abort = true;
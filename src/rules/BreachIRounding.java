@@ -17,23 +17,29 @@ public class BreachIRounding implements IRoundFunction<Number> {
 
     @Override
     public Number performRounding(Number value) {
-        int result = 0;
-        int intValue = value.intValue();
-        if ((value.doubleValue() - intValue) != 0) {
-            double dblStartVal = value.doubleValue();
-            double dblDeScaled = dblStartVal / DTConstants.SCALE;
+        Integer result = BreachIRounding.round(value.doubleValue());
+        return result;
+    }
+
+    /**
+     * Rounds a primitive scaled value up to the next whole cent without creating
+     * any objects
+     * @param value - double being the scaled value to round
+     * @return integer being the scaled value of the next whole cent (the value
+     * itself if it is already a whole number)
+     */
+    public static int round(double value) {
+        int result = (int) value;
+        if ((value - result) != 0) {
+            double dblDeScaled = value / DTConstants.SCALE;
             //Convert to cents from dollars
-            Double cents = dblDeScaled *= 100;
-            Integer intCents = cents.intValue();
-            Double rem = cents - intCents;
-            if (rem != 0d) {
+            double cents = dblDeScaled * 100;
+            int intCents = (int) cents;
+            if ((cents - intCents) != 0d) {
                 intCents++;
             }
             //Convert back to scaled value
-            Double dblResult = (intCents / 100d) * DTConstants.SCALE;
-            result = dblResult.intValue();
-        } else {
-            result = value.intValue();
+            result = (int) ((intCents / 100d) * DTConstants.SCALE);
         }
         return result;
     }
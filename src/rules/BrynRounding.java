@@ -11,23 +11,49 @@ import daytrader.interfaces.IRoundFunction;
  * @author Roy
  */
 public class BrynRounding implements IRoundFunction<Number>{
+    
+    //Values at or beyond this are printed in scientific notation by Double.toString()
+    private static final double PLAIN_LIMIT = 1.0E7;
 
     @Override
     public Number performRounding(Number value) {
-        Double dblStartVal = value.doubleValue();
-        String strRep = dblStartVal.toString();
+        Integer result = BrynRounding.round(value.doubleValue());
+        return result;
+    }
+    
+    /**
+     * Performs the first step of Bryns rounding on a primitive value without
+     * creating any objects. The integer part is kept and incremented if the last 
+     * decimal digit of the value (as printed by Double.toString()) is above 5.
+     * Values that are not on a 1/10th grid (rare once prices are scaled) use the 
+     * original String based test so the result is always identical.
+     * @param value - double being the value to round
+     * @return integer being the rounded value
+     */
+    public static int round(double value) {
+        int result = (int) value;
+        int lastDigit;
+        double tenths = Math.rint(value * 10);
+        double magnitude = Math.abs(value);
+        if ((0 == value || (1 <= magnitude && PLAIN_LIMIT > magnitude)) && (tenths / 10) == value) {
+            //The value prints with one decimal place, that place is the last digit
+            lastDigit = (int) Math.abs(tenths % 10);
+        } else {
+            lastDigit = BrynRounding.lastPrintedDigit(value);
+        }
+        if (lastDigit > 5) {
+            result++;
+        }
+        return result;
+    }
+    
+    private static int lastPrintedDigit(double value) {
+        String strRep = Double.toString(value);
         char lastChar = '0';
         if(strRep.contains(".")){
             lastChar = strRep.charAt(strRep.length()-1);
         }
-        String strLastChar = "" + lastChar;
-        Integer intAfterDecimal = Integer.parseInt(strLastChar);
-        Integer intValue = dblStartVal.intValue();
-        if(intAfterDecimal > 5){
-            intValue++;
-        }
-        Integer result = intValue;
-        return result;
+        return Integer.parseInt("" + lastChar);
     }
     
 }
@@ -14,14 +14,23 @@ public class BrynRoundingStep2 implements IRoundFunction<Number>{
 
     @Override
     public Number performRounding(Number value) {
-        Double dblValue = value.doubleValue();
-        Integer intValue = dblValue.intValue();
-        String strIntVal = intValue.toString();
-        String strLastChar = strIntVal.substring(strIntVal.length()-1);
-        Integer result = intValue;
-        if(strLastChar.equalsIgnoreCase("9")){
+        Integer result = BrynRoundingStep2.round(value.doubleValue());
+        return result;
+    }
+    
+    /**
+     * Performs the second step of Bryn's rounding on a primitive value without
+     * creating any objects. The integer part is kept, if its last digit is 9 it 
+     * is rounded up and if its last digit is 1 it is rounded down.
+     * @param value - double being the value to round
+     * @return integer being the rounded value
+     */
+    public static int round(double value) {
+        int result = (int) value;
+        int lastDigit = Math.abs(result % 10);
+        if (9 == lastDigit) {
             result++;
-        } else if(strLastChar.equalsIgnoreCase("1")){
+        } else if (1 == lastDigit) {
             result--;
         }
         return result;
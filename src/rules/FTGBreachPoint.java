@@ -12,7 +12,6 @@ import daytrader.datamodel.FTGData;
 import daytrader.datamodel.FTGOverrideData;
 import daytrader.datamodel.Putup;
 import daytrader.utils.DTUtil;
-import java.util.NavigableSet;
 
 /**
  * Given a base Graph with an close point for the previous day set this
@@ -60,12 +59,7 @@ public class FTGBreachPoint<T extends AbstractGraphPoint> extends AbstractBaseRu
                     AbstractGraphPoint lowestPoint = data.getLowestPointSoFar();
                     if (lowestPoint.getWAP() < limit) {
                         //breach occured find first breach
-                        for (AbstractGraphPoint currPoint : data) {
-                            if (currPoint.getWAP() < limit) {
-                                result = currPoint;
-                                break;
-                            }
-                        }
+                        result = data.getFirstPointBelow(limit, data.first().getTimestamp());
                     }
                 }
 //                if (null == result) {
@@ -78,9 +72,7 @@ public class FTGBreachPoint<T extends AbstractGraphPoint> extends AbstractBaseRu
             if (null != data.getPutup() && null == result) {
                 //Get lowest & highest points
                 T objHigh = data.getHighestPointSoFar();
-                NavigableSet<T> subSet = data.subSet(objHigh, true, data.last(), true);
-                BaseGraph<T> subGraph = new BaseGraph<T>(subSet);
-                T objLow = subGraph.getLowestPointSoFar();
+                T objLow = data.getLowestPointBetween(objHigh.getTimestamp(), data.last().getTimestamp());
                 FTGOverrideData calc = new FTGOverrideData();
                 Putup putup = data.getPutup();
                 AtrClassEnum atrClass = putup.getAtrClass();
@@ -10,7 +10,6 @@ import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.FTGData;
 import daytrader.datamodel.FTGOverrideData;
 import daytrader.datamodel.Putup;
-import java.util.NavigableSet;
 import static rules.FTGBreachPoint.DEBUG;
 
 /**
@@ -38,12 +37,7 @@ public class FTGBreachPointClueShort<T extends AbstractGraphPoint> extends FTGBr
                     AbstractGraphPoint lowestPoint = data.getLowestPointSoFar();
                     if (lowestPoint.getWAP() < limit) {
                         //breach occured find first breach
-                        for (AbstractGraphPoint currPoint : data) {
-                            if (currPoint.getWAP() < limit) {
-                                result = currPoint;
-                                break;
-                            }
-                        }
+                        result = data.getFirstPointBelow(limit, data.first().getTimestamp());
                     }
                 }
 //                if (null == result) {
@@ -56,9 +50,7 @@ public class FTGBreachPointClueShort<T extends AbstractGraphPoint> extends FTGBr
             if (null != data.getPutup() && null == result) {
                 //Get lowest & highest points
                 T objHigh = data.getHighestPointSoFar();
-                NavigableSet<T> subSet = data.subSet(objHigh, true, data.last(), true);
-                BaseGraph<T> subGraph = new BaseGraph<T>(subSet);
-                T objLow = subGraph.getLowestPointSoFar();
+                T objLow = data.getLowestPointBetween(objHigh.getTimestamp(), data.last().getTimestamp());
                 FTGOverrideData calc = new FTGOverrideData();
                 Putup putup = data.getPutup();
                 AtrClassEnum atrClass = putup.getAtrClass();
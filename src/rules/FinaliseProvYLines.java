@@ -127,7 +127,7 @@ public class FinaliseProvYLines {
                                 //Always include 'original c'
                                 lstOfPotentialCs.add(cPoint);
                                 //Does this 'C' have a list of alternate 'C' points (i.e. the list of potential 'E's it might connect to from the recursion cache
-                                RecursionCache recursionCache = cPoint.getRecursionCache();
+                                RecursionCache recursionCache = this.putupUsed.getRecursionCaches().getRecursionCache(cPoint);
                                 if (null != recursionCache) {
                                     //We have a list of potential 'C' points add them all in
                                     lstOfPotentialCs.addAll(recursionCache.getAllEPointsInCache());
@@ -26,12 +26,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.TreeSet;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +37,9 @@ import java.util.logging.Logger;
  */
 public class GeneratePotentialCELines extends AbstractBaseRule {
 
+    //Smallest number of lines handled by one filter task
+    private static final int MIN_LINE_BATCH = 8;
+
     private BaseGraph<AbstractGraphPoint> graph;
     private PointValidationDetails pointValidationRecord;
     //This attribute will hold the C-E Lines generated in the last 'run' of this function
@@ -463,24 +461,9 @@ public class GeneratePotentialCELines extends AbstractBaseRule {
         if (null != data && data.size() > 0 && this.isValid()) {
             if (null == this.arlUnblockedCELines) {
                 //Computing gradients is taking too long I am going to pre-compute them using multi threaded code
-                //so multiple CPU's
-                ExecutorService threadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-                ExecutorCompletionService<Double> compServ = new ExecutorCompletionService<Double>(threadPool);
-                int taskCount = 0;
-                for (IGraphLine currLine : data) {
-                    CompGradients task = new CompGradients(currLine);
-                    compServ.submit(task);
-                    taskCount++;
-                }
-
-                for (int i = 0; i < taskCount; i++) {
-                    try {
-                        //NB: I am not interested in the result simply that the task is done
-                        compServ.take();
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }
+                //so multiple CPU's. The work is batched on the shared compute pool so no threads are created here
+                int batchSize = Math.max(MIN_LINE_BATCH, data.size() / (DTConstants.COMPUTE_POOL.getParallelism() * 4));
+                DTConstants.COMPUTE_POOL.invoke(new FilterLinesTask(LineFilterStep.GRADIENTS, data, this.graph, batchSize));
 
                 /**
                  * Multi threaded implementation of looking for stand in C's and
@@ -570,49 +553,10 @@ public class GeneratePotentialCELines extends AbstractBaseRule {
 //                    System.out.println("Processed (C): " + count + " of " + max);
 //                }
                 //Try it multi threaded!
-                taskCount = 0;
-                ExecutorCompletionService<PBValueCalcResult> compServ2 = new ExecutorCompletionService<PBValueCalcResult>(threadPool);
-                for (IGraphLine currLine : data) {
-                    PBValueCalcCPoints task = new PBValueCalcCPoints(currLine, this.graph);
-                    compServ2.submit(task);
-                    taskCount++;
-                }
-
-                for (int i = 0; i < taskCount; i++) {
-                    try {
-                        Future<PBValueCalcResult> f = compServ2.take();
-                        PBValueCalcResult aResult = f.get();
-                        if (aResult.isIncludeInResults()) {
-                            tempResult.add(aResult.getLine());
-                        }
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
-                    } catch (ExecutionException ex) {
-                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }
+                tempResult = DTConstants.COMPUTE_POOL.invoke(new FilterLinesTask(LineFilterStep.C_POINTS, data, this.graph, batchSize));
 
                 // We have found all blocks between c and e now find blocks between e and current time
-                taskCount = 0;
-                for (IGraphLine currLine : tempResult) {
-                    PBValueCalcEPoints task = new PBValueCalcEPoints(currLine, this.graph);
-                    compServ2.submit(task);
-                    taskCount++;
-                }
-
-                for (int i = 0; i < taskCount; i++) {
-                    try {
-                        Future<PBValueCalcResult> f = compServ2.take();
-                        PBValueCalcResult aResult = f.get();
-                        if (aResult.isIncludeInResults()) {
-                            result.add(aResult.getLine());
-                        }
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
-                    } catch (ExecutionException ex) {
-                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }
+                result = DTConstants.COMPUTE_POOL.invoke(new FilterLinesTask(LineFilterStep.E_POINTS, tempResult, this.graph, batchSize));
 
                 // We have found all blocks between c and e now find blocks between e and current time
 //                count = 0;
@@ -1407,143 +1351,136 @@ public class GeneratePotentialCELines extends AbstractBaseRule {
     //The performance of the filter out blocked lines method is FAR TO SLOW in some cases
     //Need to pre-compute GraphLine gradients before the filtering code runs. Will do this
     //multi-threaded to speed up the function
-    //This class takes a GraphLine and makes it compute its gradient
-    private class CompGradients implements Callable<Double> {
+    //These are the steps of the filter that FilterLinesTask can run on a list of lines
+    private enum LineFilterStep {
+
+        //Make each line compute (and cache) its gradient, every line is kept
+        GRADIENTS,
+        //Keep lines not blocked between their 'C' and 'E' points (sets stand in C's)
+        C_POINTS,
+        //Keep lines not blocked between their 'E' point and the lowest point so far (sets stand in E's)
+        E_POINTS
+    }
 
-        private ArrayList<IGraphLine> jobList;
+    //This class runs one filter step over a list of lines on the shared fork / join compute pool.
+    //Lists longer than the batch size are split in two, one half is forked while this thread
+    //works on the other, so each task handles a batch of lines. The result keeps the list order.
+    private class FilterLinesTask extends RecursiveTask<ArrayList<IGraphLine>> {
 
-        public CompGradients(IGraphLine target) {
-            this.jobList = new ArrayList<IGraphLine>();
-            this.jobList.add(target);
-        }
+        private static final long serialVersionUID = 1L;
+        private final LineFilterStep step;
+        private final List<IGraphLine> lines;
+        private final BaseGraph<AbstractGraphPoint> graph;
+        private final int batchSize;
 
-        public CompGradients(ArrayList<IGraphLine> targets) {
-            this.jobList = new ArrayList<IGraphLine>();
-            for (IGraphLine target : targets) {
-                this.jobList.add(target);
-            }
+        public FilterLinesTask(LineFilterStep newStep, List<IGraphLine> newLines, BaseGraph<AbstractGraphPoint> targetGraph, int newBatchSize) {
+            this.step = newStep;
+            this.lines = newLines;
+            this.graph = targetGraph;
+            this.batchSize = newBatchSize;
         }
 
         @Override
-        public Double call() throws Exception {
-            Double result = null;
-            if (null != this.jobList) {
-                for (int i = 0; i < this.jobList.size(); i++) {
-                    result = this.jobList.get(i).getGradient();
+        protected ArrayList<IGraphLine> compute() {
+            ArrayList<IGraphLine> result;
+            int size = this.lines.size();
+            if (size <= this.batchSize) {
+                result = new ArrayList<IGraphLine>(size);
+                for (IGraphLine currLine : this.lines) {
+                    if (this.includeLine(currLine)) {
+                        result.add(currLine);
+                    }
                 }
+            } else {
+                int mid = size / 2;
+                FilterLinesTask firstHalf = new FilterLinesTask(this.step, this.lines.subList(0, mid), this.graph, this.batchSize);
+                FilterLinesTask secondHalf = new FilterLinesTask(this.step, this.lines.subList(mid, size), this.graph, this.batchSize);
+                firstHalf.fork();
+                ArrayList<IGraphLine> secondResult = secondHalf.compute();
+                result = firstHalf.join();
+                result.addAll(secondResult);
             }
             return result;
         }
-    }
-
-    private class PBValueCalcCPoints implements Callable<PBValueCalcResult> {
-
-        private BaseGraph<AbstractGraphPoint> graph;
-        private IGraphLine aLine;
 
-        public PBValueCalcCPoints(IGraphLine currLine, BaseGraph<AbstractGraphPoint> targetGraph) {
-            this.graph = targetGraph;
-            this.aLine = currLine;
+        private boolean includeLine(IGraphLine aLine) {
+            boolean result = false;
+            switch (this.step) {
+                case GRADIENTS:
+                    try {
+                        aLine.getGradient();
+                    } catch (RuntimeException ex) {
+                        //NB: Only the cached gradient is wanted here, a line that cannot compute
+                        //one fails again (and is logged) when the C points are checked
+                    }
+                    result = true;
+                    break;
+                case C_POINTS:
+                    try {
+                        result = this.isUnblockedToE(aLine);
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                    break;
+                case E_POINTS:
+                    try {
+                        result = this.isUnblockedAfterE(aLine);
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger(GeneratePotentialCELines.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                    break;
+            }
+            return result;
         }
 
-        @Override
-        public PBValueCalcResult call() throws Exception {
-            PBValueCalcResult result = null;
-
+        private boolean isUnblockedToE(IGraphLine aLine) {
             AbstractGraphPoint startPoint;
             AbstractGraphPoint currPoint;
             boolean blnIncludeInResults = true;
             double priceAtTime = 0;
-            startPoint = this.aLine.getStartPoint();
-            NavigableSet<AbstractGraphPoint> subGraph = this.graph.subSet(startPoint, false, this.aLine.getEndPoint(), true);
+            startPoint = aLine.getStartPoint();
+            NavigableSet<AbstractGraphPoint> subGraph = this.graph.subSet(startPoint, false, aLine.getEndPoint(), true);
             Iterator<AbstractGraphPoint> iterator = subGraph.iterator();
-            blnIncludeInResults = true;
             while (iterator.hasNext()) {
                 currPoint = iterator.next();
-                priceAtTime = this.aLine.getPriceAtTime(currPoint.getTimestamp());
+                priceAtTime = aLine.getPriceAtTime(currPoint.getTimestamp());
                 if (currPoint.getLastPrice() > priceAtTime) {
                     //Get PB value of this point
-                    //Timer.setBaseTime();
                     int intPBValue = IdentifyPB3Points.findPBValue(this.graph, currPoint);
-                    //Timer.printMsg("Finished (C) PB3 Calc");
                     if (intPBValue >= DTConstants.getScaledPBVALUE()) {
                         //This line is invalid, discard it and move to next
                         blnIncludeInResults = false;
                         break;
                     } else {
-                        this.aLine.setStandInC(currPoint);
+                        aLine.setStandInC(currPoint);
                     }
                 }
             }
-            result = new PBValueCalcResult(blnIncludeInResults, this.aLine);
-            return result;
+            return blnIncludeInResults;
         }
-    }
 
-    private class PBValueCalcEPoints implements Callable<PBValueCalcResult> {
-
-        private BaseGraph<AbstractGraphPoint> graph;
-        private IGraphLine aLine;
-
-        public PBValueCalcEPoints(IGraphLine currLine, BaseGraph<AbstractGraphPoint> targetGraph) {
-            this.graph = targetGraph;
-            this.aLine = currLine;
-        }
-
-        @Override
-        public PBValueCalcResult call() throws Exception {
-            PBValueCalcResult result = null;
+        private boolean isUnblockedAfterE(IGraphLine aLine) {
             AbstractGraphPoint currPoint;
-            boolean blnIncludeInResults;
+            boolean blnIncludeInResults = true;
             double priceAtTime = 0;
-            NavigableSet<AbstractGraphPoint> subGraph = this.graph.subSet(this.aLine.getEndPoint(), false, this.graph.getLowestPointSoFar(), true);
+            NavigableSet<AbstractGraphPoint> subGraph = this.graph.subSet(aLine.getEndPoint(), false, this.graph.getLowestPointSoFar(), true);
             Iterator<AbstractGraphPoint> iterator = subGraph.iterator();
-            blnIncludeInResults = true;
             while (iterator.hasNext()) {
-                blnIncludeInResults = true;
                 currPoint = iterator.next();
-                priceAtTime = this.aLine.getPriceAtTime(currPoint.getTimestamp());
+                priceAtTime = aLine.getPriceAtTime(currPoint.getTimestamp());
                 if (currPoint.getLastPrice() > priceAtTime) {
                     //Get PB value of this point
-                    //Timer.setBaseTime();
                     int intPBValue = IdentifyPB3Points.findPBValue(this.graph, currPoint);
-                    //Timer.printMsg("Finished (E) PB3 Calc");
                     if (intPBValue >= DTConstants.getScaledPBVALUE()) {
                         //This line is invalid, discard it and move to next
                         blnIncludeInResults = false;
                         break;
                     } else {
-                        this.aLine.setStandInE(currPoint);
+                        aLine.setStandInE(currPoint);
                     }
                 }
             }
-            result = new PBValueCalcResult(blnIncludeInResults, this.aLine);
-            return result;
-        }
-    }
-
-    private class PBValueCalcResult {
-
-        private boolean includeInResults;
-        private IGraphLine line;
-
-        public PBValueCalcResult(boolean include, IGraphLine aLine) {
-            this.includeInResults = include;
-            this.line = aLine;
-        }
-
-        /**
-         * @return the includeInResults
-         */
-        public boolean isIncludeInResults() {
-            return includeInResults;
-        }
-
-        /**
-         * @return the line
-         */
-        public IGraphLine getLine() {
-            return line;
+            return blnIncludeInResults;
         }
     }
 
@@ -14,8 +14,6 @@ import daytrader.datamodel.GraphFlatPair;
 import daytrader.interfaces.IGraphFlat;
 import daytrader.utils.DTUtil;
 import java.util.Calendar;
-import java.util.Iterator;
-import java.util.NavigableSet;
 
 /**
  * This rule implements an IG check on the provided graph object
@@ -71,9 +69,9 @@ public class IGMonitor {
                 if ((last.getTimestamp() <= exchOT.getTimeInMillis()) && (!isInUEZone)) {
                     isInTransZone = true;
                 }
-                //If we are outside the UE zone limit graph to items after the UE Zone
-                BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>();
-                graphToUse.setPutup(graph.getPutup());
+                //If we are outside the UE zone limit the graph to items after the UE Zone
+                //(the tests examine part of the graph rather than a copy of it)
+                AbstractGraphPoint startPoint = first;
                 if (!isInUEZone) {
                     AbstractGraphPoint dummyStart = new DummyGraphPoint(ueTimestamp);
                     //Is their a flat pair that straddles the 09:33 point?? If so we need to include data to start of the flat
@@ -81,37 +79,24 @@ public class IGMonitor {
                     if (null != flatPair) {
                         dummyStart = flatPair.getFirstFlat().getEarliestPoint();
                     }
-                    NavigableSet<AbstractGraphPoint> subSet = graph.subSet(dummyStart, true, last, true);
-                    graphToUse.addAll(subSet);
-                    lowestPoint = graphToUse.getLowestPointSoFar();
-                    last = graphToUse.last();
-                    first = graphToUse.first();
-                } else {
-                    graphToUse.addAll(graph);
+                    startPoint = dummyStart;
+                    lowestPoint = graph.getLowestPointBetween(dummyStart.getTimestamp(), last.getTimestamp());
                 }
                 //Step 2 Calculate override price
                 //AtrClassEnum atrClass = graph.getPutup().getAtrClass();
 
-                if (isInUEZone) {
-                    result = testIfGraphIGd(graph);
-                } else if (isInTransZone) {
-                    result = testIfGraphIGd(graphToUse);
+                if (isInUEZone || isInTransZone) {
+                    result = testIfGraphIGd(graph, startPoint, last);
                 } else {
                     //If we get here its AFTER 09:36
-                    BaseGraph<AbstractGraphPoint> graph0936 = new BaseGraph<AbstractGraphPoint>();
-                    graph0936.setPutup(graph.getPutup());
                     AbstractGraphPoint nine36 = new DummyGraphPoint(exchOT.getTimeInMillis());
                     //Is their a flat pair that straddles the 09:36 point?? If so we need to include data to start of the flat
                     GraphFlatPair flatPair = DTUtil.getFlatPairAroundTimePoint(transTimestamp, graph);
                     if (null != flatPair) {
                         nine36 = flatPair.getFirstFlat().getEarliestPoint();
                     }
-                    NavigableSet<AbstractGraphPoint> subSet = graph.subSet(nine36, true, last, true);
-                    graph0936.addAll(subSet);
-                    result = testIfGraphIGd(graph0936);
+                    result = testIfGraphIGd(graph, nine36, last);
                     if (!result) {
-                        BaseGraph<AbstractGraphPoint> threeMin = new BaseGraph<AbstractGraphPoint>();
-                        threeMin.setPutup(graph.getPutup());
                         AbstractGraphPoint start = new DummyGraphPoint(ueTimestamp);
                         AbstractGraphPoint end = new DummyGraphPoint(transTimestamp);
                         //Is their a flat pair that straddles the 09:33 point?? If so we need to include data to start of the flat
@@ -120,9 +105,7 @@ public class IGMonitor {
                         if (null != flatPair) {
                             start = flatPair.getFirstFlat().getEarliestPoint();
                         }
-                        NavigableSet<AbstractGraphPoint> subSet1 = graph.subSet(start, true, end, true);
-                        threeMin.addAll(subSet1);
-                        result = testAlternateTable(threeMin);
+                        result = testAlternateTable(graph, start, end);
                     }
                 }
 
@@ -181,18 +164,18 @@ public class IGMonitor {
         return result;
     }
 
-    private boolean testIfGraphIGd(BaseGraph<AbstractGraphPoint> graph) {
+    private boolean testIfGraphIGd(BaseGraph<AbstractGraphPoint> graph, AbstractGraphPoint start, AbstractGraphPoint end) {
         boolean result = true;
         if (null != graph) {
-            if (1 < graph.size()) {
-                AbstractGraphPoint lowestPoint = graph.getLowestPointSoFar();
-                AbstractGraphPoint last = graph.last();
-                AbstractGraphPoint first = graph.first();
-                BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>();
-                graphToUse.addAll(graph);
-                graphToUse.setPutup(graph.getPutup());
-                
-                AtrClassEnum atrClass = graphToUse.getPutup().getAtrClass();
+            //Test the part of the graph from start to end (inclusive)
+            AbstractGraphPoint first = graph.ceiling(start);
+            AbstractGraphPoint last = graph.floor(end);
+            if (null != first && null != last && first.getTimestamp() < last.getTimestamp()) {
+                long fromTime = first.getTimestamp();
+                long toTime = last.getTimestamp();
+                AbstractGraphPoint lowestPoint = graph.getLowestPointBetween(fromTime, toTime);
+
+                AtrClassEnum atrClass = graph.getPutup().getAtrClass();
                 IGFValueTable objIGValTable = new IGFValueTable();
                 Double igFraction = objIGValTable.getIGFraction(atrClass);
                 double dlbIGOverridePrice = (igFraction * lowestPoint.getLastPrice()) + lowestPoint.getLastPrice();
@@ -201,20 +184,15 @@ public class IGMonitor {
                 AbstractGraphPoint startPoint = null;
                 //Subset the graph from start to low of the day
                 //NavigableSet<AbstractGraphPoint> toLowPoint = graph.subSet(first, true, lowestPoint, true);
-                NavigableSet<AbstractGraphPoint> toLowPoint = graphToUse.subSet(first, true, lowestPoint, true);
-                BaseGraph<AbstractGraphPoint> graphToLow = new BaseGraph<AbstractGraphPoint>(toLowPoint);
-                Iterator<AbstractGraphPoint> descIter = graphToLow.descendingIterator();
-                while (descIter.hasNext()) {
-                    startPoint = descIter.next();
-                    if (startPoint.getLastPrice() >= dlbIGOverridePrice) {
-                        break;
-                    }
+                startPoint = graph.getLatestPointAtOrAbove(dlbIGOverridePrice, lowestPoint.getTimestamp());
+                if (null == startPoint || startPoint.getTimestamp() < fromTime) {
+                    startPoint = first;
                 }
-                if (startPoint != first) {
+                if (startPoint.getTimestamp() != first.getTimestamp()) {
                     //We are not at start of the graph we need to find the start of the flat before the current
                     //startPoint and use this as the start point
                     //GraphFlatCollection<IGraphFlat> allFlats = DTUtil.findAllFlats(graph);
-                    GraphFlatCollection<IGraphFlat> allFlats = DTUtil.findAllFlats(graphToUse);
+                    GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> allFlats = DTUtil.findAllFlatsBetween(graph, fromTime, toTime);
                     GraphFlatCollection<IGraphFlat> flatsToPoint = allFlats.getFlatsToPoint(startPoint);
                     if (0 < flatsToPoint.size()) {
                         IGraphFlat flatBeforeOverridePoint = flatsToPoint.last();
@@ -224,9 +202,7 @@ public class IGMonitor {
                 //The graph to use for IG scan is defined as the portion of the original graph between
                 //the startPoint and 'NOW' - the 'last' point
                 //NavigableSet<AbstractGraphPoint> subSet = graph.subSet(startPoint, true, last, true);
-                NavigableSet<AbstractGraphPoint> subSet = graphToUse.subSet(startPoint, true, last, true);
-                BaseGraph<AbstractGraphPoint> objIGGraph = new BaseGraph<AbstractGraphPoint>(subSet);
-                GraphFlatCollection<IGraphFlat> flats = DTUtil.findAllFlats(objIGGraph);
+                GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> flats = DTUtil.findAllFlatsBetween(graph, startPoint.getTimestamp(), toTime);
                 //Step 5 - Get highest scoring flat
                 GraphFlatPair objHighestFlatPair = flats.getHighestScoringFlatPair();
                 if (null != objHighestFlatPair) {
@@ -244,18 +220,18 @@ public class IGMonitor {
         return result;
     }
 
-    private boolean testAlternateTable(BaseGraph<AbstractGraphPoint> graph) {
+    private boolean testAlternateTable(BaseGraph<AbstractGraphPoint> graph, AbstractGraphPoint start, AbstractGraphPoint end) {
         boolean result = true;
         if (null != graph) {
-            if (1 < graph.size()) {
-                AbstractGraphPoint lowestPoint = graph.getLowestPointSoFar();
-                AbstractGraphPoint last = graph.last();
-                AbstractGraphPoint first = graph.first();
-                BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>();
-                graphToUse.addAll(graph);
-                graphToUse.setPutup(graph.getPutup());
+            //Test the part of the graph from start to end (inclusive)
+            AbstractGraphPoint first = graph.ceiling(start);
+            AbstractGraphPoint last = graph.floor(end);
+            if (null != first && null != last && first.getTimestamp() < last.getTimestamp()) {
+                long fromTime = first.getTimestamp();
+                long toTime = last.getTimestamp();
+                AbstractGraphPoint lowestPoint = graph.getLowestPointBetween(fromTime, toTime);
 
-                AtrClassEnum atrClass = graphToUse.getPutup().getAtrClass();
+                AtrClassEnum atrClass = graph.getPutup().getAtrClass();
                 IGFValueTable objIGValTable = new IGFValueTable();
                 Double igFraction = objIGValTable.getIGFraction(atrClass);
                 double dlbIGOverridePrice = (igFraction * lowestPoint.getLastPrice()) + lowestPoint.getLastPrice();
@@ -264,20 +240,15 @@ public class IGMonitor {
                 AbstractGraphPoint startPoint = null;
                 //Subset the graph from start to low of the day
                 //NavigableSet<AbstractGraphPoint> toLowPoint = graph.subSet(first, true, lowestPoint, true);
-                NavigableSet<AbstractGraphPoint> toLowPoint = graphToUse.subSet(first, true, lowestPoint, true);
-                BaseGraph<AbstractGraphPoint> graphToLow = new BaseGraph<AbstractGraphPoint>(toLowPoint);
-                Iterator<AbstractGraphPoint> descIter = graphToLow.descendingIterator();
-                while (descIter.hasNext()) {
-                    startPoint = descIter.next();
-                    if (startPoint.getLastPrice() >= dlbIGOverridePrice) {
-                        break;
-                    }
+                startPoint = graph.getLatestPointAtOrAbove(dlbIGOverridePrice, lowestPoint.getTimestamp());
+                if (null == startPoint || startPoint.getTimestamp() < fromTime) {
+                    startPoint = first;
                 }
-                if (startPoint != first) {
+                if (startPoint.getTimestamp() != first.getTimestamp()) {
                     //We are not at start of the graph we need to find the start of the flat before the current
                     //startPoint and use this as the start point
                     //GraphFlatCollection<IGraphFlat> allFlats = DTUtil.findAllFlats(graph);
-                    GraphFlatCollection<IGraphFlat> allFlats = DTUtil.findAllFlats(graphToUse);
+                    GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> allFlats = DTUtil.findAllFlatsBetween(graph, fromTime, toTime);
                     GraphFlatCollection<IGraphFlat> flatsToPoint = allFlats.getFlatsToPoint(startPoint);
                     if (0 < flatsToPoint.size()) {
                         IGraphFlat flatBeforeOverridePoint = flatsToPoint.last();
@@ -287,9 +258,7 @@ public class IGMonitor {
                 //The graph to use for IG scan is defined as the portion of the original graph between
                 //the startPoint and 'NOW' - the 'last' point
                 //NavigableSet<AbstractGraphPoint> subSet = graph.subSet(startPoint, true, last, true);
-                NavigableSet<AbstractGraphPoint> subSet = graphToUse.subSet(startPoint, true, last, true);
-                BaseGraph<AbstractGraphPoint> objIGGraph = new BaseGraph<AbstractGraphPoint>(subSet);
-                GraphFlatCollection<IGraphFlat> flats = DTUtil.findAllFlats(objIGGraph);
+                GraphFlatCollection<IGraphFlat<AbstractGraphPoint>> flats = DTUtil.findAllFlatsBetween(graph, startPoint.getTimestamp(), toTime);
                 //Step 5 - Get highest scoring flat
                 GraphFlatPair objHighestFlatPair = flats.getHighestScoringFlatPair();
                 if (null != objHighestFlatPair) {
@@ -7,6 +7,7 @@ package rules;
 import daytrader.datamodel.AbstractGraphPoint;
 import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.DTConstants;
+import daytrader.datamodel.PBValueIndex;
 import daytrader.datamodel.PointsCEFormulaData;
 import daytrader.datamodel.TVL;
 import java.util.ArrayList;
@@ -114,6 +115,7 @@ public class IdentifyPB3Points<T extends AbstractGraphPoint> {
 
     /**
      * Test a Price / Time point to determine if its PB Value is AT LEAST DTConstants.getScaledPBVALUE() / 100d
+     * The search uses the graphs PBValueIndex so it does not need to re-scan the graph.
      * @param data - the data graph to use when testing the PB Value
      * @param aPoint - A Price / Time point for which the PB Value is required
      * @return integer being the BP Value if less than DTConstants.getScaledPBVALUE() / 100d or
@@ -121,46 +123,22 @@ public class IdentifyPB3Points<T extends AbstractGraphPoint> {
      */
     public static int findPBValue(BaseGraph<AbstractGraphPoint> data, AbstractGraphPoint aPoint) {
         int result = 0;
-        TreeSet<AbstractGraphPoint> tsTime = new TreeSet<AbstractGraphPoint>(AbstractGraphPoint.TimeComparator);
-        //Also need to know the longest time between consecutive points
-        long timeGap = 0;
-        AbstractGraphPoint prevPoint = null;
-        for (AbstractGraphPoint point : data) {
-            tsTime.add(point);
-            if (null != prevPoint) {
-                long deltaTime = point.getTimestamp() - prevPoint.getTimestamp();
-                if (timeGap < deltaTime) {
-                    timeGap = deltaTime;
-                }
-            } else {
-                prevPoint = point;
-            }
-        }
-        Iterator<AbstractGraphPoint> descIter = tsTime.descendingIterator();
-        boolean abort = false;
+        PBValueIndex index = data.getPBValueIndex();
         double pbLimit = DTConstants.getScaledPBVALUE() / 100d;
-        while (descIter.hasNext() && !abort) {
-            AbstractGraphPoint currPoint = descIter.next();
-            if (currPoint.getTimestamp() < aPoint.getTimestamp()) {
-                if (currPoint.getLastPrice() > aPoint.getLastPrice()) {
-                    //We abort cannot be a potential C/E point function will return 0 (its default)
-                    abort = true;
-                } else {
-                    //Is this point less than the start point by PBValue
-                    Double priceDiff = aPoint.getLastPrice() - currPoint.getLastPrice();
-                    if (priceDiff >= pbLimit) {
-                        //Point may be used calc and return the PB
-                        priceDiff *= 100;
-                        result = priceDiff.intValue();
-                        abort = true;
-                    }
-                }
+        double price = aPoint.getLastPrice();
+        int end = index.countBefore(aPoint.getTimestamp());
+        int[] range = IdentifyPB3Points.findPrevHigherAndLowest(index, aPoint);
+        //If even the lowest point since the previous higher point is not low enough no point is
+        if (0 <= range[1] && price - index.getPrice(range[1]) >= pbLimit) {
+            //Find the latest point below by at least the PB Value (the first one met working back in time)
+            int found = index.findLatestPBBelow(range[0], end, price, pbLimit);
+            if (0 <= found) {
+                //Point may be used calc and return the PB
+                Double priceDiff = price - index.getPrice(found);
+                priceDiff *= 100;
+                result = priceDiff.intValue();
             }
         }
-        if (!abort) {
-            //If we did not abort from the above loop then we have failed to find a point higher
-            //than the one requested and no point was lower by the required PB amount.
-        }
         return result;
     }
 
@@ -172,36 +150,12 @@ public class IdentifyPB3Points<T extends AbstractGraphPoint> {
      */
     public static double getPBValue(BaseGraph<AbstractGraphPoint> data, AbstractGraphPoint aPoint) {
         double result = 0d;
+        PBValueIndex index = data.getPBValueIndex();
         //Find first point in history where the price is higher than the point value
-        NavigableSet<AbstractGraphPoint> subSet = data.subSet(data.first(), true, aPoint, true);
-        BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>(subSet);
-        graphToUse.setPutup(data.getPutup());
-        graphToUse.setPrevDayClose(data.getPrevDayClose());
-        Iterator<AbstractGraphPoint> descIter = graphToUse.descendingIterator();
-        AbstractGraphPoint currPoint;
-        AbstractGraphPoint firstHigher = null;
-        while (descIter.hasNext()) {
-            currPoint = descIter.next();
-            if (currPoint != aPoint) {
-                if (currPoint.getLastPrice() > aPoint.getLastPrice()) {
-                    firstHigher = currPoint;
-                    break;
-                }
-            }
-        }
-        if (null == firstHigher) {
-            //Base the result on the lowest point of the graphToUse
-            AbstractGraphPoint lowestPointSoFar = graphToUse.getLowestPointSoFar();
-            result = aPoint.getLastPrice() - lowestPointSoFar.getLastPrice();
-        } else {
-
-            //BaseGraph<AbstractGraphPoint> graphToUse2 = new BaseGraph<AbstractGraphPoint>(subSet);
-            NavigableSet<AbstractGraphPoint> subSet1 = data.subSet(firstHigher, true, aPoint, true);
-            BaseGraph<AbstractGraphPoint> graphToUse2 = new BaseGraph<AbstractGraphPoint>(subSet1);
-            graphToUse2.setPutup(data.getPutup());
-            graphToUse2.setPrevDayClose(data.getPrevDayClose());
-            AbstractGraphPoint lowestPointSoFar = graphToUse2.getLowestPointSoFar();
-            result = aPoint.getLastPrice() - lowestPointSoFar.getLastPrice();
+        //and the lowest point from there to the point
+        int[] range = IdentifyPB3Points.findPrevHigherAndLowest(index, aPoint);
+        if (0 <= range[1]) {
+            result = aPoint.getLastPrice() - index.getPrice(range[1]);
         }
         return result;
     }
@@ -217,67 +171,55 @@ public class IdentifyPB3Points<T extends AbstractGraphPoint> {
     public static PointsCEFormulaData getCEFormulaData(BaseGraph<AbstractGraphPoint> data, AbstractGraphPoint aPoint) {
         PointsCEFormulaData result = null;
         if (null != data && null != aPoint) {
+            PBValueIndex index = data.getPBValueIndex();
             //Find first point in history where the price is higher than the point value
-            NavigableSet<AbstractGraphPoint> subSet = data.subSet(data.first(), true, aPoint, true);
-            BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>(subSet);
-            graphToUse.setPutup(data.getPutup());
-            graphToUse.setPrevDayClose(data.getPrevDayClose());
-            Iterator<AbstractGraphPoint> descIter = graphToUse.descendingIterator();
-            AbstractGraphPoint currPoint;
-            AbstractGraphPoint firstHigher = null;
-            while (descIter.hasNext()) {
-                currPoint = descIter.next();
-                if (currPoint != aPoint) {
-                    if (currPoint.getLastPrice() > aPoint.getLastPrice()) {
-                        firstHigher = currPoint;
-                        break;
-                    }
-                }
+            //and the EARLIEST lowest point from there to the point
+            int[] range = IdentifyPB3Points.findPrevHigherAndLowest(index, aPoint);
+            double pbVal = 0;
+            double duration = 0;
+            if (0 <= range[1]) {
+                pbVal = aPoint.getLastPrice() - index.getPrice(range[1]);
+                duration = aPoint.getTimestamp() - index.getTimestamp(range[1]);
             }
-            //The First Higher point now contains the first point higher than aPoint's price value or NULL if none
-            //Now work out PB Value and duration
-            double pbVal;
-            double duration;
-            if (null == firstHigher) {
-                //Base the result on the lowest point of the graphToUse
-                AbstractGraphPoint lowestPointSoFar = graphToUse.getLowestPointSoFar();
-                pbVal = aPoint.getLastPrice() - lowestPointSoFar.getLastPrice();
-                //Now calculate the EARLIEST POINT = LOW PRICE
-                double lowPrice = lowestPointSoFar.getLastPrice();
-                Iterator<AbstractGraphPoint> ascIter = graphToUse.iterator();
-                AbstractGraphPoint earliestLow = null;
-                AbstractGraphPoint nextPoint = null;
-                while (ascIter.hasNext()) {
-                    nextPoint = ascIter.next();
-                    if (lowPrice == nextPoint.getLastPrice()) {
-                        earliestLow = nextPoint;
-                        duration = aPoint.getTimestamp() - earliestLow.getTimestamp();
-                        result = new PointsCEFormulaData(aPoint, pbVal, duration);
-                        break;
-                    }
-                }
-            } else {
-                NavigableSet<AbstractGraphPoint> subSet1 = data.subSet(firstHigher, true, aPoint, true);
-                BaseGraph<AbstractGraphPoint> graphToUse2 = new BaseGraph<AbstractGraphPoint>(subSet1);
-                graphToUse2.setPutup(data.getPutup());
-                graphToUse2.setPrevDayClose(data.getPrevDayClose());
-                AbstractGraphPoint lowestPointSoFar = graphToUse2.getLowestPointSoFar();
-                pbVal = aPoint.getLastPrice() - lowestPointSoFar.getLastPrice();
-                //Now calculate the EARLIEST POINT = LOW PRICE
-                double lowPrice = lowestPointSoFar.getLastPrice();
-                Iterator<AbstractGraphPoint> ascIter = graphToUse2.iterator();
-                AbstractGraphPoint earliestLow = null;
-                AbstractGraphPoint nextPoint = null;
-                while (ascIter.hasNext()) {
-                    nextPoint = ascIter.next();
-                    if (lowPrice == nextPoint.getLastPrice()) {
-                        earliestLow = nextPoint;
-                        duration = aPoint.getTimestamp() - earliestLow.getTimestamp();
-                        result = new PointsCEFormulaData(aPoint, pbVal, duration);
-                        break;
-                    }
+            result = new PointsCEFormulaData(aPoint, pbVal, duration);
+        }
+        return result;
+    }
+
+    /**
+     * Uses a graphs PBValueIndex to find the nearest point earlier than aPoint
+     * with a higher price and the earliest lowest point after that higher point
+     * and before aPoint.
+     * @param index - The PBValueIndex of the graph containing the data
+     * @param aPoint - The Price / Time point to start from
+     * @return An integer array, element 0 is the index position of the previous
+     * higher point (-1 if none) and element 1 is the index position of the earliest
+     * lowest point between them (-1 if there are no points between them).
+     */
+    private static int[] findPrevHigherAndLowest(PBValueIndex index, AbstractGraphPoint aPoint) {
+        int[] result = new int[]{-1, -1};
+        double price = aPoint.getLastPrice();
+        int end = index.countBefore(aPoint.getTimestamp());
+        if (end < index.size() && index.getTimestamp(end) == aPoint.getTimestamp() && index.getPrice(end) == price) {
+            //The point is in the index, the answer has already been calculated
+            result[0] = index.getPrevHigher(end);
+            int lowest = index.getLowestSince(end);
+            //Ties go to the earlier point so only an empty range returns the point itself
+            if (lowest != end) {
+                result[1] = lowest;
+            }
+        } else {
+            //Walk back through the previous higher points, each step covers the range
+            //between a point and its own previous higher point
+            int k = end - 1;
+            while (0 <= k && index.getPrice(k) <= price) {
+                int candidate = index.getLowestSince(k);
+                if (0 > result[1] || index.getPrice(candidate) <= index.getPrice(result[1])) {
+                    result[1] = candidate;
                 }
+                k = index.getPrevHigher(k);
             }
+            result[0] = k;
         }
         return result;
     }
@@ -16,10 +16,18 @@ public class RoundDownExceptLastTenthCent  implements IRoundFunction<Number>{
 
     @Override
     public Number performRounding(Number value) {
-        Double dblStartVal = value.doubleValue();
-        Integer intValue = dblStartVal.intValue();
-        Double rem = dblStartVal - intValue;
-        Integer result = intValue;
+        Integer result = RoundDownExceptLastTenthCent.round(value.doubleValue());
+        return result;
+    }
+    
+    /**
+     * Performs this rounding on a primitive value without creating any objects
+     * @param value - double being the value to round
+     * @return integer being the rounded value
+     */
+    public static int round(double value) {
+        int result = (int) value;
+        double rem = value - result;
         if(rem >= 0.9d){
             result++;
         }
@@ -15,11 +15,20 @@ public class RoundToTenthCent implements IRoundFunction<Number>{
 
     @Override
     public Number performRounding(Number value) {
-        Double dblStartVal = value.doubleValue();
-        dblStartVal *= 1000;
-        dblStartVal = Math.rint(dblStartVal);
-        dblStartVal /= 1000;
-        return dblStartVal;
+        Double result = RoundToTenthCent.round(value.doubleValue());
+        return result;
+    }
+    
+    /**
+     * Rounds a primitive value to the nearest 1/10th of a cent without creating
+     * any objects
+     * @param value - double being the value (in dollars) to round
+     * @return double being the rounded value
+     */
+    public static double round(double value) {
+        double result = Math.rint(value * 1000);
+        result /= 1000;
+        return result;
     }
     
 }
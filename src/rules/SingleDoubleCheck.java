@@ -7,10 +7,8 @@ package rules;
 import daytrader.datamodel.AbstractGraphPoint;
 import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.DTConstants;
-import daytrader.datamodel.DummyGraphPoint;
 import daytrader.datamodel.ERETable;
 import daytrader.datamodel.ERETableEntry;
-import daytrader.datamodel.GraphFlatCollection;
 import daytrader.datamodel.GraphLine;
 import daytrader.datamodel.SingleDoublePattern;
 import daytrader.interfaces.IGraphFlat;
@@ -63,32 +61,16 @@ public class SingleDoubleCheck extends AbstractBaseRule {
         if (null != graph && 2 < graph.size()) {                                  //Graph must have at least 3 points
             //Define 'NOW' point
             AbstractGraphPoint now = graph.last();
-            //Subset the graph from the lowest point of the day to its end
+            //NB: The graph keeps a range index that is extended as each new bar arrives so the
+            //lows, highs and retracement below are all found without copying or sorting the graph
+            //From the lowest point of the day to 'NOW' find the single tip point
             AbstractGraphPoint lowestPointSoFar = graph.getLowestPointSoFar();
-            NavigableSet<AbstractGraphPoint> subSet = graph.subSet(lowestPointSoFar, true, graph.last(), true);
-            BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>(subSet);
-            graphToUse.setPutup(graph.getPutup());
-            graphToUse.setPrevDayClose(graph.getPrevDayClose());
-            //Ok we now have a graph from the lowest point of the day to the end of the day
-            //Find the single tip point
-            AbstractGraphPoint singleTip = graphToUse.getHighestPointSoFar();
-            //Obtain list of flats that apply to this graph
-//            GraphFlatCollection<IGraphFlat> allFlats = DTUtil.findAllFlats(graphToUse);
-//            //Determine if single tip lies on a flat and store start of single tip flat if applicable
-//            IGraphFlat singleTipFlat = allFlats.getFlatFromPoint(singleTip);
-            AbstractGraphPoint startSingleTip = graphToUse.getEarliestHigh();;
+            AbstractGraphPoint singleTip = graph.getHighestPointBetween(lowestPointSoFar.getTimestamp(), now.getTimestamp());
+            AbstractGraphPoint startSingleTip = graph.getFirstPointAtOrAbove(singleTip.getLastPrice(), lowestPointSoFar.getTimestamp());
             AbstractGraphPoint endSingleTip = singleTip;
-//            if (null != singleTipFlat) {
-//                startSingleTip = singleTipFlat.getEarliestPoint();
-//                endSingleTip = singleTipFlat.getLatestPoint();
-//            }
-            BaseGraph<AbstractGraphPoint> pGraph = new BaseGraph<AbstractGraphPoint>(AbstractGraphPoint.PriceComparator);
-            pGraph.addAll(graph);
-            DummyGraphPoint testEnd = new DummyGraphPoint(lowestPointSoFar.getTimestamp(), lowestPointSoFar.getLastPrice());
+            //The earliest point since the open with the same price as the low (nothing is lower)
             Calendar exchOT = DTUtil.getExchOpeningTimeFromPoint(lowestPointSoFar);
-            DummyGraphPoint testStart = new DummyGraphPoint(exchOT.getTimeInMillis(), lowestPointSoFar.getLastPrice());
-            NavigableSet<AbstractGraphPoint> lowestSubSet = pGraph.subSet(testStart, true, testEnd, true);
-            AbstractGraphPoint earliestLow = lowestSubSet.first();
+            AbstractGraphPoint earliestLow = graph.getFirstPointBelow(Math.nextUp(lowestPointSoFar.getLastPrice()), exchOT.getTimeInMillis());
             ERETable ereT = new ERETable();
             //Look up the relevent ERE Table entry for 'NOW' (rolling now) then test is the endSingleTip is ere'd 
             //At the time the high ends (endSingleTip) look up the relevent ERE Table entry and calculate the
@@ -104,17 +86,13 @@ public class SingleDoubleCheck extends AbstractBaseRule {
                 double highPrice = endSingleTip.getLastPrice();
                 double priceDiff = highPrice - lowestPointSoFar.getLastPrice();
                 double dblRetracePrice = highPrice - (priceDiff * SingleDoublePattern.RETRACEMENT);
-                //Find the first instance AFTER the single tip where the price falls to equal to or less than the retracement price
-                //Subset the graph
-                NavigableSet<AbstractGraphPoint> subSet1 = graph.subSet(endSingleTip, true, graph.last(), true);
-                BaseGraph<AbstractGraphPoint> postSingleGraph = new BaseGraph<AbstractGraphPoint>(subSet1);
+                //Find the lowest point AFTER the single tip
+                AbstractGraphPoint doubleTip = graph.getLowestPointBetween(endSingleTip.getTimestamp(), now.getTimestamp());
                 //Is ANY point lower or equal to the retracement price
-                if (postSingleGraph.getLowestPointSoFar().getLastPrice() <= dblRetracePrice) {
+                if (doubleTip.getLastPrice() <= dblRetracePrice) {
                     //A lower point exists this is our double tip (bar a flat)
-                    AbstractGraphPoint doubleTip = postSingleGraph.getLowestPointSoFar();
                     //Now determine if the doubleTip is on a flat
-                    GraphFlatCollection<IGraphFlat> dtFlats = DTUtil.findAllFlats(postSingleGraph);
-                    IGraphFlat dtFlat = dtFlats.getFlatFromPoint(doubleTip);
+                    IGraphFlat<AbstractGraphPoint> dtFlat = DTUtil.findFlatFromPoint(graph, doubleTip, endSingleTip.getTimestamp(), now.getTimestamp());
                     AbstractGraphPoint startDTFlat = doubleTip;
                     AbstractGraphPoint endDTFlat = doubleTip;
                     if (null != dtFlat) {
@@ -127,6 +105,11 @@ public class SingleDoubleCheck extends AbstractBaseRule {
                     if (endDTFlat.getTimestamp() < maxDoubleEreTime) {
                         //Before accepting this pattern the double tip price MUST BE lower than yesterdays close
                         if (endDTFlat.getLastPrice() < graph.getPrevDayClose().getLastPrice()) {
+                            //The pattern keeps the graph from the lowest point of the day to 'NOW'
+                            NavigableSet<AbstractGraphPoint> subSet = graph.subSet(lowestPointSoFar, true, now, true);
+                            BaseGraph<AbstractGraphPoint> graphToUse = new BaseGraph<AbstractGraphPoint>(subSet);
+                            graphToUse.setPutup(graph.getPutup());
+                            graphToUse.setPrevDayClose(graph.getPrevDayClose());
                             //We have a completed Single Double pattern prepare the result.
                             SingleDoublePattern item = new SingleDoublePattern(
                                     graphToUse,
@@ -198,20 +181,17 @@ public class SingleDoubleCheck extends AbstractBaseRule {
                     amtUp = 10;
                     double dtPrice = pattern.getDoubleTipEnd().getLastPrice();
                     dtPrice += amtUp;
-                    BreachIRounding rounder = new BreachIRounding();
-                    i = rounder.performRounding(dtPrice).intValue();
+                    i = BreachIRounding.round(dtPrice);
                 } else if (maxPb < 20) {
                     amtUp = 20;
                     double dtPrice = pattern.getDoubleTipEnd().getLastPrice();
                     dtPrice += amtUp;
-                    BreachIRounding rounder = new BreachIRounding();
-                    i = rounder.performRounding(dtPrice).intValue();
+                    i = BreachIRounding.round(dtPrice);
                 } else {
                     amtUp = 30;
                     double dtPrice = pattern.getDoubleTipEnd().getLastPrice();
                     dtPrice += amtUp;
-                    BreachIRounding rounder = new BreachIRounding();
-                    i = rounder.performRounding(dtPrice).intValue();
+                    i = BreachIRounding.round(dtPrice);
                 }
                 //i has been set
 //                System.out.println("Value of i = " + i);
@@ -261,8 +241,7 @@ public class SingleDoubleCheck extends AbstractBaseRule {
                         double breachPrice = (y + (y / 1000));                      //A thenth of a percent
                         if (currPoint.getLastPrice() > breachPrice) {
                             //Line breach calc provisional i 
-                            BreachIRounding rounder = new BreachIRounding();
-                            int provI = rounder.performRounding(breachPrice).intValue();
+                            int provI = BreachIRounding.round(breachPrice);
                             //Determine if 'currPoint' has breached i
                             if (currPoint.getLastPrice() >= provI) {
                                 i = provI;
@@ -9,7 +9,6 @@ import daytrader.datamodel.BaseGraph;
 import daytrader.datamodel.DummyGraphPoint;
 import daytrader.datamodel.ERETable;
 import daytrader.datamodel.ERETableEntry;
-import daytrader.datamodel.GraphFlatCollection;
 import daytrader.datamodel.SingleDoublePattern;
 import daytrader.interfaces.IGraphFlat;
 import daytrader.utils.DTUtil;
@@ -109,16 +108,16 @@ public class SingleDoubleClueLongs extends SingleDoubleCheck {
             double dblRetracePrice = highPrice - (priceDiff * retracePerc);
             //NEW CODE TO REDEFINE THE RETRACEMENT AMOUNT - END
             //Find the first instance AFTER the single tip where the price falls to equal to or less than the retracement price
-            //Subset the graph
-            NavigableSet<AbstractGraphPoint> subSet1 = graph.subSet(endSingleTip, true, graph.last(), true);
-            BaseGraph<AbstractGraphPoint> postSingleGraph = new BaseGraph<AbstractGraphPoint>(subSet1);
+            //Examine the graph from the single tip to NOW
+            long postSingleStart = endSingleTip.getTimestamp();
+            long postSingleEnd = graph.last().getTimestamp();
+            AbstractGraphPoint postSingleLow = graph.getLowestPointBetween(postSingleStart, postSingleEnd);
             //Is ANY point lower or equal to the retracement price
-            if (postSingleGraph.getLowestPointSoFar().getLastPrice() <= dblRetracePrice) {
+            if (postSingleLow.getLastPrice() <= dblRetracePrice) {
                 //A lower point exists this is our double tip (bar a flat)
-                AbstractGraphPoint doubleTip = postSingleGraph.getLowestPointSoFar();
+                AbstractGraphPoint doubleTip = postSingleLow;
                 //Now determine if the doubleTip is on a flat
-                GraphFlatCollection<IGraphFlat> dtFlats = DTUtil.findAllFlats(postSingleGraph);
-                IGraphFlat dtFlat = dtFlats.getFlatFromPoint(doubleTip);
+                IGraphFlat<AbstractGraphPoint> dtFlat = DTUtil.findFlatFromPoint(graph, doubleTip, postSingleStart, postSingleEnd);
                 AbstractGraphPoint startDTFlat = doubleTip;
                 AbstractGraphPoint endDTFlat = doubleTip;
                 if (null != dtFlat) {